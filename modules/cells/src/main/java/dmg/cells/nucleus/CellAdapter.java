@@ -624,6 +624,8 @@ public class   CellAdapter extends CommandInterpreter
             if (lng || full) {
                 StringBuilder sb = new StringBuilder();
                 sb.append(getInfo()).append("\n");
+                sb.append("Outstanding callbacks : ").append(_nucleus.getOutstandingCallbacks()).append("\n");
+                sb.append("Expired callbacks     : ").append(_nucleus.getExpiredCallbacks()).append("\n");
                 Map<UOID,CellLock > map = _nucleus.getWaitQueue();
                 if (! map.isEmpty()) {
                     sb.append("\nWe are waiting for the following messages\n");
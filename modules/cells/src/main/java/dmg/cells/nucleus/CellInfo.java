@@ -22,6 +22,8 @@ public class CellInfo implements Serializable {
   private int    _state;
   private int    _eventQueueSize;
   private int    _threadCount;
+  private int    _outstandingCallbacks;
+  private long   _expiredCallbacks;
   private CellVersion _version = new CellVersion() ;
 
   private static final String [] _stateNames =
@@ -38,6 +40,8 @@ public class CellInfo implements Serializable {
      _state          = info._state ;
      _eventQueueSize = info._eventQueueSize ;
      _threadCount    = info._threadCount ;
+     _outstandingCallbacks = info._outstandingCallbacks ;
+     _expiredCallbacks = info._expiredCallbacks ;
      _version        = info._version ;
   }
 
@@ -51,6 +55,8 @@ public class CellInfo implements Serializable {
   public void setShortInfo( String info ){   _shortInfo    = info ; }
   public void setEventQueueSize( int size ){ _eventQueueSize = size ; }
   public void setThreadCount( int threadCount ){ _threadCount = threadCount ; }
+  public void setOutstandingCallbacks( int count ){ _outstandingCallbacks = count ; }
+  public void setExpiredCallbacks( long count ){ _expiredCallbacks = count ; }
   public void setState( int state ){
      _state = ( state < 0 ) || ( _state >= _stateNames.length )  ?
               _stateNames.length : state  ;
@@ -76,6 +82,16 @@ public class CellInfo implements Serializable {
   public Date   getCreationTime(){ return _creationTime ; }
   public String getDomainName(){ return _domainName ; }
   public int    getThreadCount(){ return _threadCount ; }
+  /**
+    * Returns the number of requests sent by the cell for which a reply
+    * is outstanding.
+    */
+  public int    getOutstandingCallbacks(){ return _outstandingCallbacks ; }
+  /**
+    * Returns the number of requests sent by the cell for which no reply
+    * arrived before the timeout.
+    */
+  public long   getExpiredCallbacks(){ return _expiredCallbacks ; }
   //
   // and some needfull things
   //
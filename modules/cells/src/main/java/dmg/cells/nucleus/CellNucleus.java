@@ -19,13 +19,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -37,7 +38,9 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import dmg.util.HashedTimingWheel;
 import dmg.util.Pinboard;
 import dmg.util.logback.FilterThresholds;
 import dmg.util.logback.RootFilterThresholds;
@@ -57,6 +60,8 @@ public class CellNucleus implements ThreadFactory
             LoggerFactory.getLogger(CellNucleus.class);
 
     private static final int PINBOARD_DEFAULT_SIZE = 200;
+    private static final long CALLBACK_TIMEOUT_TICK = 1000;
+    private static final int CALLBACK_TIMEOUT_TICKS_PER_WHEEL = 512;
     private static final  int    INITIAL  =  0;
     private static final  int    ACTIVE   =  1;
     private static final  int    REMOVING =  2;
@@ -71,8 +76,18 @@ public class CellNucleus implements ThreadFactory
 
     private        int       _state          = INITIAL;
 
-    //  have to be synchronized map
-    private final  Map<UOID, CellLock> _waitHash = new HashMap<>();
+    /** Outstanding callbacks, i.e. requests waiting for a reply. */
+    private final ConcurrentMap<UOID, HashedTimingWheel.Timeout<CellLock>> _waitHash =
+            new ConcurrentHashMap<>();
+
+    /** Timeouts of outstanding callbacks. */
+    private final HashedTimingWheel<CellLock> _callbackTimeouts =
+            new HashedTimingWheel<>(CALLBACK_TIMEOUT_TICK, TimeUnit.MILLISECONDS,
+                                    CALLBACK_TIMEOUT_TICKS_PER_WHEEL);
+
+    /** Number of callbacks that timed out. */
+    private final AtomicLong _expiredCallbacks = new AtomicLong();
+
     private String _cellClass;
 
     private volatile ExecutorService _messageExecutor;
@@ -91,6 +106,11 @@ public class CellNucleus implements ThreadFactory
      */
     private TimerTask _timeoutTask;
 
+    /**
+     * Task for executing deferred operations.
+     */
+    private TimerTask _maintenanceTask;
+
     private boolean _isPrivateMessageExecutor = true;
 
     private Pinboard _pinboard;
@@ -186,8 +206,10 @@ public class CellNucleus implements ThreadFactory
     /**
      * Start the timeout task.
      *
-     * Cells rely on periodic calls to executeMaintenanceTasks to implement
-     * message timeouts. This method starts a task which calls
+     * Cells rely on periodic calls to expireCallbacks to implement
+     * message timeouts and on periodic calls to executeMaintenanceTasks
+     * for deferred operations. This method starts a task which calls
+     * expireCallbacks every second and a task which calls
      * executeMaintenanceTasks every 20 seconds.
      */
     private void startTimeoutTask()
@@ -196,6 +218,18 @@ public class CellNucleus implements ThreadFactory
             throw new IllegalStateException("Timeout task is already running");
         }
         _timeoutTask = new TimerTask() {
+            @Override
+            public void run()
+            {
+                try (CDC ignored = CDC.reset(CellNucleus.this)) {
+                    expireCallbacks();
+                } catch (Throwable e) {
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, e);
+                }
+            }
+        };
+        _maintenanceTask = new TimerTask() {
             @Override
             public void run()
             {
@@ -207,7 +241,8 @@ public class CellNucleus implements ThreadFactory
                 }
             }
         };
-        _timer.schedule(_timeoutTask, 20000, 20000);
+        _timer.schedule(_timeoutTask, CALLBACK_TIMEOUT_TICK, CALLBACK_TIMEOUT_TICK);
+        _timer.schedule(_maintenanceTask, 20000, 20000);
     }
 
     /**
@@ -316,6 +351,8 @@ public class CellNucleus implements ThreadFactory
             info.setEventQueueSize(getEventQueueSize());
             info.setState(_state);
             info.setThreadCount(_threads.activeCount());
+            info.setOutstandingCallbacks(getOutstandingCallbacks());
+            info.setExpiredCallbacks(getExpiredCallbacks());
         } catch(Exception e) {
             info.setEventQueueSize(0);
             info.setState(0);
@@ -446,36 +483,47 @@ public class CellNucleus implements ThreadFactory
 
     public Map<UOID,CellLock > getWaitQueue()
     {
-        synchronized (_waitHash) {
-            return new HashMap<>(_waitHash);
+        Map<UOID,CellLock> queue = new HashMap<>();
+        for (Map.Entry<UOID, HashedTimingWheel.Timeout<CellLock>> entry : _waitHash.entrySet()) {
+            queue.put(entry.getKey(), entry.getValue().getElement());
         }
+        return queue;
     }
 
-    private int executeMaintenanceTasks()
+    int getOutstandingCallbacks()
     {
-        Collection<CellLock> expired = new ArrayList<>();
-        long now = System.currentTimeMillis();
-        int size;
-
-        synchronized (_waitHash) {
-            Iterator<CellLock> i = _waitHash.values().iterator();
-            while (i.hasNext()) {
-                CellLock lock =  i.next();
-                if (lock.getTimeout() < now) {
-                    expired.add(lock);
-                    i.remove();
-                }
-            }
-            size = _waitHash.size();
-        }
+        return _waitHash.size();
+    }
 
-        //
-        // _waitHash can't be used here. Otherwise
-        // we will end up in a deadlock (NO LOCKS WHILE CALLING CALLBACKS)
-        //
-        for (CellLock lock: expired) {
+    long getExpiredCallbacks()
+    {
+        return _expiredCallbacks.get();
+    }
+
+    private void addCallback(UOID uoid, CellLock lock)
+    {
+        _waitHash.put(uoid, _callbackTimeouts.schedule(lock, lock.getTimeout()));
+    }
+
+    /**
+     * Removes an outstanding callback.
+     *
+     * @return the callback or null if there is no such callback or if it
+     *         already timed out
+     */
+    private CellLock removeCallback(UOID uoid)
+    {
+        HashedTimingWheel.Timeout<CellLock> timeout = _waitHash.remove(uoid);
+        return (timeout != null && timeout.cancel()) ? timeout.getElement() : null;
+    }
+
+    private void expireCallbacks()
+    {
+        for (CellLock lock : _callbackTimeouts.expire(System.currentTimeMillis())) {
+            CellMessage envelope = lock.getMessage();
+            _waitHash.remove(envelope.getUOID());
+            _expiredCallbacks.incrementAndGet();
             try {
-                CellMessage envelope = lock.getMessage();
                 EventLogger.sendEnd(envelope);
                 lock.getCallback().answerTimedOut(envelope);
             } catch (RuntimeException e) {
@@ -486,13 +534,14 @@ public class CellNucleus implements ThreadFactory
                 t.getUncaughtExceptionHandler().uncaughtException(t, e);
             }
         }
+    }
 
+    private void executeMaintenanceTasks()
+    {
         // Execute delayed operations
         for (Runnable task : consumingIterable(_deferredTasks)) {
             task.run();
         }
-
-        return size;
     }
 
     /**
@@ -536,10 +585,7 @@ public class CellNucleus implements ThreadFactory
         UOID uoid = msg.getUOID();
         boolean success = false;
         try {
-            CellLock lock = new CellLock(msg, callback, executor, timeout);
-            synchronized (_waitHash) {
-                _waitHash.put(uoid, lock);
-            }
+            addCallback(uoid, new CellLock(msg, callback, executor, timeout));
 
             __cellGlue.sendMessage(this, msg, local, remote);
             success = true;
@@ -549,9 +595,7 @@ public class CellNucleus implements ThreadFactory
             }
         } finally {
             if (!success) {
-                synchronized (_waitHash) {
-                    _waitHash.remove(uoid);
-                }
+                removeCallback(uoid);
                 EventLogger.sendEnd(msg);
             }
         }
@@ -806,11 +850,7 @@ public class CellNucleus implements ThreadFactory
             final CellMessage msg = ce.getMessage();
             if (msg != null) {
                 LOGGER.trace("addToEventQueue : message arrived : {}", msg);
-                CellLock lock;
-
-                synchronized (_waitHash) {
-                    lock = _waitHash.remove(msg.getLastUOID());
-                }
+                CellLock lock = removeCallback(msg.getLastUOID());
 
                 if (lock != null) {
                     //
@@ -823,9 +863,7 @@ public class CellNucleus implements ThreadFactory
                         /* Put it back; the timeout handler
                          * will eventually take care of it.
                          */
-                        synchronized (_waitHash) {
-                            _waitHash.put(msg.getLastUOID(), lock);
-                        }
+                        addCallback(msg.getLastUOID(), lock);
                         throw e;
                     }
                     return;
@@ -875,6 +913,9 @@ public class CellNucleus implements ThreadFactory
             if (_timeoutTask != null) {
                 _timeoutTask.cancel();
             }
+            if (_maintenanceTask != null) {
+                _maintenanceTask.cancel();
+            }
 
             __cellGlue.destroy(CellNucleus.this);
             _state = DEAD;
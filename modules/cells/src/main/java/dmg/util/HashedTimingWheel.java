@@ -0,0 +1,207 @@
+package dmg.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A hashed timing wheel for tracking large numbers of timeouts.
+ *
+ * Timeouts are hashed by their deadline into a fixed number of buckets,
+ * each bucket covering one tick. Scheduling and cancelling a timeout are
+ * O(1) and do not block. Expiring timeouts only visits the buckets of the
+ * ticks that elapsed since the previous call, thus the cost is
+ * proportional to the number of expired timeouts rather than to the
+ * number of outstanding timeouts.
+ *
+ * Timeouts expire with a granularity of one tick: a timeout is reported by
+ * the first call to {@link #expire} after the tick containing its deadline
+ * has elapsed.
+ *
+ * The class is thread safe. Calls to {@code expire} are serialized.
+ */
+public class HashedTimingWheel<T>
+{
+    private final long _tickDuration;
+    private final List<Set<Timeout<T>>> _wheel;
+    private final int _mask;
+
+    /** Timeouts not yet placed in the wheel. */
+    private final Queue<Timeout<T>> _pending = new ConcurrentLinkedQueue<>();
+
+    /** Number of timeouts that neither expired nor were cancelled. */
+    private final AtomicInteger _size = new AtomicInteger();
+
+    /** The last tick for which timeouts have been expired. Guarded by this. */
+    private long _tick;
+
+    /**
+     * @param tickDuration the duration of a tick
+     * @param unit the unit of {@code tickDuration}
+     * @param ticksPerWheel number of buckets; rounded up to a power of two
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel)
+    {
+        checkArgument(unit.toMillis(tickDuration) > 0, "Tick duration must be at least one millisecond");
+        checkArgument(ticksPerWheel > 0 && ticksPerWheel <= (1 << 30), "Invalid number of ticks per wheel");
+        _tickDuration = unit.toMillis(tickDuration);
+        int buckets = Integer.highestOneBit(ticksPerWheel);
+        if (buckets < ticksPerWheel) {
+            buckets <<= 1;
+        }
+        _wheel = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            _wheel.add(Collections.newSetFromMap(new ConcurrentHashMap<Timeout<T>, Boolean>()));
+        }
+        _mask = buckets - 1;
+        _tick = System.currentTimeMillis() / _tickDuration - 1;
+    }
+
+    /**
+     * Schedules a timeout for {@code element}.
+     *
+     * @param element the element to return from {@link #expire} once the deadline has passed
+     * @param deadline the deadline in milliseconds since the epoch
+     * @return a handle through which the timeout may be cancelled
+     */
+    public Timeout<T> schedule(T element, long deadline)
+    {
+        Timeout<T> timeout = new Timeout<>(element, deadline, _size);
+        _size.incrementAndGet();
+        _pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns the number of timeouts that have neither expired nor been cancelled.
+     */
+    public int size()
+    {
+        return _size.get();
+    }
+
+    /**
+     * Expires all timeouts with a deadline in a tick that elapsed before {@code now}.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the elements of the expired timeouts
+     */
+    public synchronized List<T> expire(long now)
+    {
+        List<T> expired = new ArrayList<>();
+        long last = now / _tickDuration - 1;
+        if (last <= _tick) {
+            return expired;
+        }
+
+        for (Timeout<T> timeout = _pending.poll(); timeout != null; timeout = _pending.poll()) {
+            if (!timeout.isCancelled()) {
+                long tick = Math.max(timeout._deadline / _tickDuration, _tick + 1);
+                Set<Timeout<T>> bucket = _wheel.get((int) (tick & _mask));
+                bucket.add(timeout);
+                timeout._bucket = bucket;
+                /* Cancellation may have raced with placing the timeout in the bucket.
+                 */
+                if (timeout.isCancelled()) {
+                    bucket.remove(timeout);
+                }
+            }
+        }
+
+        long end = Math.min(last, _tick + _wheel.size());
+        for (long tick = _tick + 1; tick <= end; tick++) {
+            Iterator<Timeout<T>> i = _wheel.get((int) (tick & _mask)).iterator();
+            while (i.hasNext()) {
+                Timeout<T> timeout = i.next();
+                if (timeout._deadline <= now) {
+                    i.remove();
+                    if (timeout.expire()) {
+                        expired.add(timeout._element);
+                    }
+                }
+            }
+        }
+        _tick = last;
+        return expired;
+    }
+
+    /**
+     * Handle of a scheduled timeout.
+     */
+    public static class Timeout<T>
+    {
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final T _element;
+        private final long _deadline;
+        private final AtomicInteger _state = new AtomicInteger(SCHEDULED);
+        private final AtomicInteger _size;
+        private volatile Set<Timeout<T>> _bucket;
+
+        private Timeout(T element, long deadline, AtomicInteger size)
+        {
+            _element = element;
+            _deadline = deadline;
+            _size = size;
+        }
+
+        public T getElement()
+        {
+            return _element;
+        }
+
+        public long getDeadline()
+        {
+            return _deadline;
+        }
+
+        /**
+         * Cancels the timeout.
+         *
+         * @return true if the timeout was cancelled, false if it already
+         * expired or was cancelled before
+         */
+        public boolean cancel()
+        {
+            if (!_state.compareAndSet(SCHEDULED, CANCELLED)) {
+                return false;
+            }
+            _size.decrementAndGet();
+            Set<Timeout<T>> bucket = _bucket;
+            if (bucket != null) {
+                bucket.remove(this);
+            }
+            return true;
+        }
+
+        public boolean isCancelled()
+        {
+            return _state.get() == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return _state.get() == EXPIRED;
+        }
+
+        private boolean expire()
+        {
+            if (!_state.compareAndSet(SCHEDULED, EXPIRED)) {
+                return false;
+            }
+            _size.decrementAndGet();
+            return true;
+        }
+    }
+}
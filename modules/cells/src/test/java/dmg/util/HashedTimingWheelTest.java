@@ -0,0 +1,114 @@
+package dmg.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HashedTimingWheelTest
+{
+    private static final long TICK = 100;
+    private static final int TICKS_PER_WHEEL = 8;
+
+    private HashedTimingWheel<String> wheel;
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        now = System.currentTimeMillis();
+        wheel = new HashedTimingWheel<>(TICK, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    @Test
+    public void shouldNotExpireBeforeDeadline()
+    {
+        wheel.schedule("a", now + 5 * TICK);
+
+        assertThat(wheel.expire(now + 4 * TICK), is(empty()));
+        assertThat(wheel.size(), is(1));
+    }
+
+    @Test
+    public void shouldExpireOnceTickOfDeadlineHasElapsed()
+    {
+        wheel.schedule("a", now + 5 * TICK);
+
+        assertThat(wheel.expire(now + 7 * TICK), contains("a"));
+        assertThat(wheel.size(), is(0));
+        assertThat(wheel.expire(now + 8 * TICK), is(empty()));
+    }
+
+    @Test
+    public void shouldExpireOnlyOverdueTimeouts()
+    {
+        wheel.schedule("a", now + 2 * TICK);
+        wheel.schedule("b", now + 6 * TICK);
+
+        assertThat(wheel.expire(now + 4 * TICK), contains("a"));
+        assertThat(wheel.expire(now + 8 * TICK), contains("b"));
+    }
+
+    @Test
+    public void shouldExpireTimeoutsBeyondOneRevolution()
+    {
+        wheel.schedule("a", now + 3 * TICK);
+        wheel.schedule("b", now + (3 + TICKS_PER_WHEEL) * TICK);
+
+        assertThat(wheel.expire(now + 5 * TICK), contains("a"));
+        assertThat(wheel.expire(now + (3 + TICKS_PER_WHEEL) * TICK), is(empty()));
+        assertThat(wheel.expire(now + (5 + TICKS_PER_WHEEL) * TICK), contains("b"));
+    }
+
+    @Test
+    public void shouldExpireAllOverdueTimeoutsAfterLongPause()
+    {
+        wheel.schedule("a", now + 3 * TICK);
+        wheel.schedule("b", now + (3 + 2 * TICKS_PER_WHEEL) * TICK);
+
+        assertThat(wheel.expire(now + 10 * TICKS_PER_WHEEL * TICK), containsInAnyOrder("a", "b"));
+    }
+
+    @Test
+    public void shouldExpireTimeoutWithDeadlineInThePast()
+    {
+        wheel.expire(now + 4 * TICK);
+        wheel.schedule("a", now);
+
+        assertThat(wheel.expire(now + 6 * TICK), contains("a"));
+    }
+
+    @Test
+    public void shouldNotExpireCancelledTimeout()
+    {
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("a", now + 5 * TICK);
+        wheel.expire(now + 2 * TICK);
+
+        assertThat(timeout.cancel(), is(true));
+        assertThat(wheel.size(), is(0));
+        assertThat(wheel.expire(now + 7 * TICK), is(empty()));
+    }
+
+    @Test
+    public void shouldNotExpireTimeoutCancelledBeforePlacement()
+    {
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("a", now + 2 * TICK);
+
+        assertThat(timeout.cancel(), is(true));
+        assertThat(wheel.expire(now + 7 * TICK), is(empty()));
+    }
+
+    @Test
+    public void shouldNotCancelExpiredTimeout()
+    {
+        HashedTimingWheel.Timeout<String> timeout = wheel.schedule("a", now + 2 * TICK);
+        wheel.expire(now + 4 * TICK);
+
+        assertThat(timeout.isExpired(), is(true));
+        assertThat(timeout.cancel(), is(false));
+        assertThat(wheel.size(), is(0));
+    }
+}
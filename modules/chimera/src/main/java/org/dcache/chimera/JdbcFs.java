@@ -28,11 +28,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.util.AccessLatency;
 import diskCacheV111.util.RetentionPolicy;
@@ -88,6 +91,10 @@ public class JdbcFs implements FileSystemProvider {
      */
     private final DataSource _dbConnectionsPool;
     private final FsStatCache _fsStatCache;
+    /**
+     * cache of directory lookups; disabled unless configured
+     */
+    private volatile LookupCache _lookupCache = new LookupCache(0, 1, TimeUnit.SECONDS);
     /**
      * current fs id
      */
@@ -130,6 +137,21 @@ public class JdbcFs implements FileSystemProvider {
         _fsStatCache = new FsStatCache(this);
     }
 
+    /**
+     * Sets the cache used for directory lookups. Must be called before the
+     * file system is used. The cache is disabled by default, as it only
+     * observes changes made through this instance; changes made by other
+     * instances sharing the database are only noticed once the cached entry
+     * expires.
+     */
+    public void setLookupCache(LookupCache lookupCache) {
+        _lookupCache = lookupCache;
+    }
+
+    public LookupCache getLookupCache() {
+        return _lookupCache;
+    }
+
     private FsInode getWormID() throws ChimeraFsException {
 
         return this.path2inode("/admin/etc/config");
@@ -670,6 +692,7 @@ public class JdbcFs implements FileSystemProvider {
 
             _sqlDriver.remove(dbConnection, parent, name);
             dbConnection.commit();
+            _lookupCache.invalidate(parent, name);
         } catch (ChimeraFsException hfe) {
             try {
                 dbConnection.rollback();
@@ -717,8 +740,12 @@ public class JdbcFs implements FileSystemProvider {
                 throw new FileNotFoundHimeraFsException("Not a file.");
             }
 
+            boolean isDirectory = inode.isDirectory();
             _sqlDriver.remove(dbConnection, parent, inode);
             dbConnection.commit();
+            if (isDirectory) {
+                _lookupCache.invalidate(inode);
+            }
         } catch (ChimeraFsException hfe) {
             try {
                 dbConnection.rollback();
@@ -911,9 +938,46 @@ public class JdbcFs implements FileSystemProvider {
         return path2inode(path, _rootInode);
     }
 
+    /**
+     * Splits a path into its elements, skipping empty elements.
+     */
+    private static List<String> pathElements(String path) {
+        List<String> elements = new ArrayList<>();
+        File pathFile = new File(path);
+        do {
+            String fileName = pathFile.getName();
+            if (fileName.length() != 0) {
+                elements.add(fileName);
+            }
+            pathFile = pathFile.getParentFile();
+        } while (pathFile != null);
+        Collections.reverse(elements);
+        return elements;
+    }
+
     @Override
     public FsInode path2inode(String path, FsInode startFrom) throws ChimeraFsException {
 
+        List<String> elements = pathElements(path);
+
+        /*
+         * resolve the longest prefix known to the lookup cache without
+         * accessing the database
+         */
+        FsInode inode = startFrom;
+        int cached = 0;
+        while (cached < elements.size()) {
+            FsInode child = _lookupCache.get(inode, elements.get(cached));
+            if (child == null) {
+                break;
+            }
+            inode = child;
+            cached++;
+        }
+        if (cached == elements.size()) {
+            return inode;
+        }
+
         Connection dbConnection;
         try {
             // get from pool
@@ -922,15 +986,29 @@ public class JdbcFs implements FileSystemProvider {
             throw new BackEndErrorHimeraFsException(e.getMessage());
         }
 
-        FsInode inode = null;
-
         try {
 
             dbConnection.setAutoCommit(true);
-            inode = _sqlDriver.path2inode(dbConnection, startFrom, path);
+            for (String name : elements.subList(cached, elements.size())) {
+                long generation = _lookupCache.getGeneration(inode, name);
+                FsInode child = _sqlDriver.inodeOf(dbConnection, inode, name);
+                Stat stat = (child == null) ? null : _sqlDriver.stat(dbConnection, child);
+                if (stat == null) {
+                    throw new FileNotFoundHimeraFsException(path);
+                }
 
-            if (inode == null) {
-                throw new FileNotFoundHimeraFsException(path);
+                switch (UnixPermission.getType(stat.getMode())) {
+                case UnixPermission.S_IFLNK:
+                    child = _sqlDriver.path2inode(dbConnection, inode, name);
+                    if (child == null) {
+                        throw new FileNotFoundHimeraFsException(path);
+                    }
+                    break;
+                case UnixPermission.S_IFDIR:
+                    _lookupCache.put(generation, inode, name, child);
+                    break;
+                }
+                inode = child;
             }
 
         } catch (SQLException e) {
@@ -953,6 +1031,8 @@ public class JdbcFs implements FileSystemProvider {
     public List<FsInode> path2inodes(String path, FsInode startFrom)
         throws ChimeraFsException
     {
+        List<String> elements = pathElements(path);
+
         Connection dbConnection;
         try {
             // get from pool
@@ -961,14 +1041,49 @@ public class JdbcFs implements FileSystemProvider {
             throw new BackEndErrorHimeraFsException(e.getMessage());
         }
 
-        List<FsInode> inodes;
+        List<FsInode> inodes = new ArrayList<>(elements.size() + 1);
 
         try {
             dbConnection.setAutoCommit(true);
-            inodes = _sqlDriver.path2inodes(dbConnection, startFrom, path);
 
-            if (inodes.isEmpty()) {
-                throw new FileNotFoundHimeraFsException(path);
+            /*
+             * The inodes are returned with their stat, hence every inode
+             * is read from the database; the lookup cache only saves the
+             * directory lookups.
+             */
+            FsInode inode = startFrom;
+            inodes.add(inode);
+            for (String name : elements) {
+                long generation = _lookupCache.getGeneration(inode, name);
+                FsInode child = _lookupCache.get(inode, name);
+                if (child == null) {
+                    child = _sqlDriver.inodeOf(dbConnection, inode, name);
+                }
+                Stat stat = (child == null) ? null : _sqlDriver.stat(dbConnection, child);
+                if (stat == null) {
+                    throw new FileNotFoundHimeraFsException(path);
+                }
+                child.setStatCache(stat);
+
+                switch (UnixPermission.getType(stat.getMode())) {
+                case UnixPermission.S_IFLNK:
+                    List<FsInode> linkInodes = _sqlDriver.path2inodes(dbConnection, inode, name);
+                    if (linkInodes.isEmpty()) {
+                        throw new FileNotFoundHimeraFsException(path);
+                    }
+                    // skip the parent, already in the list
+                    inodes.addAll(linkInodes.subList(1, linkInodes.size()));
+                    child = linkInodes.get(linkInodes.size() - 1);
+                    break;
+                case UnixPermission.S_IFDIR:
+                    _lookupCache.put(generation, inode, name, child);
+                    inodes.add(child);
+                    break;
+                default:
+                    inodes.add(child);
+                    break;
+                }
+                inode = child;
             }
         } catch (SQLException e) {
             _log.error("path2inode", e);
@@ -1868,6 +1983,8 @@ public class JdbcFs implements FileSystemProvider {
             }
 
             dbConnection.commit();
+            _lookupCache.invalidate(srcDir, source);
+            _lookupCache.invalidate(destDir, dest);
         } catch (SQLException e) {
             _log.error("move:", e);
             try {
@@ -2818,6 +2935,7 @@ public class JdbcFs implements FileSystemProvider {
         sb.append("rootID    : ").append(_rootInode.toString()).append("\n");
         sb.append("wormID    : ").append(_wormID).append("\n");
         sb.append("FsId      : ").append(_fsId).append("\n");
+        sb.append("Lookups   : ").append(_lookupCache).append("\n");
         return sb.toString();
     }
 
@@ -0,0 +1,203 @@
+/*
+ * This library is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Library General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this program (see the file COPYING.LIB for more
+ * details); if not, write to the Free Software Foundation, Inc.,
+ * 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.dcache.chimera;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of directory entries, mapping the inode of a parent directory and
+ * a name to the inode of a subdirectory.
+ *
+ * Only directories are cached: they make up the prefixes shared by most
+ * paths, their inodes never change while they exist, and they cannot be
+ * hard linked. The entries '.' and '..' and pnfs commands are never cached.
+ *
+ * Entries have to be invalidated whenever the corresponding directory entry
+ * is removed or renamed. To prevent a lookup that raced with such a change
+ * from inserting a stale entry, a lookup records the generation of the entry
+ * before querying the database and passes it to {@link #put}; the entry is
+ * only kept if it was not invalidated in the meantime.
+ *
+ * Changes made by other processes sharing the same database are not
+ * observed; such entries are only evicted once their lifetime expires.
+ *
+ * This class is thread safe.
+ */
+public class LookupCache
+{
+    private static final int STRIPES = 64;
+
+    private static class Key
+    {
+        private final String _parent;
+        private final String _name;
+
+        Key(FsInode parent, String name)
+        {
+            _parent = parent.toString();
+            _name = name;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return _parent.equals(other._parent) && _name.equals(other._name);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * _parent.hashCode() + _name.hashCode();
+        }
+    }
+
+    private final Cache<Key,String> _entries;
+    private final AtomicLongArray _generations = new AtomicLongArray(STRIPES);
+    private final long _size;
+    private final long _lifetime;
+    private final TimeUnit _lifetimeUnit;
+
+    /**
+     * @param size maximum number of entries; zero disables the cache
+     * @param lifetime time after which an entry is evicted
+     * @param lifetimeUnit unit of lifetime
+     */
+    public LookupCache(long size, long lifetime, TimeUnit lifetimeUnit)
+    {
+        _size = size;
+        _lifetime = lifetime;
+        _lifetimeUnit = lifetimeUnit;
+        _entries = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(lifetime, lifetimeUnit)
+                .recordStats()
+                .build();
+    }
+
+    private static boolean isCacheable(String name)
+    {
+        return !name.equals(".") && !name.equals("..") && !name.startsWith(".(");
+    }
+
+    private static int stripeOf(Key key)
+    {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    /**
+     * Returns the cached inode of the directory {@code name} in {@code parent},
+     * or null if not cached.
+     */
+    public FsInode get(FsInode parent, String name)
+    {
+        if (!isCacheable(name)) {
+            return null;
+        }
+        String id = _entries.getIfPresent(new Key(parent, name));
+        return (id == null) ? null : new FsInode(parent.getFs(), id);
+    }
+
+    /**
+     * Returns the generation of an entry. Must be called before looking up
+     * the entry in the database.
+     */
+    public long getGeneration(FsInode parent, String name)
+    {
+        return _generations.get(stripeOf(new Key(parent, name)));
+    }
+
+    /**
+     * Adds the directory {@code inode} as the entry {@code name} of {@code parent}.
+     *
+     * @param generation the generation of the entry obtained before looking
+     * up {@code inode} in the database
+     */
+    public void put(long generation, FsInode parent, String name, FsInode inode)
+    {
+        if (!isCacheable(name)) {
+            return;
+        }
+        Key key = new Key(parent, name);
+        int stripe = stripeOf(key);
+        _entries.put(key, inode.toString());
+        if (_generations.get(stripe) != generation) {
+            _entries.invalidate(key);
+        }
+    }
+
+    /**
+     * Invalidates the entry {@code name} of {@code parent}. Must be called
+     * after the change to the entry has been committed.
+     */
+    public void invalidate(FsInode parent, String name)
+    {
+        Key key = new Key(parent, name);
+        _generations.incrementAndGet(stripeOf(key));
+        _entries.invalidate(key);
+    }
+
+    /**
+     * Invalidates all entries referring to the directory {@code inode}. Must
+     * be called after the directory has been removed.
+     */
+    public void invalidate(FsInode inode)
+    {
+        String id = inode.toString();
+        for (int i = 0; i < STRIPES; i++) {
+            _generations.incrementAndGet(i);
+        }
+        _entries.asMap().values().removeAll(Collections.singleton(id));
+    }
+
+    public CacheStats getStats()
+    {
+        return _entries.stats();
+    }
+
+    public long size()
+    {
+        return _entries.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        CacheStats stats = _entries.stats();
+        return Objects.toStringHelper(this)
+                .add("entries", _entries.size())
+                .add("maxSize", _size)
+                .add("lifetime", _lifetimeUnit.toSeconds(_lifetime) + "s")
+                .add("hits", stats.hitCount())
+                .add("misses", stats.missCount())
+                .add("hitRate", String.format("%.3f", stats.hitRate()))
+                .toString();
+    }
+}
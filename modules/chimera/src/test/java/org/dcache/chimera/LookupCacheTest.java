@@ -0,0 +1,197 @@
+package org.dcache.chimera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LookupCacheTest extends ChimeraTestCaseHelper {
+
+    @Before
+    public void enableLookupCache() {
+        ((JdbcFs) _fs).setLookupCache(new LookupCache(10000, 10, TimeUnit.SECONDS));
+    }
+
+    private LookupCache getLookupCache() {
+        return ((JdbcFs) _fs).getLookupCache();
+    }
+
+    private boolean exists(String path) throws ChimeraFsException {
+        try {
+            _fs.path2inode(path);
+            return true;
+        } catch (FileNotFoundHimeraFsException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testLookupUsesCachedPrefix() throws Exception {
+        FsInode dir = _rootInode.mkdir("a").mkdir("b").mkdir("c");
+
+        assertEquals(dir, _fs.path2inode("/a/b/c"));
+        long hits = getLookupCache().getStats().hitCount();
+
+        assertEquals(dir, _fs.path2inode("/a/b/c"));
+        assertEquals(hits + 3, getLookupCache().getStats().hitCount());
+    }
+
+    @Test
+    public void testFilesAreNotCached() throws Exception {
+        FsInode file = _rootInode.mkdir("a").create("file", 0, 0, 0644);
+        long size = getLookupCache().size();
+
+        assertEquals(file, _fs.path2inode("/a/file"));
+        assertEquals(size + 1, getLookupCache().size());
+    }
+
+    @Test
+    public void testLookupAfterRename() throws Exception {
+        FsInode dir = _rootInode.mkdir("a").mkdir("b");
+        assertEquals(dir, _fs.path2inode("/a/b"));
+
+        _fs.move("/a/b", "/a/c");
+
+        assertFalse(exists("/a/b"));
+        assertEquals(dir, _fs.path2inode("/a/c"));
+    }
+
+    @Test
+    public void testLookupAfterMove() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode x = _rootInode.mkdir("x");
+        FsInode dir = a.mkdir("b").mkdir("c");
+        assertEquals(dir, _fs.path2inode("/a/b/c"));
+
+        _fs.move(a, "b", x, "b");
+
+        assertFalse(exists("/a/b/c"));
+        assertEquals(dir, _fs.path2inode("/x/b/c"));
+    }
+
+    @Test
+    public void testLookupAfterRenameOverExisting() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode b = a.mkdir("b");
+        FsInode c = a.mkdir("c");
+        assertEquals(b, _fs.path2inode("/a/b"));
+        assertEquals(c, _fs.path2inode("/a/c"));
+
+        _fs.move(a, "b", a, "c");
+
+        assertFalse(exists("/a/b"));
+        assertEquals(b, _fs.path2inode("/a/c"));
+    }
+
+    @Test
+    public void testLookupAfterRemove() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        a.mkdir("b");
+        _fs.path2inode("/a/b");
+
+        _fs.remove("/a/b");
+        assertFalse(exists("/a/b"));
+
+        FsInode b = a.mkdir("b");
+        assertEquals(b, _fs.path2inode("/a/b"));
+    }
+
+    @Test
+    public void testLookupAfterRemoveByInode() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode b = a.mkdir("b");
+        _fs.path2inode("/a/b");
+
+        _fs.remove(b);
+        assertFalse(exists("/a/b"));
+    }
+
+    @Test
+    public void testPath2InodesWithCachedPrefix() throws Exception {
+        FsInode a = _rootInode.mkdir("a");
+        FsInode b = a.mkdir("b");
+        FsInode file = b.create("file", 0, 0, 0644);
+        _fs.path2inode("/a/b");
+
+        List<FsInode> inodes = _fs.path2inodes("/a/b/file");
+
+        assertEquals(4, inodes.size());
+        assertEquals(a, inodes.get(1));
+        assertEquals(b, inodes.get(2));
+        assertEquals(file, inodes.get(3));
+        assertTrue(inodes.get(2).isDirectory());
+    }
+
+    @Test
+    public void testLookupThroughLink() throws Exception {
+        FsInode dir = _rootInode.mkdir("a").mkdir("b");
+        _fs.createLink(_rootInode, "link", "/a");
+
+        assertEquals(dir, _fs.path2inode("/link/b"));
+        assertEquals(dir, _fs.path2inode("/link/b"));
+    }
+
+    @Test
+    public void testConcurrentRenames() throws Exception {
+        FsInode parent = _rootInode.mkdir("parent");
+        final FsInode dir = parent.mkdir("d0");
+        final FsInode sub = dir.mkdir("sub");
+
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            /* Readers resolve all names while the directory is renamed.
+             * A name resolves either to the directory or not at all.
+             */
+            List<Future<Void>> readers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        while (!done.get()) {
+                            for (int j = 0; j < 4; j++) {
+                                try {
+                                    assertEquals(sub, _fs.path2inode("/parent/d" + j + "/sub"));
+                                } catch (FileNotFoundHimeraFsException ignored) {
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            /* After every rename, only the new name resolves.
+             */
+            for (int i = 0; i < 200; i++) {
+                String from = "d" + (i % 4);
+                String to = "d" + ((i + 1) % 4);
+                _fs.move(parent, from, parent, to);
+
+                assertEquals(sub, _fs.path2inode("/parent/" + to + "/sub"));
+                for (int j = 0; j < 4; j++) {
+                    if (j != (i + 1) % 4) {
+                        assertFalse(exists("/parent/d" + j));
+                    }
+                }
+            }
+
+            done.set(true);
+            for (Future<Void> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+    }
+}
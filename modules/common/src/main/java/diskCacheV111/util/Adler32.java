@@ -105,6 +105,37 @@ public class Adler32 extends MessageDigest
       _value[3] = (byte) ((_adler)&0xff) ;
       return _value ;
    }
+   /**
+    * Combines the ADLER32 checksums of two consecutive blocks of data
+    * into the checksum of their concatenation, allowing the blocks to be
+    * checksummed independently, e.g. in parallel.
+    *
+    * @param adler1 checksum of the first block
+    * @param adler2 checksum of the second block
+    * @param len2 length of the second block in bytes
+    * @return checksum of the first block followed by the second block
+    */
+   public static long combine(long adler1, long adler2, long len2){
+       long rem = len2 % BASE ;
+       long sum1 = adler1 & 0xffffL ;
+       long sum2 = (rem * sum1) % BASE ;
+       sum1 += (adler2 & 0xffffL) + BASE - 1 ;
+       sum2 += ((adler1 >> 16) & 0xffffL) + ((adler2 >> 16) & 0xffffL) + BASE - rem ;
+       if( sum1 >= BASE ) {
+           sum1 -= BASE;
+       }
+       if( sum1 >= BASE ) {
+           sum1 -= BASE;
+       }
+       if( sum2 >= (long) BASE << 1 ) {
+           sum2 -= (long) BASE << 1;
+       }
+       if( sum2 >= BASE ) {
+           sum2 -= BASE;
+       }
+       return sum1 | (sum2 << 16) ;
+   }
+
    public static void main( String [] args )throws Exception {
 
        if( args.length < 1 ){
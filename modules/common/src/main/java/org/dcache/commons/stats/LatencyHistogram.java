@@ -0,0 +1,148 @@
+package org.dcache.commons.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed memory histogram of non-negative values, typically latencies in
+ * milliseconds, from which percentiles can be estimated.
+ *
+ * Values are recorded in logarithmic buckets, each power of two being divided
+ * into {@value #SUB_BUCKETS} linear sub-buckets. Values below
+ * {@value #SUB_BUCKETS} are recorded exactly, larger values with a relative
+ * error of at most 1/{@value #SUB_BUCKETS}. Values of 2^{@value #MAX_EXPONENT}
+ * and above are recorded in the last bucket.
+ *
+ * All histograms share the same bucket layout and may thus be merged. This
+ * allows percentiles to be computed over several histograms, e.g. over all
+ * request types or over several measurement periods.
+ *
+ * Recording a value is lock free. This class is thread safe.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Returns the largest value recorded in the bucket with the given index.
+     */
+    private static long highestValueOf(int index)
+    {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a value. Negative values are ignored.
+     */
+    public void record(long value)
+    {
+        if (value >= 0) {
+            counts.incrementAndGet(indexOf(value));
+        }
+    }
+
+    /**
+     * Adds the counts of another histogram to this histogram.
+     */
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the value below which the given percentage of
+     * the recorded values fall. The estimate is an upper bound within the
+     * precision of the histogram.
+     *
+     * @param percentile a percentage between 0 and 100
+     * @return the value at the percentile, or 0 if no values were recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * Returns a copy of this histogram and resets this histogram. Values
+     * recorded concurrently with this call end up in exactly one of the two
+     * histograms.
+     */
+    public LatencyHistogram getThenReset()
+    {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count > 0) {
+                copy.counts.set(i, count);
+            }
+        }
+        return copy;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -21,13 +21,14 @@ import java.util.Formatter;
  * This class encapsulates two integer counters and  provides utility methods
  * for increments and discovery of the count of  request invocations and
  * failures
+ * The counters are striped, thus increments do not contend with each other.
  * This class is thread safe.
  * @author timur
  */
 public class RequestCounterImpl implements RequestCounterMXBean {
     private final String name;
-    private int   requests;
-    private int    failed;
+    private final StripedCounter requests = new StripedCounter();
+    private final StripedCounter failed = new StripedCounter();
     private ObjectName mxBeanName;
 
     /** Creates a new instance of Counter
@@ -59,14 +60,14 @@ public class RequestCounterImpl implements RequestCounterMXBean {
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         String aName = name;
         if(name.length() >34) {
              aName = aName.substring(0,34);
         }
         StringBuilder sb = new StringBuilder();
         try (Formatter formatter = new Formatter(sb)) {
-            formatter.format("%-34s %9d %9d", aName, requests,  failed);
+            formatter.format("%-34s %9d %9d", aName, getTotalRequests(), getFailed());
         }
 
         return sb.toString();
@@ -77,14 +78,14 @@ public class RequestCounterImpl implements RequestCounterMXBean {
      * @return number of request invocations known to this counter
      */
     @Override
-    public synchronized int getTotalRequests() {
-        return requests;
+    public int getTotalRequests() {
+        return (int) requests.sum();
     }
 
     @Override
-    public synchronized void reset() {
-        requests = 0;
-        failed = 0;
+    public void reset() {
+        requests.reset();
+        failed.reset();
     }
 
     @Override
@@ -103,15 +104,15 @@ public class RequestCounterImpl implements RequestCounterMXBean {
      * increments the number of request invocations known to this counter
      * @param requests number by which to increment
      */
-    public synchronized void incrementRequests(int requests) {
-        this.requests += requests;
+    public void incrementRequests(int requests) {
+        this.requests.add(requests);
     }
 
     /**
      * increments the number of request invocations known to this counter by 1
      */
-    public synchronized void incrementRequests() {
-        requests++;
+    public void incrementRequests() {
+        requests.increment();
     }
 
     /**
@@ -119,8 +120,8 @@ public class RequestCounterImpl implements RequestCounterMXBean {
      * @return number of faild request invocations known to this counter
      */
     @Override
-    public synchronized int getFailed() {
-        return failed;
+    public int getFailed() {
+        return (int) failed.sum();
     }
 
     /**
@@ -128,16 +129,16 @@ public class RequestCounterImpl implements RequestCounterMXBean {
      * counter
      * @param failed number by which to increment
      */
-    public synchronized void incrementFailed(int failed) {
-        this.failed += failed;
+    public void incrementFailed(int failed) {
+        this.failed.add(failed);
     }
 
     /**
      * increments the number of failed request invocations known to this counter
      * by 1
      */
-    public synchronized void incrementFailed() {
-        failed++;
+    public void incrementFailed() {
+        failed.increment();
     }
 
     /**
@@ -149,8 +150,8 @@ public class RequestCounterImpl implements RequestCounterMXBean {
      *  number of requests executed and the failed requests are recorded
      *  accurately
      */
-    public synchronized int getSuccessful() {
-        return requests - failed;
+    public int getSuccessful() {
+        return getTotalRequests() - getFailed();
     }
 
 }
@@ -4,10 +4,10 @@ package org.dcache.commons.stats;
 
 import java.lang.reflect.Method;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.dcache.commons.util.Strings.toStringSignature;
 
@@ -28,8 +28,8 @@ import static org.dcache.commons.util.Strings.toStringSignature;
 public class RequestCounters<T> {
     private final String name;
     private final boolean autoCreate ;
-    private final Map<T,RequestCounterImpl> counters =
-            new HashMap<>();
+    private final ConcurrentMap<T,RequestCounterImpl> counters =
+            new ConcurrentHashMap<>();
 
     /**
      * Creates an instance of the RequestCounters collection
@@ -150,19 +150,16 @@ public class RequestCounters<T> {
      * @throws  NoSuchElementException if counter for counterKey is not defined
      */
     public RequestCounterImpl getCounter(T counterKey) {
-        synchronized(this) {
-            if(counters.containsKey(counterKey)) {
-                return counters.get(counterKey);
-            } else {
-                if(autoCreate) {
-                    addCounter(counterKey);
-                    return counters.get(counterKey);
-                } else {
-                    throw new NoSuchElementException("counter with name "+
-                            counterKey+" is not defined in "+name+" counters" );
-                }
+        RequestCounterImpl counter = counters.get(counterKey);
+        if(counter == null) {
+            if(!autoCreate) {
+                throw new NoSuchElementException("counter with name "+
+                        counterKey+" is not defined in "+name+" counters" );
             }
+            addCounter(counterKey);
+            counter = counters.get(counterKey);
         }
+        return counter;
     }
 
     /**
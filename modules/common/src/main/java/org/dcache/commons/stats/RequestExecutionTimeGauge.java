@@ -63,6 +63,40 @@ public interface RequestExecutionTimeGauge {
      */
     double getStandardError();
 
+    /**
+     * @param percentile a percentage between 0 and 100
+     * @return estimate of the execution time at the percentile over the
+     * lifetime of the gauge
+     */
+    long getExecutionTimePercentile(double percentile);
+
+    /**
+     * @return the median of the execution time
+     */
+    long getMedianExecutionTime();
+
+    /**
+     * @return the 95th percentile of the execution time
+     */
+    long getPercentile95ExecutionTime();
+
+    /**
+     * @return the 99th percentile of the execution time
+     */
+    long getPercentile99ExecutionTime();
+
+    /**
+     * @return the 99.9th percentile of the execution time
+     */
+    long getPercentile999ExecutionTime();
+
+    /**
+     * @param percentile a percentage between 0 and 100
+     * @return estimate of the execution time at the percentile over the
+     * period ended by the last call to resetAndGetAverageExecutionTime
+     */
+    long getPreviousPeriodExecutionTimePercentile(double percentile);
+
     /**
      * @return the startTime
      */
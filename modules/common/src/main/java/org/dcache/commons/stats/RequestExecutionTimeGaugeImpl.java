@@ -14,18 +14,21 @@ import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
 import java.util.Formatter;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * this class stores an average of the execution time of the request
- * if the num is the num of updates that took place before this update
- * then the next average  is calculated using the formula:
- *         newaverage =
- *          (previousaverage*num +nextmeasurment) /(num+1);
- * there is a utility method to read an average(mean), max, mean, RMS, standard deviation
- * and error on mean.
- * Separate average is kept for feeding into the rrd database.
- * This average is reset to the value of the last measurement
- * when it is read and the new average is calculated when new updates come
+ * This class keeps statistics about the execution time of requests: the
+ * average, minimum, maximum, standard deviation and a histogram from which
+ * percentiles are estimated.
+ *
+ * Separate statistics are kept for feeding into the rrd database. These are
+ * reset when read by resetAndGetAverageExecutionTime. If no updates took place
+ * during a period, the average of the period is the value of the last
+ * measurement.
+ *
+ * Updates do not block; all values are kept in striped counters and lock free
+ * histograms. Reading the statistics while the gauge is updated may yield
+ * values that are not mutually consistent.
  *
  * @author timur
  */
@@ -34,47 +37,40 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
     private static final Logger LOG = LoggerFactory.getLogger(RequestExecutionTimeGaugeImpl.class);
 
     private final String name;
-    // These are the variables that keep the
-    // the average for the duration of the existance of the
-    // gauge
-    /**
-     * average
-     */
-    private long averageExecutionTime=0;
-    /**
-     * Minimum
-     */
-    private long minExecutionTime=0;
-    /**
-     * Maximum
-     */
-    private long maxExecutionTime=0;
-    /**
-     *  Square of the RMS (Root Mean Square)
-     *  sum(value_i)/n
-     * RMSS(i+1)=(RMSS(i)+value(i+1)**2)/(i+1)
-     */
-    private long executionTimeRMSS=0;
-    /**
-     * number of updates
-     */
-    private long  updateNum=0;
+
+    // These are the variables that keep the statistics
+    // for the duration of the existance of the gauge
+
+    private final StripedCounter updateNum = new StripedCounter();
+    private final StripedCounter executionTimeSum = new StripedCounter();
+    private final StripedCounter executionTimeSquareSum = new StripedCounter();
+    private final AtomicLong minExecutionTime = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxExecutionTime = new AtomicLong(Long.MIN_VALUE);
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
     /**
      * last value fed to the gauge
      */
-    private long lastExecutionTime=0;
+    private volatile long lastExecutionTime;
     private final long startTime;
 
     // These are the variables that are reset every time
-    // getAndResetAverageExecutionTime is called
+    // resetAndGetAverageExecutionTime is called
     // for feeding into the RRD Database
 
     /**
      * TimeStamp of the beginning of the measurment period
      */
-    private long periodStartTime;
-    private long periodAverageExecutionTime=0;
-    private long periodUpdateNum=0;
+    private volatile long periodStartTime;
+    private final StripedCounter periodUpdateNum = new StripedCounter();
+    private final StripedCounter periodExecutionTimeSum = new StripedCounter();
+    private final LatencyHistogram periodHistogram = new LatencyHistogram();
+
+    /**
+     * Histogram of the period ended by the last call to
+     * resetAndGetAverageExecutionTime
+     */
+    private volatile LatencyHistogram previousPeriodHistogram = new LatencyHistogram();
 
     /**
      *
@@ -106,7 +102,7 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @param nextExecTime
      */
     @Override
-    public synchronized void update(long nextExecTime) {
+    public void update(long nextExecTime) {
 
         if(nextExecTime <0) {
             LOG.info("possible backwards timeshift detected; discarding invalid data ({})",
@@ -114,21 +110,24 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
             return;
         }
 
-        averageExecutionTime
-                = (averageExecutionTime * updateNum + nextExecTime) / (updateNum + 1);
-        minExecutionTime = Math.min(getMinExecutionTime(), nextExecTime);
-        maxExecutionTime = Math.max(getMaxExecutionTime(), nextExecTime);
-        executionTimeRMSS
-                = (executionTimeRMSS * updateNum + nextExecTime * nextExecTime)
-                / (updateNum + 1);
+        updateNum.increment();
+        executionTimeSum.add(nextExecTime);
+        executionTimeSquareSum.add(nextExecTime * nextExecTime);
+        histogram.record(nextExecTime);
 
-        updateNum++;
+        long min = minExecutionTime.get();
+        while (nextExecTime < min && !minExecutionTime.compareAndSet(min, nextExecTime)) {
+            min = minExecutionTime.get();
+        }
+        long max = maxExecutionTime.get();
+        while (nextExecTime > max && !maxExecutionTime.compareAndSet(max, nextExecTime)) {
+            max = maxExecutionTime.get();
+        }
 
-        // period averages caclucations
-        periodAverageExecutionTime =
-            (periodAverageExecutionTime*periodUpdateNum +nextExecTime) /
-            (periodUpdateNum+1);
-        periodUpdateNum++;
+        // period statistics
+        periodUpdateNum.increment();
+        periodExecutionTimeSum.add(nextExecTime);
+        periodHistogram.record(nextExecTime);
 
         lastExecutionTime = nextExecTime;
     }
@@ -138,8 +137,9 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return
      */
     @Override
-    public synchronized long getAverageExecutionTime() {
-        return averageExecutionTime;
+    public long getAverageExecutionTime() {
+        long n = updateNum.sum();
+        return (n == 0) ? 0 : executionTimeSum.sum() / n;
     }
 
     /**
@@ -147,12 +147,12 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return
      */
     @Override
-    public synchronized long resetAndGetAverageExecutionTime() {
-        long periodAverageExecutionTime = this.periodAverageExecutionTime;
-        periodUpdateNum = 0;
-        this.periodAverageExecutionTime = lastExecutionTime;
+    public long resetAndGetAverageExecutionTime() {
+        long n = periodUpdateNum.sumThenReset();
+        long sum = periodExecutionTimeSum.sumThenReset();
+        previousPeriodHistogram = periodHistogram.getThenReset();
         periodStartTime = System.currentTimeMillis();
-        return periodAverageExecutionTime;
+        return (n == 0) ? lastExecutionTime : sum / n;
     }
 
     /**
@@ -160,8 +160,8 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return String representation of this RequestExecutionTimeGauge
      *  Only long term statistics is printed
      */
-        @Override
-    public synchronized String toString() {
+    @Override
+    public String toString() {
 
         String aName = name;
         if(name.length() >34) {
@@ -171,10 +171,13 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
                 startTime;
         StringBuilder sb = new StringBuilder();
         try (Formatter formatter = new Formatter(sb)) {
-            formatter.format("%-34s %12d\u00B1%10f %,12d %,12d %,12d %,12d %,12d",
-                    aName, averageExecutionTime,getStandardError(),
-                    minExecutionTime,maxExecutionTime,
-                    getStandardDeviation(), updateNum,
+            formatter.format("%-34s %12d\u00B1%10f %,12d %,12d %,12d %,10d %,10d %,10d %,10d %,12d %,12d",
+                    aName, getAverageExecutionTime(), getStandardError(),
+                    getMinExecutionTime(), getMaxExecutionTime(),
+                    getStandardDeviation(),
+                    getMedianExecutionTime(), getPercentile95ExecutionTime(),
+                    getPercentile99ExecutionTime(), getPercentile999ExecutionTime(),
+                    getUpdateNum(),
                     TimeUnit.MILLISECONDS.toSeconds(updatePeriod));
         }
 
@@ -185,16 +188,18 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return the minExecutionTime
      */
     @Override
-    public synchronized long getMinExecutionTime() {
-        return minExecutionTime;
+    public long getMinExecutionTime() {
+        long min = minExecutionTime.get();
+        return (min == Long.MAX_VALUE) ? 0 : min;
     }
 
     /**
      * @return the maxExecutionTime
      */
     @Override
-    public synchronized long getMaxExecutionTime() {
-        return maxExecutionTime;
+    public long getMaxExecutionTime() {
+        long max = maxExecutionTime.get();
+        return (max == Long.MIN_VALUE) ? 0 : max;
     }
 
     /**
@@ -209,15 +214,20 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return the RMS of executionTime
      */
     @Override
-    public synchronized double getExecutionTimeRMS() {
-        return Math.sqrt(executionTimeRMSS);
+    public double getExecutionTimeRMS() {
+        long n = updateNum.sum();
+        return (n == 0) ? 0 : Math.sqrt((double) executionTimeSquareSum.sum() / n);
     }
 
     @Override
-    public synchronized long getStandardDeviation() {
-        long deviationSquare = executionTimeRMSS - averageExecutionTime*averageExecutionTime;
-        assert (deviationSquare >=0);
-        return (long) Math.sqrt(executionTimeRMSS - averageExecutionTime*averageExecutionTime);
+    public long getStandardDeviation() {
+        long n = updateNum.sum();
+        if (n == 0) {
+            return 0;
+        }
+        double average = (double) executionTimeSum.sum() / n;
+        double deviationSquare = (double) executionTimeSquareSum.sum() / n - average * average;
+        return (long) Math.sqrt(Math.max(0, deviationSquare));
     }
 
     /**
@@ -225,22 +235,53 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return standard error of the mean
      */
     @Override
-    public synchronized double getStandardError() {
-        return getStandardDeviation() / Math.sqrt(updateNum);
+    public double getStandardError() {
+        return getStandardDeviation() / Math.sqrt(updateNum.sum());
+    }
+
+    @Override
+    public long getExecutionTimePercentile(double percentile) {
+        return histogram.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public long getMedianExecutionTime() {
+        return histogram.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getPercentile95ExecutionTime() {
+        return histogram.getValueAtPercentile(95);
     }
+
+    @Override
+    public long getPercentile99ExecutionTime() {
+        return histogram.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getPercentile999ExecutionTime() {
+        return histogram.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getPreviousPeriodExecutionTimePercentile(double percentile) {
+        return previousPeriodHistogram.getValueAtPercentile(percentile);
+    }
+
     /**
      * @return the updateNum
      */
     @Override
-    public synchronized long getUpdateNum() {
-        return updateNum;
+    public long getUpdateNum() {
+        return updateNum.sum();
     }
 
     /**
      * @return the lastExecutionTime
      */
     @Override
-    public synchronized long getLastExecutionTime() {
+    public long getLastExecutionTime() {
         return lastExecutionTime;
     }
 
@@ -248,7 +289,7 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return the startTime
      */
     @Override
-    public synchronized long getStartTime() {
+    public long getStartTime() {
         return startTime;
     }
 
@@ -256,7 +297,7 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return the periodStartTime
      */
     @Override
-    public synchronized long getPeriodStartTime() {
+    public long getPeriodStartTime() {
         return periodStartTime;
     }
 
@@ -264,28 +305,32 @@ public class RequestExecutionTimeGaugeImpl implements RequestExecutionTimeGaugeM
      * @return the periodAverageExecutionTime
      */
     @Override
-    public synchronized long getPeriodAverageExecutionTime() {
-        return periodAverageExecutionTime;
+    public long getPeriodAverageExecutionTime() {
+        long n = periodUpdateNum.sum();
+        return (n == 0) ? lastExecutionTime : periodExecutionTimeSum.sum() / n;
     }
 
     /**
      * @return the periodUpdateNum
      */
     @Override
-    public synchronized long getPeriodUpdateNum() {
-        return periodUpdateNum;
+    public long getPeriodUpdateNum() {
+        return periodUpdateNum.sum();
     }
 
     @Override
-    public synchronized void reset() {
+    public void reset() {
         periodStartTime = System.currentTimeMillis();
-        periodAverageExecutionTime = 0;
-        periodUpdateNum = 0;
-        averageExecutionTime=0;
-        minExecutionTime=0;
-        maxExecutionTime=0;
-        executionTimeRMSS=0;
+        periodUpdateNum.reset();
+        periodExecutionTimeSum.reset();
+        periodHistogram.reset();
+        previousPeriodHistogram = new LatencyHistogram();
+        updateNum.reset();
+        executionTimeSum.reset();
+        executionTimeSquareSum.reset();
+        histogram.reset();
+        minExecutionTime.set(Long.MAX_VALUE);
+        maxExecutionTime.set(Long.MIN_VALUE);
         lastExecutionTime = 0;
-        updateNum = 0;
     }
 }
@@ -3,10 +3,10 @@ package org.dcache.commons.stats;
 
 import java.lang.reflect.Method;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.dcache.commons.util.Strings.toStringSignature;
 
@@ -18,8 +18,8 @@ import static org.dcache.commons.util.Strings.toStringSignature;
 public class RequestExecutionTimeGauges<T> {
     private final String name;
     private final boolean autoCreate ;
-    private final Map<T,RequestExecutionTimeGauge> gauges =
-            new HashMap<>();
+    private final ConcurrentMap<T,RequestExecutionTimeGauge> gauges =
+            new ConcurrentHashMap<>();
 
     /**
      *
@@ -92,8 +92,9 @@ public class RequestExecutionTimeGauges<T> {
     public String  toString() {
        StringBuilder sb = new StringBuilder();
         try (Formatter formatter = new Formatter(sb)) {
-            formatter.format("%-36s %23s %12s %12s %12s %12s %12s", name, "average\u00B1stderr(ms)",
-                    "min(ms)", "max(ms)","STD(ms)", "Samples","Period(s)");
+            formatter.format("%-36s %23s %12s %12s %12s %10s %10s %10s %10s %12s %12s", name, "average\u00B1stderr(ms)",
+                    "min(ms)", "max(ms)","STD(ms)", "p50(ms)", "p95(ms)", "p99(ms)", "p99.9(ms)",
+                    "Samples","Period(s)");
         }
         synchronized(this) {
             for(T key: gauges.keySet()) {
@@ -131,19 +132,16 @@ public class RequestExecutionTimeGauges<T> {
      * @throws  NoSuchElementException if counter for counterKey is not defined
      */
     public RequestExecutionTimeGauge getGauge(T gaugeKey) {
-        synchronized(this) {
-            if(gauges.containsKey(gaugeKey)) {
-                return gauges.get(gaugeKey);
-            } else {
-                if(autoCreate) {
-                    addGauge(gaugeKey);
-                    return gauges.get(gaugeKey);
-                } else {
-                    throw new NoSuchElementException("gauge with name "+
-                            gaugeKey+" is not defined in "+name+" guages" );
-                }
+        RequestExecutionTimeGauge gauge = gauges.get(gaugeKey);
+        if(gauge == null) {
+            if(!autoCreate) {
+                throw new NoSuchElementException("gauge with name "+
+                        gaugeKey+" is not defined in "+name+" guages" );
             }
+            addGauge(gaugeKey);
+            gauge = gauges.get(gaugeKey);
         }
+        return gauge;
     }
 
     /**
@@ -0,0 +1,129 @@
+package org.dcache.commons.stats;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that scales under contention.
+ *
+ * Uncontended updates are applied to a single base value. Once concurrent
+ * updates collide, the counter spreads updates over a number of cells,
+ * each cell on its own cache line, and threads that collide on a cell
+ * move on to another cell. The value of the counter is the sum of the base
+ * and all cells.
+ *
+ * This is similar to {@code java.util.concurrent.atomic.LongAdder}, which is
+ * not available on Java 7. Like with {@code LongAdder}, reading the counter
+ * while it is updated yields a value that is not an atomic snapshot.
+ *
+ * This class is thread safe.
+ */
+public class StripedCounter
+{
+    /** Number of longs per cell; keeps cells on separate cache lines. */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES =
+            Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+    private static final Random SEEDS = new Random();
+
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue()
+        {
+            int seed;
+            synchronized (SEEDS) {
+                seed = SEEDS.nextInt();
+            }
+            return new int[] { (seed == 0) ? 1 : seed };
+        }
+    };
+
+    private final AtomicLong base = new AtomicLong();
+
+    private volatile AtomicLongArray cells;
+
+    public void increment()
+    {
+        add(1);
+    }
+
+    public void add(long x)
+    {
+        AtomicLongArray cells = this.cells;
+        if (cells == null) {
+            long v = base.get();
+            if (base.compareAndSet(v, v + x)) {
+                return;
+            }
+            cells = inflate();
+        }
+
+        int[] probe = PROBE.get();
+        int i = (probe[0] & (STRIPES - 1)) * PADDING;
+        long v = cells.get(i);
+        if (!cells.compareAndSet(i, v, v + x)) {
+            /* Collided with another thread; move this thread to another cell.
+             */
+            int h = probe[0];
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            probe[0] = h;
+            cells.getAndAdd((h & (STRIPES - 1)) * PADDING, x);
+        }
+    }
+
+    private synchronized AtomicLongArray inflate()
+    {
+        if (cells == null) {
+            cells = new AtomicLongArray(STRIPES * PADDING);
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the current value of the counter.
+     */
+    public long sum()
+    {
+        long sum = base.get();
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the counter to zero and returns the value it had. Updates
+     * concurrent with this call are either included in the returned value
+     * or remain in the counter.
+     */
+    public long sumThenReset()
+    {
+        long sum = base.getAndSet(0);
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.getAndSet(i * PADDING, 0);
+            }
+        }
+        return sum;
+    }
+
+    public void reset()
+    {
+        sumThenReset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return Long.toString(sum());
+    }
+}
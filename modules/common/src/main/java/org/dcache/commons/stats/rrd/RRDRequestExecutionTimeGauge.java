@@ -8,7 +8,9 @@ package org.dcache.commons.stats.rrd;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
 import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.DsDef;
 import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.RrdToolkit;
 import org.rrd4j.core.Sample;
 import org.rrd4j.core.Util;
 import org.rrd4j.graph.RrdGraph;
@@ -22,6 +24,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.dcache.commons.stats.RequestExecutionTimeGauge;
@@ -59,6 +63,20 @@ public class RRDRequestExecutionTimeGauge {
 
     private Long dumpstart;
 
+    /**
+     * Percentiles of the execution time recorded in addition to the average
+     */
+    private static final double[] PERCENTILES = { 50, 95, 99 };
+    private static final String[] PERCENTILE_DS_NAMES = { "p50", "p95", "p99" };
+
+    private static List<DsDef> getPercentileDsDefs(long updatePeriodSecs) {
+        List<DsDef> dsDefs = new ArrayList<>();
+        for (String dsName: PERCENTILE_DS_NAMES) {
+            dsDefs.add(new DsDef(dsName, DsType.GAUGE, updatePeriodSecs*2, 0, Double.NaN));
+        }
+        return dsDefs;
+    }
+
     /**
      *
      * @param rrdDirectory dir where rdd dbs and and images will be created
@@ -126,6 +144,9 @@ public class RRDRequestExecutionTimeGauge {
             // use derive to eliminate the false jumps in values due to
             // gauge resets (restarts)
             rrdDef.addDatasource("exectime",DsType.GAUGE,updatePeriodSecs*2,0, Double.NaN);
+            for (DsDef dsDef: getPercentileDsDefs(updatePeriodSecs)) {
+                rrdDef.addDatasource(dsDef);
+            }
 
             //one sample for every period of  updatePeriodSecs
             // for one hour
@@ -162,9 +183,17 @@ public class RRDRequestExecutionTimeGauge {
         }
 
         RrdDb rrdDb = new RrdDb(this.rrdFileName);// check that we can read it
-
-        // we could use rrdDb.getRrdDef() to make sure that this is a correct rrd
-        rrdDb.close();
+        boolean hasPercentiles;
+        try {
+            hasPercentiles = rrdDb.containsDs(PERCENTILE_DS_NAMES[0]);
+        } finally {
+            // we could use rrdDb.getRrdDef() to make sure that this is a correct rrd
+            rrdDb.close();
+        }
+        if (!hasPercentiles) {
+            // rrd created before percentiles were recorded
+            RrdToolkit.addDatasources(this.rrdFileName, getPercentileDsDefs(updatePeriodSecs), false);
+        }
         this.gauge = gauge;
         File html = new File(rrdDirectory,gaugeName+".html");
         if(!html.exists()) {
@@ -184,12 +213,14 @@ public class RRDRequestExecutionTimeGauge {
         logger.debug("RRDRequestExecutionTimeGauge.update() rrdFileName is "+rrdFileName);
         RrdDb rrdDb = new RrdDb(rrdFileName);
         try {
-            Sample sample = rrdDb.createSample();
-            long currentTimeSecs =   Util.getTime();
-            String update = Long.toString(currentTimeSecs) +':'+
-                    gauge.resetAndGetAverageExecutionTime()+':';
-            sample.setAndUpdate(update);
-            logger.debug("RRDRequestExecutionTimeGauge.update() updated with : "+update);
+            Sample sample = rrdDb.createSample(Util.getTime());
+            sample.setValue("exectime", gauge.resetAndGetAverageExecutionTime());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                sample.setValue(PERCENTILE_DS_NAMES[i],
+                        gauge.getPreviousPeriodExecutionTimePercentile(PERCENTILES[i]));
+            }
+            sample.update();
+            logger.debug("RRDRequestExecutionTimeGauge.update() updated with : "+sample.dump());
 
         } finally {
             rrdDb.close();
@@ -233,6 +264,14 @@ public class RRDRequestExecutionTimeGauge {
         graphDef.datasource("exectime_min", rrdFileName, "exectime", ConsolFun.MIN);
 
         graphDef.line("exectime_min", new Color(0x90, 0x20, 0x20), "exectime_min", 2);
+
+        graphDef.datasource("exectime_p95", rrdFileName, "p95", ConsolFun.AVERAGE);
+
+        graphDef.line("exectime_p95", new Color(0, 0x80, 0), "exectime_p95", 2);
+
+        graphDef.datasource("exectime_p99", rrdFileName, "p99", ConsolFun.AVERAGE);
+
+        graphDef.line("exectime_p99", new Color(0, 0, 0xBB), "exectime_p99", 2);
         //hour
         //graphDef.setStartTime(-hour);
         //#graphDef.setStartTime(-hour);
@@ -0,0 +1,48 @@
+package diskCacheV111.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Adler32Test
+{
+    private static long adler32(byte[] data, int offset, int length)
+    {
+        java.util.zip.Adler32 adler = new java.util.zip.Adler32();
+        adler.update(data, offset, length);
+        return adler.getValue();
+    }
+
+    @Test
+    public void shouldCombineChecksumsOfConsecutiveBlocks()
+    {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        for (int split : new int[] { 0, 1, 5552, 65521, 99999, 100000 }) {
+            long combined = Adler32.combine(adler32(data, 0, split),
+                                            adler32(data, split, data.length - split),
+                                            data.length - split);
+            assertEquals("split at " + split, adler32(data, 0, data.length), combined);
+        }
+    }
+
+    @Test
+    public void shouldCombineChecksumsOfManyBlocks()
+    {
+        byte[] data = new byte[1 << 20];
+        new Random(2).nextBytes(data);
+
+        int blocks = 7;
+        int length = data.length / blocks;
+        long combined = adler32(data, 0, length);
+        for (int i = 1; i < blocks; i++) {
+            int end = (i == blocks - 1) ? data.length : (i + 1) * length;
+            combined = Adler32.combine(combined, adler32(data, i * length, end - i * length),
+                                       end - i * length);
+        }
+        assertEquals(adler32(data, 0, data.length), combined);
+    }
+}
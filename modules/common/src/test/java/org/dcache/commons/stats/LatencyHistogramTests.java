@@ -0,0 +1,93 @@
+package org.dcache.commons.stats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTests
+{
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp()
+    {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void shouldReturnZeroWhenEmpty()
+    {
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+    }
+
+    @Test
+    public void shouldRecordSmallValuesExactly()
+    {
+        for (long i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount(), is(10L));
+        assertThat(histogram.getValueAtPercentile(50), is(5L));
+        assertThat(histogram.getValueAtPercentile(90), is(9L));
+        assertThat(histogram.getValueAtPercentile(100), is(10L));
+    }
+
+    @Test
+    public void shouldEstimateLargeValuesWithBoundedError()
+    {
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getValueAtPercentile(50), is(both(greaterThanOrEqualTo(50000L)).and(lessThan(53125L))));
+        assertThat(histogram.getValueAtPercentile(99), is(both(greaterThanOrEqualTo(99000L)).and(lessThan(105188L))));
+        assertThat(histogram.getValueAtPercentile(99.9), is(both(greaterThanOrEqualTo(99900L)).and(lessThan(106144L))));
+    }
+
+    @Test
+    public void shouldIgnoreNegativeValues()
+    {
+        histogram.record(-1);
+
+        assertThat(histogram.getCount(), is(0L));
+    }
+
+    @Test
+    public void shouldRecordHugeValuesInLastBucket()
+    {
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getValueAtPercentile(100), is((1L << 36) - 1));
+    }
+
+    @Test
+    public void shouldMergeHistograms()
+    {
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.record(1);
+        other.record(3);
+        other.record(5);
+
+        histogram.add(other);
+
+        assertThat(histogram.getCount(), is(3L));
+        assertThat(histogram.getValueAtPercentile(50), is(3L));
+        assertThat(other.getCount(), is(2L));
+    }
+
+    @Test
+    public void shouldMoveCountsOnGetThenReset()
+    {
+        histogram.record(7);
+
+        LatencyHistogram copy = histogram.getThenReset();
+
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(copy.getCount(), is(1L));
+        assertThat(copy.getValueAtPercentile(50), is(7L));
+    }
+}
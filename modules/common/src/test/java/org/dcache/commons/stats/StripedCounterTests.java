@@ -0,0 +1,60 @@
+package org.dcache.commons.stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StripedCounterTests
+{
+    private static final int THREADS = 8;
+    private static final int INCREMENTS = 100000;
+
+    @Test
+    public void shouldAddValues()
+    {
+        StripedCounter counter = new StripedCounter();
+        counter.increment();
+        counter.add(41);
+
+        assertThat(counter.sum(), is(42L));
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentIncrements() throws InterruptedException
+    {
+        final StripedCounter counter = new StripedCounter();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < INCREMENTS; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counter.sum(), is((long) THREADS * INCREMENTS));
+    }
+
+    @Test
+    public void shouldResetToZero()
+    {
+        StripedCounter counter = new StripedCounter();
+        counter.add(10);
+
+        assertThat(counter.sumThenReset(), is(10L));
+        assertThat(counter.sum(), is(0L));
+    }
+}
@@ -21,6 +21,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -28,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -57,6 +59,11 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  *
  * ChimeraCleaner: takes file names from the table public.t_locationinfo_trash,
  * removes them from the corresponding pools and then from the table as well.
+ *
+ * The cleaner follows the trash table rather than rescanning it: every run
+ * only looks at entries added since the previous run to learn which pools
+ * have work. Several pools are cleaned in parallel, each in batches, and the
+ * backlog of each pool is tracked so unavailable pools do not hold up the rest.
  * @since 1.8
  */
 
@@ -166,6 +173,13 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
     )
     protected int _threadPoolSize;
 
+    @Option(
+        name="concurrentPools",
+        description="Number of pools to clean in parallel",
+        required=true
+    )
+    protected int _concurrentPools;
+
     @Option(
             name="broadcast",
             description="Cell address of broadcast service",
@@ -178,7 +192,10 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
 
     private RequestTracker _requests;
     private ScheduledExecutorService _executor;
+    private ExecutorService _poolExecutor;
     private ScheduledFuture<?> _cleanerTask;
+    private TrashBacklog _backlog;
+    private long _lastFullRefresh;
     private PoolInformationBase _pools = new PoolInformationBase();
     private HikariDataSource _dataSource;
     private JdbcTemplate _db;
@@ -200,9 +217,11 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
         useInterpreter(true);
 
         _executor = Executors.newScheduledThreadPool(_threadPoolSize);
+        _poolExecutor = Executors.newFixedThreadPool(_concurrentPools);
 
         dbInit(getArgs().getOpt("chimera.db.url"),
                 getArgs().getOpt("chimera.db.user"), getArgs().getOpt("chimera.db.password"));
+        _backlog = new TrashBacklog(_db);
 
         if (!_reportTo.isEmpty()) {
             _broadcasterStub = new CellStub();
@@ -289,6 +308,9 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
         if (_executor != null) {
             _executor.shutdownNow();
         }
+        if (_poolExecutor != null) {
+            _poolExecutor.shutdownNow();
+        }
         if (_dataSource != null) {
             _dataSource.shutdown();
         }
@@ -308,16 +330,24 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
                 _log.debug("INFO: Number of files processed at once: " + _processAtOnce);
             }
 
-            // get list of pool names from the trash_table
-            List<String> poolList = getPoolList();
+            // learn about new entries in the trash table; on the first run
+            // and then once per recover period consider all entries to
+            // catch entries committed out of order and to correct the
+            // backlog estimates. A recover timer of zero disables the
+            // periodic full refresh.
+            long now = System.currentTimeMillis();
+            boolean full = (_lastFullRefresh == 0) ||
+                    (_recoverTimer > 0 && (now - _lastFullRefresh) > _recoverTimerUnit.toMillis(_recoverTimer));
+            _backlog.refresh(full);
+            if (full) {
+                _lastFullRefresh = now;
+            }
 
             if (_log.isDebugEnabled()){
-                _log.debug("List of Pools from the trash-table : "+ poolList);
+                _log.debug("Pools in the trash-table :\n"+ _backlog.list());
             }
 
-            // if there are some pools in the blackPoolList (i.e.,
-            //pools that are down/do not exist), extract them from the
-            //poolList
+            // check, if it is time to remove pools from the black list
             if (_poolsBlackList.size() > 0) {
                 _log.debug("htBlackPools.size()="+ _poolsBlackList.size());
 
@@ -325,7 +355,6 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
                     String poolName = blackListEntry.getKey();
                     long valueTime = blackListEntry.getValue();
 
-                    //check, if it is time to remove pool from the black list
                     if ((valueTime != 0)
                         && (_recoverTimer > 0)
                         && ((System.currentTimeMillis() - valueTime) > _recoverTimerUnit.toMillis(_recoverTimer))) {
@@ -335,15 +364,9 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
                         }
                     }
                 }
-
-                poolList.removeAll(_poolsBlackList.keySet());
             }
 
-            if (!poolList.isEmpty()) {
-                _log.debug("The following pools are sent to runDelete(..): {}",
-                           poolList);
-                runDelete(poolList);
-            }
+            runDelete();
 
             //HSM part
             if (_hsmCleanerEnabled){
@@ -351,40 +374,14 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
             }
         } catch (DataAccessException e) {
             _log.error("Database failure: " + e.getMessage());
-        } catch (InterruptedException e) {
-            _log.info("Cleaner was interrupted");
         } catch (RuntimeException e) {
             _log.error("Bug detected" , e);
         }
     }
 
-    private static final String sqlGetPoolList =
-        "SELECT DISTINCT ilocation FROM t_locationinfo_trash WHERE itype=1";
-
-    /**
-     * Returns a list of dinstinctpool names from the trash-table.
-     *
-     * @return list of pool names
-     */
-    List<String> getPoolList()
-    {
-        return _db.query(sqlGetPoolList,
-                         new RowMapper<String>() {
-                             @Override
-                             public String mapRow(ResultSet rs, int rowNum)
-                                 throws SQLException
-                             {
-                                 return rs.getString("ilocation");
-                             }
-                         });
-    }
-
     private static final String sqlGetPoolsForFile = "SELECT ilocation FROM t_locationinfo_trash "
         + "WHERE ipnfsid=? AND itype=1 ORDER BY iatime";
 
-    private static final String sqlGetFileListForPool = "SELECT ipnfsid FROM t_locationinfo_trash "
-            + "WHERE ilocation=? ORDER BY iatime";
-
     private static final String sqlRemoveFiles = "DELETE FROM t_locationinfo_trash "
             + "WHERE ilocation=? AND ipnfsid=? AND itype=1";
 
@@ -424,23 +421,88 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
 
     /**
      * runDelete
-     * Delete files on each pool from the poolList.
+     * Starts cleaning pools with entries in the trash-table. At most
+     * _concurrentPools pools are cleaned in parallel; pools in the black
+     * list are skipped.
+     */
+    private void runDelete()
+    {
+        for (final String pool : _backlog.take(_poolsBlackList.keySet(), _concurrentPools)) {
+            _log.info("runDelete(): Now processing pool {}", pool);
+            _poolExecutor.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    cleanPool(pool);
+                    runDelete();
+                }
+            });
+        }
+    }
+
+    /**
+     * cleanPool
+     * delete all files from the pool 'poolName' found in the trash-table for
+     * this pool. The pool must have been taken from the backlog.
      *
-     * @param poolList list of pools
-     * @throws InterruptedException
+     * @param poolName name of the pool
      */
-    private void runDelete(List<String> poolList)
-        throws InterruptedException
+    private void cleanPool(String poolName)
     {
-        for (String pool: poolList) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException("Cleaner interrupted");
-            }
+        boolean isDrained = false;
+        try {
+            isDrained = _backlog.drain(poolName, _processAtOnce,
+                                       new TrashBacklog.PoolCleaner() {
+                                           @Override
+                                           public Collection<String> remove(String pool, List<String> files)
+                                                   throws CacheException, InterruptedException
+                                           {
+                                               List<String> removed = removeFromPool(pool, files);
+                                               informBroadcaster(removed);
+                                               return removed;
+                                           }
+                                       });
+        } catch (CacheException e) {
+            _log.warn("Failed to remove files from {}: {}", poolName, e.getMessage());
+            _poolsBlackList.put(poolName, System.currentTimeMillis());
+        } catch (InterruptedException e) {
+            _log.info("Cleaning of {} was interrupted", poolName);
+        } catch (DataAccessException e) {
+            _log.error("Database failure: " + e.getMessage());
+        } catch (RuntimeException e) {
+            _log.error("Bug detected" , e);
+        } finally {
+            _backlog.release(poolName, isDrained);
+        }
+    }
 
-            _log.info("runDelete(): Now processing pool {}", pool);
-            if (!_poolsBlackList.containsKey(pool)) {
-                cleanPoolComplete(pool);
-            }
+    /**
+     * removeFromPool
+     * removes set of files from the pool
+     *
+     * @param poolName name of the pool
+     * @param removeList list of files to be removed from this pool
+     * @return list of files removed from the pool
+     * @throws CacheException if the pool failed to process the request
+     * @throws InterruptedException
+     */
+    private List<String> removeFromPool(String poolName, List<String> removeList)
+            throws CacheException, InterruptedException
+    {
+        _log.debug("removeFromPool: poolName={}", poolName);
+        _log.debug("removeFromPool: removeList={}", removeList);
+
+        PoolRemoveFilesMessage msg =
+                CellStub.get(_poolStub.send(new CellPath(poolName),
+                                            new PoolRemoveFilesMessage(poolName, removeList)));
+        if (msg.getReturnCode() == 0) {
+            return removeList;
+        } else {
+            Set<String> notRemoved =
+                    new HashSet<>(Arrays.asList((String[]) msg.getErrorObject()));
+            List<String> removed = new ArrayList<>(removeList);
+            removed.removeAll(notRemoved);
+            return removed;
         }
     }
 
@@ -456,22 +518,8 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
     private void sendRemoveToPoolCleaner(String poolName, List<String> removeList)
             throws InterruptedException
     {
-        _log.debug("sendRemoveToPoolCleaner: poolName={}", poolName);
-        _log.debug("sendRemoveToPoolCleaner: removeList={}", removeList);
-
         try {
-            PoolRemoveFilesMessage msg =
-                    CellStub.get(_poolStub.send(new CellPath(poolName),
-                                                new PoolRemoveFilesMessage(poolName, removeList)));
-            if (msg.getReturnCode() == 0) {
-                removeFiles(poolName, removeList);
-            } else {
-                Set<String> notRemoved =
-                        new HashSet<>(Arrays.asList((String[]) msg.getErrorObject()));
-                List<String> removed = new ArrayList<>(removeList);
-                removed.removeAll(notRemoved);
-                removeFiles(poolName, removed);
-            }
+            removeFiles(poolName, removeFromPool(poolName, removeList));
         } catch (CacheException e) {
             _log.warn("Failed to remove files from {}: {}", poolName, e.getMessage());
             _poolsBlackList.put(poolName, System.currentTimeMillis());
@@ -497,39 +545,6 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
         }
     }
 
-    /**
-     * cleanPoolComplete
-     * delete all files from the pool 'poolName' found in the trash-table for this pool
-     *
-     * @param poolName name of the pool
-     */
-    void cleanPoolComplete(final String poolName)
-    {
-        _log.trace("CleanPoolComplete(): poolname={}", poolName);
-
-        _db.query(sqlGetFileListForPool,
-                  new Object[] { poolName },
-                  new RowCallbackHandler() {
-                      List<String> files =
-                          new ArrayList<>(_processAtOnce);
-
-                      @Override
-                      public void processRow(ResultSet rs)
-                          throws SQLException
-                      {
-                          try {
-                              files.add(rs.getString("ipnfsid"));
-                              if (files.size() >= _processAtOnce || rs.isLast()) {
-                                  sendRemoveToPoolCleaner(poolName, files);
-                                  files.clear();
-                              }
-                          } catch (InterruptedException e) {
-                              throw new TransientDataAccessResourceException("Cleaner was interrupted", e);
-                          }
-                      }
-                  });
-    }
-
     /**
      * send list of removed files to broadcaster
      *
@@ -608,9 +623,9 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
     ////////////////////////////////////////////////////////////////////////////
     public static final String hh_rundelete = " # run Cleaner ";
     public String ac_rundelete(Args args)
-        throws InterruptedException
     {
-        runDelete(getPoolList());
+        _backlog.refresh(false);
+        runDelete();
         return "";
     }
 
@@ -623,7 +638,11 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
             sb.append("Refresh Interval: ").append(_refreshInterval).append(" ").append(_refreshIntervalUnit).append("\n");
             sb.append("Reply Timeout: ").append(_replyTimeout).append(" ").append(_replyTimeoutUnit).append("\n");
             sb.append("Recover Timer: ").append(_recoverTimer).append(" ").append(_recoverTimerUnit).append("\n");
-            sb.append("Number of files processed at once: ").append(_processAtOnce);
+            sb.append("Number of files processed at once: ").append(_processAtOnce).append("\n");
+            sb.append("Number of pools cleaned in parallel: ").append(_concurrentPools).append("\n");
+            sb.append("Pools being cleaned: ").append(_backlog.getActiveCount()).append("\n");
+            sb.append("Files waiting to be removed from pools: ").append(_backlog.getBacklog()).append("\n");
+            sb.append("Last trash entry seen: ").append(_backlog.getHighWaterMark());
             if ( _hsmCleanerEnabled ) {
                 sb.append("\n HSM Cleaner enabled. Info : \n");
                 sb.append("Timeout for cleaning requests to HSM-pools: ").append(_hsmTimeout).append(" ").append(_hsmTimeoutUnit).append("\n");
@@ -649,6 +668,12 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
         return sb.toString();
     }
 
+    public static final String hh_ls_backlog = " # list pools with files waiting to be removed";
+    public String ac_ls_backlog(Args args)
+    {
+        return _backlog.list();
+    }
+
     public static final String hh_remove_from_blacklist = "<poolName> # remove this pool from the Black List";
     public String ac_remove_from_blacklist_$_1(Args args)
     {
@@ -694,12 +719,14 @@ public class ChimeraCleaner extends AbstractCell implements Runnable
     {
 
         String poolName = args.argv(0);
-        if (! _poolsBlackList.containsKey(poolName)) {
-        cleanPoolComplete(poolName);
-        return "";
-        } else {
+        if (_poolsBlackList.containsKey(poolName)) {
             return "This pool is not available for the moment and therefore will not be cleaned.";
-    }
+        }
+        if (!_backlog.take(poolName)) {
+            return "This pool is already being cleaned.";
+        }
+        cleanPool(poolName);
+        return "";
     }
 
     public static final String hh_set_refresh = "[<refreshTimeInSeconds>]";
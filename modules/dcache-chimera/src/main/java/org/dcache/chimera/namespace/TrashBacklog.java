@@ -0,0 +1,351 @@
+package org.dcache.chimera.namespace;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import diskCacheV111.util.CacheException;
+
+/**
+ * Keeps track of the replicas in the Chimera trash table that remain to
+ * be removed from pools.
+ *
+ * Entries of the trash table are numbered in insertion order. Rather than
+ * scanning the whole table on every run, the backlog remembers the highest
+ * number seen and only looks at newer entries to learn which pools have
+ * work to do. Each pool is drained independently, in batches following the
+ * numbering, so a pool that cannot be reached does not hold up the others.
+ *
+ * This class is thread safe.
+ */
+class TrashBacklog
+{
+    /**
+     * Removes files from a pool.
+     */
+    interface PoolCleaner
+    {
+        /**
+         * @return the files that were removed
+         * @throws CacheException if the pool could not remove the files
+         */
+        Collection<String> remove(String pool, List<String> files)
+                throws CacheException, InterruptedException;
+    }
+
+    /**
+     * State of a single pool.
+     */
+    private static class Pool
+    {
+        /** Estimated number of trash entries of the pool. */
+        long backlog;
+
+        /** Number of trash entries removed from the pool. */
+        long removed;
+
+        /** Whether the pool has entries that have not been drained. */
+        boolean isPending;
+
+        /** Whether the pool is currently being drained. */
+        boolean isActive;
+    }
+
+    private static final String sqlGetNewEntries =
+        "SELECT ilocation, COUNT(*) AS n, MAX(iid) AS last FROM t_locationinfo_trash " +
+        "WHERE itype=1 AND iid > ? GROUP BY ilocation";
+
+    private static final String sqlGetEntriesForPool =
+        "SELECT ipnfsid, iid FROM t_locationinfo_trash " +
+        "WHERE ilocation=? AND itype=1 AND iid > ? ORDER BY iid LIMIT ?";
+
+    private static final String sqlRemoveEntry =
+        "DELETE FROM t_locationinfo_trash WHERE iid=?";
+
+    private final JdbcTemplate _db;
+    private final Map<String,Pool> _pools = new TreeMap<>();
+    private long _highWaterMark;
+
+    TrashBacklog(JdbcTemplate db)
+    {
+        _db = db;
+    }
+
+    private Pool getPool(String name)
+    {
+        Pool pool = _pools.get(name);
+        if (pool == null) {
+            pool = new Pool();
+            _pools.put(name, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * Learns about trash entries added since the last refresh. Pools with
+     * new entries become pending.
+     *
+     * Entry numbers are not necessarily committed in order, so an entry may
+     * be missed if a newer entry was already seen. A full refresh considers
+     * all entries and should be done from time to time to catch such
+     * entries; it also corrects the backlog estimates.
+     *
+     * @param full whether to consider all entries rather than new entries only
+     */
+    void refresh(boolean full)
+    {
+        long mark;
+        synchronized (this) {
+            mark = full ? 0 : _highWaterMark;
+        }
+
+        final Map<String,Long> counts = new HashMap<>();
+        final long[] last = { mark };
+        _db.query(sqlGetNewEntries, new Object[] { mark },
+                  new RowCallbackHandler() {
+                      @Override
+                      public void processRow(ResultSet rs) throws SQLException
+                      {
+                          counts.put(rs.getString("ilocation"), rs.getLong("n"));
+                          last[0] = Math.max(last[0], rs.getLong("last"));
+                      }
+                  });
+
+        synchronized (this) {
+            if (full) {
+                for (Pool pool : _pools.values()) {
+                    pool.backlog = 0;
+                }
+            }
+            for (Map.Entry<String,Long> count : counts.entrySet()) {
+                Pool pool = getPool(count.getKey());
+                pool.backlog += count.getValue();
+                pool.isPending = true;
+            }
+            _highWaterMark = Math.max(_highWaterMark, last[0]);
+        }
+    }
+
+    /**
+     * Selects pending pools to drain, largest backlog first. The selected
+     * pools are marked as active and must be released by calling {@link
+     * #release} once drained.
+     *
+     * @param excluded pools not to select
+     * @param maxActive maximum number of pools drained at the same time
+     * @return the selected pools
+     */
+    synchronized List<String> take(Set<String> excluded, int maxActive)
+    {
+        int active = 0;
+        List<Map.Entry<String,Pool>> candidates = new ArrayList<>();
+        for (Map.Entry<String,Pool> entry : _pools.entrySet()) {
+            Pool pool = entry.getValue();
+            if (pool.isActive) {
+                active++;
+            } else if (pool.isPending && !excluded.contains(entry.getKey())) {
+                candidates.add(entry);
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Map.Entry<String,Pool>>() {
+            @Override
+            public int compare(Map.Entry<String,Pool> e1, Map.Entry<String,Pool> e2)
+            {
+                return Long.compare(e2.getValue().backlog, e1.getValue().backlog);
+            }
+        });
+
+        List<String> selected = new ArrayList<>();
+        for (Map.Entry<String,Pool> entry : candidates) {
+            if (active + selected.size() >= maxActive) {
+                break;
+            }
+            Pool pool = entry.getValue();
+            pool.isActive = true;
+            pool.isPending = false;
+            selected.add(entry.getKey());
+        }
+        return selected;
+    }
+
+    /**
+     * Marks a pool as active regardless of the number of active pools.
+     *
+     * @return false if the pool is already active, true otherwise
+     */
+    synchronized boolean take(String name)
+    {
+        Pool pool = getPool(name);
+        if (pool.isActive) {
+            return false;
+        }
+        pool.isActive = true;
+        pool.isPending = false;
+        return true;
+    }
+
+    /**
+     * Releases a pool selected by {@link #take}.
+     *
+     * @param isDrained whether all entries of the pool were removed; if not,
+     * the pool stays pending
+     */
+    synchronized void release(String name, boolean isDrained)
+    {
+        Pool pool = getPool(name);
+        pool.isActive = false;
+        if (!isDrained) {
+            pool.isPending = true;
+        }
+    }
+
+    /**
+     * Removes the trash entries of a pool from the pool and from the trash
+     * table. Entries are processed in batches in the order in which they
+     * were added to the trash table.
+     *
+     * @return true if all entries were removed, false if the pool failed to
+     * remove some of the files
+     * @throws CacheException if the pool failed to process a batch
+     */
+    boolean drain(String name, int batchSize, PoolCleaner cleaner)
+            throws CacheException, InterruptedException
+    {
+        long cursor = 0;
+        long failed = 0;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Cleaner interrupted");
+            }
+
+            final Map<String,Long> batch = new LinkedHashMap<>();
+            _db.query(sqlGetEntriesForPool, new Object[] { name, cursor, batchSize },
+                      new RowCallbackHandler() {
+                          @Override
+                          public void processRow(ResultSet rs) throws SQLException
+                          {
+                              batch.put(rs.getString("ipnfsid"), rs.getLong("iid"));
+                          }
+                      });
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            List<String> files = new ArrayList<>(batch.keySet());
+            cursor = batch.get(files.get(files.size() - 1));
+
+            Collection<String> removed = cleaner.remove(name, files);
+            final List<Long> entries = new ArrayList<>(removed.size());
+            for (String file : removed) {
+                Long entry = batch.get(file);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+            _db.batchUpdate(sqlRemoveEntry,
+                            new BatchPreparedStatementSetter() {
+                                @Override
+                                public int getBatchSize()
+                                {
+                                    return entries.size();
+                                }
+
+                                @Override
+                                public void setValues(PreparedStatement ps, int i)
+                                        throws SQLException
+                                {
+                                    ps.setLong(1, entries.get(i));
+                                }
+                            });
+            failed += batch.size() - entries.size();
+
+            synchronized (this) {
+                Pool pool = getPool(name);
+                pool.removed += entries.size();
+                pool.backlog = Math.max(0, pool.backlog - entries.size());
+            }
+
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+
+        if (failed == 0) {
+            synchronized (this) {
+                Pool pool = getPool(name);
+                if (!pool.isPending) {
+                    pool.backlog = 0;
+                }
+            }
+        }
+        return failed == 0;
+    }
+
+    /**
+     * Returns the estimated number of trash entries of a pool.
+     */
+    synchronized long getBacklog(String name)
+    {
+        Pool pool = _pools.get(name);
+        return (pool == null) ? 0 : pool.backlog;
+    }
+
+    /**
+     * Returns the estimated total number of trash entries of all pools.
+     */
+    synchronized long getBacklog()
+    {
+        long backlog = 0;
+        for (Pool pool : _pools.values()) {
+            backlog += pool.backlog;
+        }
+        return backlog;
+    }
+
+    synchronized int getActiveCount()
+    {
+        int active = 0;
+        for (Pool pool : _pools.values()) {
+            if (pool.isActive) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    synchronized long getHighWaterMark()
+    {
+        return _highWaterMark;
+    }
+
+    /**
+     * Returns one line per pool with its backlog, the number of removed
+     * entries and its state.
+     */
+    synchronized String list()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String,Pool> entry : _pools.entrySet()) {
+            Pool pool = entry.getValue();
+            sb.append(String.format("%-20s backlog=%-10d removed=%-10d%s%n",
+                                    entry.getKey(), pool.backlog, pool.removed,
+                                    pool.isActive ? " active" : pool.isPending ? " pending" : ""));
+        }
+        return sb.toString();
+    }
+}
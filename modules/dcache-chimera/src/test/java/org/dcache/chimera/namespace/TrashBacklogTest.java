@@ -0,0 +1,261 @@
+package org.dcache.chimera.namespace;
+
+import com.google.common.io.Resources;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import diskCacheV111.util.CacheException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TrashBacklogTest
+{
+    private static final Logger _log = LoggerFactory.getLogger(TrashBacklogTest.class);
+
+    private final static URL DB_TEST_PROPERTIES
+            = Resources.getResource("org/dcache/chimera/chimera-test.properties");
+
+    private Connection _conn;
+    private JdbcTemplate _db;
+    private TrashBacklog _backlog;
+    private long _files;
+
+    /**
+     * Pretends to remove files from pools and records the files that were
+     * removed.
+     */
+    private static class FakePoolCleaner implements TrashBacklog.PoolCleaner
+    {
+        final List<String> removed = new ArrayList<>();
+        int requests;
+
+        @Override
+        public Collection<String> remove(String pool, List<String> files)
+                throws CacheException
+        {
+            requests++;
+            removed.addAll(files);
+            return files;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Properties dbProperties = new Properties();
+        dbProperties.load(Resources.newInputStreamSupplier(DB_TEST_PROPERTIES).getInput());
+
+        _conn = DriverManager.getConnection(dbProperties.getProperty("chimera.db.url"),
+                dbProperties.getProperty("chimera.db.user"), dbProperties.getProperty("chimera.db.password"));
+
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(_conn));
+        Liquibase liquibase = new Liquibase("org/dcache/chimera/changelog/changelog-master.xml",
+                new ClassLoaderResourceAccessor(), database);
+        liquibase.update("");
+
+        _db = new JdbcTemplate(new SingleConnectionDataSource(_conn, true));
+        _backlog = new TrashBacklog(_db);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        _conn.createStatement().execute("SHUTDOWN;");
+        _conn.close();
+    }
+
+    private List<String> addTrash(String pool, int count)
+    {
+        List<String> files = new ArrayList<>(count);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < count; i++) {
+            String file = String.format("%036X", ++_files);
+            _db.update("INSERT INTO t_locationinfo_trash " +
+                       "(ipnfsid, itype, ilocation, ipriority, ictime, iatime, istate) " +
+                       "VALUES (?, 1, ?, 10, ?, ?, 1)",
+                       file, pool, now, now);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private long countTrash(String pool)
+    {
+        return _db.queryForObject("SELECT COUNT(*) FROM t_locationinfo_trash WHERE ilocation=?",
+                                  Long.class, pool);
+    }
+
+    @Test
+    public void shouldLearnAboutNewEntries()
+    {
+        addTrash("pool1", 3);
+        _backlog.refresh(false);
+        assertThat(_backlog.getBacklog("pool1"), is(3L));
+
+        addTrash("pool1", 2);
+        addTrash("pool2", 1);
+        _backlog.refresh(false);
+        assertThat(_backlog.getBacklog("pool1"), is(5L));
+        assertThat(_backlog.getBacklog("pool2"), is(1L));
+        assertThat(_backlog.getBacklog(), is(6L));
+
+        _backlog.refresh(false);
+        assertThat(_backlog.getBacklog(), is(6L));
+
+        _backlog.refresh(true);
+        assertThat(_backlog.getBacklog(), is(6L));
+    }
+
+    @Test
+    public void shouldDrainPoolInBatchesInInsertionOrder() throws Exception
+    {
+        List<String> files = addTrash("pool1", 25);
+        addTrash("pool2", 5);
+        _backlog.refresh(false);
+
+        assertThat(_backlog.take("pool1"), is(true));
+        FakePoolCleaner cleaner = new FakePoolCleaner();
+        assertThat(_backlog.drain("pool1", 10, cleaner), is(true));
+        _backlog.release("pool1", true);
+
+        assertThat(cleaner.removed, is(files));
+        assertThat(cleaner.requests, is(3));
+        assertThat(countTrash("pool1"), is(0L));
+        assertThat(countTrash("pool2"), is(5L));
+        assertThat(_backlog.getBacklog("pool1"), is(0L));
+        assertThat(_backlog.getBacklog("pool2"), is(5L));
+    }
+
+    @Test
+    public void shouldKeepEntriesNotRemovedByPool() throws Exception
+    {
+        addTrash("pool1", 4);
+        _backlog.refresh(false);
+
+        _backlog.take("pool1");
+        boolean isDrained = _backlog.drain("pool1", 10, new TrashBacklog.PoolCleaner() {
+            @Override
+            public Collection<String> remove(String pool, List<String> batch)
+            {
+                return batch.subList(1, batch.size());
+            }
+        });
+        _backlog.release("pool1", isDrained);
+
+        assertThat(isDrained, is(false));
+        assertThat(countTrash("pool1"), is(1L));
+        assertThat(_backlog.take(Collections.<String>emptySet(), 1), contains("pool1"));
+    }
+
+    @Test
+    public void shouldSelectPoolsWithLargestBacklogFirst()
+    {
+        addTrash("pool1", 1);
+        addTrash("pool2", 3);
+        addTrash("pool3", 2);
+        _backlog.refresh(false);
+
+        assertThat(_backlog.take(Collections.<String>emptySet(), 2), contains("pool2", "pool3"));
+        assertThat(_backlog.take(Collections.<String>emptySet(), 2), is(empty()));
+
+        _backlog.release("pool2", true);
+        assertThat(_backlog.take(Collections.<String>emptySet(), 2), contains("pool1"));
+        assertThat(_backlog.getActiveCount(), is(2));
+    }
+
+    @Test
+    public void shouldSkipExcludedPools()
+    {
+        addTrash("pool1", 2);
+        addTrash("pool2", 1);
+        _backlog.refresh(false);
+
+        assertThat(_backlog.take(Collections.singleton("pool1"), 2), contains("pool2"));
+    }
+
+    @Test
+    public void shouldNotBlockOtherPoolsWhenPoolIsOffline() throws Exception
+    {
+        addTrash("offline", 10);
+        addTrash("pool1", 10);
+        addTrash("pool2", 10);
+        _backlog.refresh(false);
+
+        FakePoolCleaner cleaner = new FakePoolCleaner();
+        for (String pool : _backlog.take(Collections.<String>emptySet(), 3)) {
+            boolean isDrained = false;
+            try {
+                if (pool.equals("offline")) {
+                    isDrained = _backlog.drain(pool, 5, new TrashBacklog.PoolCleaner() {
+                        @Override
+                        public Collection<String> remove(String pool, List<String> files)
+                                throws CacheException
+                        {
+                            throw new CacheException(CacheException.TIMEOUT, "No reply from " + pool);
+                        }
+                    });
+                    fail("Expected CacheException");
+                } else {
+                    isDrained = _backlog.drain(pool, 5, cleaner);
+                }
+            } catch (CacheException e) {
+                assertThat(pool, is("offline"));
+            } finally {
+                _backlog.release(pool, isDrained);
+            }
+        }
+
+        assertThat(countTrash("pool1"), is(0L));
+        assertThat(countTrash("pool2"), is(0L));
+        assertThat(countTrash("offline"), is(10L));
+        assertThat(_backlog.getBacklog("offline"), is(10L));
+        assertThat(_backlog.take(Collections.<String>emptySet(), 3), contains("offline"));
+    }
+
+    @Test
+    public void shouldDrainLargeBacklog() throws Exception
+    {
+        int pools = 10;
+        int filesPerPool = 500;
+        for (int i = 0; i < pools; i++) {
+            addTrash("pool" + i, filesPerPool);
+        }
+
+        FakePoolCleaner cleaner = new FakePoolCleaner();
+        long start = System.nanoTime();
+        _backlog.refresh(false);
+        for (String pool : _backlog.take(Collections.<String>emptySet(), pools)) {
+            _backlog.release(pool, _backlog.drain(pool, 100, cleaner));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(cleaner.removed, hasSize(pools * filesPerPool));
+        assertThat(_db.queryForObject("SELECT COUNT(*) FROM t_locationinfo_trash", Long.class), is(0L));
+        assertThat(_backlog.getBacklog(), is(0L));
+        _log.info("Drained {} trash entries from {} pools in {} ms ({} entries/s)",
+                  pools * filesPerPool, pools, elapsed / 1000000,
+                  pools * filesPerPool * 1000000000L / Math.max(elapsed, 1));
+    }
+}
@@ -0,0 +1,132 @@
+package org.dcache.ftp.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread multiplexing the data channels of many proxy adapters on a
+ * single selector.
+ *
+ * A small, fixed number of event loops is shared by all adapters of
+ * the JVM; an adapter is assigned to one loop for its lifetime and all
+ * of its channels are handled by that loop's thread. Adapters sharing
+ * a client listener are always assigned to the same loop, as a channel
+ * registered with one selector cannot be made blocking again until the
+ * selector has deregistered it. Thus the number
+ * of threads does not depend on the number of proxied transfers or
+ * parallel streams, and the state of an adapter needs no locking
+ * beyond what is shared with the door.
+ *
+ * Channels are registered with a Handler as the attachment of their
+ * key. Work submitted from other threads is run by the loop between
+ * selects.
+ */
+class ProxyEventLoop implements Runnable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProxyEventLoop.class);
+
+    private static final ProxyEventLoop[] LOOPS =
+        new ProxyEventLoop[Runtime.getRuntime().availableProcessors()];
+
+    /**
+     * Callback for a channel being ready for I/O.
+     */
+    interface Handler
+    {
+        void handle(SelectionKey key);
+    }
+
+    private final Selector _selector;
+    private final Thread _thread;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+
+    private ProxyEventLoop(int id) throws IOException
+    {
+        _selector = Selector.open();
+        _thread = new Thread(this, "ftp-proxy-" + id);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Returns the event loop to use for a new adapter listening for
+     * clients on the given channel. Loops are created on first use;
+     * the same channel is always assigned to the same loop.
+     */
+    static synchronized ProxyEventLoop forListener(ServerSocketChannel listener)
+        throws IOException
+    {
+        int id = (System.identityHashCode(listener) & Integer.MAX_VALUE) % LOOPS.length;
+        if (LOOPS[id] == null) {
+            LOOPS[id] = new ProxyEventLoop(id);
+        }
+        return LOOPS[id];
+    }
+
+    Selector getSelector()
+    {
+        return _selector;
+    }
+
+    /**
+     * Runs a task on the thread of the event loop. Channels must only
+     * be registered with the selector from within such a task.
+     */
+    void execute(Runnable task)
+    {
+        _tasks.add(task);
+        _selector.wakeup();
+    }
+
+    @Override
+    public void run()
+    {
+        while (true) {
+            try {
+                Runnable task;
+                while ((task = _tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Bug in FTP proxy: {}", e.toString(), e);
+                    }
+                }
+
+                /* A task may have called selectNow to flush cancelled
+                 * keys and thereby already selected some keys.
+                 */
+                if (_selector.selectedKeys().isEmpty()) {
+                    _selector.select();
+                } else {
+                    _selector.selectNow();
+                }
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid()) {
+                            ((Handler) key.attachment()).handle(key);
+                        }
+                    } catch (CancelledKeyException e) {
+                        // Channel was closed while handling another key
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Bug in FTP proxy: {}", e.toString(), e);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("FTP proxy selector failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -66,6 +66,7 @@
 
 package org.dcache.ftp.proxy;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,11 +76,12 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Random;
-
-import org.dcache.cells.AbstractCell;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Data channel proxy for FTP door. The proxy will run at the GridFTP
@@ -90,8 +92,16 @@ import org.dcache.cells.AbstractCell;
  * The class is also used to establish data channels for transfering
  * directory listings. This use should be reconsidered, at it is
  * unrelated to the proxy functionality.
+ *
+ * The adapter has no threads of its own. All channels are non-blocking
+ * and are served by one of the shared ProxyEventLoops, which multiplex
+ * the data channels of all adapters. A redirector forwards at most one
+ * block at a time: While the block waits to be written to the output
+ * channel, the redirector stops reading from its input channel. Memory
+ * use is thus bounded by the number of streams times the block size,
+ * and a slow receiver throttles the senders through TCP flow control.
  */
-public class SocketAdapter implements Runnable, ProxyAdapter
+public class SocketAdapter implements ProxyAdapter
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(SocketAdapter.class);
 
@@ -101,8 +111,11 @@ public class SocketAdapter implements Runnable, ProxyAdapter
     /** Channel listening for connections from the pool. */
     private final ServerSocketChannel _poolListenerChannel;
 
-    /** Current number of data channel connections. */
-    private int _dataChannelConnections;
+    /** Event loop serving all channels of this adapter. */
+    private final ProxyEventLoop _loop;
+
+    /** Released once the adapter has shut down. */
+    private final CountDownLatch _done = new CountDownLatch(1);
 
     /** True if mode E is used for transfer, false when mode S is used. */
     private boolean _modeE;
@@ -134,219 +147,366 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      */
     private boolean _clientToPool;
 
-    /**
-     * The cell used for error logging.
-     */
-    private AbstractCell _door;
-
     /**
      * Non null if an error has occurred and the transfer has failed.
      */
     private String _error;
 
-    /**
-     * Selector for doing asynchronous accept.
-     */
-    private Selector _selector;
-
     /**
      * Size of the largest block allocated in mode E. Blocks larger
      * than this are divided into smaller blocks.
      */
     private int _maxBlockSize = 131072;
 
-    /**
-     * Random number generator used when binding sockets.
-     */
-    private static Random _random = new Random();
-
-    /**
-     * A thread driving the adapter
-     */
-    private Thread _thread;
-
     /**
      * True when the adapter is closing or has been closed. Used to
      * suppress error messages when killing the adapter.
      */
     private boolean _closing;
 
+    /**
+     * True once the adapter has been started.
+     */
+    private boolean _started;
+
     /**
      * String form of address on which the adapter listens for client
      * connections.
      */
     private final String _localAddress;
 
+    /* The fields below are only accessed by the event loop.
+     */
+
+    private ServerSocketChannel _inputListener;
+    private ServerSocketChannel _outputListener;
+    private SelectionKey _inputListenerKey;
+    private SelectionKey _outputListenerKey;
+
+    private SocketChannel _output;
+    private SelectionKey _outputKey;
+    private String _outputAddress;
+
+    /** All redirectors created by the adapter. */
+    private final List<Redirector> _redirectors = new ArrayList<>();
+
+    /** Blocks waiting to be written to the output channel. */
+    private final Deque<Block> _queue = new ArrayDeque<>();
+
+    /** Number of input channels accepted. */
+    private int _totalStreams;
+
+    /** Current number of data channel connections. */
+    private int _dataChannelConnections;
+
+    /** True once the last block has been queued for the output. */
+    private boolean _allQueued;
+
+    /** True while the output queue is being written. */
+    private boolean _flushing;
+
+    private boolean _shutdown;
+
     /**
-     * A redirector moves data between an input channel and an ouput
-     * channel. This particular redirector does so in mode S.
+     * Data to be written to the output channel. Blocks read from a
+     * redirector's input carry the redirector, which is notified when
+     * the block has been written.
      */
-    class StreamRedirector extends Thread
+    private static class Block
     {
-	private SocketChannel _input, _output;
-
-	public StreamRedirector(SocketChannel input, SocketChannel output)
-	{
-	    super("ModeS-Proxy-" + _localAddress);
-	    _input = input;
-	    _output = output;
-	}
-
-	@Override
-        public void run()
-	{
-            String inputAddress =
-                _input.socket().getRemoteSocketAddress().toString();
-            String outputAddress =
-                _output.socket().getRemoteSocketAddress().toString();
-            boolean reading = true;
-	    try {
-		LOGGER.info("Starting mode S proxy from {} to {}",
-                     inputAddress, outputAddress);
-		ByteBuffer buffer = ByteBuffer.allocate(128 * 1024);
-		while (_input.read(buffer) != -1) {
-		    buffer.flip();
-                    reading = false;
-                    _output.write(buffer);
-                    reading = true;
-		    buffer.clear();
-		}
-		_input.close();
-	    } catch (IOException e) {
-                if (reading) {
-                    setError("Error on socket to " + inputAddress + ": "
-                            + e.getMessage());
-                } else {
-                    setError("Error on socket to " + outputAddress + ": "
-                            + e.getMessage());
+        final Redirector source;
+        final ByteBuffer[] buffers;
+
+        Block(Redirector source, ByteBuffer... buffers)
+        {
+            this.source = source;
+            this.buffers = buffers;
+        }
+
+        boolean hasRemaining()
+        {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    return true;
                 }
-	    } finally {
-		subtractDataChannel();
-	    }
-	}
+            }
+            return false;
+        }
     }
 
     /**
-     * A redirector moves data between an input channel and an ouput
-     * channel. This particular redirector does so in mode E.
+     * A redirector moves data from an input channel to the output
+     * channel.
      */
-    class ModeERedirector extends Thread
+    abstract class Redirector implements ProxyEventLoop.Handler
     {
-	private SocketChannel _input, _output;
-
-	public ModeERedirector(SocketChannel input, SocketChannel output)
-	{
-	    super("ModeE-Proxy-" + _localAddress);
-	    _input  = input;
-	    _output = output;
-	}
-
-	@Override
-        public void run()
-	{
-	    boolean eod = false;
-            boolean used = false;
-            ByteBuffer header = ByteBuffer.allocate(17);
-            EDataBlockNio block = new EDataBlockNio(getName());
-            String inputAddress =
-                _input.socket().getRemoteSocketAddress().toString();
-            String outputAddress =
-                _output.socket().getRemoteSocketAddress().toString();
-            boolean reading = true;
-
-            long count, position;
-
-	    try {
-		LOGGER.info("Starting mode E proxy from {} to {}",
-                     inputAddress, outputAddress);
-
-		loop: while (!eod && block.readHeader(_input) > -1) {
-                    used = true;
-
-                    /* EOF blocks are never forwarded as they do not
-                     * contain any data and the SocketAdapter sends an
-                     * EOF at the beginning of the stream. Other
-                     * blocks are forwarded if they are not empty.
-                     */
-                    if (block.isDescriptorSet(EDataBlockNio.EOF_DESCRIPTOR)) {
-                        setEODExpected(block.getDataChannelCount());
-                        count = position = 0;
-                    } else {
-                        count = block.getSize();
-                        position = block.getOffset();
-                    }
+        protected final SocketChannel _input;
+        protected final String _inputAddress;
+        private SelectionKey _key;
+
+        /** True while a block read from the input waits to be written. */
+        private boolean _blocked;
+        private boolean _closed;
+
+        Redirector(SocketChannel input)
+        {
+            _input = input;
+            _inputAddress = input.socket().getRemoteSocketAddress().toString();
+        }
 
-                    /* Read and send a single block. To limit memory
-                     * usage, we will read at most _maxBlockSize bytes
-                     * at a time. Larger blocks are divided into
-                     * multiple blocks.
-                     */
-                    while (count > 0) {
-                        long len = Math.min(count, _maxBlockSize);
-                        if (block.readData(_input, len) != len) {
-                            break loop;
-                        }
+        void register() throws IOException
+        {
+            _key = _input.register(_loop.getSelector(), 0, this);
+            updateInterest();
+        }
 
-                        /* Generate output header.
-                         */
-                        header.clear();
-                        header.put((byte)0);
-                        header.putLong(len);
-                        header.putLong(position);
-
-                        /* Write output.
-                         */
-                        ByteBuffer[] buffers = {
-                            header,
-                            block.getData()
-                        };
-                        buffers[0].flip();
-                        buffers[1].flip();
-                        reading = false;
-                        _output.write(buffers);
-                        reading = true;
-
-                        /* Update counters.
-                         */
-                        count = count - len;
-                        position = position + len;
-                    }
+        /**
+         * Enables reading from the input unless there is no output
+         * channel yet or a block is waiting to be written.
+         */
+        void updateInterest()
+        {
+            if (!_closed && _key != null) {
+                _key.interestOps((_output != null && !_blocked) ? SelectionKey.OP_READ : 0);
+            }
+        }
 
-                    /* Check for EOD mark.
-                     */
-                    if (block.isDescriptorSet(EDataBlockNio.EOD_DESCRIPTOR)) {
-                        eod = true;
-                    }
+        @Override
+        public void handle(SelectionKey key)
+        {
+            try {
+                read();
+            } catch (IOException e) {
+                fail("Error on socket to " + _inputAddress + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Called when the input channel is readable.
+         */
+        protected abstract void read() throws IOException;
+
+        /**
+         * Queues a block for the output channel. No further data is
+         * read until the block has been written.
+         */
+        protected void send(ByteBuffer... buffers)
+        {
+            _blocked = true;
+            updateInterest();
+            enqueue(new Block(this, buffers));
+        }
+
+        /**
+         * Called when the block last sent has been written.
+         */
+        protected void written()
+        {
+            _blocked = false;
+            updateInterest();
+        }
+
+        protected void close()
+        {
+            if (!_closed) {
+                _closed = true;
+                if (_key != null) {
+                    _key.cancel();
+                }
+                try {
+                    _input.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close {}: {}", _inputAddress, e.getMessage());
                 }
+            }
+        }
+    }
+
+    /**
+     * A redirector moves data between an input channel and an ouput
+     * channel. This particular redirector does so in mode S.
+     */
+    class StreamRedirector extends Redirector
+    {
+        private final ByteBuffer _buffer = ByteBuffer.allocate(128 * 1024);
+
+        StreamRedirector(SocketChannel input)
+        {
+            super(input);
+            LOGGER.info("Starting mode S proxy from {}", _inputAddress);
+        }
+
+        @Override
+        protected void read() throws IOException
+        {
+            _buffer.clear();
+            if (_input.read(_buffer) == -1) {
+                close();
+                redirectorDone();
+            } else if (_buffer.position() > 0) {
+                _buffer.flip();
+                send(_buffer);
+            }
+        }
+    }
+
+    /**
+     * A redirector moves data between an input channel and an ouput
+     * channel. This particular redirector does so in mode E.
+     */
+    class ModeERedirector extends Redirector
+    {
+        private final ByteBuffer _header =
+            ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        private final ByteBuffer _outputHeader =
+            ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        private ByteBuffer _data;
+
+        /**
+         * Bytes of the current block not yet read, or -1 while reading
+         * a header.
+         */
+        private long _count = -1;
+        private long _position;
+        private boolean _isLastBlock;
+        private boolean _used;
+
+        ModeERedirector(SocketChannel input)
+        {
+            super(input);
+            LOGGER.info("Starting mode E proxy from {}", _inputAddress);
+        }
 
-		if (eod) {
-		    addEODSeen();
-		} else if (used) {
-		    setError("Data channel from " + inputAddress
-                             + " was closed before EOD marker");
-		}
-
-		/* In case of an error, SocketAdapter will close the
-		 * channel instead. We only call close here to free up
-		 * sockets as early as possible when everything went
-		 * as expected.
-		 */
-		_input.close();
-	    } catch (Exception e) {
-                if (reading) {
-                    setError("Error on socket to " + inputAddress + ": "
-                            + e.getMessage());
+        @Override
+        protected void read() throws IOException
+        {
+            if (_count < 0) {
+                if (_input.read(_header) == -1) {
+                    closed();
+                    return;
+                }
+                if (_header.hasRemaining()) {
+                    return;
+                }
+                _used = true;
+
+                /* EOF blocks are never forwarded as they do not
+                 * contain any data and the SocketAdapter sends an
+                 * EOF at the beginning of the stream. Other
+                 * blocks are forwarded if they are not empty.
+                 */
+                byte descriptors = _header.get(0);
+                if ((descriptors & EDataBlockNio.EOF_DESCRIPTOR) != 0) {
+                    setEODExpected(_header.getLong(9));
+                    _count = 0;
+                    _position = 0;
                 } else {
-                    setError("Error on socket to " + outputAddress + ": "
-                            + e.getMessage());
+                    _count = _header.getLong(1);
+                    _position = _header.getLong(9);
                 }
-	    } finally {
-		LOGGER.info("Redirector done, EOD = {}, used = {}", eod, used);
-		subtractDataChannel();
-	    }
-	}
+                _isLastBlock = (descriptors & EDataBlockNio.EOD_DESCRIPTOR) != 0;
+                _header.clear();
+
+                if (_count == 0) {
+                    endOfBlock();
+                    return;
+                }
+                prepareData();
+            }
+
+            if (_input.read(_data) == -1) {
+                closed();
+            } else if (!_data.hasRemaining()) {
+                int len = _data.position();
+                _outputHeader.clear();
+                _outputHeader.put((byte) 0);
+                _outputHeader.putLong(len);
+                _outputHeader.putLong(_position);
+                _outputHeader.flip();
+                _data.flip();
+                _count -= len;
+                _position += len;
+                send(_outputHeader, _data);
+            }
+        }
+
+        /**
+         * To limit memory usage, at most _maxBlockSize bytes are read
+         * at a time. Larger blocks are divided into multiple blocks.
+         */
+        private void prepareData()
+        {
+            int len = (int) Math.min(_count, _maxBlockSize);
+            if (_data == null || _data.capacity() < len) {
+                _data = ByteBuffer.allocate(len);
+            }
+            _data.clear();
+            _data.limit(len);
+        }
+
+        @Override
+        protected void written()
+        {
+            super.written();
+            if (_count == 0) {
+                endOfBlock();
+            } else {
+                prepareData();
+            }
+        }
+
+        private void endOfBlock()
+        {
+            if (_isLastBlock) {
+                LOGGER.info("Redirector done, EOD = true, used = {}", _used);
+                _eodSeen++;
+                close();
+                redirectorDone();
+            } else {
+                _count = -1;
+            }
+        }
+
+        private void closed()
+        {
+            LOGGER.info("Redirector done, EOD = false, used = {}", _used);
+            close();
+            if (_used) {
+                fail("Data channel from " + _inputAddress
+                     + " was closed before EOD marker");
+            } else {
+                redirectorDone();
+            }
+        }
     }
 
+    private final ProxyEventLoop.Handler _inputAcceptor =
+        new ProxyEventLoop.Handler() {
+            @Override
+            public void handle(SelectionKey key)
+            {
+                acceptInput();
+            }
+        };
+
+    private final ProxyEventLoop.Handler _outputAcceptor =
+        new ProxyEventLoop.Handler() {
+            @Override
+            public void handle(SelectionKey key)
+            {
+                acceptOutput();
+            }
+        };
+
+    private final ProxyEventLoop.Handler _outputHandler =
+        new ProxyEventLoop.Handler() {
+            @Override
+            public void handle(SelectionKey key)
+            {
+                flush();
+            }
+        };
+
     public SocketAdapter(ServerSocketChannel clientListenerChannel)
 	throws IOException
     {
@@ -359,67 +519,293 @@ public class SocketAdapter implements Runnable, ProxyAdapter
         _clientToPool = true;
         _modeE        = false;
         _eodSeen      = 0;
-        _thread	      = new Thread(this, "SocketAdapter-" + _localAddress);
+        _loop         = ProxyEventLoop.forListener(clientListenerChannel);
     }
 
-    /** Increments the EOD seen counter. Thread safe. */
-    protected synchronized void addEODSeen()
+    /**
+     * Sets the number of data channels to expect. Stops accepting
+     * further input channels if that many have been accepted.
+     */
+    private void setEODExpected(long count)
     {
-        _eodSeen++;
+	LOGGER.trace("Setting data channel count to {}", count);
+        _eodc = (int) count;
+        updateAccepting();
     }
 
-    /** Returns the EOD seen counter. Thread safe. */
-    protected synchronized int getEODSeen()
+    private void updateAccepting()
     {
-        return _eodSeen;
+        if (_totalStreams >= _eodc && _inputListenerKey != null) {
+            _inputListenerKey.cancel();
+            _inputListenerKey = null;
+        }
     }
 
-    /** Returns the number of data channels to expect. Thread safe. */
-    protected synchronized int getEODExpected()
+    /** Called whenever a redirector finishes. */
+    private void redirectorDone()
     {
-        return _eodc;
+        _dataChannelConnections--;
+        _dataChannelsClosed++;
+
+        if (_eodc < Integer.MAX_VALUE) {
+            LOGGER.trace("Closing redirector {}, remaining: {}, eodc says there will be: {}",
+                    _dataChannelsClosed, _dataChannelConnections, _eodc);
+        } else {
+            LOGGER.trace("Closing redirector {}, remaining: {}",
+                    _dataChannelsClosed, _dataChannelConnections);
+        }
+        checkCompletion();
     }
 
     /**
-     * Sets the number of data channels to expect. Thread safe.  The
-     * selector will be woken up, since run() checks the data channel
-     * count in the loop.
+     * Queues the EOD once all expected data channels have been
+     * accepted and closed. The adapter shuts down once the output
+     * queue has been written.
      */
-    protected synchronized void setEODExpected(long count)
+    private void checkCompletion()
     {
-	LOGGER.trace("Setting data channel count to {}", count);
-	_selector.wakeup();
-        _eodc = (int)count;
+        if (_output == null || _allQueued || _shutdown ||
+                _dataChannelConnections > 0 || _totalStreams < _eodc) {
+            return;
+        }
+
+        /* Send the EOD (remember that we already sent the EOF
+         * earlier).
+         */
+        if (_modeE) {
+            if (_eodSeen != _eodc) {
+                fail("Did not see enough EOD markers. Transfer failed.");
+                return;
+            }
+            _queue.add(new Block(null, createBlock(EDataBlockNio.EOD_DESCRIPTOR, 0, 0)));
+        }
+        _allQueued = true;
+        flush();
     }
 
-    /** Called whenever a redirector finishes. Thread safe. */
-    protected synchronized void subtractDataChannel()
+    private static ByteBuffer createBlock(int descriptors, long count, long offset)
     {
-        _dataChannelConnections--;
-        _dataChannelsClosed++;
+        ByteBuffer block = ByteBuffer.allocate(EDataBlockNio.HEADER_LENGTH);
+        block.put((byte) descriptors);
+        block.putLong(count);
+        block.putLong(offset);
+        block.flip();
+        return block;
+    }
 
-        if (_eodc < Integer.MAX_VALUE) {
-            LOGGER.trace("Closing redirector {}, remaining: {}, eodc says there will be: {}",
-                    _dataChannelsClosed, _dataChannelConnections, getEODExpected());
+    private void enqueue(Block block)
+    {
+        _queue.add(block);
+        flush();
+    }
+
+    /**
+     * Writes queued blocks to the output channel until the queue is
+     * empty or the channel would block, in which case the remainder is
+     * written once the channel becomes writable.
+     */
+    private void flush()
+    {
+        if (_flushing || _output == null || _shutdown) {
+            return;
+        }
+        _flushing = true;
+        try {
+            while (!_shutdown && !_queue.isEmpty()) {
+                Block block = _queue.peek();
+                _output.write(block.buffers);
+                if (block.hasRemaining()) {
+                    _outputKey.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                _queue.remove();
+                if (block.source != null) {
+                    block.source.written();
+                }
+            }
+            if (_shutdown) {
+                return;
+            }
+            _outputKey.interestOps(0);
+        } catch (IOException e) {
+            fail("Error on socket to " + _outputAddress + ": " + e.getMessage());
+            return;
+        } finally {
+            _flushing = false;
+        }
+
+        if (_allQueued) {
+            shutdown();
+        }
+    }
+
+    private void configure(SocketChannel channel) throws IOException
+    {
+        channel.configureBlocking(false);
+        if (_bufferSize > 0) {
+            channel.socket().setSendBufferSize(_bufferSize);
+        }
+        channel.socket().setKeepAlive(true);
+        LOGGER.debug("Opened {}", channel.socket());
+    }
+
+    private void acceptInput()
+    {
+        try {
+            SocketChannel input = _inputListener.accept();
+            if (input == null) {
+                return;
+            }
+            configure(input);
+            Redirector redirector =
+                _modeE ? new ModeERedirector(input) : new StreamRedirector(input);
+            _redirectors.add(redirector);
+            _dataChannelConnections++;
+            _totalStreams++;
+            redirector.register();
+            updateAccepting();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts the connection of the output channel. Since the socket
+     * adapter is only used when the client is active, and since in
+     * mode E the active part has to be the sender, and since we only
+     * create one connection between the adapter and the pool, there
+     * will in any case be exactly one connection on the output channel.
+     */
+    private void acceptOutput()
+    {
+        try {
+            SocketChannel output = _outputListener.accept();
+            if (output == null) {
+                return;
+            }
+            _outputListenerKey.cancel();
+            _outputListenerKey = null;
+
+            configure(output);
+            _output = output;
+            _outputAddress = output.socket().getRemoteSocketAddress().toString();
+            _outputKey = output.register(_loop.getSelector(), 0, _outputHandler);
+
+            /* Send the EOF. The GridFTP protocol allows us to send
+             * this information at any time. Doing it up front will
+             * make sure, that the other end doesn't need to wait for
+             * it.
+             */
+            if (_modeE) {
+                enqueue(new Block(null, createBlock(EDataBlockNio.EOF_DESCRIPTOR, 0, 1)));
+            }
+
+            for (Redirector redirector : _redirectors) {
+                redirector.updateInterest();
+            }
+            checkCompletion();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the listening channels with the event loop. Called by
+     * the event loop.
+     */
+    private void register()
+    {
+	assert _clientToPool || !_modeE;
+
+        if (_clientToPool) {
+            _inputListener = _clientListenerChannel;
+            _outputListener = _poolListenerChannel;
         } else {
-            LOGGER.trace("Closing redirector {}, remaining: {}",
-                    _dataChannelsClosed, _dataChannelConnections);
+            _inputListener = _poolListenerChannel;
+            _outputListener = _clientListenerChannel;
+        }
+
+        try {
+	    LOGGER.debug("Accepting output connection on {}",
+                 _outputListener.socket().getLocalSocketAddress());
+            _outputListenerKey = registerListener(_outputListener, _outputAcceptor);
+	    LOGGER.debug("Accepting input connection on {}",
+                 _inputListener.socket().getLocalSocketAddress());
+            _inputListenerKey = registerListener(_inputListener, _inputAcceptor);
+        } catch (IOException e) {
+            fail(e.getMessage());
         }
     }
 
-    /** Called whenever a new redirector is created. Thread safe. */
-    protected synchronized void addDataChannel()
+    private SelectionKey registerListener(ServerSocketChannel channel,
+                                          ProxyEventLoop.Handler handler)
+        throws IOException
     {
-	_dataChannelConnections++;
+        Selector selector = _loop.getSelector();
+
+        /* The client listener is reused by subsequent transfers of the
+         * same session. A key cancelled by a previous adapter must be
+         * flushed before the channel can be registered again.
+         */
+        SelectionKey key = channel.keyFor(selector);
+        if (key != null && !key.isValid()) {
+            selector.selectNow();
+        }
+        channel.configureBlocking(false);
+        return channel.register(selector, SelectionKey.OP_ACCEPT, handler);
     }
 
     /**
-     * Returns the current number of concurrent data channel
-     * connections. Thread safe.
+     * Closes all data channels and stops accepting connections. Called
+     * by the event loop.
      */
-    protected synchronized int getDataChannelConnections()
+    private void shutdown()
     {
-	return _dataChannelConnections;
+        if (_shutdown) {
+            return;
+        }
+        _shutdown = true;
+        _queue.clear();
+
+        if (_inputListenerKey != null) {
+            _inputListenerKey.cancel();
+        }
+        if (_outputListenerKey != null) {
+            _outputListenerKey.cancel();
+        }
+        for (Redirector redirector : _redirectors) {
+            redirector.close();
+        }
+        if (_output != null) {
+            _outputKey.cancel();
+            try {
+                _output.close();
+            } catch (IOException e) {
+                setError(e.getMessage());
+            }
+        }
+
+        /* The door uses the client listener for blocking accepts, but
+         * the blocking mode can only be restored once the selector has
+         * deregistered the cancelled key. Tasks run outside of the
+         * processing of selected keys, thus it is safe to select here.
+         */
+        _loop.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try {
+                        _loop.getSelector().selectNow();
+                        if (_clientListenerChannel.isOpen()) {
+                            _clientListenerChannel.configureBlocking(true);
+                        }
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to release {}: {}", _localAddress, e.getMessage());
+                    } finally {
+                        _done.countDown();
+                    }
+                }
+            });
     }
 
     /**
@@ -431,27 +817,18 @@ public class SocketAdapter implements Runnable, ProxyAdapter
         if (!isClosing()) {
             LOGGER.error(msg);
             if (_error == null) {
-                _thread.interrupt();
                 _error = msg;
             }
         }
     }
 
     /**
-     * Sets the error field. This indicates that the transfer has
-     * failed. The SocketAdapter thread is interrupted, causing it to
-     * break out of the run() method.
+     * Sets the error field and shuts down the adapter.
      */
-    protected synchronized void setFatalError(Exception e)
+    private void fail(String msg)
     {
-        if (!isClosing()) {
-            LOGGER.error("Socket adapter {} caught fatal error: {}", _localAddress, e.getMessage());
-
-            if (_error == null) {
-                _thread.interrupt();
-                _error = e.getMessage();
-            }
-        }
+        setError(msg);
+        shutdown();
     }
 
     /* (non-Javadoc)
@@ -544,180 +921,15 @@ public class SocketAdapter implements Runnable, ProxyAdapter
         return _closing;
     }
 
-    @Override
-    public void run()
+    private synchronized boolean isStarted()
     {
-	assert _clientToPool || !_modeE;
-
-        ServerSocketChannel inputSock;
-        ServerSocketChannel outputSock;
-
-        /** All redirectores created by the SocketAdapter. */
-        List<Thread> redirectors = new ArrayList<>();
-
-        /** All sockets created by the SocketAdapter. */
-	List<SocketChannel> sockets     = new ArrayList<>();
-
-        try {
-	    _selector = Selector.open();
-
-	    if (_clientToPool) {
-		inputSock = _clientListenerChannel;
-		outputSock = _poolListenerChannel;
-	    } else {
-		inputSock = _poolListenerChannel;
-		outputSock = _clientListenerChannel;
-	    }
-
-	    /* Accept connection on output channel. Since the socket
-	     * adapter is only used when the client is active, and
-	     * since in mode E the active part has to be the sender,
-	     * and since we only create one connection between the
-	     * adapter and the pool, there will in any case be exactly
-	     * one connection on the output channel.
-	     */
-	    LOGGER.debug("Accepting output connection on {}",
-                 outputSock.socket().getLocalSocketAddress());
-	    SocketChannel output = outputSock.accept();
-	    sockets.add(output);
-            if (_bufferSize > 0) {
-                output.socket().setSendBufferSize(_bufferSize);
-            }
-            output.socket().setKeepAlive(true);
-            LOGGER.debug("Opened {}", output.socket());
-
-	    /* Send the EOF. The GridFTP protocol allows us to send
-             * this information at any time. Doing it up front will
-             * make sure, that the other end doesn't need to wait for
-             * it.
-	     */
-	    if (_modeE) {
-		ByteBuffer block = ByteBuffer.allocate(17);
-		block.put((byte)(EDataBlockNio.EOF_DESCRIPTOR));
-		block.putLong(0);
-		block.putLong(1);
-		block.flip();
-		output.write(block);
-	    }
-
-	    /* Keep accepting connections on the input socket as long
-	     * as we have not reached the number of streams the client
-	     * told us we should expect.
-	     *
-	     * This loop is one of the few places in which we check
-	     * the interrupted flag of the current thread: At most
-	     * other places, blocking operations will throw an
-	     * exception when the thread was interrupted, however
-	     * select() will return normally.
-	     */
-	    LOGGER.debug("Accepting input connection on {}",
-                 inputSock.socket().getLocalSocketAddress());
-            int totalStreams = 0;
-	    inputSock.configureBlocking(false);
-	    inputSock.register(_selector, SelectionKey.OP_ACCEPT, null);
-	    while (!Thread.currentThread().isInterrupted()
-		   && totalStreams < getEODExpected()) {
-		_selector.select();
-                for (SelectionKey key : _selector.selectedKeys()) {
-		    if (key.isAcceptable()) {
-			SocketChannel input = inputSock.accept();
-			sockets.add(input);
-                        LOGGER.debug("Opened {}", input.socket());
-
-			if (_bufferSize > 0) {
-			    input.socket().setSendBufferSize(_bufferSize);
-			}
-                        input.socket().setKeepAlive(true);
-
-			addDataChannel();
-
-			Thread redir;
-			if (_modeE) {
-			    redir = new ModeERedirector(input, output);
-			} else {
-			    redir = new StreamRedirector(input, output);
-			}
-			redir.start();
-			redirectors.add(redir);
-
-			totalStreams++;
-		    }
-		}
-		_selector.selectedKeys().clear();
-	    }
-
-	    /* Block until all redirector threads have terminated.
-             */
-	    LOGGER.trace("Waiting for all redirectors to finish");
-            for (Thread redirector : redirectors) {
-		redirector.join();
-	    }
-	    redirectors.clear();
-	    LOGGER.trace("All redirectors have finished");
-
-	    /* Send the EOD (remember that we already sent the EOF
-             * earlier).
-	     */
-	    if (_modeE) {
-                if (getEODExpected() == Integer.MAX_VALUE) {
-                    setError("Did not receive EOF marker. Transfer failed.");
-                } else if (getEODSeen() != getEODExpected()) {
-		    setError("Did not see enough EOD markers. Transfer failed.");
-		} else {
-                    ByteBuffer block = ByteBuffer.allocate(17);
-                    block.put((byte)EDataBlockNio.EOD_DESCRIPTOR);
-                    block.putLong(0);
-                    block.putLong(0);
-                    block.flip();
-                    output.write(block);
-                }
-	    }
-        } catch (InterruptedException e) {
-            /* This will always be a symptom of another error, so
-             * there is no reason to log this exception.
-             */
-        } catch (IOException e) {
-            setError(e.getMessage());
-        } catch (Exception e) {
-	    setFatalError(e);
-        } finally {
-	    /* Close the selector. Any keys are automatically cancelled.
-	     */
-	    if (_selector != null) {
-		try {
-		    _selector.close();
-		    _selector = null;
-		} catch (IOException e) {
-		    setError(e.getMessage());
-		}
-	    }
-
-	    /* Tell any thread still alive to stop. In principal this
-	     * should not be necessary since closing the channels
-	     * below should cause all redirectors to break out. On the
-	     * other hand it doesn't hurt and better safe than
-	     * sorry...
-	     */
-            for (Thread redirector : redirectors) {
-		redirector.interrupt();
-	    }
-
-	    /* Close all channels. The redirectors may already have
-	     * closed the channels, however close() is a noop if the
-	     * channel is already closed.
-	     */
-            for (SocketChannel channel : sockets) {
-		try {
-		    channel.close();
-		} catch (IOException e) {
-		    setError(e.getMessage());
-		}
-	    }
-        }
+        return _started;
     }
 
-    /* (non-Javadoc)
-     * @see diskCacheV111.util.ProxyAdapter#close()
+    /**
+     * Closes the adapter. Returns once the client listener has been
+     * released, as the door uses it for blocking accepts afterwards.
+     * Must not be called by the event loop.
      */
     @Override
     public void close() {
@@ -725,17 +937,25 @@ public class SocketAdapter implements Runnable, ProxyAdapter
 
         setClosing(true);
 
-	/* Interrupting this thread is enough to cause
-	 * SocketAdapter.run() to break. SocketAdapter.run() will in
-	 * turn interrupt all redirectors.
-	 */
-	_thread.interrupt();
+        if (isStarted()) {
+            _loop.execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        shutdown();
+                    }
+                });
+        }
 
         try {
             _poolListenerChannel.close();
 	} catch (IOException e) {
             LOGGER.warn("Failed to close pool socket: {}", e.getMessage());
         }
+
+        if (isStarted()) {
+            Uninterruptibles.awaitUninterruptibly(_done);
+        }
     }
 
     /* (non-Javadoc)
@@ -743,7 +963,7 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      */
     @Override
     public boolean isAlive() {
-	return _thread.isAlive();
+	return isStarted() && _done.getCount() > 0;
     }
 
     /* (non-Javadoc)
@@ -751,7 +971,9 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      */
     @Override
     public void join() throws InterruptedException {
-	_thread.join();
+        if (isStarted()) {
+            _done.await();
+        }
     }
 
     /* (non-Javadoc)
@@ -759,7 +981,11 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      */
     @Override
     public void join(long millis) throws InterruptedException {
-	_thread.join(millis);
+        if (millis == 0) {
+            join();
+        } else if (isStarted()) {
+            _done.await(millis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /* (non-Javadoc)
@@ -767,6 +993,15 @@ public class SocketAdapter implements Runnable, ProxyAdapter
      */
     @Override
     public void start() {
-	_thread.start();
+        synchronized (this) {
+            _started = true;
+        }
+        _loop.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    register();
+                }
+            });
     }
 }
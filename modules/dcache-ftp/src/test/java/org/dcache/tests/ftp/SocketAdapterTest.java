@@ -0,0 +1,358 @@
+package org.dcache.tests.ftp;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dcache.ftp.proxy.EDataBlockNio;
+import org.dcache.ftp.proxy.SocketAdapter;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class SocketAdapterTest
+{
+    private static final int BLOCK_SIZE = 8192;
+    private static final String CLIENT_THREAD_PREFIX = "test-client-";
+
+    private final List<ServerSocketChannel> _listeners = new ArrayList<>();
+    private final List<SocketAdapter> _adapters = new ArrayList<>();
+    private ExecutorService _executor;
+
+    @Before
+    public void setUp()
+    {
+        _executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat(CLIENT_THREAD_PREFIX + "%d").build());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        for (SocketAdapter adapter : _adapters) {
+            adapter.close();
+        }
+        for (ServerSocketChannel listener : _listeners) {
+            listener.close();
+        }
+        _executor.shutdownNow();
+    }
+
+    private SocketAdapter createAdapter(boolean modeE, boolean clientToPool)
+        throws IOException
+    {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        _listeners.add(listener);
+
+        SocketAdapter adapter = new SocketAdapter(listener);
+        adapter.setModeE(modeE);
+        adapter.setMaxBlockSize(BLOCK_SIZE);
+        if (clientToPool) {
+            adapter.setDirClientToPool();
+        } else {
+            adapter.setDirPoolToClient();
+        }
+        _adapters.add(adapter);
+        adapter.start();
+        return adapter;
+    }
+
+    private static Socket connect(int port) throws IOException
+    {
+        return new Socket(InetAddress.getLoopbackAddress(), port);
+    }
+
+    private static byte[] random(int size)
+    {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private Future<byte[]> readStream(final int port)
+    {
+        return _executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException
+                {
+                    try (Socket socket = connect(port)) {
+                        InputStream in = socket.getInputStream();
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[BLOCK_SIZE];
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, n);
+                        }
+                        return out.toByteArray();
+                    }
+                }
+            });
+    }
+
+    private Future<Void> writeStream(final int port, final byte[] data)
+    {
+        return _executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException
+                {
+                    try (Socket socket = connect(port)) {
+                        socket.getOutputStream().write(data);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Reads a mode E stream as sent by the adapter to the pool and
+     * reassembles the file.
+     */
+    private Future<byte[]> readModeE(final int port, final int size)
+    {
+        return _executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException
+                {
+                    try (Socket socket = connect(port)) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        byte[] file = new byte[size];
+                        int descriptors = in.readUnsignedByte();
+                        long count = in.readLong();
+                        long offset = in.readLong();
+                        assertThat(descriptors, is(EDataBlockNio.EOF_DESCRIPTOR));
+                        assertThat(offset, is(1L));
+                        while (true) {
+                            descriptors = in.readUnsignedByte();
+                            count = in.readLong();
+                            offset = in.readLong();
+                            assertThat(count, is(lessThanOrEqualTo((long) BLOCK_SIZE)));
+                            in.readFully(file, (int) offset, (int) count);
+                            if ((descriptors & EDataBlockNio.EOD_DESCRIPTOR) != 0) {
+                                break;
+                            }
+                        }
+                        assertThat(in.read(), is(-1));
+                        return file;
+                    }
+                }
+            });
+    }
+
+    /**
+     * Sends a slice of the file over a mode E stream. The first stream
+     * also announces the number of streams. Blocks are twice the
+     * adapter's block size to exercise the splitting of blocks.
+     */
+    private Future<Void> writeModeE(final int port, final byte[] data,
+                                    final int stream, final int streams,
+                                    final boolean sendEOD)
+    {
+        return _executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException
+                {
+                    try (Socket socket = connect(port)) {
+                        DataOutputStream out =
+                            new DataOutputStream(socket.getOutputStream());
+                        if (stream == 0) {
+                            out.writeByte(EDataBlockNio.EOF_DESCRIPTOR);
+                            out.writeLong(0);
+                            out.writeLong(streams);
+                        }
+                        int slice = data.length / streams;
+                        int end = (stream == streams - 1) ? data.length : (stream + 1) * slice;
+                        for (int offset = stream * slice; offset < end; offset += 2 * BLOCK_SIZE) {
+                            int len = Math.min(2 * BLOCK_SIZE, end - offset);
+                            out.writeByte(0);
+                            out.writeLong(len);
+                            out.writeLong(offset);
+                            out.write(data, offset, len);
+                        }
+                        if (sendEOD) {
+                            out.writeByte(EDataBlockNio.EOD_DESCRIPTOR);
+                            out.writeLong(0);
+                            out.writeLong(0);
+                        }
+                        out.flush();
+                    }
+                    return null;
+                }
+            });
+    }
+
+    @Test
+    public void testModeSClientToPool() throws Exception
+    {
+        byte[] data = random(1000000);
+        SocketAdapter adapter = createAdapter(false, true);
+
+        Future<byte[]> pool = readStream(adapter.getPoolListenerPort());
+        writeStream(adapter.getClientListenerPort(), data).get();
+
+        assertArrayEquals(data, pool.get());
+        adapter.join(10000);
+        assertThat(adapter.isAlive(), is(false));
+        assertThat(adapter.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void testModeSPoolToClient() throws Exception
+    {
+        byte[] data = random(1000000);
+        SocketAdapter adapter = createAdapter(false, false);
+
+        Future<byte[]> client = readStream(adapter.getClientListenerPort());
+        writeStream(adapter.getPoolListenerPort(), data).get();
+
+        assertArrayEquals(data, client.get());
+        adapter.join(10000);
+        assertThat(adapter.isAlive(), is(false));
+        assertThat(adapter.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void testModeEWithParallelStreams() throws Exception
+    {
+        byte[] data = random(1000000);
+        SocketAdapter adapter = createAdapter(true, true);
+
+        Future<byte[]> pool = readModeE(adapter.getPoolListenerPort(), data.length);
+        for (int i = 0; i < 8; i++) {
+            writeModeE(adapter.getClientListenerPort(), data, i, 8, true);
+        }
+
+        assertArrayEquals(data, pool.get());
+        adapter.join(10000);
+        assertThat(adapter.isAlive(), is(false));
+        assertThat(adapter.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void testModeEFailsWithoutEOD() throws Exception
+    {
+        byte[] data = random(100000);
+        SocketAdapter adapter = createAdapter(true, true);
+
+        Future<byte[]> pool = readModeE(adapter.getPoolListenerPort(), data.length);
+        writeModeE(adapter.getClientListenerPort(), data, 0, 2, true);
+        writeModeE(adapter.getClientListenerPort(), data, 1, 2, false);
+
+        adapter.join(10000);
+        assertThat(adapter.isAlive(), is(false));
+        assertThat(adapter.getError(), containsString("closed before EOD marker"));
+        try {
+            pool.get();
+        } catch (Exception e) {
+            assertThat(e.getCause(), is(instanceOf(EOFException.class)));
+        }
+    }
+
+    @Test
+    public void testCloseRestoresBlockingListener() throws Exception
+    {
+        SocketAdapter adapter = createAdapter(false, true);
+        ServerSocketChannel listener = _listeners.get(0);
+
+        adapter.close();
+
+        assertThat(listener.isBlocking(), is(true));
+    }
+
+    @Test
+    public void testListenerIsReusedByNextAdapter() throws Exception
+    {
+        byte[] data = random(100000);
+        SocketAdapter first = createAdapter(false, true);
+        ServerSocketChannel listener = _listeners.get(0);
+        first.close();
+
+        for (int i = 0; i < 2 * Runtime.getRuntime().availableProcessors(); i++) {
+            SocketAdapter adapter = new SocketAdapter(listener);
+            adapter.setDirClientToPool();
+            _adapters.add(adapter);
+            adapter.start();
+
+            Future<byte[]> pool = readStream(adapter.getPoolListenerPort());
+            writeStream(adapter.getClientListenerPort(), data).get();
+
+            assertArrayEquals(data, pool.get());
+            adapter.join(10000);
+            assertThat(adapter.isAlive(), is(false));
+            assertThat(adapter.getError(), is(nullValue()));
+            assertThat(listener.isBlocking(), is(true));
+        }
+    }
+
+    @Test
+    public void testManyStreamsDoNotNeedManyThreads() throws Exception
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int transfers = Math.max(50, 2 * processors);
+        int streams = 20;
+        byte[] data = random(streams * 4 * BLOCK_SIZE);
+
+        /* No transfer can complete before the pools connect, thus all
+         * adapters are active while the threads are counted.
+         */
+        int threadsBefore = countAdapterThreads();
+        List<SocketAdapter> adapters = new ArrayList<>();
+        for (int i = 0; i < transfers; i++) {
+            SocketAdapter adapter = createAdapter(true, true);
+            adapters.add(adapter);
+            for (int j = 0; j < streams; j++) {
+                writeModeE(adapter.getClientListenerPort(), data, j, streams, true);
+            }
+        }
+        int threadsDuring = countAdapterThreads();
+
+        List<Future<byte[]>> pools = new ArrayList<>();
+        for (SocketAdapter adapter : adapters) {
+            pools.add(readModeE(adapter.getPoolListenerPort(), data.length));
+        }
+
+        assertThat(threadsDuring - threadsBefore, is(lessThanOrEqualTo(processors)));
+        for (Future<byte[]> pool : pools) {
+            assertArrayEquals(data, pool.get());
+        }
+        for (SocketAdapter adapter : _adapters) {
+            adapter.join(10000);
+            assertThat(adapter.getError(), is(nullValue()));
+        }
+    }
+
+    /**
+     * Returns the number of live threads not created by the test to
+     * simulate clients and pools.
+     */
+    private static int countAdapterThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && !thread.getName().startsWith(CLIENT_THREAD_PREFIX)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
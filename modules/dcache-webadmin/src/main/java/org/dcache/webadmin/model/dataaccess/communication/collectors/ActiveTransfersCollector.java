@@ -6,6 +6,7 @@ import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -15,6 +16,8 @@ import java.util.Map;
 import java.util.Set;
 
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.SpreadAndWait;
+import diskCacheV111.util.TimeoutCacheException;
 import diskCacheV111.vehicles.IoDoorEntry;
 import diskCacheV111.vehicles.IoDoorInfo;
 import diskCacheV111.vehicles.IoJobInfo;
@@ -41,33 +44,48 @@ public class ActiveTransfersCollector extends Collector {
                     CacheException {
         _log.debug("Requesting doorInfo from LoginBroker {}", Arrays.toString(_loginBrokerNames));
 
-        Set<CellAddressCore> doors = new HashSet<>();
+        SpreadAndWait<LoginBrokerInfo[]> spreader = new SpreadAndWait<>(_cellStub);
         for (String loginBroker: _loginBrokerNames) {
-            LoginBrokerInfo[] infos =
-                    _cellStub.sendAndWait(new CellPath(loginBroker), "ls -binary -all", LoginBrokerInfo[].class);
+            spreader.send(new CellPath(loginBroker), LoginBrokerInfo[].class, "ls -binary -all");
+        }
+        spreader.waitForReplies();
+        Map<CellPath, LoginBrokerInfo[]> replies = spreader.getReplies();
+        if (replies.size() < _loginBrokerNames.length) {
+            List<String> missing = new ArrayList<>();
+            for (String loginBroker: _loginBrokerNames) {
+                if (!replies.containsKey(new CellPath(loginBroker))) {
+                    missing.add(loginBroker);
+                }
+            }
+            throw new TimeoutCacheException("No reply from login brokers: " + missing);
+        }
+
+        Set<CellAddressCore> doors = new HashSet<>();
+        for (LoginBrokerInfo[] infos: replies.values()) {
             for (LoginBrokerInfo info : infos) {
                 doors.add(new CellAddressCore(info.getCellName(), info.getDomainName()));
             }
-            _log.debug("LoginBrokers found: {}", doors);
         }
+        _log.debug("LoginBrokers found: {}", doors);
         return doors;
     }
 
     private Map<CellAddressCore, LoginManagerChildrenInfo> getDoorChildrenInfo(Set<CellAddressCore> doors)
             throws InterruptedException
     {
-        Map<CellAddressCore, LoginManagerChildrenInfo> doorInfos = new HashMap<>();
-        _log.debug("Asking doors for 'doorClientList' (one by one)");
+        _log.debug("Asking doors for 'doorClientList'");
+        SpreadAndWait<LoginManagerChildrenInfo> spreader = new SpreadAndWait<>(_cellStub);
         for (CellAddressCore doorName : doors) {
             _log.debug("Requesting client list from: {}", doorName);
-            try {
-                LoginManagerChildrenInfo info = _cellStub.sendAndWait(
-                                new CellPath(doorName), "get children -binary",
-                                LoginManagerChildrenInfo.class);
-                doorInfos.put(doorName, info);
-            } catch (CacheException e) {
-                _log.debug("Exception in door {}: {}", doorName, e);
-            }
+            spreader.send(new CellPath(doorName), LoginManagerChildrenInfo.class,
+                            "get children -binary");
+        }
+        spreader.waitForReplies();
+        logLatencies(spreader);
+
+        Map<CellAddressCore, LoginManagerChildrenInfo> doorInfos = new HashMap<>();
+        for (Map.Entry<CellPath, LoginManagerChildrenInfo> reply : spreader.getReplies().entrySet()) {
+            doorInfos.put(reply.getKey().getDestinationAddress(), reply.getValue());
         }
         return doorInfos;
     }
@@ -87,23 +105,25 @@ public class ActiveTransfersCollector extends Collector {
                     Collection<LoginManagerChildrenInfo> doorInfos,
                     Map<String, MoverInfo> transfers)
                     throws InterruptedException {
+        SpreadAndWait<IoDoorInfo> spreader = new SpreadAndWait<>(_cellStub);
         for (LoginManagerChildrenInfo info : doorInfos) {
             for (String child : info.getChildren()) {
                 CellAddressCore childDoor = new CellAddressCore(child, info.getCellDomainName());
                 _log.debug("Requesting IoDoorInfo from {}", childDoor);
-                try {
-                    IoDoorInfo ioDoorInfo = _cellStub.sendAndWait(new CellPath(
-                                    childDoor), "get door info -binary",
-                                    IoDoorInfo.class);
-                    for (IoDoorEntry ioDoorEntry : ioDoorInfo.getIoDoorEntries()) {
-                        _log.debug("Adding Mover {}", ioDoorEntry);
-                        transfers.put(childDoor + "#"
-                                        + ioDoorEntry.getSerialId(),
-                                        new MoverInfo(ioDoorInfo, ioDoorEntry));
-                    }
-                } catch (CacheException e) {
-                    _log.debug("Exception asking door {}: {}", childDoor, e);
-                }
+                spreader.send(new CellPath(childDoor), IoDoorInfo.class, "get door info -binary");
+            }
+        }
+        spreader.waitForReplies();
+        logLatencies(spreader);
+
+        for (Map.Entry<CellPath, IoDoorInfo> reply : spreader.getReplies().entrySet()) {
+            CellAddressCore childDoor = reply.getKey().getDestinationAddress();
+            IoDoorInfo ioDoorInfo = reply.getValue();
+            for (IoDoorEntry ioDoorEntry : ioDoorInfo.getIoDoorEntries()) {
+                _log.debug("Adding Mover {}", ioDoorEntry);
+                transfers.put(childDoor + "#"
+                                + ioDoorEntry.getSerialId(),
+                                new MoverInfo(ioDoorInfo, ioDoorEntry));
             }
         }
     }
@@ -111,25 +131,33 @@ public class ActiveTransfersCollector extends Collector {
     private void putJobInfoIntoTransfers(Set<String> poolsToAskForMovers,
                     Map<String, MoverInfo> transfers)
                     throws InterruptedException {
+        SpreadAndWait<IoJobInfo[]> spreader = new SpreadAndWait<>(_cellStub);
         for (String poolName : poolsToAskForMovers) {
             _log.debug("Asking pool {} for movers", poolName);
-            try {
-                IoJobInfo[] infos = _cellStub.sendAndWait(
-                                new CellPath(poolName), "mover ls -binary",
-                                IoJobInfo[].class);
-                for (IoJobInfo info : infos) {
-                    String client = info.getClientName() + "#"
-                                    + info.getClientId();
-                    MoverInfo mover = transfers.get(client);
-                    if (mover == null) {
-                        _log.debug("No door found for mover {} of pool {}",
-                                        client, poolName);
-                    } else {
-                        mover.setIoJobInfo(info);
-                    }
+            spreader.send(new CellPath(poolName), IoJobInfo[].class, "mover ls -binary");
+        }
+        spreader.waitForReplies();
+        logLatencies(spreader);
+
+        for (Map.Entry<CellPath, IoJobInfo[]> reply : spreader.getReplies().entrySet()) {
+            for (IoJobInfo info : reply.getValue()) {
+                String client = info.getClientName() + "#"
+                                + info.getClientId();
+                MoverInfo mover = transfers.get(client);
+                if (mover == null) {
+                    _log.debug("No door found for mover {} of pool {}",
+                                    client, reply.getKey());
+                } else {
+                    mover.setIoJobInfo(info);
                 }
-            } catch (CacheException e) {
-                _log.debug("Exception asking pool {}: {}", poolName, e);
+            }
+        }
+    }
+
+    private void logLatencies(SpreadAndWait<?> spreader) {
+        if (_log.isDebugEnabled()) {
+            for (Map.Entry<CellPath, Long> latency : spreader.getLatencies().entrySet()) {
+                _log.debug("Reply from {} after {} ms", latency.getKey(), latency.getValue());
             }
         }
     }
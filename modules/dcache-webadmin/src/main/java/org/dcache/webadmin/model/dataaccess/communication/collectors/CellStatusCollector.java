@@ -3,22 +3,21 @@ package org.dcache.webadmin.model.dataaccess.communication.collectors;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 
 import diskCacheV111.poolManager.PoolManagerCellInfo;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.SpreadAndWait;
 
 import dmg.cells.nucleus.CellAddressCore;
 import dmg.cells.nucleus.CellInfo;
@@ -44,20 +43,26 @@ public class CellStatusCollector extends Collector {
     private Map<CellAddressCore, CellStatus> _statusTargets = new HashMap<>();
     private static final Logger _log = LoggerFactory.getLogger(CellStatusCollector.class);
 
-    private Set<CellAddressCore> getDoorNamesFromBroker(String loginBrokerName)
+    private Set<CellAddressCore> getDoorNamesFromBrokers()
             throws InterruptedException {
-        _log.debug("Requesting doorInfo from LoginBroker {}", loginBrokerName);
+        SpreadAndWait<LoginBrokerInfo[]> spreader = new SpreadAndWait<>(_cellStub);
+        for (String loginBrokerName : _loginBrokerNames) {
+            _log.debug("Requesting doorInfo from LoginBroker {}", loginBrokerName);
+            spreader.send(new CellPath(loginBrokerName), LoginBrokerInfo[].class,
+                    "ls -binary -all");
+        }
+        spreader.waitForReplies();
+
         Set<CellAddressCore> newDoors = new HashSet<>();
-        try {
-            LoginBrokerInfo[] infos = _cellStub.sendAndWait(new CellPath(loginBrokerName),
-                    "ls -binary -all", LoginBrokerInfo[].class);
+        for (LoginBrokerInfo[] infos : spreader.getReplies().values()) {
             for (LoginBrokerInfo info : infos) {
                 newDoors.add(new CellAddressCore(info.getCellName(), info.getDomainName()));
             }
-            _log.debug("Doors found: {}", newDoors);
-        } catch (CacheException ex) {
-            _log.debug("Could not retrieve Doors from {}", loginBrokerName);
         }
+        if (spreader.getReplyCount() < _loginBrokerNames.length) {
+            _log.debug("Could not retrieve Doors from all of {}", Arrays.toString(_loginBrokerNames));
+        }
+        _log.debug("Doors found: {}", newDoors);
         return newDoors;
     }
 
@@ -83,16 +88,11 @@ public class CellStatusCollector extends Collector {
         cellNames.add(new CellAddressCore(_gPlazmaName));
     }
 
-    private void addLoginBrokerTargets(Set<CellAddressCore> targetCells, String broker)
-            throws InterruptedException {
-        targetCells.addAll(getDoorNamesFromBroker(broker));
-        targetCells.add(new CellAddressCore(broker));
-    }
-
     private Set<CellAddressCore> getTargetCells() throws InterruptedException {
         Set<CellAddressCore> targetCells = new HashSet<>();
+        targetCells.addAll(getDoorNamesFromBrokers());
         for (String broker : _loginBrokerNames) {
-            addLoginBrokerTargets(targetCells, broker);
+            targetCells.add(new CellAddressCore(broker));
         }
         targetCells.addAll(getPoolCells());
         addStandardNames(targetCells);
@@ -100,15 +100,28 @@ public class CellStatusCollector extends Collector {
     }
 
     private void retrieveCellInfos() throws InterruptedException {
-        CountDownLatch doneSignal = new CountDownLatch(_statusTargets.size());
+        SpreadAndWait<CellInfo> spreader = new SpreadAndWait<>(_cellStub);
         for (CellStatus status : _statusTargets.values()) {
             _log.debug("Sending query to : {}", status.getCellPath());
-            CellInfoCallback callback = new CellInfoCallback(status, doneSignal);
-            Futures.addCallback(_cellStub.send(status.getCellPath(), "xgetcellinfo", CellInfo.class),
-                                callback);
+            spreader.send(status.getCellPath(), CellInfo.class, "xgetcellinfo");
         }
-        doneSignal.await(_cellStub.getTimeout(), _cellStub.getTimeoutUnit());
+        spreader.waitForReplies(_cellStub.getTimeout(), _cellStub.getTimeoutUnit());
         _log.debug("Queries finished or timeouted");
+
+        Map<CellPath, CellInfo> replies = spreader.getReplies();
+        Map<CellPath, Long> latencies = spreader.getLatencies();
+        for (CellStatus status : _statusTargets.values()) {
+            CellInfo info = replies.get(status.getCellPath());
+            if (info != null) {
+                status.setCellInfo(info);
+                status.updateLastAliveTime();
+                status.setPing(latencies.get(status.getCellPath()));
+            } else {
+                status.setPingUnreached();
+                status.setThreadCount(0);
+                status.setEventQueueSize(0);
+            }
+        }
     }
 
     private void collectCellStates() throws InterruptedException {
@@ -173,42 +186,6 @@ public class CellStatusCollector extends Collector {
         _gPlazmaName = gPlazmaName;
     }
 
-    private class CellInfoCallback implements FutureCallback<CellInfo>
-    {
-        private CellStatus _cellStatus;
-        private long _callbackCreationTime;
-        private CountDownLatch _doneSignal;
-
-        public CellInfoCallback(CellStatus status, CountDownLatch doneSignal) {
-            _cellStatus = status;
-            _callbackCreationTime = System.currentTimeMillis();
-            _doneSignal = doneSignal;
-        }
-
-        @Override
-        public void onSuccess(CellInfo message)
-        {
-            _cellStatus.setCellInfo(message);
-            _cellStatus.updateLastAliveTime();
-            long now = System.currentTimeMillis();
-            _cellStatus.setPing(now - _callbackCreationTime);
-            _doneSignal.countDown();
-        }
-
-        @Override
-        public void onFailure(Throwable t)
-        {
-            resetCellStatus();
-            _doneSignal.countDown();
-        }
-
-        private void resetCellStatus() {
-            _cellStatus.setPingUnreached();
-            _cellStatus.setThreadCount(0);
-            _cellStatus.setEventQueueSize(0);
-        }
-    }
-
     /* (non-Javadoc)
      * @see java.util.concurrent.Callable#call()
      */
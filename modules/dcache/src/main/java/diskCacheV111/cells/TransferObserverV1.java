@@ -23,6 +23,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import diskCacheV111.util.HTMLBuilder;
 import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.SpreadAndWait;
 import diskCacheV111.vehicles.IoDoorEntry;
 import diskCacheV111.vehicles.IoDoorInfo;
 import diskCacheV111.vehicles.IoJobInfo;
@@ -54,6 +55,8 @@ public class TransferObserverV1
     private       List<IoEntry> _ioList;
     private       long          _update         = 120000L;
     private       long          _timeUsed;
+    private       long          _slowestLatency = -1;
+    private       String        _slowestCell;
     private       long          _processCounter;
     private final FieldMap      _fieldMap;
     private final Map<String,TableEntry> _tableHash
@@ -450,6 +453,11 @@ public class TransferObserverV1
         pw.println("    Update Time : "+(_update/1000L)+" seconds");
         pw.println("        Counter : "+_processCounter);
         pw.println(" Last Time Used : "+_timeUsed+" msec's");
+        synchronized (this) {
+            if (_slowestCell != null) {
+                pw.println(" Slowest Reply  : "+_slowestCell+" ("+_slowestLatency+" msec's)");
+            }
+        }
     }
 
     @Override
@@ -460,8 +468,10 @@ public class TransferObserverV1
                 try {
                     _processCounter++;
                     long start = System.currentTimeMillis();
-                    collectDataSequentially();
+                    collectData();
                     _timeUsed = System.currentTimeMillis() - start;
+                } catch (InterruptedException e) {
+                    throw e;
                 } catch (Exception ee) {
                     _log.warn(ee.toString(), ee);
                 }
@@ -536,7 +546,11 @@ public class TransferObserverV1
                     @Override
                     public void run()
                     {
-                        collectDataSequentially();
+                        try {
+                            collectData();
+                        } catch (InterruptedException e) {
+                            _log.info("Data collector interrupted");
+                        }
                     }
                 }, "worker").start();
             return "Started";
@@ -548,66 +562,89 @@ public class TransferObserverV1
         }
     }
 
-    private void getBrokerInfo()
+    private void getBrokerInfo() throws InterruptedException
     {
         //
         // ask the broker for doors.
         //
         if (_loginBroker != null) {
-            List<LoginBrokerInfo> infoList = new ArrayList<>();
-
+            SpreadAndWait<LoginBrokerInfo[]> spreader = new SpreadAndWait<>(_cellStub);
             for (String loginBroker : _loginBroker.split(",")) {
                 _log.info("Requesting doorInfo from LoginBroker " + loginBroker);
-                try {
-                    CellAddressCore brokerAddress = new CellAddressCore(loginBroker);
-                    LoginBrokerInfo [] infos =
-                            _cellStub.sendAndWait(new CellPath(brokerAddress), "ls -binary -all",
-                                                  LoginBrokerInfo[].class);
-
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("LoginBroker (").append(loginBroker)
-                            .append(") : ");
-                    for (LoginBrokerInfo info : infos) {
-                        CellAddressCore doorAddress =
-                                new CellAddressCore(info.getCellName(), info.getDomainName());
-                        _doors.addDoor(doorAddress);
-                        sb.append(doorAddress).append(",");
-                    }
-                    _log.info(sb.toString());
-                    infoList.addAll(Arrays.asList(infos));
-                } catch (Exception e) {
-                    _log.info("Error from sendAndWait : " + e);
+                spreader.send(new CellPath(new CellAddressCore(loginBroker)),
+                              LoginBrokerInfo[].class, "ls -binary -all");
+            }
+            spreader.waitForReplies();
+            recordLatencies(spreader);
+
+            List<LoginBrokerInfo> infoList = new ArrayList<>();
+            for (Map.Entry<CellPath,LoginBrokerInfo[]> reply : spreader.getReplies().entrySet()) {
+                LoginBrokerInfo [] infos = reply.getValue();
+                StringBuilder sb = new StringBuilder();
+                sb.append("LoginBroker (").append(reply.getKey())
+                        .append(") : ");
+                for (LoginBrokerInfo info : infos) {
+                    CellAddressCore doorAddress =
+                            new CellAddressCore(info.getCellName(), info.getDomainName());
+                    _doors.addDoor(doorAddress);
+                    sb.append(doorAddress).append(",");
                 }
+                _log.info(sb.toString());
+                infoList.addAll(Arrays.asList(infos));
             }
             updateDoorPage(infoList.toArray(new LoginBrokerInfo[infoList.size()])) ;
         }
     }
 
-    private void collectDataSequentially()
+    /**
+     * Remembers the slowest responder of the current collection cycle.
+     */
+    private synchronized void recordLatencies(SpreadAndWait<?> spreader)
     {
+        for (Map.Entry<CellPath,Long> latency : spreader.getLatencies().entrySet()) {
+            if (latency.getValue() > _slowestLatency) {
+                _slowestLatency = latency.getValue();
+                _slowestCell = latency.getKey().toString();
+            }
+        }
+    }
+
+    private void collectData() throws InterruptedException
+    {
+        synchronized (this) {
+            _slowestLatency = -1;
+            _slowestCell = null;
+        }
+
         _doors.clear();
 
         getBrokerInfo();
 
-        _log.info("Asking doors for 'doorClientList' (one by one)");
+        _log.info("Asking doors for 'doorClientList'");
+        SpreadAndWait<LoginManagerChildrenInfo> doorSpreader = new SpreadAndWait<>(_cellStub);
         for (CellAddressCore doorAddress : _doors.doors()) {
             _log.info("Requesting client list from : {}", doorAddress);
-            try {
-                LoginManagerChildrenInfo info =
-                        _cellStub.sendAndWait(new CellPath(doorAddress), "get children -binary",
-                                              LoginManagerChildrenInfo.class);
+            doorSpreader.send(new CellPath(doorAddress), LoginManagerChildrenInfo.class,
+                              "get children -binary");
+        }
+        doorSpreader.waitForReplies();
+        recordLatencies(doorSpreader);
+
+        Map<CellPath,LoginManagerChildrenInfo> doorReplies = doorSpreader.getReplies();
+        for (CellAddressCore doorAddress : _doors.doors()) {
+            LoginManagerChildrenInfo info = doorReplies.get(new CellPath(doorAddress));
+            if (info != null) {
                 _log.info(doorAddress + " reported about {} children", info.getChildrenCount());
                 _doors.setDoorInfo(info);
-            } catch (Exception e) {
+            } else {
+                _log.info("No children reported by {}", doorAddress);
                 _doors.undefineDoor(doorAddress);
-                _log.info("Exception : " + e);
             }
         }
         //
         // now we got all our Children ...
         //
-        Map<String, IoEntry> ioList   = new HashMap<>();
-        Set<String>          poolHash = new HashSet<>();
+        SpreadAndWait<IoDoorInfo> childSpreader = new SpreadAndWait<>(_cellStub);
         for (DoorHandler.Entry entry : _doors.entries()) {
             LoginManagerChildrenInfo info = entry.getChildInfo();
 
@@ -619,58 +656,56 @@ public class TransferObserverV1
                 CellAddressCore childDoor = new CellAddressCore(child, info.getCellDomainName());
 
                 _log.info("Requesting client info from: {}", childDoor);
-                try {
-                    IoDoorInfo ioDoorInfo =
-                            _cellStub.sendAndWait(new CellPath(childDoor), "get door info -binary", IoDoorInfo.class);
-
-                    _log.info(childDoor + " reply ok");
-
-                    List<IoDoorEntry> ioDoorEntries = ioDoorInfo.getIoDoorEntries();
-                    if (ioDoorEntries.size() == 0) {
-                        continue;
-                    }
-
-                    for (IoDoorEntry ioDoorEntry : ioDoorEntries) {
-                        _log.info("Adding ioEntry: {}", ioDoorEntry);
-                        ioList.put(childDoor + "#" + ioDoorEntry.getSerialId(),
-                                new IoEntry(ioDoorInfo, ioDoorEntry));
-                        String pool = ioDoorEntry.getPool();
-                        if (pool != null && pool.length() > 0 && !pool
-                                .startsWith("<")) {
-                            poolHash.add(pool);
-                        }
-                    }
+                childSpreader.send(new CellPath(childDoor), IoDoorInfo.class, "get door info -binary");
+            }
+        }
+        childSpreader.waitForReplies();
+        recordLatencies(childSpreader);
 
-                } catch (Exception e) {
-                    _log.info("Exception: {}", e);
+        Map<String, IoEntry> ioList   = new HashMap<>();
+        Set<String>          poolHash = new HashSet<>();
+        for (Map.Entry<CellPath,IoDoorInfo> reply : childSpreader.getReplies().entrySet()) {
+            CellAddressCore childDoor = reply.getKey().getDestinationAddress();
+            IoDoorInfo ioDoorInfo = reply.getValue();
+
+            _log.info(childDoor + " reply ok");
+
+            for (IoDoorEntry ioDoorEntry : ioDoorInfo.getIoDoorEntries()) {
+                _log.info("Adding ioEntry: {}", ioDoorEntry);
+                ioList.put(childDoor + "#" + ioDoorEntry.getSerialId(),
+                        new IoEntry(ioDoorInfo, ioDoorEntry));
+                String pool = ioDoorEntry.getPool();
+                if (pool != null && pool.length() > 0 && !pool
+                        .startsWith("<")) {
+                    poolHash.add(pool);
                 }
             }
         }
         _log.info("Asking pools for io info");
+        SpreadAndWait<IoJobInfo[]> poolSpreader = new SpreadAndWait<>(_cellStub);
         for (String poolName : poolHash) {
             _log.info("Asking pool: {}", poolName);
-            try {
-                IoJobInfo[] infos =
-                        _cellStub.sendAndWait(new CellPath(new CellAddressCore(poolName)), "mover ls -binary",
-                                              IoJobInfo[].class);
+            poolSpreader.send(new CellPath(new CellAddressCore(poolName)), IoJobInfo[].class,
+                              "mover ls -binary");
+        }
+        poolSpreader.waitForReplies();
+        recordLatencies(poolSpreader);
 
-                _log.info("{} reply ok", poolName);
+        for (Map.Entry<CellPath,IoJobInfo[]> reply : poolSpreader.getReplies().entrySet()) {
+            _log.info("{} reply ok", reply.getKey());
 
-                //
-                // where is our client
-                //
-                for (IoJobInfo info : infos) {
-                    String client = info.getClientName()+"#"+
-                        info.getClientId() ;
-                    IoEntry ioEntry = ioList.get(client);
-                    if (ioEntry == null) {
-                        _log.info("No entry found for {}", client);
-                    } else {
-                        ioEntry._ioJobInfo = info;
-                    }
+            //
+            // where is our client
+            //
+            for (IoJobInfo info : reply.getValue()) {
+                String client = info.getClientName()+"#"+
+                    info.getClientId() ;
+                IoEntry ioEntry = ioList.get(client);
+                if (ioEntry == null) {
+                    _log.info("No entry found for {}", client);
+                } else {
+                    ioEntry._ioJobInfo = info;
                 }
-            } catch (Exception e) {
-                _log.info("Exception: {}", e);
             }
         }
         List<IoEntry> resultList;
@@ -30,6 +30,7 @@ import diskCacheV111.vehicles.Pool2PoolTransferMsg;
 import diskCacheV111.vehicles.PoolAcceptFileMessage;
 import diskCacheV111.vehicles.PoolFetchFileMessage;
 import diskCacheV111.vehicles.PoolIoFileMessage;
+import diskCacheV111.vehicles.PoolManagerPoolCostMessage;
 import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
 import diskCacheV111.vehicles.PoolMgrSelectPoolMsg;
 import diskCacheV111.vehicles.PoolMgrSelectWritePoolMsg;
@@ -43,6 +44,7 @@ import dmg.cells.nucleus.CellMessageReceiver;
 import dmg.cells.nucleus.CellSetupProvider;
 
 import org.dcache.cells.CellMessageDispatcher;
+import org.dcache.commons.stats.LatencyHistogram;
 import org.dcache.namespace.FileAttribute;
 import org.dcache.poolmanager.PoolInfo;
 import org.dcache.util.Args;
@@ -72,6 +74,16 @@ public class CostModuleV1
     private transient CellMessageDispatcher _handlers =
         new CellMessageDispatcher("messageToForward");
 
+    /* Staleness metrics: the number of cost reports received from pools,
+     * the number of changes estimated from forwarded messages, and the
+     * age of the pool cost used by pool selection.
+     */
+    private long _heartbeats;
+    private long _costUpdates;
+    private long _ignoredCostUpdates;
+    private long _estimates;
+    private transient LatencyHistogram _staleness = new LatencyHistogram();
+
 
     /**
      * Information about some specific pool.
@@ -80,15 +92,30 @@ public class CostModuleV1
    {
        private static final long serialVersionUID = -6380756950554320179L;
 
+       /** Time of the last heartbeat; determines whether the entry is valid. */
        private final long timestamp;
+
+       /** Time of the last cost update, either by a heartbeat or in between. */
+       private final long _costTimestamp;
+
+       private final long _serialId;
        private final PoolCostInfo _info;
        private double _fakeCpu = -1.0;
        private final ImmutableMap<String,String> _tagMap;
        private final CellAddressCore _address;
 
-       public Entry(CellAddressCore address, PoolCostInfo info, Map<String,String> tagMap)
+       public Entry(CellAddressCore address, long serialId, PoolCostInfo info,
+                    Map<String,String> tagMap)
        {
-           timestamp = System.currentTimeMillis();
+           this(address, serialId, info, tagMap, System.currentTimeMillis());
+       }
+
+       private Entry(CellAddressCore address, long serialId, PoolCostInfo info,
+                     Map<String,String> tagMap, long heartbeat)
+       {
+           timestamp = heartbeat;
+           _costTimestamp = System.currentTimeMillis();
+           _serialId = serialId;
            _address = address;
            _info = info;
            _tagMap =
@@ -102,6 +129,29 @@ public class CostModuleV1
            return (System.currentTimeMillis() - timestamp) < 5*60*1000L;
        }
 
+       /**
+        * Returns a copy of this entry with updated cost information. The
+        * time of the last heartbeat is retained, so that a pool is still
+        * considered stale if heartbeats stop while cost updates arrive.
+        */
+       public Entry withPoolCostInfo(PoolCostInfo info)
+       {
+           return new Entry(_address, _serialId, info, _tagMap, timestamp);
+       }
+
+       public long getSerialId()
+       {
+           return _serialId;
+       }
+
+       /**
+        * Returns the age of the cost information.
+        */
+       public long getAge()
+       {
+           return System.currentTimeMillis() - _costTimestamp;
+       }
+
        public PoolCostInfo getPoolCostInfo()
        {
            return _info;
@@ -151,8 +201,32 @@ public class CostModuleV1
         if (shouldRemovePool) {
             _hash.remove(poolName);
         } else if (newInfo != null) {
-            _hash.put(poolName, new Entry(poolAddress, newInfo, msg.getTagMap()));
+            _hash.put(poolName, new Entry(poolAddress, msg.getSerialId(), newInfo, msg.getTagMap()));
+        }
+        _heartbeats++;
+    }
+
+    /**
+     * Updates the cost of a pool in between heartbeats. Updates from pools
+     * not known from a heartbeat, or from a previous incarnation of the pool,
+     * are ignored; the next heartbeat corrects the cost in that case.
+     */
+    public synchronized void messageArrived(PoolManagerPoolCostMessage msg)
+    {
+        if (!_update) {
+            return;
         }
+
+        Entry poolEntry = _hash.get(msg.getPoolName());
+        PoolCostInfo newInfo = msg.getPoolCostInfo();
+        if (poolEntry == null || newInfo == null || poolEntry.getSerialId() != msg.getSerialId()) {
+            _ignoredCostUpdates++;
+            return;
+        }
+
+        considerInvalidatingCache(poolEntry.getPoolCostInfo(), newInfo);
+        _hash.put(msg.getPoolName(), poolEntry.withPoolCostInfo(newInfo));
+        _costUpdates++;
     }
 
     private void considerInvalidatingCache(PoolCostInfo currentInfo, PoolCostInfo newInfo)
@@ -435,6 +509,16 @@ public class CostModuleV1
         pw.append(" Update  : ").println(_update?"on":"off");
         pw.append(" Active  : ").println(_isActive?"yes":"no");
         pw.append(" Magic   : ").println(_magic?"yes":"no");
+        synchronized (this) {
+            pw.append(" Updates : ").append(String.valueOf(_heartbeats)).append(" heartbeats, ")
+                    .append(String.valueOf(_costUpdates)).append(" cost updates, ")
+                    .append(String.valueOf(_ignoredCostUpdates)).append(" ignored, ")
+                    .append(String.valueOf(_estimates)).println(" estimated changes");
+        }
+        pw.append(" Age of cost used for selection : ")
+                .append(String.valueOf(_staleness.getValueAtPercentile(50))).append(" ms (50%), ")
+                .append(String.valueOf(_staleness.getValueAtPercentile(95))).append(" ms (95%), ")
+                .append(String.valueOf(_staleness.getValueAtPercentile(99))).println(" ms (99%)");
     }
 
     @Override
@@ -460,6 +544,7 @@ public class CostModuleV1
 
     private void xsay(String queue, String pool, int diff, long pinned, Object obj)
     {
+        _estimates++;
         if (_debug) {
             _log.debug("CostModuleV1 : "+queue+" queue of "+pool+" modified by "+diff+"/" + pinned + " due to "+obj.getClass().getName());
         }
@@ -626,6 +711,7 @@ public class CostModuleV1
         Collection<PoolCostInfo> costInfos = new ArrayList<>();
         for (Entry entry: _hash.values()) {
             if (entry.isValid() || !_update) {
+                _staleness.record(entry.getAge());
                 costInfos.add(entry.getPoolCostInfo());
             }
         }
@@ -637,6 +723,7 @@ public class CostModuleV1
     {
         Entry entry = _hash.get(poolName);
         if (entry != null && (entry.isValid() || !_update)) {
+            _staleness.record(entry.getAge());
             return entry.getPoolCostInfo();
         }
         return null;
@@ -650,6 +737,7 @@ public class CostModuleV1
         for (String pool: pools) {
             Entry entry = _hash.get(pool);
             if (entry != null && (entry.isValid() || !_update)) {
+                _staleness.record(entry.getAge());
                 infos.add(entry.getPoolInfo());
             }
         }
@@ -664,6 +752,7 @@ public class CostModuleV1
         for (String pool: pools) {
             Entry entry = _hash.get(pool);
             if (entry != null && (entry.isValid() || !_update)) {
+                _staleness.record(entry.getAge());
                 map.put(pool, entry.getPoolInfo());
             }
         }
@@ -676,5 +765,6 @@ public class CostModuleV1
         in.defaultReadObject();
         _handlers = new CellMessageDispatcher("messageToForward");
         _handlers.addMessageListener(this);
+        _staleness = new LatencyHistogram();
     }
 }
@@ -14,14 +14,19 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Deque;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -58,8 +63,11 @@ import dmg.cells.nucleus.CellMessageReceiver;
 import dmg.cells.nucleus.CellPath;
 import dmg.cells.nucleus.NoRouteToCellException;
 import dmg.cells.nucleus.UOID;
+import dmg.util.HashedTimingWheel;
 
 import org.dcache.cells.CellStub;
+import org.dcache.namespace.FileAttribute;
+import org.dcache.poolmanager.HotFileDetector;
 import org.dcache.poolmanager.Partition;
 import org.dcache.poolmanager.PartitionManager;
 import org.dcache.poolmanager.PoolInfo;
@@ -93,8 +101,48 @@ public class RequestContainerV5
     /** value in milliseconds */
     private static final int DEFAULT_RETRY_INTERVAL = 60000;
 
-    private final Map<UOID, PoolRequestHandler>     _messageHash   = new HashMap<>() ;
-    private final Map<String, PoolRequestHandler>   _handlerHash   = new HashMap<>() ;
+    /** Number of buckets of the timing wheel. */
+    private static final int TIMEOUT_BUCKETS = 512;
+
+    /** Counters per row of the hot file sketch; 1 MiB in total. */
+    private static final int HOT_FILE_SKETCH_WIDTH = 1 << 16;
+
+    /**
+     * Handlers waiting for a reply, by the UOID of the request. Compound
+     * operations that rely on the size of the map synchronize on the map.
+     */
+    private final ConcurrentMap<UOID, PoolRequestHandler> _messageHash =
+        new ConcurrentHashMap<>();
+
+    /**
+     * All handlers by their canonical name. The map is a concurrent map
+     * rather than being guarded by a single lock; the request messages of
+     * a handler are guarded by the handler.
+     */
+    private final ConcurrentMap<String, PoolRequestHandler> _handlerHash =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Number of handlers in each state, maintained as handlers change
+     * state.
+     */
+    private final Map<RequestState, AtomicInteger> _stateCounts =
+        new EnumMap<>(RequestState.class);
+
+    /**
+     * Timeouts, TTL expiry and ping deadlines of handlers. Rather than
+     * visiting all handlers periodically, each handler schedules its next
+     * deadline and the ticker only notifies the handlers whose deadline
+     * passed.
+     */
+    private final HashedTimingWheel<PoolRequestHandler> _timeouts;
+
+    /**
+     * Tracks the popularity of files read through the container and
+     * triggers pool to pool replication of files that are hot.
+     */
+    private final HotFileDetector _hotFiles =
+        new HotFileDetector(HOT_FILE_SKETCH_WIDTH);
 
     private CellStub _billing;
     private long        _retryTimer    = 15 * 60 * 1000 ;
@@ -139,6 +187,11 @@ public class RequestContainerV5
 
     public RequestContainerV5( int stagingRetryInterval) {
         _stagingRetryInterval = stagingRetryInterval;
+        _timeouts = new HashedTimingWheel<>(stagingRetryInterval, TimeUnit.MILLISECONDS,
+                                            TIMEOUT_BUCKETS);
+        for (RequestState state: RequestState.values()) {
+            _stateCounts.put(state, new AtomicInteger());
+        }
         _tickerThread = new Thread(this, "Container-ticker");
         _tickerThread.start();
     }
@@ -197,13 +250,9 @@ public class RequestContainerV5
     public void messageArrived(CellMessage envelope, Object message)
     {
         UOID uoid = envelope.getLastUOID();
-        PoolRequestHandler handler;
-
-        synchronized (_messageHash) {
-            handler = _messageHash.remove(uoid);
-            if (handler == null) {
-                return;
-            }
+        PoolRequestHandler handler = _messageHash.remove(uoid);
+        if (handler == null) {
+            return;
         }
 
         handler.mailForYou(message);
@@ -216,14 +265,8 @@ public class RequestContainerV5
             try {
                 Thread.sleep(_stagingRetryInterval) ;
 
-                List<PoolRequestHandler> list;
-                synchronized (_handlerHash) {
-                    list = new ArrayList<>(_handlerHash.values());
-                }
-                for (PoolRequestHandler handler: list) {
-                    if (handler != null) {
-                        handler.alive();
-                    }
+                for (PoolRequestHandler handler: _timeouts.expire(System.currentTimeMillis())) {
+                    handler.alive();
                 }
             } catch (InterruptedException e) {
                 break;
@@ -240,17 +283,7 @@ public class RequestContainerV5
     public void poolStatusChanged(String poolName, int poolStatus) {
         _log.info("Restore Manager : got 'poolRestarted' for " + poolName);
         try {
-            List<PoolRequestHandler> list;
-            synchronized (_handlerHash) {
-                list = new ArrayList<>(_handlerHash.values());
-            }
-
-            for (PoolRequestHandler rph : list) {
-
-                if (rph == null) {
-                    continue;
-                }
-
+            for (PoolRequestHandler rph : _handlerHash.values()) {
 
                 switch( poolStatus ) {
                     case PoolStatusChangedMessage.UP:
@@ -297,12 +330,32 @@ public class RequestContainerV5
        pw.println( "Allow stage on cost : "+(def._stageOnCost ? "on":"off") ) ;
        pw.println( "      Restore Limit : "+(_maxRestore<0?"unlimited":(""+_maxRestore)));
        pw.println( "   Restore Exceeded : "+_restoreExceeded ) ;
+       pw.println( "          Hot Files : "+_hotFiles ) ;
        if( _suspendIncoming ) {
            pw.println("   Suspend Incoming : on (not persistent)");
        }
        if( _suspendStaging ) {
            pw.println("   Suspend Staging  : on (not persistent)");
        }
+       pw.println( "           Requests : "+getStateCounts() ) ;
+       pw.println( "  Pending Deadlines : "+_timeouts.size() ) ;
+    }
+
+    /**
+     * Returns the number of handlers in each state that has handlers.
+     */
+    private String getStateCounts()
+    {
+        StringBuilder sb = new StringBuilder();
+        int total = 0;
+        for (Map.Entry<RequestState, AtomicInteger> entry: _stateCounts.entrySet()) {
+            int count = entry.getValue().get();
+            if (count > 0) {
+                sb.append(' ').append(entry.getKey()).append('=').append(count);
+            }
+            total += count;
+        }
+        return total + (sb.length() == 0 ? "" : " (" + sb.substring(1) + ")");
     }
 
     @Override
@@ -314,6 +367,13 @@ public class RequestContainerV5
         pw.append("rc set poolpingtimer ").println(_checkFilePingTimer/1000);
         pw.append("rc set max restore ")
             .println(_maxRestore<0?"unlimited":(""+_maxRestore));
+        if (_hotFiles.isEnabled()) {
+            pw.append("rc set hotfile ").append(String.valueOf(_hotFiles.getThreshold()))
+                .append(" -replicas=").append(String.valueOf(_hotFiles.getMaxReplicas()))
+                .append(" -decay=").println(_hotFiles.getDecayPeriod(TimeUnit.SECONDS));
+        } else {
+            pw.println("rc set hotfile off");
+        }
     }
 
     public final static String hh_rc_set_sameHostCopy =
@@ -392,6 +452,40 @@ public class RequestContainerV5
     "    check the pool whether the request is still pending, failed"+
     "    or has been successful" +
     "";
+    public static final String fh_rc_set_hotfile =
+        "Replicate frequently read files to additional pools.  A file is\n" +
+        "hot if it is read at least <threshold> times within the decay\n" +
+        "period.  Hot files with fewer than the given number of replicas\n" +
+        "are replicated by pool to pool transfer, at most once per decay\n" +
+        "period.  Read counts are halved every decay period, so files no\n" +
+        "longer read drop out.\n\n" +
+        "  -replicas=<n>     maximum number of replicas, default 3\n" +
+        "  -decay=<seconds>  decay period, default 300";
+    public static final String hh_rc_set_hotfile = "<threshold>|off [-replicas=<n>] [-decay=<seconds>]";
+    public String ac_rc_set_hotfile_$_1(Args args)
+    {
+        int threshold = args.argv(0).equals("off") ? 0 : Integer.parseInt(args.argv(0));
+        String replicas = args.getOpt("replicas");
+        int maxReplicas = (replicas == null) ? _hotFiles.getMaxReplicas() : Integer.parseInt(replicas);
+        String decay = args.getOpt("decay");
+        long decayPeriod = (decay == null)
+                ? _hotFiles.getDecayPeriod(TimeUnit.SECONDS)
+                : Long.parseLong(decay);
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        if (maxReplicas < 1) {
+            throw new IllegalArgumentException("Maximum number of replicas must be positive");
+        }
+        if (decayPeriod <= 0) {
+            throw new IllegalArgumentException("Decay period must be positive");
+        }
+        _hotFiles.setMaxReplicas(maxReplicas);
+        _hotFiles.setDecayPeriod(decayPeriod, TimeUnit.SECONDS);
+        _hotFiles.setThreshold(threshold);
+        return "";
+    }
+
     public static final String hh_rc_set_poolpingtimer = "<checkPoolFileTimer/seconds>" ;
     public String ac_rc_set_poolpingtimer_$_1(Args args ){
        _checkFilePingTimer = 1000L * Long.parseLong(args.argv(0));
@@ -468,28 +562,17 @@ public class RequestContainerV5
     {
        boolean forceAll = args.hasOption("force-all") ;
        if( args.argv(0).equals("*") ){
-          List<PoolRequestHandler> all;
-          //
-          // Remember : we are not allowed to call 'retry' as long
-          // as we  are holding the _handlerHash lock.
-          //
-          synchronized( _handlerHash ){
-             all = new ArrayList<>( _handlerHash.values() ) ;
-          }
-          for (PoolRequestHandler rph : all) {
+          for (PoolRequestHandler rph : _handlerHash.values()) {
               if( forceAll || ( rph._currentRc != 0 ) ) {
                   rph.retry();
               }
           }
        }else{
-          PoolRequestHandler rph;
-          synchronized( _handlerHash ){
-             rph = _handlerHash.get(args.argv(0));
-             if( rph == null ) {
-                 throw new
-                         IllegalArgumentException("Not found : " + args
-                         .argv(0));
-             }
+          PoolRequestHandler rph = _handlerHash.get(args.argv(0));
+          if( rph == null ) {
+              throw new
+                      IllegalArgumentException("Not found : " + args
+                      .argv(0));
           }
           rph.retry() ;
        }
@@ -501,14 +584,10 @@ public class RequestContainerV5
        int    errorNumber = args.argc() > 1 ? Integer.parseInt(args.argv(1)) : 1;
        String errorString = args.argc() > 2 ? args.argv(2) : "Operator Intervention" ;
 
-       PoolRequestHandler rph;
-
-       synchronized( _handlerHash ){
-          rph = _handlerHash.get(args.argv(0));
-          if( rph == null ) {
-              throw new
-                      IllegalArgumentException("Not found : " + args.argv(0));
-          }
+       PoolRequestHandler rph = _handlerHash.get(args.argv(0));
+       if( rph == null ) {
+           throw new
+                   IllegalArgumentException("Not found : " + args.argv(0));
        }
        rph.failed(errorNumber,errorString) ;
        return "" ;
@@ -517,37 +596,27 @@ public class RequestContainerV5
     public String ac_rc_destroy_$_1( Args args )
     {
 
-       PoolRequestHandler rph;
-
-       synchronized( _handlerHash ){
-          rph = _handlerHash.get(args.argv(0));
-          if( rph == null ) {
-              throw new
-                      IllegalArgumentException("Not found : " + args.argv(0));
-          }
-
-          _handlerHash.remove( args.argv(0) ) ;
+       PoolRequestHandler rph = _handlerHash.get(args.argv(0));
+       if( rph == null || !_handlerHash.remove(args.argv(0), rph) ) {
+           throw new
+                   IllegalArgumentException("Not found : " + args.argv(0));
        }
+       rph.unregister();
        return "" ;
     }
-    public static final String hh_rc_ls = " [<regularExpression>] [-w] [-l] # lists pending requests" ;
+    public static final String hh_rc_ls = " [<regularExpression>] [-w] [-l] [-s] # lists pending requests" ;
     public String ac_rc_ls_$_0_1( Args args ){
        StringBuilder sb  = new StringBuilder() ;
 
        Pattern  pattern = args.argc() > 0 ? Pattern.compile(args.argv(0)) : null ;
        boolean isLongListing = args.hasOption("l");
 
-       if( !args.hasOption("w") ){
-          List<PoolRequestHandler>    allRequestHandlers;
-          synchronized( _handlerHash ){
-              allRequestHandlers = new ArrayList<>( _handlerHash.values() ) ;
+       if( args.hasOption("s") ){
+          for (Map.Entry<RequestState, AtomicInteger> entry: _stateCounts.entrySet()) {
+              sb.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
           }
-
-          for( PoolRequestHandler h : allRequestHandlers ){
-
-              if( h == null ) {
-                  continue;
-              }
+       }else if( !args.hasOption("w") ){
+          for( PoolRequestHandler h : _handlerHash.values() ){
               String line = h.toString() ;
               if( ( pattern == null ) || pattern.matcher(line).matches() ) {
                   sb.append(line).append("\n");
@@ -562,12 +631,7 @@ public class RequestContainerV5
           }
        }else{
 
-           Map<UOID, PoolRequestHandler>  allPendingRequestHandlers   = new HashMap<>() ;
-          synchronized(_messageHash){
-              allPendingRequestHandlers.putAll( _messageHash ) ;
-          }
-
-          for (Map.Entry<UOID, PoolRequestHandler> requestHandler : allPendingRequestHandlers.entrySet()) {
+          for (Map.Entry<UOID, PoolRequestHandler> requestHandler : _messageHash.entrySet()) {
 
                 UOID uoid = requestHandler.getKey();
                 PoolRequestHandler h = requestHandler.getValue();
@@ -587,17 +651,9 @@ public class RequestContainerV5
     public static final String hh_xrc_ls = " # lists pending requests (binary)" ;
     public Object ac_xrc_ls( Args args ){
 
-       List<PoolRequestHandler> all;
-       synchronized( _handlerHash ){
-          all = new ArrayList<>( _handlerHash.values() ) ;
-       }
-
        List<RestoreHandlerInfo>          list = new ArrayList<>() ;
 
-       for( PoolRequestHandler h: all  ){
-          if( h  == null ) {
-              continue;
-          }
+       for( PoolRequestHandler h: _handlerHash.values()  ){
           list.add( h.getRestoreHandlerInfo() ) ;
        }
        return list.toArray( new RestoreHandlerInfo[list.size()] ) ;
@@ -638,18 +694,56 @@ public class RequestContainerV5
         String canonicalName = pnfsId +"@"+netName+"-"+protocolName+(enforceP2P?"-p2p":"")  ;
         //
         //
-        PoolRequestHandler handler;
         _log.info( "Adding request for : "+canonicalName ) ;
-        synchronized( _handlerHash ){
-           //
-           handler = _handlerHash.get(canonicalName);
-           if( handler == null ){
-              _handlerHash.put(
-                     canonicalName ,
-                     handler = new PoolRequestHandler( pnfsId , canonicalName, allowedStates ) ) ;
-           }
-           handler.addRequest(envelope) ;
+        while (true) {
+            PoolRequestHandler handler = _handlerHash.get(canonicalName);
+            if (handler == null) {
+                PoolRequestHandler newHandler =
+                    new PoolRequestHandler( pnfsId , canonicalName, allowedStates ) ;
+                handler = _handlerHash.putIfAbsent(canonicalName, newHandler);
+                if (handler == null) {
+                    handler = newHandler;
+                    handler.register();
+                }
+            }
+            /* A handler that answered all its requests is removed from
+             * _handlerHash and cannot accept further requests; in that
+             * case we retry with a new handler.
+             */
+            if (handler.addRequest(envelope)) {
+                break;
+            }
+            _handlerHash.remove(canonicalName, handler);
         }
+
+        /* Only files with a disk replica can be replicated; a file that
+         * is only on tape is staged rather than copied.
+         */
+        FileAttributes attributes = request.getFileAttributes();
+        if (!enforceP2P && attributes.isDefined(FileAttribute.LOCATIONS) &&
+                !attributes.getLocations().isEmpty() &&
+                _hotFiles.shouldReplicate(pnfsId, attributes.getLocations().size(),
+                                          System.currentTimeMillis())) {
+            replicateHotFile(request);
+        }
+    }
+
+    /**
+     * Triggers replication of a hot file by submitting a replication
+     * request on behalf of the read request. The replication is handled
+     * like any other pool to pool transfer, but nobody waits for the
+     * reply.
+     */
+    private void replicateHotFile(PoolMgrSelectReadPoolMsg request)
+        throws IOException
+    {
+        _log.info("Replicating hot file {}", request.getPnfsId());
+        PoolMgrReplicateFileMsg replicate =
+            new PoolMgrReplicateFileMsg(request.getFileAttributes(),
+                                        request.getProtocolInfo());
+        replicate.setReplyRequired(false);
+        messageArrived(new CellMessage(new CellPath(getCellName()), replicate),
+                       replicate);
     }
 
 
@@ -774,6 +868,22 @@ public class RequestContainerV5
          */
         private long _nextTtlTimeout = Long.MAX_VALUE;
 
+        /**
+         * Whether the handler answered all requests and thus no longer
+         * accepts requests. Guarded by _messages.
+         */
+        private boolean _isClosed;
+
+        /**
+         * Whether the handler is counted in _stateCounts, and whether it
+         * has been removed from _handlerHash. Guarded by this.
+         */
+        private boolean _isRegistered;
+        private boolean _isRemoved;
+
+        /** The next deadline of this handler. Guarded by this. */
+        private HashedTimingWheel.Timeout<PoolRequestHandler> _timeout;
+
         private class CheckFilePingHandler {
             private long _timeInterval;
             private long _timer;
@@ -812,10 +922,8 @@ public class RequestContainerV5
             {
                 _candidate = null;
                 _state = PingState.STOPPED;
-                synchronized (_messageHash) {
-                    if (_waitingFor != null) {
-                        _messageHash.remove(_waitingFor);
-                    }
+                if (_waitingFor != null) {
+                    _messageHash.remove(_waitingFor);
                 }
             }
 
@@ -851,6 +959,18 @@ public class RequestContainerV5
                 }
             }
 
+            /**
+             * Returns the time at which the ping handler has to be called
+             * next, or Long.MAX_VALUE if it is inactive.
+             */
+            private long getDeadline()
+            {
+                if (_candidate == null || _timer == 0L || _state == PingState.STOPPED) {
+                    return Long.MAX_VALUE;
+                }
+                return _timer;
+            }
+
             private void gotReply(Object object)
             {
                 if (_state == PingState.QUERYING && object instanceof String) {
@@ -866,15 +986,13 @@ public class RequestContainerV5
             {
                 CellMessage envelope =
                     new CellMessage(new CellPath(_candidate.getAddress()), _query);
-                synchronized (_messageHash) {
-                    try {
-                        sendMessage(envelope);
-                        _waitingFor = envelope.getUOID();
-                        _messageHash.put(_waitingFor, PoolRequestHandler.this);
-                    } catch (NoRouteToCellException e) {
-                        _log.warn("Can't send pool ping to {}: {}",
-                                  _candidate, e.toString());
-                    }
+                try {
+                    sendMessage(envelope);
+                    _waitingFor = envelope.getUOID();
+                    _messageHash.put(_waitingFor, PoolRequestHandler.this);
+                } catch (NoRouteToCellException e) {
+                    _log.warn("Can't send pool ping to {}: {}",
+                              _candidate, e.toString());
                 }
             }
         }
@@ -891,10 +1009,22 @@ public class RequestContainerV5
         // the following methods can be called from outside
         // at any time.
         //...........................................................
-        //
-        // add request is assumed to be synchronized by a higher level.
-        //
-        public void addRequest( CellMessage message ){
+        /**
+         * Adds a request to this handler. Returns false if the handler
+         * already answered all its requests and no longer accepts any.
+         */
+        public boolean addRequest( CellMessage message ){
+           synchronized (_messages) {
+               if (_isClosed) {
+                   return false;
+               }
+               addRequestLocked(message);
+           }
+           schedule();
+           return true;
+        }
+
+        private void addRequestLocked( CellMessage message ){
 
            _messages.add(message);
            _stagingDenied = false;
@@ -938,11 +1068,74 @@ public class RequestContainerV5
         }
 
         public List<CellMessage> getMessages() {
-            synchronized( _handlerHash ){
+            synchronized( _messages ){
                 return new ArrayList<>(_messages);
             }
         }
 
+        /**
+         * Counts this handler in the state counts once it has been added
+         * to _handlerHash.
+         */
+        private synchronized void register()
+        {
+            if (!_isRemoved && !_isRegistered) {
+                _isRegistered = true;
+                _stateCounts.get(_state).incrementAndGet();
+            }
+        }
+
+        /**
+         * Called after this handler has been removed from _handlerHash.
+         */
+        private synchronized void unregister()
+        {
+            if (_isRegistered) {
+                _isRegistered = false;
+                _stateCounts.get(_state).decrementAndGet();
+            }
+            _isRemoved = true;
+            if (_timeout != null) {
+                _timeout.cancel();
+                _timeout = null;
+            }
+        }
+
+        private synchronized void setState(RequestState state)
+        {
+            if (_isRegistered && state != _state) {
+                _stateCounts.get(_state).decrementAndGet();
+                _stateCounts.get(state).incrementAndGet();
+            }
+            _state = state;
+        }
+
+        /**
+         * Schedules the handler to be notified at its next deadline: the
+         * expiry of the TTL of a request, the end of a wait, or the
+         * next check of the ping handler. Must be called whenever any
+         * of these change.
+         */
+        private synchronized void schedule()
+        {
+            long deadline = Math.min(_nextTtlTimeout, _pingHandler.getDeadline());
+            if (_waitUntil > 0L) {
+                deadline = Math.min(deadline, _waitUntil);
+            }
+
+            if (_timeout != null) {
+                if (_timeout.getDeadline() == deadline && !_timeout.isExpired()
+                        && !_timeout.isCancelled()) {
+                    return;
+                }
+                _timeout.cancel();
+                _timeout = null;
+            }
+            if (deadline < Long.MAX_VALUE && !_isRemoved) {
+                _timeout = _timeouts.schedule(this, deadline);
+            }
+        }
+
         public String getPoolCandidate()
         {
             if (_poolCandidate != null) {
@@ -1039,11 +1232,8 @@ public class RequestContainerV5
            _waitUntil = System.currentTimeMillis() + millis ;
         }
         private void clearSteering(){
-           synchronized( _messageHash ){
-
-              if( _waitingFor != null ) {
-                  _messageHash.remove(_waitingFor);
-              }
+           if( _waitingFor != null ) {
+               _messageHash.remove(_waitingFor);
            }
            _waitingFor = null ;
            _waitUntil  = 0L ;
@@ -1110,10 +1300,7 @@ public class RequestContainerV5
          */
         private void expireRequests()
         {
-            /* Access to _messages is controlled by a lock on
-             * _handlerHash.
-             */
-            synchronized (_handlerHash) {
+            synchronized (_messages) {
                 long now = System.currentTimeMillis();
                 _nextTtlTimeout = Long.MAX_VALUE;
 
@@ -1155,6 +1342,10 @@ public class RequestContainerV5
                 } else {
                     rpm.setFailed(_currentRc, _currentRm);
                 }
+                if (!rpm.getReplyRequired()) {
+                    messages.remove();
+                    continue;
+                }
                 try {
                     m.revertDirection();
                     sendMessage(m);
@@ -1195,6 +1386,7 @@ public class RequestContainerV5
            public void run(){
               try (CDC ignored = _cdc.restore()) {
                  stateLoop() ;
+                 schedule() ;
               }finally{
                  synchronized( _fifo ){
                    _stateEngineActive = false ;
@@ -1307,14 +1499,14 @@ public class RequestContainerV5
         private void nextStep(RequestState state, int shouldContinue ){
             if (_currentRc == CacheException.NOT_IN_TRASH ||
                 _currentRc == CacheException.FILE_NOT_FOUND) {
-                _state = RequestState.ST_DONE;
+                setState(RequestState.ST_DONE);
                 _forceContinue = true;
                 _status = "Failed";
                 sendInfoMessage(_pnfsId , _path, _fileAttributes,
                                 _currentRc , "Failed "+_currentRm);
             } else {
                 if (state == RequestState.ST_STAGE && !canStage()) {
-                    _state = RequestState.ST_DONE;
+                    setState(RequestState.ST_DONE);
                     _forceContinue = true;
                     _status = "Failed";
                     _log.debug("Subject is not authorized to stage");
@@ -1323,7 +1515,7 @@ public class RequestContainerV5
                     sendInfoMessage(_pnfsId , _path, _fileAttributes,
                                     _currentRc , "Permission denied." + _currentRm);
                 } else if (!_allowedStates.contains(state)) {
-                    _state = RequestState.ST_DONE;
+                    setState(RequestState.ST_DONE);
                     _forceContinue = true;
                     _status = "Failed";
                     _log.debug("No permission to perform {}", state);
@@ -1332,7 +1524,7 @@ public class RequestContainerV5
                     sendInfoMessage(_pnfsId, _path, _fileAttributes, _currentRc,
                                     "Permission denied for " + state);
                 } else {
-                    _state = state;
+                    setState(state);
                     _forceContinue = shouldContinue == CONTINUE ;
                     if( _state != RequestState.ST_DONE ){
                         _currentRc = 0 ;
@@ -1773,18 +1965,20 @@ public class RequestContainerV5
                  if( inputObject == null ){
 
                     clearSteering();
-                    //
-                    // it is essential that we are not within any other
-                    // lock when trying to get the handlerHash lock.
-                    //
-                    synchronized( _handlerHash ){
+                    boolean isClosed;
+                    synchronized( _messages ){
                        if( answerRequest( _maxRequestClumping ) ){
                             setError(CacheException.RESOURCE,
                                      "Request clumping limit reached");
                             nextStep(RequestState.ST_DONE, CONTINUE);
                        }else{
-                           _handlerHash.remove( _name ) ;
+                           _isClosed = true;
                        }
+                       isClosed = _isClosed;
+                    }
+                    if (isClosed) {
+                        _handlerHash.remove(_name, this);
+                        unregister();
                     }
                  }
 
@@ -772,8 +772,10 @@ abstract public class DCacheCoreControllerV2 extends CellAdapter {
     * Limits list of available pools reported by PoolManager
     * by the Set of 'writable' pools 'poolList' in argument.
     * An exception is thrown if there is only one copy left.
+    * Replicas on busy pools are not removed.
     */
-   protected TaskObserver removeCopy(PnfsId pnfsId, Set<String> writablePools )
+   protected TaskObserver removeCopy(PnfsId pnfsId, Set<String> writablePools,
+                                     Set<String> busyPools )
        throws Exception {
 
      List<String> sourcePoolList = getCacheLocationList(pnfsId, false);
@@ -804,6 +806,13 @@ abstract public class DCacheCoreControllerV2 extends CellAdapter {
                  pnfsId + " confirmed pool=" + confirmedSourcePoolList);
      }
 
+     confirmedSourcePoolList.removeAll( busyPools );
+     if ( confirmedSourcePoolList.isEmpty() ) {
+         throw new
+                 IllegalArgumentException(poolsBusyError
+                 + "all pools with a deletable replica are busy, pnfsId=" + pnfsId);
+     }
+
      String source = confirmedSourcePoolList.get(
         _random.nextInt(confirmedSourcePoolList.size()) );
 
@@ -935,8 +944,16 @@ abstract public class DCacheCoreControllerV2 extends CellAdapter {
        */
       protected static final String selectSourcePoolError      = "Select source pool error : ";
       protected static final String selectDestinationPoolError = "Select destination pool error : ";
+      protected static final String poolsBusyError             = "Try again : Pools are busy : ";
 
-      protected MoverTask replicatePnfsId( PnfsId pnfsId, Set<String> readablePools, Set<String> writablePools )
+      /**
+       * Starts a transfer creating a new replica. Busy pools are neither
+       * used as source nor as destination; if no other pool is available,
+       * an IllegalArgumentException with the poolsBusyError signature is
+       * thrown.
+       */
+      protected MoverTask replicatePnfsId( PnfsId pnfsId, Set<String> readablePools, Set<String> writablePools,
+                                           Set<String> busyPools )
           throws Exception {
 
         if (readablePools.size() == 0) {
@@ -1002,6 +1019,14 @@ abstract public class DCacheCoreControllerV2 extends CellAdapter {
                     + "pools selectable for read did not confirm they have pnfsId=" + pnfsId);
         }
 
+        confirmedSourcePoolList.removeAll( busyPools );
+
+        if (confirmedSourcePoolList.size() == 0) {
+            throw new                    // do not change - initial substring is used as signature
+                    IllegalArgumentException(poolsBusyError
+                    + "all source pools of pnfsId=" + pnfsId + " are busy");
+        }
+
         String source = confirmedSourcePoolList.get(
                         _random.nextInt(confirmedSourcePoolList.size()) );
 
@@ -1021,6 +1046,14 @@ abstract public class DCacheCoreControllerV2 extends CellAdapter {
                     + " no pools found in online state and not having listed pnfsId=" + pnfsId);
         }
 
+        destPools.removeAll( busyPools );
+
+        if (destPools.size() == 0) {
+            throw new                    // do not change - initial substring is used as signature
+                    IllegalArgumentException(poolsBusyError
+                    + "all destination pools for pnfsId=" + pnfsId + " are busy");
+        }
+
         FileAttributes fileAttributes = getFileAttributes(pnfsId) ;
         long fileSize  = fileAttributes.getSize();
 
@@ -0,0 +1,519 @@
+package diskCacheV111.replicaManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static diskCacheV111.replicaManager.ReplicaDb1.*;
+
+/**
+ * In-memory index of the replicas in resilient pools.
+ *
+ * The index mirrors the replicas, pools, actions and excluded tables of
+ * the replica database and is kept up to date by {@link ReplicaDbV1} as
+ * files are added to or removed from pools and as pools change state.
+ * For every change only the affected files are re-evaluated, so the sets
+ * of deficient and redundant files are maintained incrementally instead
+ * of being recomputed by scanning the replicas table. The database
+ * remains the persistent record from which the index is rebuilt when the
+ * replica manager starts.
+ *
+ * A file is deficient if it has fewer than the minimum number of
+ * countable replicas in online, offline and offline-prepare pools, and
+ * redundant if it has more than the maximum number of countable
+ * replicas in online pools. Files with pending actions and excluded
+ * files are neither.
+ *
+ * This class is thread safe.
+ */
+public class ReplicaCountIndex {
+
+    private static final Comparator<Object[]> BY_COUNT = new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] r1, Object[] r2) {
+            return Integer.compare((Integer) r1[1], (Integer) r2[1]);
+        }
+    };
+
+    /**
+     * Compact representation of a file identifier of up to 36 upper case
+     * hex digits.
+     */
+    private static final class FileId {
+        private static final int MAX_LENGTH = 36;
+
+        private final long _high;
+        private final long _low;
+        private final int _tail;
+        private final int _length;
+
+        private FileId(long high, long low, int tail, int length) {
+            _high = high;
+            _low = low;
+            _tail = tail;
+            _length = length;
+        }
+
+        private static int digit(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'A' && c <= 'F') {
+                return c - 'A' + 10;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a FileId for {@code pnfsId}, or {@code pnfsId} itself if it
+         * cannot be represented as a FileId.
+         */
+        static Object of(String pnfsId) {
+            int length = pnfsId.length();
+            if (length == 0 || length > MAX_LENGTH) {
+                return pnfsId;
+            }
+            long[] chunks = new long[3];
+            for (int i = 0; i < length; i++) {
+                int digit = digit(pnfsId.charAt(i));
+                if (digit < 0) {
+                    return pnfsId;
+                }
+                chunks[i / 16] = (chunks[i / 16] << 4) | digit;
+            }
+            return new FileId(chunks[0], chunks[1], (int) chunks[2], length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FileId)) {
+                return false;
+            }
+            FileId other = (FileId) o;
+            return _high == other._high && _low == other._low &&
+                    _tail == other._tail && _length == other._length;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = _high * 31 + _low;
+            return (int) (h ^ (h >>> 32)) * 31 + _tail * 17 + _length;
+        }
+
+        @Override
+        public String toString() {
+            char[] s = new char[_length];
+            long[] chunks = { _high, _low, _tail };
+            for (int i = 0; i < _length; i++) {
+                int digits = Math.min(16, _length - (i / 16) * 16);
+                int shift = 4 * (digits - 1 - i % 16);
+                s[i] = Character.toUpperCase(Character.forDigit((int) (chunks[i / 16] >>> shift) & 0xF, 16));
+            }
+            return new String(s);
+        }
+    }
+
+    /**
+     * file -> replicas; each replica is encoded as the pool number shifted
+     * left by one, with the lowest bit set if the replica is countable
+     */
+    private final Map<Object, int[]> _replicas = new HashMap<>();
+
+    /** pool number -> pool name */
+    private final List<String> _poolNames = new ArrayList<>();
+
+    /** pool name -> pool number */
+    private final Map<String, Integer> _poolNumbers = new HashMap<>();
+
+    /** pool number -> pool status; null if unknown */
+    private final List<String> _poolStatus = new ArrayList<>();
+
+    /** file -> number of replicas to create or remove; zero for exclude actions */
+    private final Map<Object, Integer> _actions = new HashMap<>();
+
+    /** file -> timestamp */
+    private final Map<Object, Long> _excluded = new HashMap<>();
+
+    /** file -> number of replicas */
+    private final Map<Object, Integer> _deficient = new HashMap<>();
+    private final Map<Object, Integer> _redundant = new HashMap<>();
+
+    private int _min;
+    private int _max;
+
+    public ReplicaCountIndex(int min, int max) {
+        _min = min;
+        _max = max;
+    }
+
+    /**
+     * Sets the replica limits, re-evaluating all files if they change.
+     */
+    public synchronized void setLimits(int min, int max) {
+        if (min != _min || max != _max) {
+            _min = min;
+            _max = max;
+            _deficient.clear();
+            _redundant.clear();
+            for (Object file : _replicas.keySet()) {
+                evaluate(file);
+            }
+        }
+    }
+
+    /**
+     * Adds a replica. Like the database, the index ignores replicas in
+     * unknown pools and keeps the existing record of a known replica.
+     */
+    public synchronized void addReplica(String pnfsId, String poolName, boolean countable) {
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool == null || _poolStatus.get(pool) == null) {
+            return;
+        }
+        Object file = FileId.of(pnfsId);
+        int[] replicas = _replicas.get(file);
+        if (replicas == null) {
+            _replicas.put(file, new int[] { replica(pool, countable) });
+            evaluate(file);
+        } else if (indexOf(replicas, pool) < 0) {
+            replicas = Arrays.copyOf(replicas, replicas.length + 1);
+            replicas[replicas.length - 1] = replica(pool, countable);
+            _replicas.put(file, replicas);
+            evaluate(file);
+        }
+    }
+
+    public synchronized void removeReplica(String pnfsId, String poolName) {
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool != null) {
+            Object file = FileId.of(pnfsId);
+            int[] replicas = _replicas.get(file);
+            if (replicas != null && removeReplica(file, replicas, pool)) {
+                evaluate(file);
+            }
+        }
+    }
+
+    /**
+     * Removes all replicas of a file as well as its exclusion.
+     */
+    public synchronized void clearFile(String pnfsId) {
+        Object file = FileId.of(pnfsId);
+        _replicas.remove(file);
+        _excluded.remove(file);
+        evaluate(file);
+    }
+
+    /**
+     * Removes all replicas in a pool.
+     */
+    public synchronized void clearReplicas(String poolName) {
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool != null) {
+            List<Object> changed = new ArrayList<>();
+            for (Map.Entry<Object, int[]> entry : _replicas.entrySet()) {
+                if (indexOf(entry.getValue(), pool) >= 0) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (Object file : changed) {
+                removeReplica(file, _replicas.get(file), pool);
+                evaluate(file);
+            }
+        }
+    }
+
+    /**
+     * Removes a pool and all its replicas.
+     */
+    public synchronized void clearPool(String poolName) {
+        clearReplicas(poolName);
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool != null) {
+            _poolStatus.set(pool, null);
+        }
+    }
+
+    public synchronized void setPoolStatus(String poolName, String poolStatus) {
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool == null) {
+            pool = _poolNames.size();
+            _poolNames.add(poolName);
+            _poolStatus.add(poolStatus);
+            _poolNumbers.put(poolName, pool);
+        } else {
+            _poolStatus.set(pool, poolStatus);
+        }
+        evaluatePool(pool);
+    }
+
+    public synchronized void removePoolStatus(String poolName) {
+        Integer pool = _poolNumbers.get(poolName);
+        if (pool != null && _poolStatus.set(pool, null) != null) {
+            evaluatePool(pool);
+        }
+    }
+
+    public synchronized void addAction(String pnfsId, int count) {
+        Object file = FileId.of(pnfsId);
+        _actions.put(file, count);
+        evaluate(file);
+    }
+
+    public synchronized void removeAction(String pnfsId) {
+        Object file = FileId.of(pnfsId);
+        if (_actions.remove(file) != null) {
+            evaluate(file);
+        }
+    }
+
+    /**
+     * Removes all replicate and reduce actions.
+     */
+    public synchronized void clearActions() {
+        Iterator<Map.Entry<Object, Integer>> i = _actions.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Object, Integer> action = i.next();
+            if (action.getValue() != 0) {
+                i.remove();
+                evaluate(action.getKey());
+            }
+        }
+    }
+
+    public synchronized void addExcluded(String pnfsId, long timestamp) {
+        Object file = FileId.of(pnfsId);
+        Long previous = _excluded.get(file);
+        if (previous == null) {
+            _excluded.put(file, timestamp);
+            evaluate(file);
+        } else if (previous < timestamp) {
+            _excluded.put(file, timestamp);
+        }
+    }
+
+    /**
+     * Releases excluded files with a timestamp older than {@code timestamp}.
+     */
+    public synchronized void releaseExcluded(long timestamp) {
+        Iterator<Map.Entry<Object, Long>> i = _excluded.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Object, Long> excluded = i.next();
+            if (excluded.getValue() < timestamp) {
+                i.remove();
+                evaluate(excluded.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes all replicas, pools and exclusions. Actions are kept.
+     */
+    public synchronized void clear() {
+        _replicas.clear();
+        for (int pool = 0; pool < _poolStatus.size(); pool++) {
+            _poolStatus.set(pool, null);
+        }
+        _excluded.clear();
+        _deficient.clear();
+        _redundant.clear();
+    }
+
+    /**
+     * Returns the pools with a countable replica of a file that are
+     * in one of the given states.
+     */
+    public synchronized List<String> getPools(String pnfsId, Collection<String> states) {
+        List<String> result = new ArrayList<>();
+        int[] replicas = _replicas.get(FileId.of(pnfsId));
+        if (replicas != null) {
+            for (int replica : replicas) {
+                int pool = poolOf(replica);
+                if (isCountable(replica) && states.contains(_poolStatus.get(pool))) {
+                    result.add(_poolNames.get(pool));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {pnfsid, count} records of all files with fewer than the
+     * minimum number of replicas, ordered by increasing count.
+     */
+    public synchronized List<Object[]> getDeficient() {
+        List<Object[]> result = toRecords(_deficient);
+        Collections.sort(result, BY_COUNT);
+        return result;
+    }
+
+    /**
+     * Returns {pnfsid, count} records of all files with more than the
+     * maximum number of replicas, ordered by decreasing count.
+     */
+    public synchronized List<Object[]> getRedundant() {
+        List<Object[]> result = toRecords(_redundant);
+        Collections.sort(result, Collections.reverseOrder(BY_COUNT));
+        return result;
+    }
+
+    /**
+     * Returns the files that only have replicas in drainoff pools and no
+     * replica in an online pool. Files with pending actions and excluded
+     * files are not included.
+     */
+    public synchronized List<String> getInDrainoffOnly() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<Object, int[]> entry : _replicas.entrySet()) {
+            Object file = entry.getKey();
+            if (hasReplicaIn(entry.getValue(), DRAINOFF) && !hasReplicaIn(entry.getValue(), ONLINE) &&
+                    !_actions.containsKey(file) && !_excluded.containsKey(file)) {
+                result.add(file.toString());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the files that have replicas in offline-prepare pools and
+     * no replica in an online pool. Files with pending actions are not
+     * included.
+     */
+    public synchronized List<String> getInOfflineOnly() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<Object, int[]> entry : _replicas.entrySet()) {
+            Object file = entry.getKey();
+            if (hasReplicaIn(entry.getValue(), OFFLINE_PREPARE) && !hasReplicaIn(entry.getValue(), ONLINE) &&
+                    !_actions.containsKey(file)) {
+                result.add(file.toString());
+            }
+        }
+        return result;
+    }
+
+    public synchronized int getFileCount() {
+        return _replicas.size();
+    }
+
+    public synchronized int getDeficientCount() {
+        return _deficient.size();
+    }
+
+    public synchronized int getRedundantCount() {
+        return _redundant.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return _replicas.size() + " files, " + _deficient.size() + " deficient, " +
+                _redundant.size() + " redundant, " + _actions.size() + " actions, " +
+                _excluded.size() + " excluded";
+    }
+
+    private static int replica(int pool, boolean countable) {
+        return (pool << 1) | (countable ? 1 : 0);
+    }
+
+    private static int poolOf(int replica) {
+        return replica >>> 1;
+    }
+
+    private static boolean isCountable(int replica) {
+        return (replica & 1) != 0;
+    }
+
+    private static int indexOf(int[] replicas, int pool) {
+        for (int i = 0; i < replicas.length; i++) {
+            if (poolOf(replicas[i]) == pool) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the replica in {@code pool} from the replicas of a file.
+     *
+     * @return true if the file had a replica in the pool
+     */
+    private boolean removeReplica(Object file, int[] replicas, int pool) {
+        int i = indexOf(replicas, pool);
+        if (i < 0) {
+            return false;
+        }
+        if (replicas.length == 1) {
+            _replicas.remove(file);
+        } else {
+            int[] remaining = new int[replicas.length - 1];
+            System.arraycopy(replicas, 0, remaining, 0, i);
+            System.arraycopy(replicas, i + 1, remaining, i, remaining.length - i);
+            _replicas.put(file, remaining);
+        }
+        return true;
+    }
+
+    private boolean hasReplicaIn(int[] replicas, String status) {
+        for (int replica : replicas) {
+            if (status.equals(_poolStatus.get(poolOf(replica)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Object[]> toRecords(Map<Object, Integer> counts) {
+        List<Object[]> result = new ArrayList<>(counts.size());
+        for (Map.Entry<Object, Integer> count : counts.entrySet()) {
+            result.add(new Object[] { count.getKey().toString(), count.getValue() });
+        }
+        return result;
+    }
+
+    private void evaluatePool(int pool) {
+        for (Map.Entry<Object, int[]> entry : _replicas.entrySet()) {
+            if (indexOf(entry.getValue(), pool) >= 0) {
+                evaluate(entry.getKey());
+            }
+        }
+    }
+
+    private void evaluate(Object file) {
+        _deficient.remove(file);
+        _redundant.remove(file);
+
+        int[] replicas = _replicas.get(file);
+        if (replicas == null || _actions.containsKey(file) || _excluded.containsKey(file)) {
+            return;
+        }
+
+        int available = 0;
+        int online = 0;
+        for (int replica : replicas) {
+            if (isCountable(replica)) {
+                String status = _poolStatus.get(poolOf(replica));
+                if (ONLINE.equals(status)) {
+                    online++;
+                    available++;
+                } else if (OFFLINE.equals(status) || OFFLINE_PREPARE.equals(status)) {
+                    available++;
+                }
+            }
+        }
+        if (available > 0 && available < _min) {
+            _deficient.put(file, available);
+        }
+        if (online > _max) {
+            _redundant.put(file, online);
+        }
+    }
+}
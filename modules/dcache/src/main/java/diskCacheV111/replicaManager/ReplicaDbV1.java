@@ -44,16 +44,25 @@ public class ReplicaDbV1 implements ReplicaDb1 {
         LoggerFactory.getLogger(ReplicaDbV1.class);
 
     private CellAdapter         _cell;
+    private final ReplicaCountIndex _index;
     private static DataSource   DATASOURCE;
     private final static String ERRCODE_UNIQUE_VIOLATION = "23505";
 
     /**
      * Class constructor
-     * @throws SQLException
+     *
+     * @param index in-memory index kept up to date with the changes
+     *              made to the database
      */
-    public ReplicaDbV1(CellAdapter cell)
+    public ReplicaDbV1(CellAdapter cell, ReplicaCountIndex index)
     {
         _cell = cell;
+        _index = index;
+    }
+
+    public ReplicaCountIndex getIndex()
+    {
+        return _index;
     }
 
     /*
@@ -99,6 +108,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             pstmt.setBoolean(5, false);
             pstmt.setString (6, poolName);
             pstmt.executeUpdate();
+            _index.addReplica(pnfsId.toString(), poolName, true);
         } catch (SQLException ex) {
             String exState = ex.getSQLState();
             if (exState.equals(ERRCODE_UNIQUE_VIOLATION) ) { // "ERROR: duplicate key value violates unique constraint" - or similar
@@ -157,6 +167,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
                     pstmt.setBoolean(3, countable);
                     pstmt.setBoolean(4, false);
                     pstmt.executeUpdate();
+                    _index.addReplica(pnfsId, poolName, countable);
                 } catch (SQLException ex) {
                     String exState = ex.getSQLState();
                     if (exState.equals(ERRCODE_UNIQUE_VIOLATION) ) { // "ERROR: duplicate key value violates unique constraint" - or similar
@@ -195,6 +206,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             stmt.setString(1, poolName);
             stmt.setString(2, pnfsId.toString());
             stmt.executeUpdate();
+            _index.removeReplica(pnfsId.toString(), poolName);
         } catch (SQLException ex) {
             _log.warn("WARNING: Database access error, can not delete pnfsId='" + pnfsId.toString() + "' " + "at pool = '" + poolName
                     + "' from replicas DB table");
@@ -261,6 +273,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             statement.setString(1, pnfsId.toString());
             statement.executeUpdate();
             conn.commit();
+            _index.clearFile(pnfsId.toString());
         } catch (Exception ex) {
             try {
                 conn.rollback();
@@ -496,6 +509,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             stmt.executeUpdate("TRUNCATE TABLE redundant");
             stmt.executeUpdate("TRUNCATE TABLE excluded");
             conn.commit();
+            _index.clear();
         } catch (Exception ex) {
             try {
                 conn.rollback();
@@ -532,6 +546,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             statement.setString(1, poolName);
             statement.executeUpdate();
             conn.commit();
+            _index.clearPool(poolName);
         } catch (SQLException ex) {
             try {
                 conn.rollback();
@@ -713,6 +728,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             stmt =  conn.prepareStatement(sql);
             stmt.setString(1, poolName);
             stmt.executeUpdate();
+            _index.removePoolStatus(poolName);
         } catch (Exception ex) {
             _log.warn("Can't remove pool '" + poolName + "' from the DB", ex);
         } finally {
@@ -743,6 +759,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             stmt.setString(1, poolName);
             stmt.setString(2, poolStatus);
             stmt.executeUpdate();
+            _index.setPoolStatus(poolName, poolStatus);
         } catch (SQLException ex) {
             _log.debug(ex.toString(), ex);
             try {
@@ -750,6 +767,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
                 stmt.setString(1, poolStatus);
                 stmt.setString(2, poolName);
                 stmt.executeUpdate();
+                _index.setPoolStatus(poolName, poolStatus);
             } catch (SQLException ex2) {
                 _log.warn("setPoolStatus() ERROR: Can't add/update pool '" + poolName + "'" + " status in 'pools' table in DB", ex2);
             }
@@ -814,6 +832,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             conn.setAutoCommit(true);
             stmt = conn.createStatement();
             stmt.executeUpdate(sql);
+            _index.addAction(pnfsId.toString(), count);
         } catch (Exception ex) {
             _log.warn("Can't add transaction to the DB", ex);
         } finally {
@@ -841,6 +860,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             conn.setAutoCommit(true);
             stmt = conn.createStatement();
             stmt.executeUpdate(sql);
+            _index.addExcluded(pnfsId.toString(), timestamp);
         } catch (Exception ex) {
             _log.warn("Can't add transaction to the DB", ex);
         } finally {
@@ -862,6 +882,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             conn.setAutoCommit(true);
             stmt = conn.createStatement();
             stmt.executeUpdate(sql);
+            _index.removeAction(pnfsId.toString());
         } catch (Exception ex) {
             _log.warn("Can't remove transaction from the DB", ex);
         } finally {
@@ -883,6 +904,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             conn.setAutoCommit(true);
             stmt = conn.createStatement();
             count = stmt.executeUpdate(sql);
+            _index.releaseExcluded(timestamp);
         } catch (Exception ex) {
             _log.warn("Can't delete old records from the 'excluded' table", ex);
         } finally {
@@ -909,6 +931,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             conn.setAutoCommit(true);
             stmt = conn.createStatement();
             stmt.executeUpdate(sql);
+            _index.clearActions();
         } catch (Exception ex) {
             _log.warn("Can't clear transactions from the DB", ex);
         } finally {
@@ -970,6 +993,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
             statement.setString(1, poolName);
             statement.executeUpdate();
             conn.commit();
+            _index.clearReplicas(poolName);
         } catch (Exception ex) {
             try { conn.rollback(); } catch (SQLException e1) { }
             _log.warn("Can't remove pool '" + poolName + "' from the DB");
@@ -979,6 +1003,57 @@ public class ReplicaDbV1 implements ReplicaDb1 {
         }
     }
 
+    /**
+     * Rebuilds the in-memory index from the pools, replicas, actions and
+     * excluded tables. This is the only time the replicas table is read
+     * as a whole; afterwards the index is kept up to date by the methods
+     * modifying the database.
+     */
+    public void loadIndex() {
+        Connection conn = null;
+        Statement  stmt = null;
+        ResultSet  rset = null;
+        _index.clear();
+        try {
+            conn = DATASOURCE.getConnection();
+            conn.setAutoCommit(true);
+            stmt = conn.createStatement();
+
+            rset = stmt.executeQuery("SELECT pool, status FROM pools");
+            while (rset.next()) {
+                _index.setPoolStatus(rset.getString(1), rset.getString(2));
+            }
+            tryToClose(rset);
+
+            rset = stmt.executeQuery("SELECT replicas.pnfsid, replicas.pool, replicas.countable"
+                    + " FROM replicas, pools WHERE replicas.poolid=pools.poolid");
+            while (rset.next()) {
+                _index.addReplica(rset.getString(1), rset.getString(2), rset.getBoolean(3));
+            }
+            tryToClose(rset);
+
+            rset = stmt.executeQuery("SELECT pnfsid, \"action\" FROM actions");
+            while (rset.next()) {
+                String op = rset.getString(2);
+                _index.addAction(rset.getString(1),
+                        op.equals("replicate") ? 1 : op.equals("reduce") ? -1 : 0);
+            }
+            tryToClose(rset);
+
+            rset = stmt.executeQuery("SELECT pnfsid, \"timestamp\" FROM excluded");
+            while (rset.next()) {
+                _index.addExcluded(rset.getString(1), rset.getLong(2));
+            }
+        } catch (SQLException ex) {
+            _log.warn("Can't load the replica index from the DB", ex);
+        } finally {
+            tryToClose(rset);
+            tryToClose(stmt);
+            tryToClose(conn);
+        }
+        _log.info("Loaded replica index: " + _index);
+    }
+
     /**
      * Private class to get the PNFSIDs which are in the drainoff pools only
      */
@@ -1179,7 +1254,7 @@ public class ReplicaDbV1 implements ReplicaDb1 {
         System.out.println("Test ReplicaDbV1, cvsId=" + _cvsId);
 
         setup("jdbc:postgresql://localhost:5432/replicas", "enstore", "NoPassword");
-        ReplicaDbV1 db = new ReplicaDbV1(null);
+        ReplicaDbV1 db = new ReplicaDbV1(null, new ReplicaCountIndex(2, 3));
 
         System.out.println("List pnfsId's in all pools");
         for (Iterator<String> i = db.getPnfsIds(); i.hasNext();) {
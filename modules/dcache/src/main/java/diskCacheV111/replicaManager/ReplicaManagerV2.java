@@ -12,7 +12,9 @@ import org.slf4j.LoggerFactory;
 import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -24,6 +26,7 @@ import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import diskCacheV111.pools.PoolV2Mode;
 import diskCacheV111.replicaManager.ReplicaDbV1.DbIterator;
@@ -78,6 +81,9 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
   private int _repMin = 2;  // Min num. of replicas Adjuster will keep
   private int _repMax = 3;  // Max num. of replicas Adjuster will keep
 
+  // In-memory replica counts, updated by ReplicaDbV1 as the DB is changed
+  private final ReplicaCountIndex _index = new ReplicaCountIndex(_repMin, _repMax);
+
   // Resilient pool Group
 
   private final ResilientPools _resilientPools;
@@ -361,6 +367,13 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
       _log.info("Set adjuster maxWorkers=" + mx);
     }
 
+    String maxWorkersPerPool = _args.getOpt("maxWorkersPerPool");
+    if (maxWorkersPerPool != null) {
+      int mx = Integer.parseInt(maxWorkersPerPool);
+      _adj.setMaxWorkersPerPool(mx);
+      _log.info("Set adjuster maxWorkersPerPool=" + mx);
+    }
+
     if( _args.hasOption("coldStart") ) {
         _hotRestart = false;
     }
@@ -493,13 +506,14 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
     synchronized (_dbLock) {
       pw.println(" initDb Active : " + _initDbActive);
     }
+    pw.println(" Replica index : " + _index);
     pw.println(" enableSameHostReplica : " + getEnableSameHostReplica() );
     pw.println(" XXcheckPoolHost : " + getCheckPoolHost() );
   }
 
   private ReplicaDbV1 installReplicaDb()
   {
-      return new ReplicaDbV1(this) ;
+      return new ReplicaDbV1(this, _index) ;
   }
 
 //  private ReplicaDbV1 installReplicaDb(boolean keep) throws SQLException {
@@ -624,6 +638,9 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
         _dbrmv2.clearTransactions();
       }
 
+      // Rebuild in-memory replica counts from what is left in DB
+      _dbrmv2.loadIndex();
+
       _cntOnlinePools = 0;
     }
   }
@@ -701,6 +718,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
    private int _min = 2;
    private int _max = 2;
    private int _maxWorkers = 4;
+   private int _maxWorkersPerPool = 2;
    private int _replicated;
    private int _removed;
    private String _status = "not updated yet";
@@ -710,6 +728,17 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
    private Semaphore workerCount;
    private Semaphore workerCountRM;
 
+   // Active replicators and reducers per pool
+   private final Map<String, Integer> _poolWorkers = new HashMap<>();
+   // Set by the adjuster and by workers, which the adjuster waits for
+   private volatile boolean _throttled;  // some file was skipped because its pools are busy
+   private final AtomicInteger _dispatched = new AtomicInteger(); // number of workers started in this pass
+
+   private final Collection<String> _onlineStates =
+       Collections.singleton(ReplicaDb1.ONLINE);
+   private final Collection<String> _readableStates =
+       Arrays.asList(ReplicaDb1.ONLINE, ReplicaDb1.DRAINOFF, ReplicaDb1.OFFLINE_PREPARE);
+
    private int _cntThrottleMsgs;
    private boolean _throttleMsgs;
 
@@ -743,6 +772,9 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
    public void setMaxWorkers( int n ){
      _maxWorkers = n;
    }
+   public void setMaxWorkersPerPool( int n ){
+     _maxWorkersPerPool = n;
+   }
 
    private boolean stopping() { return (!_runAdjuster || _stopThreads); }
 
@@ -930,55 +962,35 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
 
      boolean  haveMore = false;
 
+     _throttled  = false;
+     _dispatched.set(0);
+
      do {  // One pass - just to use "break"
 
        //------- Drainoff -------
-       Iterator<String> itDrain = scanDrainoff();
-       try {
-         haveMore |= processReplication(itDrain, "drainoff");
-       }
-       finally {
-         ( (DbIterator<?>) itDrain).close();
-       }
+       haveMore |= processReplication(scanDrainoff(), "drainoff");
        if (_stopThreads || _dbUpdated.booleanValue()) {
            break;
        }
 
        //------ Offline -------
-       Iterator<String> itOffline = scanOffline();
-
-       try {
-         haveMore |= processReplication(itOffline, "offline-prepare");
-       }
-       finally {
-         ( (DbIterator<?>) itOffline).close();
-       }
+       haveMore |= processReplication(scanOffline(), "offline-prepare");
        if (_stopThreads || _dbUpdated.booleanValue()) {
            break;
        }
 
-       //------ Deficient -------
        int min = _min;
-       Iterator<Object[]> itDeficient = scanDeficient(min);
-       try {
-         haveMore |= processReplicateDeficient(itDeficient, min);
-       }
-       finally {
-         ( (DbIterator<?>) itDeficient).close();
-       }
+       int max = _max;
+       _index.setLimits(min, max);
+
+       //------ Deficient -------
+       haveMore |= processReplicateDeficient(scanDeficient(), min);
        if (_stopThreads || _dbUpdated.booleanValue()) {
            break;
        }
 
        //------ Redundant -------
-       int max = _max;
-       Iterator<Object[]> itRedundant = scanRedundant(max);
-       try {
-         haveMore |= processReduceRedundant(itRedundant, max);
-       }
-       finally {
-         ( (DbIterator<?>) itRedundant).close();
-       }
+       haveMore |= processReduceRedundant(scanRedundant(), max);
        if (_stopThreads || _dbUpdated.booleanValue()) {
            break;
        }
@@ -986,9 +998,15 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
      }
      while ( false ); // One pass only
 
+     // Nothing could be started because all pools holding the remaining
+     // files are busy; wait for a worker to finish before the next pass
+     if (_throttled && _dispatched.get() == 0 && !stopping()) {
+       waitForPoolWorker();
+     }
+
      // _log.debug("runAdjustment - got to the end of iteration");
      // adjustment cycle complete
-     return ( haveMore );
+     return ( haveMore || _throttled );
    }
 
    /*
@@ -999,11 +1017,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
      _setStatus("Adjuster - scan drainoff");
      _db.setHeartBeat("Adjuster", "scan drainOff");
 
-     Iterator<String> it;
-     synchronized (_dbLock) {
-       it = _db.getInDrainoffOnly();
-     }
-     return it;
+     return _index.getInDrainoffOnly().iterator();
    }
 
    /*
@@ -1016,27 +1030,19 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
      _setStatus("Adjuster - scan offline-prepare");
      _db.setHeartBeat("Adjuster", "scan offline-prepare");
 
-     Iterator<String> it;
-     synchronized (_dbLock) {
-       it = _db.getInOfflineOnly();
-     }
-     return it;
+     return _index.getInOfflineOnly().iterator();
    }
 
    /*
     * Scan for and replicate Deficient files
     * -- all other files with fewer replicas
     */
-   protected Iterator<Object[]> scanDeficient(int min) {
+   protected Iterator<Object[]> scanDeficient() {
      _log.debug("Adjuster - scan deficient");
      _setStatus("Adjuster - scan deficient");
      _db.setHeartBeat("Adjuster", "scan deficient");
 
-     Iterator<Object[]> it;
-     synchronized (_dbLock) {
-       it = _db.getDeficient(min);
-     }
-     return it;
+     return _index.getDeficient().iterator();
    }
 
    /*
@@ -1044,16 +1050,12 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
     * recovers space in pools.
     */
 
-   protected Iterator<Object[]> scanRedundant(int max) {
+   protected Iterator<Object[]> scanRedundant() {
      _log.debug("Adjuster - scan redundant");
      _setStatus("Adjuster - scan redundant");
      _db.setHeartBeat("Adjuster", "scan redundant");
 
-     Iterator<Object[]> it;
-     synchronized (_dbLock) {
-       it = _db.getRedundant(max);
-     }
-     return it;
+     return _index.getRedundant().iterator();
    }
 
    /*
@@ -1072,6 +1074,8 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
        PnfsId pnfsId = new PnfsId(it.next());
        if( _dbUpdated.hasPnfsId( pnfsId ) ) {
            haveMore = true; // skip and tag for further  replication
+       } else if( isPoolLimitReached( pnfsId, _readableStates ) ) {
+           haveMore = true; // skip, all source pools are busy
        } else {
            replicateAsync(pnfsId, false); // can not use 'extended set of pools ("drainoff", offline-prepare)
        }
@@ -1122,6 +1126,8 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
 
        if( _dbUpdated.hasPnfsId( pnfsId ) ) {
            haveMore = true; // skip and tag for further  replication
+       } else if( isPoolLimitReached( pnfsId, _onlineStates ) ) {
+           haveMore = true; // skip, all source pools are busy
        } else               // ... create one more replica of the file
        {
            replicateAsync(pnfsId, false); // can not use 'extended set of pools ("drainoff", offline-prepare)
@@ -1185,6 +1191,8 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
 
        if ( _dbUpdated.hasPnfsId( pnfsId ) ) {
            haveMore = true; // ... set tag and skip if there was modification
+       } else if ( isPoolLimitReached( pnfsId, _onlineStates ) ) {
+           haveMore = true; // ... skip, all pools holding a replica are busy
        } else {
            reduceAsync(pnfsId); // reduce ONE replica only
        }
@@ -1212,6 +1220,86 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
 
    //--------------
 
+   /*
+    * Returns true if all pools in one of the given states holding a replica
+    * of pnfsId already run the maximum number of workers.
+    */
+   private boolean isPoolLimitReached(PnfsId pnfsId, Collection<String> states) {
+     if (_maxWorkersPerPool <= 0) {
+         return false;
+     }
+     List<String> pools = _index.getPools(pnfsId.toString(), states);
+     synchronized (_poolWorkers) {
+       for (String pool : pools) {
+         Integer count = _poolWorkers.get(pool);
+         if (count == null || count < _maxWorkersPerPool) {
+             return false;
+         }
+       }
+     }
+     if (pools.isEmpty()) {
+         return false;
+     }
+     _throttled = true;
+     return true;
+   }
+
+   /*
+    * Returns the pools already running the maximum number of workers.
+    * Such pools are not selected as source or destination of new workers.
+    */
+   private Set<String> getBusyPools() {
+     Set<String> busy = new HashSet<>();
+     if (_maxWorkersPerPool > 0) {
+       synchronized (_poolWorkers) {
+         for (Map.Entry<String, Integer> entry : _poolWorkers.entrySet()) {
+           if (entry.getValue() >= _maxWorkersPerPool) {
+               busy.add(entry.getKey());
+           }
+         }
+       }
+     }
+     return busy;
+   }
+
+   private void addPoolWorker(String... pools) {
+     synchronized (_poolWorkers) {
+       for (String pool : pools) {
+         if (pool != null) {
+           Integer count = _poolWorkers.get(pool);
+           _poolWorkers.put(pool, (count == null) ? 1 : count + 1);
+         }
+       }
+     }
+   }
+
+   private void removePoolWorker(String... pools) {
+     synchronized (_poolWorkers) {
+       for (String pool : pools) {
+         if (pool != null) {
+           Integer count = _poolWorkers.get(pool);
+           if (count == null || count <= 1) {
+               _poolWorkers.remove(pool);
+           } else {
+               _poolWorkers.put(pool, count - 1);
+           }
+         }
+       }
+       _poolWorkers.notifyAll();
+     }
+   }
+
+   private void waitForPoolWorker() {
+     _log.debug("Adjuster - all pools of remaining files are busy, wait for a worker to finish");
+     synchronized (_poolWorkers) {
+       try {
+         _poolWorkers.wait(MINUTE);
+       } catch (InterruptedException ex) {
+         _log.info("Adjuster - waiting for pool worker was interrupted");
+       }
+     }
+   }
+
    private void excludePnfsId(PnfsId pnfsId, String errcode, String errmsg) {
        synchronized (_dbLock) {
            long timeStamp = System.currentTimeMillis();
@@ -1227,6 +1315,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
        int _wCnt;
        private boolean _extended; // include drainoff and offline prepare pools
                                   // into the source pools
+       private String[] _pools = {}; // source and destination pools
        // HashSet brokenFiles = new HashSet();
 
        Replicator(PnfsId pnfsId, int Id, int cnt, boolean extended) {
@@ -1256,6 +1345,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
                synchronized (this) { // synchronization is required only to invoke notify()
                  this.notifyAll();
                }
+               removePoolWorker(_pools);
                _wCnt = workerCount.release();
                _log.info("Replicator ID=" + _Id + ", pnfsId=" + _pnfsId
                    + " finished, now " + (_maxWorkers - _wCnt) + "/" + _maxWorkers +
@@ -1276,8 +1366,8 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
                // extended == true  -- source pools include drainoff and offline-prepare pools
                // extended == false -- online pools only
                observer = (_extended)
-                          ? replicatePnfsId(pnfsId,_poolsReadable, _poolsWritable)
-                          : replicatePnfsId(pnfsId,_poolsWritable, _poolsWritable);
+                          ? replicatePnfsId(pnfsId,_poolsReadable, _poolsWritable, getBusyPools())
+                          : replicatePnfsId(pnfsId,_poolsWritable, _poolsWritable, getBusyPools());
            } catch (MissingResourceException mrex) {
                String exMsg   = mrex.getMessage();
                String exClass = mrex.getClassName();
@@ -1318,6 +1408,10 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
                if (exMsg.startsWith("replicatePnfsId, argument")) {
                    _log.info("There are not enough pools to get replica from or to put it to; try operation later");
                    sigFound = true;
+               } else if (exMsg.startsWith(poolsBusyError)) {
+                   _log.debug(exMsg);
+                   _throttled = true;
+                   sigFound = true;
                } else if (exMsg.startsWith("Try again :")) {
                    _log.info(exMsg);
                    sigFound = true;
@@ -1339,6 +1433,10 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
            String poolName = observer.getDstPool();
            _log.info(pnfsId.toString() + " Replicating");
 
+           _pools = new String[] { observer.getSrcPool(), poolName };
+           addPoolWorker(_pools);
+           _dispatched.incrementAndGet();
+
            synchronized (_dbLock) {
                _db.addTransaction(pnfsId, start, +1);
            }
@@ -1434,6 +1532,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
      private PnfsId _pnfsId;
      private int _Id;
      int _wCnt;
+     private String[] _pools = {};
      // HashSet brokenFiles = new HashSet();
 
      Reducer(PnfsId pnfsId, int Id, int cnt) {
@@ -1461,6 +1560,7 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
          synchronized (this) { // synchronization is required only to invoke notify()
            this.notifyAll();
          }
+         removePoolWorker(_pools);
          _wCnt = workerCountRM.release();
          _log.info("Reducer ID=" + _Id + ", pnfsId=" + _pnfsId + " finished"
              + ", now " + (_maxWorkers - _wCnt) + "/" + _maxWorkers +
@@ -1478,7 +1578,15 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
        start = System.currentTimeMillis();
        timeToStop = start + waitReduceTO;
        try {
-         observer = (ReductionObserver) removeCopy(pnfsId, _poolsWritable);
+         observer = (ReductionObserver) removeCopy(pnfsId, _poolsWritable, getBusyPools());
+       } catch (IllegalArgumentException ee) {
+         if (String.valueOf(ee.getMessage()).startsWith(poolsBusyError)) {
+           _log.debug(ee.getMessage());
+           _throttled = true;
+         } else {
+           _log.info("reduce(" + pnfsId + ") reported : " + ee);
+         }
+         return;
        } catch (Exception ee) {
          _log.info("reduce(" + pnfsId + ") reported : " + ee);
          return;
@@ -1487,6 +1595,10 @@ public class ReplicaManagerV2 extends DCacheCoreControllerV2
        String poolName = observer.getPool();
        _log.info(pnfsId.toString() + " Reducing");
 
+       _pools = new String[] { poolName };
+       addPoolWorker(_pools);
+       _dispatched.incrementAndGet();
+
        synchronized (_dbLock) {
          _db.addTransaction(pnfsId, start, -1);
        }
@@ -0,0 +1,174 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2014 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package diskCacheV111.srm.dcache;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dmg.cells.services.login.LoginBrokerInfo;
+
+/**
+ * Selects doors for transfer URLs.
+ *
+ * Doors are indexed by protocol. The index is only rebuilt when a new set
+ * of doors is provided by the login broker; between updates, selecting a
+ * door does not need to look at doors of other protocols.
+ *
+ * A door is chosen at random with a probability proportional to its free
+ * capacity, that is one minus its reported load. Since the reported load
+ * lags behind, the doors recently chosen by this selector are remembered
+ * and the weight of a door is divided by one plus the number of transfers
+ * recently assigned to it. This keeps bursts of requests from all being
+ * directed to the least loaded door. A door's count of recent assignments
+ * is reset when the door reports a new load, as the new load includes
+ * those assignments, and is halved on every other update.
+ *
+ * This class is thread safe.
+ */
+public class DoorSelector
+{
+    /**
+     * Minimum weight of a door, so that fully loaded doors are chosen if no
+     * other doors are available.
+     */
+    private static final double MIN_WEIGHT = 0.01;
+
+    private static class Door
+    {
+        final LoginBrokerInfo info;
+        final AtomicInteger assigned;
+
+        Door(LoginBrokerInfo info, int assigned)
+        {
+            this.info = info;
+            this.assigned = new AtomicInteger(assigned);
+        }
+
+        double getWeight()
+        {
+            double free = Math.max(MIN_WEIGHT, 1.0 - info.getLoad());
+            return free / (1 + assigned.get());
+        }
+    }
+
+    private final Random _random;
+
+    /** The doors from which the index was built. */
+    private Multimap<String,LoginBrokerInfo> _source;
+
+    private volatile ListMultimap<String,Door> _index = ImmutableListMultimap.of();
+
+    public DoorSelector(Random random)
+    {
+        _random = random;
+    }
+
+    /**
+     * Updates the doors to select from. The index is only rebuilt if
+     * {@code doors} is not the instance from which the current index was
+     * built.
+     *
+     * @param doors doors by protocol family
+     */
+    public synchronized void setDoors(Multimap<String,LoginBrokerInfo> doors)
+    {
+        if (doors == _source) {
+            return;
+        }
+
+        Map<String,Door> previous = new HashMap<>();
+        for (Map.Entry<String,Door> entry : _index.entries()) {
+            previous.put(entry.getKey() + "@" + entry.getValue().info.getIdentifier(), entry.getValue());
+        }
+
+        ImmutableListMultimap.Builder<String,Door> index = ImmutableListMultimap.builder();
+        for (Map.Entry<String,LoginBrokerInfo> entry : doors.entries()) {
+            LoginBrokerInfo info = entry.getValue();
+            Door door = previous.get(entry.getKey() + "@" + info.getIdentifier());
+            int assigned = 0;
+            if (door != null && door.info.getLoad() == info.getLoad()) {
+                assigned = door.assigned.get() / 2;
+            }
+            index.put(entry.getKey(), new Door(info, assigned));
+        }
+
+        _index = index.build();
+        _source = doors;
+    }
+
+    /**
+     * Chooses a door for a protocol family and records the assignment.
+     *
+     * @param protocol the protocol family
+     * @param filter only doors accepted by the filter are considered
+     * @return the door, or null if no door is available
+     */
+    public LoginBrokerInfo select(String protocol, Predicate<LoginBrokerInfo> filter)
+    {
+        List<Door> doors = _index.get(protocol);
+        double[] weights = new double[doors.size()];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Door door = doors.get(i);
+            if (filter.apply(door.info)) {
+                weights[i] = door.getWeight();
+                total += weights[i];
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+
+        double r = _random.nextDouble() * total;
+        int selected = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                selected = i;
+                r -= weights[i];
+                if (r < 0) {
+                    break;
+                }
+            }
+        }
+
+        Door door = doors.get(selected);
+        door.assigned.incrementAndGet();
+        return door.info;
+    }
+
+    /**
+     * Returns the number of transfers recently assigned to a door.
+     */
+    public int getAssigned(String protocol, LoginBrokerInfo info)
+    {
+        for (Door door : _index.get(protocol)) {
+            if (door.info.getIdentifier().equals(info.getIdentifier())) {
+                return door.assigned.get();
+            }
+        }
+        return 0;
+    }
+}
@@ -76,8 +76,6 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.Range;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.CheckedFuture;
@@ -109,7 +107,6 @@ import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -220,6 +217,7 @@ import org.dcache.vehicles.FileAttributes;
 
 import static com.google.common.base.Predicates.in;
 import static com.google.common.base.Predicates.not;
+import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.net.InetAddresses.isInetAddress;
 import static com.google.common.util.concurrent.Futures.immediateFailedCheckedFuture;
@@ -280,7 +278,7 @@ public final class Storage
 
     private Supplier<Multimap<String,LoginBrokerInfo>> loginBrokerInfo;
     private final Random rand = new Random();
-    private int numDoorInRanSelection = 3;
+    private final DoorSelector doorSelector = new DoorSelector(rand);
 
     /**
      * A loading cache for looking up space reservations by space token.
@@ -456,11 +454,6 @@ public final class Storage
                 Suppliers.memoizeWithExpiration(new LoginBrokerInfoSupplier(), period, TimeUnit.MILLISECONDS);
     }
 
-    public void setNumberOfDoorsInRandomSelection(int value)
-    {
-        numDoorInRanSelection = value;
-    }
-
     public void setUseCustomGetHostByAddress(boolean value)
     {
         customGetHostByAddr = value;
@@ -701,32 +694,6 @@ public final class Storage
         }
     }
 
-    private Multimap<String, LoginBrokerInfo> getLoginBrokerInfos(final Collection<String> includes,
-                                                                  final Collection<String> excludes,
-                                                                  final DcacheUser user,
-                                                                  final FsPath path)
-            throws SRMInternalErrorException
-    {
-        return Multimaps.filterEntries(
-                getLoginBrokerInfos(),
-                new Predicate<Map.Entry<String, LoginBrokerInfo>>()
-                {
-                    @Override
-                    public boolean apply(Map.Entry<String, LoginBrokerInfo> entry)
-                    {
-                        String protocol = entry.getKey();
-                        if (!includes.contains(protocol) || excludes.contains(protocol)) {
-                            return false;
-                        }
-                        FsPath root =
-                                (entry.getValue().getRoot() != null)
-                                        ? new FsPath(entry.getValue().getRoot())
-                                        : user.getRoot();
-                        return path.startsWith(root);
-                    }
-                });
-    }
-
     @Override
     public boolean isLocalTransferUrl(URI url)
             throws SRMInternalErrorException
@@ -742,19 +709,30 @@ public final class Storage
         return false;
     }
 
-    private Collection<LoginBrokerInfo> selectDoors(String[] includes, String[] excludes, DcacheUser user, FsPath path)
+    private LoginBrokerInfo selectDoor(String[] includes, String[] excludes, final DcacheUser user, final FsPath path)
             throws SRMInternalErrorException, SRMNotSupportedException
     {
-        Multimap<String, LoginBrokerInfo> doors =
-                getLoginBrokerInfos(asList(includes), asList(excludes), user, path);
-        for (String protocol : srmPreferredProtocols) {
-            if (doors.containsKey(protocol)) {
-                return doors.get(protocol);
-            }
-        }
-        for (String protocol : includes) {
-            if (doors.containsKey(protocol)) {
-                return doors.get(protocol);
+        doorSelector.setDoors(getLoginBrokerInfos());
+
+        Predicate<LoginBrokerInfo> isPathWithinRoot =
+                new Predicate<LoginBrokerInfo>()
+                {
+                    @Override
+                    public boolean apply(LoginBrokerInfo door)
+                    {
+                        FsPath root = (door.getRoot() != null) ? new FsPath(door.getRoot()) : user.getRoot();
+                        return path.startsWith(root);
+                    }
+                };
+        List<String> allowed = asList(includes);
+        List<String> disallowed = asList(excludes);
+        for (String protocol : concat(asList(srmPreferredProtocols), allowed)) {
+            if (allowed.contains(protocol) && !disallowed.contains(protocol)) {
+                LoginBrokerInfo door = doorSelector.select(protocol, isPathWithinRoot);
+                if (door != null) {
+                    _log.trace("selectDoor returns {}", door);
+                    return door;
+                }
             }
         }
         _log.warn("Cannot find suitable protocol. Client requested one of {}.",
@@ -762,18 +740,6 @@ public final class Storage
         throw new SRMNotSupportedException("Cannot find suitable transfer protocol.");
     }
 
-    private LoginBrokerInfo selectDoor(String[] includes, String[] excludes, DcacheUser user, FsPath path)
-            throws SRMInternalErrorException, SRMNotSupportedException
-    {
-        Collection<LoginBrokerInfo> doors =
-                selectDoors(includes, excludes, user, path);
-        List<LoginBrokerInfo> loginBrokerInfos = LOAD_ORDER.leastOf(doors, numDoorInRanSelection);
-        int index = rand.nextInt(Math.min(loginBrokerInfos.size(), numDoorInRanSelection));
-        LoginBrokerInfo door = loginBrokerInfos.get(index);
-        _log.trace("selectDoor returns {}", door);
-        return door;
-    }
-
     private LoginBrokerInfo findDoor(URI uri)
             throws SRMInternalErrorException
     {
@@ -815,15 +781,6 @@ public final class Storage
         }
     }
 
-    private static final Ordering<LoginBrokerInfo> LOAD_ORDER =
-        new Ordering<LoginBrokerInfo>() {
-            @Override
-            public int compare(LoginBrokerInfo info1, LoginBrokerInfo info2)
-            {
-                return Double.compare(info1.getLoad(), info2.getLoad());
-            }
-        };
-
 
     /**
      * Next two functions are
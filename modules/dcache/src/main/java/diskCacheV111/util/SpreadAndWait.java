@@ -7,19 +7,31 @@ import com.google.common.util.concurrent.Futures;
 import javax.annotation.Nullable;
 
 import java.io.Serializable;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import dmg.cells.nucleus.CellPath;
 
 import org.dcache.cells.AbstractMessageCallback;
 import org.dcache.cells.CellStub;
 
+/**
+ * Sends requests to a number of cells in parallel and collects the replies.
+ *
+ * Requests are sent asynchronously, thus waiting for the replies is bounded
+ * by the slowest responder rather than by the sum of the response times.
+ * Waiting may furthermore be bounded by an overall deadline, in which case
+ * the replies that arrived so far are available as a partial result. The
+ * latency of each reply is recorded.
+ */
 public class SpreadAndWait<T extends Serializable>
 {
 	private final CellStub _stub;
         private final Map<CellPath,T> _replies = new LinkedHashMap<>();
+        private final Map<CellPath,Long> _sent = new HashMap<>();
+        private final Map<CellPath,Long> _latencies = new LinkedHashMap<>();
         private int _pending;
 
         public SpreadAndWait(CellStub stub)
@@ -28,6 +40,7 @@ public class SpreadAndWait<T extends Serializable>
         }
 
 	public synchronized void send(final CellPath destination, Class<? extends T> type, Serializable msg)  {
+            _sent.put(destination, System.currentTimeMillis());
             Futures.addCallback(_stub.send(destination, msg, type),
                                 new FutureCallback<T>()
                                 {
@@ -50,6 +63,10 @@ public class SpreadAndWait<T extends Serializable>
         {
             _pending--;
             _replies.put(destination, answer);
+            Long sent = _sent.get(destination);
+            if (sent != null) {
+                _latencies.put(destination, System.currentTimeMillis() - sent);
+            }
             notifyAll();
         }
 
@@ -65,14 +82,53 @@ public class SpreadAndWait<T extends Serializable>
                 }
 	}
 
-	public Map<CellPath, T> getReplies() {
-		return Collections.unmodifiableMap(_replies);
+        /**
+         * Waits until all replies have arrived or the timeout has passed,
+         * whichever comes first.
+         *
+         * @return true if all replies arrived, false if the timeout passed
+         */
+        public synchronized boolean waitForReplies(long timeout, TimeUnit unit)
+                throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            long remaining = unit.toMillis(timeout);
+            while (_pending > 0 && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return _pending == 0;
+        }
+
+        /**
+         * Returns the replies received so far.
+         */
+	public synchronized Map<CellPath, T> getReplies() {
+		return new LinkedHashMap<>(_replies);
 	}
 
-	public int getReplyCount() {
+	public synchronized int getReplyCount() {
 		return _replies.size();
 	}
 
+        /**
+         * Returns the number of requests for which neither a reply nor
+         * an error has been received.
+         */
+        public synchronized int getPendingCount()
+        {
+            return _pending;
+        }
+
+        /**
+         * Returns the latency in milliseconds of the replies received so
+         * far, in the order in which they arrived.
+         */
+        public synchronized Map<CellPath, Long> getLatencies()
+        {
+            return new LinkedHashMap<>(_latencies);
+        }
+
 	public synchronized T next() throws InterruptedException {
 		//
 		// pending replies what
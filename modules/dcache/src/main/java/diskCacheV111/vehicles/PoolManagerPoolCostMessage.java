@@ -0,0 +1,45 @@
+package diskCacheV111.vehicles;
+
+import diskCacheV111.pools.PoolCostInfo;
+
+/**
+ * Sent by a pool to PoolManager when its cost has changed significantly
+ * since the last heartbeat or cost update.
+ *
+ * Unlike PoolManagerPoolUpMessage, the message carries neither the pool
+ * mode, the tags nor the HSM instances and is only meaningful for a pool
+ * that PoolManager already knows with the same serial id. The periodic
+ * PoolManagerPoolUpMessage remains authoritative.
+ */
+public class PoolManagerPoolCostMessage extends PoolManagerMessage
+{
+    private static final long serialVersionUID = 2594406282391340618L;
+
+    private final String _poolName;
+    private final long _serialId;
+    private final PoolCostInfo _poolCostInfo;
+
+    public PoolManagerPoolCostMessage(String poolName, long serialId,
+                                      PoolCostInfo costInfo)
+    {
+        _poolName = poolName;
+        _serialId = serialId;
+        _poolCostInfo = costInfo;
+        setReplyRequired(false);
+    }
+
+    public String getPoolName()
+    {
+        return _poolName;
+    }
+
+    public long getSerialId()
+    {
+        return _serialId;
+    }
+
+    public PoolCostInfo getPoolCostInfo()
+    {
+        return _poolCostInfo;
+    }
+}
@@ -59,7 +59,7 @@ documents or software obtained from this server.
  */
 package org.dcache.alarms.dao;
 
-import org.dcache.services.billing.db.impl.datanucleus.DataNucleusBillingInfo;
+import java.util.Collection;
 
 /**
  * Interface for the logger to store entries.
@@ -68,15 +68,18 @@ import org.dcache.services.billing.db.impl.datanucleus.DataNucleusBillingInfo;
  */
 public interface ILogEntryDAO {
     /**
-     * As it is unlikely that the log service will be bombarded by error
-     * messages, a collection/batch method (such as used by
-     * {@link DataNucleusBillingInfo}) is not really necessary; single-insert
-     * should not create a bottleneck.<br>
-     * <br>
-     *
      * It is the responsibility of the implementation to handle duplicates; in
      * most cases this will involve a check for key equivalence and a subsequent
      * update instead of insert.
      */
     void put(LogEntry alarm);
+
+    /**
+     * Stores a batch of entries with distinct keys. For an entry whose key
+     * already exists, the stored entry is updated: the received count is
+     * incremented by the received count of the new entry and the last
+     * update is advanced. Used by {@link org.dcache.alarms.dao.impl.BatchingLogEntryStore}
+     * to keep alarm storms from turning into one transaction per event.
+     */
+    void put(Collection<LogEntry> alarms);
 }
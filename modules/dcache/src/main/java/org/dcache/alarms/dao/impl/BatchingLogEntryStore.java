@@ -0,0 +1,247 @@
+/*
+COPYRIGHT STATUS:
+Dec 1st 2001, Fermi National Accelerator Laboratory (FNAL) documents and
+software are sponsored by the U.S. Department of Energy under Contract No.
+DE-AC02-76CH03000. Therefore, the U.S. Government retains a  world-wide
+non-exclusive, royalty-free license to publish or reproduce these documents
+and software for U.S. Government purposes.  All documents and software
+available from this server are protected under the U.S. and Foreign
+Copyright Laws, and FNAL reserves all rights.
+
+Distribution of the software available from this server is free of
+charge subject to the user following the terms of the Fermitools
+Software Legal Information.
+
+Redistribution and/or modification of the software shall be accompanied
+by the Fermitools Software Legal Information  (including the copyright
+notice).
+
+The user is asked to feed back problems, benefits, and/or suggestions
+about the software to the Fermilab Software Providers.
+
+Neither the name of Fermilab, the  URA, nor the names of the contributors
+may be used to endorse or promote products derived from this software
+without specific prior written permission.
+
+DISCLAIMER OF LIABILITY (BSD):
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED  WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED  WARRANTIES OF MERCHANTABILITY AND FITNESS
+FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL FERMILAB,
+OR THE URA, OR THE U.S. DEPARTMENT of ENERGY, OR CONTRIBUTORS BE LIABLE
+FOR  ANY  DIRECT, INDIRECT,  INCIDENTAL, SPECIAL, EXEMPLARY, OR
+CONSEQUENTIAL DAMAGES  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT
+OF SUBSTITUTE  GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY  OF
+LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT  OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE  POSSIBILITY OF SUCH DAMAGE.
+
+Liabilities of the Government:
+
+This software is provided by URA, independent from its Prime Contract
+with the U.S. Department of Energy. URA is acting independently from
+the Government and in its own private capacity and is not acting on
+behalf of the U.S. Government, nor as its contractor nor its agent.
+Correspondingly, it is understood and agreed that the U.S. Government
+has no connection to this software and in no manner whatsoever shall
+be liable for nor assume any responsibility or obligation for any claim,
+cost, or damages arising out of or resulting from the use of the software
+available from this server.
+
+Export Control:
+
+All documents and software available from this server are subject to U.S.
+export control laws.  Anyone downloading information from this server is
+obligated to secure any necessary Government licenses before exporting
+documents or software obtained from this server.
+ */
+package org.dcache.alarms.dao.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dcache.alarms.dao.ILogEntryDAO;
+import org.dcache.alarms.dao.LogEntry;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decouples the logging appender from the underlying alarm store.<br>
+ * <br>
+ * Entries are collected in an in-memory index keyed by the alarm key.
+ * Further instances of an alarm already in the index only increment its
+ * received count and advance its last update, so that a storm of identical
+ * errors results in a single row update. The index is flushed to the
+ * underlying store as a batch at a fixed interval.<br>
+ * <br>
+ * The index is bounded by the number of distinct keys. Entries with a new
+ * key arriving while the index is full are dropped and counted; so are the
+ * entries of a batch the underlying store failed to write that no longer
+ * fit into the index.
+ */
+public class BatchingLogEntryStore implements ILogEntryDAO {
+    private static final Logger LOGGER
+        = LoggerFactory.getLogger(BatchingLogEntryStore.class);
+
+    private final ILogEntryDAO store;
+    private final int maxPending;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    private Map<String, LogEntry> pending = new LinkedHashMap<>();
+    private ScheduledExecutorService executor;
+    private long lastReportedDrops;
+
+    public BatchingLogEntryStore(ILogEntryDAO store, int maxPending) {
+        checkArgument(maxPending > 0, "maxPending must be positive");
+        this.store = store;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Starts flushing the index at the given interval.
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        checkArgument(interval > 0, "flush interval must be positive");
+        executor = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder()
+                            .setNameFormat("alarm-flush-%d")
+                            .setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stops the periodic flush and writes what remains in the index.
+     */
+    public void shutdown() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void put(LogEntry entry) {
+        if (!merge(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void put(Collection<LogEntry> entries) {
+        for (LogEntry entry : entries) {
+            put(entry);
+        }
+    }
+
+    /**
+     * Writes the current content of the index to the underlying store.
+     * Should the store fail, the batch is merged back into the index to be
+     * retried on the next flush.
+     */
+    public void flush() {
+        Map<String, LogEntry> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        try {
+            store.put(batch.values());
+            flushed.addAndGet(batch.size());
+        } catch (RuntimeException e) {
+            failedFlushes.incrementAndGet();
+            LOGGER.warn("Failed to store {} alarms, will retry: {}",
+                            batch.size(), e.toString());
+            int lost = 0;
+            for (LogEntry entry : batch.values()) {
+                if (!merge(entry)) {
+                    lost++;
+                }
+            }
+            dropped.addAndGet(lost);
+        }
+
+        long drops = dropped.get();
+        if (drops > lastReportedDrops) {
+            LOGGER.warn("Alarm store cannot keep up: {} alarms dropped since last flush.",
+                            drops - lastReportedDrops);
+            lastReportedDrops = drops;
+        }
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.get();
+    }
+
+    public long getFlushed() {
+        return flushed.get();
+    }
+
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Adds the entry to the index, or folds it into the entry with the
+     * same key.
+     *
+     * @return false if the entry has a new key and the index is full.
+     */
+    private synchronized boolean merge(LogEntry entry) {
+        LogEntry existing = pending.get(entry.getKey());
+        if (existing != null) {
+            existing.setReceived(existing.getReceived() + entry.getReceived());
+            existing.setLastUpdate(Math.max(existing.getLastUpdate(),
+                                            entry.getLastUpdate()));
+            existing.setFirstArrived(Math.min(existing.getFirstArrived(),
+                                              entry.getFirstArrived()));
+            coalesced.incrementAndGet();
+            return true;
+        }
+        if (pending.size() >= maxPending) {
+            return false;
+        }
+        pending.put(entry.getKey(), entry);
+        return true;
+    }
+}
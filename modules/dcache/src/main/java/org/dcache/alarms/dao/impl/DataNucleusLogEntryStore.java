@@ -59,6 +59,7 @@ documents or software obtained from this server.
  */
 package org.dcache.alarms.dao.impl;
 
+import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +70,12 @@ import javax.jdo.Query;
 import javax.jdo.Transaction;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.dcache.alarms.dao.ILogEntryDAO;
 import org.dcache.alarms.dao.LogEntry;
@@ -81,6 +88,12 @@ import org.dcache.alarms.dao.LogEntry;
  * @author arossi
  */
 public class DataNucleusLogEntryStore implements ILogEntryDAO {
+    /*
+     * keeps the IN-list of the query for existing entries well below the
+     * parameter limits of common databases
+     */
+    private static final int KEYS_PER_QUERY = 500;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final PersistenceManagerFactory pmf;
 
@@ -91,11 +104,30 @@ public class DataNucleusLogEntryStore implements ILogEntryDAO {
 
     @Override
     public void put(LogEntry entry) {
+        put(Collections.singleton(entry));
+    }
+
+    /**
+     * Upserts all entries in a single transaction. The existing entries are
+     * fetched with one query per {@value #KEYS_PER_QUERY} entries rather than
+     * one query per entry.
+     */
+    @Override
+    public void put(Collection<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Map<String, LogEntry> byKey = new HashMap<>();
+        for (LogEntry entry : entries) {
+            byKey.put(entry.getKey(), entry);
+        }
+
         PersistenceManager insertManager = pmf.getPersistenceManager();
         Transaction tx = insertManager.currentTransaction();
         Query query = insertManager.newQuery(LogEntry.class);
-        query.setFilter("key==k");
-        query.declareParameters("java.lang.String k");
+        query.setFilter("keys.contains(key)");
+        query.declareParameters("java.util.Collection keys");
         query.addExtension("datanucleus.query.resultCacheType", "none");
         /*
          * looks like DataNucleus 3.1.3+ needs this to get the most recent
@@ -106,43 +138,63 @@ public class DataNucleusLogEntryStore implements ILogEntryDAO {
 
         try {
             tx.begin();
-            Collection<LogEntry> dup
-                = (Collection<LogEntry>) query.executeWithArray(entry.getKey());
-            logger.trace("duplicate? {}", dup);
-            if (dup != null && !dup.isEmpty()) {
-                if (dup.size() > 1) {
-                    throw new RuntimeException
-                        ("data store inconsistency!"
-                          + " more than one alarm with the same id: "
-                                                    + entry.getKey());
+            Set<String> seen = new HashSet<>();
+            for (List<String> keys : Iterables.partition(byKey.keySet(),
+                                                         KEYS_PER_QUERY)) {
+                Collection<LogEntry> dups
+                    = (Collection<LogEntry>) query.executeWithArray(keys);
+                logger.trace("duplicates? {}", dups);
+                if (dups == null) {
+                    continue;
+                }
+                for (LogEntry original : dups) {
+                    if (!seen.add(original.getKey())) {
+                        throw new RuntimeException
+                            ("data store inconsistency!"
+                              + " more than one alarm with the same id: "
+                                                        + original.getKey());
+                    }
+                    LogEntry entry = byKey.get(original.getKey());
+                    original.setLastUpdate(Math.max(original.getLastUpdate(),
+                                                    entry.getLastUpdate()));
+                    original.setReceived(original.getReceived()
+                                         + entry.getReceived());
+                    /*
+                     * this needs to be done or else newly arriving instances
+                     * will not be tracked if this type has been closed
+                     * previously
+                     */
+                    original.setClosed(false);
+                    /*
+                     * original is not detached so it will be updated on commit
+                     */
+                }
+            }
+
+            for (LogEntry entry : byKey.values()) {
+                if (!seen.contains(entry.getKey())) {
+                    /*
+                     * first instance of this alarm
+                     */
+                    logger.trace("makePersistent alarm, key={}", entry.getKey());
+                    insertManager.makePersistent(entry);
                 }
-                LogEntry original = dup.iterator().next();
-                original.setLastUpdate(entry.getLastUpdate());
-                original.setReceived(original.getReceived() + 1);
-		/*
-                 * this needs to be done or else newly arriving instances
-                 * will not be tracked if this type has been closed
-                 * previously
-                 */
-                original.setClosed(false);
-                /*
-                 * original is not detached so it will be updated on commit
-                 */
-            } else {
-                /*
-                 * first instance of this alarm
-                 */
-                logger.trace("makePersistent alarm, key={}", entry.getKey());
-                insertManager.makePersistent(entry);
-                logger.trace("committing");
             }
+            logger.trace("committing");
             tx.commit();
-            logger.debug("finished putting alarm, key={}", entry.getKey());
+            logger.debug("finished putting {} alarms, {} new",
+                         byKey.size(), byKey.size() - seen.size());
         } finally {
-            /*
-             * closing is necessary in order to avoid memory leaks
-             */
-            insertManager.close();
+            try {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+            } finally {
+                /*
+                 * closing is necessary in order to avoid memory leaks
+                 */
+                insertManager.close();
+            }
         }
     }
 }
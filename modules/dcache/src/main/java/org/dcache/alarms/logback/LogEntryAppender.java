@@ -94,17 +94,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import org.dcache.alarms.IAlarms;
 import org.dcache.alarms.dao.ILogEntryDAO;
 import org.dcache.alarms.dao.LogEntry;
+import org.dcache.alarms.dao.impl.BatchingLogEntryStore;
 import org.dcache.alarms.dao.impl.DataNucleusLogEntryStore;
 
 /**
  * For server-side interception of log messages. Will store them to the LogEntry
  * store used by the dCache installation. If the storage plugin is file-based
  * (e.g., XML), the dCache alarm display service (webadmin) must be running on a
- * shared file-system with the logging server.
+ * shared file-system with the logging server.<br>
+ * <br>
+ * Entries are not written synchronously; they are coalesced by key and
+ * flushed in batches (see {@link BatchingLogEntryStore}) so that a storm of
+ * identical errors neither blocks the logging threads nor overwhelms the
+ * store.
  *
  * @author arossi
  */
@@ -127,6 +134,10 @@ public class LogEntryAppender extends AppenderBase<ILoggingEvent> implements
     private String password;
     private JDOPersistenceManagerFactory pmf;
     private HikariDataSource dataSource;
+    private BatchingLogEntryStore batchingStore;
+    private long flushInterval = 2;
+    private TimeUnit flushIntervalUnit = TimeUnit.SECONDS;
+    private int maxPending = 10000;
 
     public void addAlarmType(AlarmDefinition definition) {
         definitions.put(definition.getType(), definition);
@@ -179,6 +190,18 @@ public class LogEntryAppender extends AppenderBase<ILoggingEvent> implements
         this.definitionsPath = definitionsPath;
     }
 
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setFlushIntervalUnit(String flushIntervalUnit) {
+        this.flushIntervalUnit = TimeUnit.valueOf(flushIntervalUnit);
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
     public void setPass(String pass) {
         this.password = pass;
     }
@@ -214,7 +237,10 @@ public class LogEntryAppender extends AppenderBase<ILoggingEvent> implements
 
             if (store == null) {
                 initPersistenceManagerFactory();
-                store = new DataNucleusLogEntryStore(pmf);
+                batchingStore = new BatchingLogEntryStore(
+                                new DataNucleusLogEntryStore(pmf), maxPending);
+                batchingStore.start(flushInterval, flushIntervalUnit);
+                store = batchingStore;
             }
 
             for (Appender<ILoggingEvent> child : childAppenders.values()) {
@@ -232,6 +258,10 @@ public class LogEntryAppender extends AppenderBase<ILoggingEvent> implements
     {
         super.stop();
         store = null;
+        if (batchingStore != null) {
+            batchingStore.shutdown();
+            batchingStore = null;
+        }
         if (pmf != null) {
             pmf.close();
             pmf = null;
@@ -100,6 +100,9 @@ public class LogEntryServerWrapper {
     private String pass;
     private String level;
     private Integer port;
+    private long flushInterval;
+    private String flushIntervalUnit;
+    private int maxPending;
 
     private SimpleSocketServer server;
 
@@ -115,10 +118,22 @@ public class LogEntryServerWrapper {
         this.definitionsPath = Strings.emptyToNull(definitionsPath);
     }
 
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public void setFlushIntervalUnit(String flushIntervalUnit) {
+        this.flushIntervalUnit = Strings.emptyToNull(flushIntervalUnit);
+    }
+
     public void setLevel(String level) {
         this.level = Strings.emptyToNull(level);
     }
 
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
     public void setPass(String pass) {
         this.pass = Strings.emptyToNull(pass);
     }
@@ -164,6 +179,9 @@ public class LogEntryServerWrapper {
             checkArgument(alarmsDirectory.isDirectory());
             checkNotNull(port);
             checkArgument(port > 0);
+            checkArgument(flushInterval > 0);
+            checkNotNull(flushIntervalUnit);
+            checkArgument(maxPending > 0);
         } catch (IllegalArgumentException ie) {
             LOGGER.error("Configuration precondition failure: {}; "
                             + "server will not be started.", ie.getMessage());
@@ -190,6 +208,12 @@ public class LogEntryServerWrapper {
             loggerContext.putProperty("alarms.db.password", pass);
             loggerContext.putProperty("alarms.db.config.path", properties);
             loggerContext.putProperty("alarms.definitions.path", definitionsPath);
+            loggerContext.putProperty("alarms.db.flush-interval",
+                            String.valueOf(flushInterval));
+            loggerContext.putProperty("alarms.db.flush-interval.unit",
+                            flushIntervalUnit);
+            loggerContext.putProperty("alarms.db.max-pending",
+                            String.valueOf(maxPending));
             loggerContext.putProperty("alarms.log.root-level", level);
 
             JoranConfigurator configurator = new JoranConfigurator();
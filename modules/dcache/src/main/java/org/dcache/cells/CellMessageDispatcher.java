@@ -1,13 +1,17 @@
 package org.dcache.cells;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import dmg.cells.nucleus.CellMessage;
 import dmg.cells.nucleus.CellMessageReceiver;
@@ -16,24 +20,28 @@ import org.dcache.util.ReflectionUtils;
 
 /**
  * Automatic dispatch of dCache messages to message handlers.
+ *
+ * The registered listeners and the receivers resolved for each message
+ * type are kept in an immutable snapshot that is replaced atomically.
+ * Message delivery thus neither locks nor uses reflection once the
+ * receivers of a message type have been resolved.
  */
 public class CellMessageDispatcher
 {
-    /** Cached message handlers for fast dispatch. */
-    private final Map<Class<? extends Serializable>, Collection<Receiver>>
-            _receivers = new HashMap<>();
+    /**
+     * Uniform type of the method handles of all receivers: the envelope
+     * and the message are passed and the reply is returned.
+     */
+    private static final MethodType RECEIVER_TYPE =
+            MethodType.methodType(Object.class, CellMessage.class, Object.class);
+
+    /** Registered message listeners and cached message handlers for fast dispatch. */
+    private final AtomicReference<Snapshot> _snapshot =
+            new AtomicReference<>(new Snapshot(ImmutableList.<CellMessageReceiver>of()));
 
     /** Name of receiver methods. */
     private final String _receiverName;
 
-    /**
-     * Registered message listeners.
-     *
-     * @see addMessageListener
-     */
-    private final Collection<CellMessageReceiver> _messageListeners =
-        new CopyOnWriteArrayList<>();
-
     public CellMessageDispatcher(String receiverName)
     {
         _receiverName = receiverName;
@@ -74,11 +82,10 @@ public class CellMessageDispatcher
     {
         Class<? extends CellMessageReceiver> c = o.getClass();
         if (hasListener(c)) {
-            synchronized (_receivers) {
-                if (_messageListeners.add(o)) {
-                    _receivers.clear();
-                }
-            }
+            Snapshot current;
+            do {
+                current = _snapshot.get();
+            } while (!_snapshot.compareAndSet(current, current.withListener(o)));
         }
     }
 
@@ -87,11 +94,13 @@ public class CellMessageDispatcher
      */
     public void removeMessageListener(CellMessageReceiver o)
     {
-        synchronized (_receivers) {
-            if (_messageListeners.remove(o)) {
-                _receivers.clear();
+        Snapshot current;
+        do {
+            current = _snapshot.get();
+            if (!current.listeners.contains(o)) {
+                return;
             }
-        }
+        } while (!_snapshot.compareAndSet(current, current.withoutListener(o)));
     }
 
     /**
@@ -125,35 +134,50 @@ public class CellMessageDispatcher
      * Finds the objects and methods, in other words the receivers, of
      * messages of a given type.
      *
-     * FIXME: This is still not quite the right thing: if you have
-     * messageArrived(CellMessage, X) and messageArrived(Y) and Y is
-     * more specific than X, then you would expect the latter to be
-     * called for message Y. This is not yet the case.
+     * For each listener at most one receiver is returned. If a listener
+     * has both a method accepting the envelope and a method accepting
+     * only the message, then the method with the more specific message
+     * parameter is chosen. If both are equally specific, the method
+     * accepting the envelope is chosen.
      */
-    private Collection<Receiver> findReceivers(Class<?> c)
+    private Collection<Receiver> findReceivers(Collection<CellMessageReceiver> listeners, Class<?> c)
     {
-        synchronized (_receivers) {
-            Collection<Receiver> receivers = new ArrayList<>();
-            for (CellMessageReceiver listener : _messageListeners) {
-                Method m = ReflectionUtils.resolve(listener.getClass(),
-                                                   _receiverName,
-                                                   CellMessage.class, c);
-                if (m != null) {
-                    m.setAccessible(true);
-                    receivers.add(new LongReceiver(listener, m));
-                    continue;
-                }
+        Collection<Receiver> receivers = new ArrayList<>();
+        for (CellMessageReceiver listener : listeners) {
+            Method longMethod = ReflectionUtils.resolve(listener.getClass(),
+                                                        _receiverName,
+                                                        CellMessage.class, c);
+            Method shortMethod = ReflectionUtils.resolve(listener.getClass(),
+                                                         _receiverName,
+                                                         c);
+            if (longMethod != null &&
+                    (shortMethod == null || !isMoreSpecific(shortMethod.getParameterTypes()[0],
+                                                            longMethod.getParameterTypes()[1]))) {
+                receivers.add(new Receiver(listener, longMethod, true));
+            } else if (shortMethod != null) {
+                receivers.add(new Receiver(listener, shortMethod, false));
+            }
+        }
+        return receivers;
+    }
 
-                m = ReflectionUtils.resolve(listener.getClass(),
-                                            _receiverName,
-                                            c);
-                if (m != null) {
-                    m.setAccessible(true);
-                    receivers.add(new ShortReceiver(listener, m));
-                }
+    private static boolean isMoreSpecific(Class<?> a, Class<?> b)
+    {
+        return !a.equals(b) && b.isAssignableFrom(a);
+    }
+
+    private Collection<Receiver> getReceivers(Class<? extends Serializable> c)
+    {
+        Snapshot current = _snapshot.get();
+        Collection<Receiver> receivers = current.receivers.get(c);
+        while (receivers == null) {
+            receivers = findReceivers(current.listeners, c);
+            if (!_snapshot.compareAndSet(current, current.withReceivers(c, receivers))) {
+                current = _snapshot.get();
+                receivers = current.receivers.get(c);
             }
-            return receivers;
         }
+        return receivers;
     }
 
     private String multipleRepliesError(Collection<Receiver> receivers, Object message)
@@ -185,31 +209,14 @@ public class CellMessageDispatcher
     public Object call(CellMessage envelope)
     {
         Serializable message = envelope.getMessageObject();
-        Class<? extends Serializable> c = message.getClass();
-        Collection<Receiver> receivers;
-
-        synchronized (_receivers) {
-            receivers = _receivers.get(c);
-            if (receivers == null) {
-                receivers = findReceivers(c);
-                _receivers.put(c, receivers);
-            }
-        }
+        Collection<Receiver> receivers = getReceivers(message.getClass());
 
         Object result = null;
         for (Receiver receiver : receivers) {
+            Object obj;
             try {
-                Object obj = receiver.deliver(envelope, message);
-                if (obj != null) {
-                    if (result != null) {
-                        throw new RuntimeException(multipleRepliesError(receivers, message));
-                    }
-                    result = obj;
-                }
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException("Cannot process message due to access error", e);
-            } catch (InvocationTargetException e) {
-                Throwable cause = e.getCause();
+                obj = receiver.deliver(envelope, message);
+            } catch (Throwable cause) {
                 if (cause instanceof IllegalArgumentException ||
                     cause instanceof IllegalStateException ||
                     receiver.isDeclaredToThrow(cause.getClass())) {
@@ -219,6 +226,7 @@ public class CellMessageDispatcher
                      * the public contract of the receiver and
                      * propagate the exception back to the client.
                      */
+                    obj = cause;
                 } else if (cause instanceof RuntimeException) {
                     throw (RuntimeException) cause;
                 } else if (cause instanceof Error) {
@@ -231,11 +239,13 @@ public class CellMessageDispatcher
                      */
                     throw new RuntimeException("Bug: This should have been unreachable. Please report to support@dcache.org.", cause);
                 }
+            }
 
+            if (obj != null) {
                 if (result != null) {
                     throw new RuntimeException(multipleRepliesError(receivers, message));
                 }
-                result = cause;
+                result = obj;
             }
         }
 
@@ -243,66 +253,94 @@ public class CellMessageDispatcher
     }
 
     /**
-     * Helper class for message dispatching.
+     * Immutable state of the dispatcher: the registered listeners and
+     * the receivers resolved so far for these listeners.
      */
-    static abstract class Receiver
+    private static class Snapshot
     {
-        final protected CellMessageReceiver _object;
-        final protected Method _method;
+        final ImmutableList<CellMessageReceiver> listeners;
+        final ImmutableMap<Class<?>, Collection<Receiver>> receivers;
 
-        public Receiver(CellMessageReceiver object, Method method)
+        Snapshot(ImmutableList<CellMessageReceiver> listeners)
         {
-            _object = object;
-            _method = method;
+            this(listeners, ImmutableMap.<Class<?>, Collection<Receiver>>of());
         }
 
-        abstract public Object deliver(CellMessage envelope, Object message)
-            throws IllegalAccessException, InvocationTargetException;
+        Snapshot(ImmutableList<CellMessageReceiver> listeners,
+                 ImmutableMap<Class<?>, Collection<Receiver>> receivers)
+        {
+            this.listeners = listeners;
+            this.receivers = receivers;
+        }
 
-        public String toString()
+        Snapshot withListener(CellMessageReceiver listener)
         {
-            return String.format("Object: %1$s; Method: %2$s", _object, _method);
+            return new Snapshot(ImmutableList.<CellMessageReceiver>builder()
+                                        .addAll(listeners).add(listener).build());
         }
 
-        public boolean isDeclaredToThrow(Class<?> exceptionClass)
+        Snapshot withoutListener(CellMessageReceiver listener)
         {
-            for (Class<?> clazz: _method.getExceptionTypes()) {
-                if (clazz.isAssignableFrom(exceptionClass)) {
-                    return true;
-                }
-            }
-            return false;
+            List<CellMessageReceiver> remaining = new ArrayList<>(listeners);
+            remaining.remove(listener);
+            return new Snapshot(ImmutableList.copyOf(remaining));
+        }
+
+        Snapshot withReceivers(Class<?> type, Collection<Receiver> typeReceivers)
+        {
+            return new Snapshot(listeners,
+                                ImmutableMap.<Class<?>, Collection<Receiver>>builder()
+                                        .putAll(receivers).put(type, ImmutableList.copyOf(typeReceivers)).build());
         }
     }
 
-    static class ShortReceiver extends Receiver
+    /**
+     * Helper class for message dispatching.
+     *
+     * The receiver method is bound to the listener and adapted to a
+     * uniform signature, thus delivery is a single method handle
+     * invocation.
+     */
+    static class Receiver
     {
-        public ShortReceiver(CellMessageReceiver object, Method method)
+        private final CellMessageReceiver _object;
+        private final Method _method;
+        private final MethodHandle _handle;
+
+        public Receiver(CellMessageReceiver object, Method method, boolean acceptsEnvelope)
         {
-            super(object, method);
+            _object = object;
+            _method = method;
+            try {
+                method.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(object);
+                if (!acceptsEnvelope) {
+                    handle = MethodHandles.dropArguments(handle, 0, CellMessage.class);
+                }
+                _handle = handle.asType(RECEIVER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Cannot process message due to access error", e);
+            }
         }
 
-        @Override
-        public Object deliver(CellMessage envelope, Object message)
-            throws IllegalAccessException, InvocationTargetException
+        public Object deliver(CellMessage envelope, Object message) throws Throwable
         {
-            return _method.invoke(_object, message);
+            return (Object) _handle.invokeExact(envelope, message);
         }
-    }
-
 
-    static class LongReceiver extends Receiver
-    {
-        public LongReceiver(CellMessageReceiver object, Method method)
+        public String toString()
         {
-            super(object, method);
+            return String.format("Object: %1$s; Method: %2$s", _object, _method);
         }
 
-        @Override
-        public Object deliver(CellMessage envelope, Object message)
-            throws IllegalAccessException, InvocationTargetException
+        public boolean isDeclaredToThrow(Class<?> exceptionClass)
         {
-            return _method.invoke(_object, envelope, message);
+            for (Class<?> clazz: _method.getExceptionTypes()) {
+                if (clazz.isAssignableFrom(exceptionClass)) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 }
@@ -0,0 +1,78 @@
+package org.dcache.http;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pool of direct byte buffers of a fixed size.
+ *
+ * Direct buffers are expensive to allocate and are only released by the
+ * garbage collector, hence they are recycled rather than allocated per
+ * transfer. At most a fixed number of buffers is ever allocated; once all
+ * buffers are in use, {@link #acquire} returns null and the caller has to
+ * do without.
+ *
+ * This class is thread safe.
+ */
+public class DirectBufferPool
+{
+    private final int _bufferSize;
+    private final int _maxBuffers;
+    private final Queue<ByteBuffer> _free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _allocated = new AtomicInteger();
+
+    /**
+     * @param bufferSize size of each buffer in bytes
+     * @param maxBuffers maximum number of buffers to allocate; zero
+     * disables the pool
+     */
+    public DirectBufferPool(int bufferSize, int maxBuffers)
+    {
+        checkArgument(bufferSize > 0 || maxBuffers == 0, "Buffer size must be positive");
+        checkArgument(maxBuffers >= 0, "Number of buffers must not be negative");
+        _bufferSize = bufferSize;
+        _maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Returns a cleared buffer, or null if all buffers are in use.
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = _free.poll();
+        if (buffer == null) {
+            int allocated;
+            do {
+                allocated = _allocated.get();
+                if (allocated >= _maxBuffers) {
+                    return null;
+                }
+            } while (!_allocated.compareAndSet(allocated, allocated + 1));
+            buffer = ByteBuffer.allocateDirect(_bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire} to the pool.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        _free.offer(buffer);
+    }
+
+    public int getBufferSize()
+    {
+        return _bufferSize;
+    }
+
+    public int getAllocated()
+    {
+        return _allocated.get();
+    }
+}
@@ -44,15 +44,19 @@ public class HttpPoolNettyServer
 
     private final int _chunkSize;
 
+    private final DirectBufferPool _writeBuffers;
+
     public HttpPoolNettyServer(int threadPoolSize,
                                int memoryPerConnection,
                                int maxMemory,
                                int chunkSize,
+                               int writeBufferSize,
                                long clientIdleTimeout) {
         this(threadPoolSize,
              memoryPerConnection,
              maxMemory,
              chunkSize,
+             writeBufferSize,
              clientIdleTimeout,
              -1);
     }
@@ -61,12 +65,16 @@ public class HttpPoolNettyServer
                                int memoryPerConnection,
                                int maxMemory,
                                int chunkSize,
+                               int writeBufferSize,
                                long clientIdleTimeout,
                                int socketThreads) {
         super("http", threadPoolSize, memoryPerConnection, maxMemory, socketThreads);
 
         _clientIdleTimeout = clientIdleTimeout;
         _chunkSize = chunkSize;
+        _writeBuffers = (writeBufferSize > 0)
+                ? new DirectBufferPool(writeBufferSize, maxMemory / writeBufferSize)
+                : new DirectBufferPool(0, 0);
         _timer = new HashedWheelTimer();
 
         String range = System.getProperty("org.globus.tcp.port.range");
@@ -119,7 +127,7 @@ public class HttpPoolNettyServer
                                                   _clientIdleTimeout,
                                                   TimeUnit.MILLISECONDS));
             pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
-            pipeline.addLast("transfer", new HttpPoolRequestHandler(HttpPoolNettyServer.this, _chunkSize));
+            pipeline.addLast("transfer", new HttpPoolRequestHandler(HttpPoolNettyServer.this, _chunkSize, _writeBuffers));
 
             return pipeline;
         }
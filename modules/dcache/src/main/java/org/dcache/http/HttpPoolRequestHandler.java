@@ -94,6 +94,11 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
 
     private final int _chunkSize;
 
+    /**
+     * Buffers in which chunks of uploads are aggregated.
+     */
+    private final DirectBufferPool _writeBuffers;
+
     /**
      * The file being uploaded. Even though we only keep the file open
      * for the processing of a single HTTP message, that one message may
@@ -102,9 +107,19 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
      */
     private MoverChannel<HttpProtocolInfo> _writeChannel;
 
-    public HttpPoolRequestHandler(HttpPoolNettyServer server, int chunkSize) {
+    /**
+     * Aggregates the chunks of the file being uploaded into larger writes.
+     * The number of chunks in flight is bounded by the memory aware
+     * executor of the server, which suspends reading from the connection
+     * while too many chunks are queued.
+     */
+    private WriteAggregator _writeAggregator;
+
+    public HttpPoolRequestHandler(HttpPoolNettyServer server, int chunkSize,
+                                  DirectBufferPool writeBuffers) {
         _server = server;
         _chunkSize = chunkSize;
+        _writeBuffers = writeBuffers;
     }
 
     /**
@@ -372,6 +387,10 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
                               ChannelStateEvent event)
     {
         _logger.debug("HTTP connection from {} closed", ctx.getChannel().getRemoteAddress());
+        if (_writeAggregator != null) {
+            _writeAggregator.release();
+            _writeAggregator = null;
+        }
         for (MoverChannel<HttpProtocolInfo> file: _files) {
             _server.close(file);
         }
@@ -520,6 +539,7 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
                     context.getChannel().write(CONTINUE.duplicate());
                 }
                 _writeChannel = file;
+                _writeAggregator = new WriteAggregator(file, _writeBuffers);
                 file = null;
             } else {
                 long length = write(file, request.getContent());
@@ -576,12 +596,13 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
             Exception exception = null;
             ChannelFuture future = null;
             try {
-                write(_writeChannel, chunk.getContent());
+                _writeAggregator.write(chunk.getContent());
                 if (chunk.isLast()) {
                     if (chunk instanceof HttpChunkTrailer) {
                         checkContentHeader(((HttpChunkTrailer) chunk).getHeaderNames(),
                                 asList(CONTENT_LENGTH));
                     }
+                    _writeAggregator.flush();
                     future = sendPutResponse(context, _writeChannel);
                 }
             } catch (IOException e) {
@@ -594,6 +615,8 @@ public class HttpPoolRequestHandler extends HttpRequestHandler
                         future, HttpResponseStatus.valueOf(e.getErrorCode()), e.getMessage());
             } finally {
                 if (chunk.isLast() || exception != null) {
+                    _writeAggregator.release();
+                    _writeAggregator = null;
                     close(_writeChannel, exception);
                     _writeChannel = null;
                 }
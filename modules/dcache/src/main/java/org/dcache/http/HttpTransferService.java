@@ -91,6 +91,7 @@ public class HttpTransferService extends AbstractCellComponent implements MoverF
     private int maxMemoryPerConnection;
     private int maxMemory;
     private int chunkSize;
+    private int writeBufferSize;
     private long clientIdleTimeout;
     private TimeUnit clientIdleTimeoutUnit;
     private Integer socketThreads;
@@ -182,6 +183,17 @@ public class HttpTransferService extends AbstractCellComponent implements MoverF
         this.chunkSize = chunkSize;
     }
 
+    public int getWriteBufferSize()
+    {
+        return writeBufferSize;
+    }
+
+    @Required
+    public void setWriteBufferSize(int writeBufferSize)
+    {
+        this.writeBufferSize = writeBufferSize;
+    }
+
     public long getClientIdleTimeout()
     {
         return clientIdleTimeout;
@@ -222,12 +234,14 @@ public class HttpTransferService extends AbstractCellComponent implements MoverF
                     maxMemoryPerConnection,
                     maxMemory,
                     chunkSize,
+                    writeBufferSize,
                     clientIdleTimeoutUnit.toMillis(clientIdleTimeout));
         } else {
             server = new HttpPoolNettyServer(diskThreads,
                     maxMemoryPerConnection,
                     maxMemory,
                     chunkSize,
+                    writeBufferSize,
                     clientIdleTimeoutUnit.toMillis(clientIdleTimeout),
                     socketThreads);
         }
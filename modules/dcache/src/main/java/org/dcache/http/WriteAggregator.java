@@ -0,0 +1,100 @@
+package org.dcache.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.dcache.pool.repository.RepositoryChannel;
+
+/**
+ * Collects the content of HTTP chunks of an upload and writes it to a
+ * repository channel in writes of the size of a buffer.
+ *
+ * Clients often send small chunks, and writing each chunk on its own
+ * results in many small writes and many small checksum updates. Since
+ * uploads start at offset zero, all but the last write are aligned to
+ * the buffer size.
+ *
+ * The buffer is taken from a {@link DirectBufferPool}. If the pool is
+ * exhausted, chunks are written as they arrive. The buffer must be
+ * returned to the pool by calling {@link #release}.
+ *
+ * This class is not thread safe.
+ */
+class WriteAggregator
+{
+    private final RepositoryChannel _channel;
+    private final DirectBufferPool _pool;
+    private ByteBuffer _buffer;
+
+    WriteAggregator(RepositoryChannel channel, DirectBufferPool pool)
+    {
+        _channel = channel;
+        _pool = pool;
+        _buffer = pool.acquire();
+    }
+
+    /**
+     * Adds the readable bytes of {@code content} to the upload. Data is
+     * written to the channel whenever the buffer is full.
+     *
+     * @return the number of bytes added
+     */
+    long write(ChannelBuffer content) throws IOException
+    {
+        long bytes = 0;
+        for (ByteBuffer src : content.toByteBuffers()) {
+            bytes += src.remaining();
+            if (_buffer == null) {
+                writeFully(src);
+            } else {
+                while (src.hasRemaining()) {
+                    if (src.remaining() <= _buffer.remaining()) {
+                        _buffer.put(src);
+                    } else {
+                        ByteBuffer slice = src.duplicate();
+                        slice.limit(slice.position() + _buffer.remaining());
+                        _buffer.put(slice);
+                        src.position(slice.position());
+                    }
+                    if (!_buffer.hasRemaining()) {
+                        flush();
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes any buffered data to the channel.
+     */
+    void flush() throws IOException
+    {
+        if (_buffer != null && _buffer.position() > 0) {
+            _buffer.flip();
+            writeFully(_buffer);
+            _buffer.clear();
+        }
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffered data that was not flushed
+     * is discarded.
+     */
+    void release()
+    {
+        if (_buffer != null) {
+            _pool.release(_buffer);
+            _buffer = null;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            _channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.dcache.pool.classic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Controller for the number of concurrently active movers of a pool.
+ *
+ * The aggregate throughput of a disk grows with the number of concurrent
+ * movers until the disk is saturated. Beyond that point, the knee, more
+ * movers only add latency, and for random access workloads throughput
+ * drops as the disk spends more time seeking. Where the knee lies depends
+ * on the disk and on the workload.
+ *
+ * The controller searches for the knee by hill climbing: At regular
+ * intervals it is fed the throughput achieved with the current limit,
+ * and it changes the limit by a fraction of its value. An increase is kept
+ * up only if it improved throughput by more than a threshold; a decrease
+ * is kept up as long as it did not reduce throughput by more than the
+ * threshold. Thus the limit settles around the smallest number of movers
+ * achieving close to the maximum throughput, and follows the knee when
+ * the workload changes.
+ *
+ * The throughput only reflects the capacity of the disk if movers were
+ * waiting for a free slot. Intervals in which that was not the case must
+ * not be fed to the controller; {@link #reset} should be called instead.
+ *
+ * This class is thread safe.
+ */
+public class AdaptiveMoverLimit
+{
+    /** Relative change in throughput considered significant. */
+    private static final double THRESHOLD = 0.05;
+
+    /** Relative change of the limit per step. */
+    private static final double STEP = 0.125;
+
+    private int _min;
+    private int _max;
+    private int _limit;
+    private int _direction = 1;
+
+    private int _lastLimit;
+    private double _lastThroughput = Double.NaN;
+
+    public AdaptiveMoverLimit(int min, int max, int limit)
+    {
+        setBounds(min, max);
+        _limit = clamp(limit);
+    }
+
+    public synchronized void setBounds(int min, int max)
+    {
+        checkArgument(min > 0, "Minimum must be positive");
+        checkArgument(max >= min, "Maximum must not be smaller than minimum");
+        _min = min;
+        _max = max;
+        _limit = clamp(_limit);
+        reset();
+    }
+
+    public synchronized int getMin()
+    {
+        return _min;
+    }
+
+    public synchronized int getMax()
+    {
+        return _max;
+    }
+
+    public synchronized int getLimit()
+    {
+        return _limit;
+    }
+
+    /**
+     * Forgets the last measurement, e.g. because the pool was not busy.
+     */
+    public synchronized void reset()
+    {
+        _lastThroughput = Double.NaN;
+    }
+
+    /**
+     * Adjusts the limit given the throughput achieved with the current
+     * limit during the last interval.
+     *
+     * @param throughput throughput in bytes per second
+     * @return the new limit
+     */
+    public synchronized int update(double throughput)
+    {
+        if (!Double.isNaN(_lastThroughput) && _limit != _lastLimit) {
+            double gain = (throughput - _lastThroughput) / Math.max(_lastThroughput, 1.0);
+            int sign = (_limit > _lastLimit) ? 1 : -1;
+            boolean isBetter = (sign > 0) ? gain > THRESHOLD : gain > -THRESHOLD;
+            _direction = isBetter ? sign : -sign;
+        }
+        _lastThroughput = throughput;
+        _lastLimit = _limit;
+
+        int next = step(_direction);
+        if (next == _limit) {
+            /* At a bound; probe the other direction. */
+            _direction = -_direction;
+            next = step(_direction);
+        }
+        _limit = next;
+        return _limit;
+    }
+
+    private int step(int direction)
+    {
+        return clamp(_limit + direction * Math.max(1, (int) Math.round(_limit * STEP)));
+    }
+
+    private int clamp(int limit)
+    {
+        return Math.max(_min, Math.min(_max, limit));
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%d (min %d, max %d)", _limit, _min, _max);
+    }
+}
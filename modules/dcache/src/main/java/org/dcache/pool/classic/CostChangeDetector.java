@@ -0,0 +1,65 @@
+package org.dcache.pool.classic;
+
+import java.util.Map;
+
+import diskCacheV111.pools.PoolCostInfo;
+import diskCacheV111.pools.PoolCostInfo.NamedPoolQueueInfo;
+import diskCacheV111.pools.PoolCostInfo.PoolSpaceInfo;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides whether the cost of a pool changed enough since it was last
+ * reported to PoolManager to justify a cost update.
+ *
+ * A change is significant if the number of active and queued jobs of any
+ * queue changed by at least the queue threshold, if the limit of a queue
+ * changed, or if the free space changed by at least the given fraction of
+ * the total space.
+ */
+public class CostChangeDetector
+{
+    private final int _queueThreshold;
+    private final double _spaceThreshold;
+
+    public CostChangeDetector(int queueThreshold, double spaceThreshold)
+    {
+        checkArgument(queueThreshold > 0, "Queue threshold must be positive");
+        checkArgument(spaceThreshold >= 0 && spaceThreshold <= 1,
+                      "Space threshold must be between 0 and 1");
+        _queueThreshold = queueThreshold;
+        _spaceThreshold = spaceThreshold;
+    }
+
+    public boolean isSignificant(PoolCostInfo last, PoolCostInfo current)
+    {
+        if (last == null || current == null) {
+            return last != current;
+        }
+
+        Map<String,NamedPoolQueueInfo> lastQueues = last.getMoverQueues();
+        Map<String,NamedPoolQueueInfo> currentQueues = current.getMoverQueues();
+        if (!lastQueues.keySet().equals(currentQueues.keySet())) {
+            return true;
+        }
+        for (NamedPoolQueueInfo queue: currentQueues.values()) {
+            NamedPoolQueueInfo previous = lastQueues.get(queue.getName());
+            if (queue.getMaxActive() != previous.getMaxActive()) {
+                return true;
+            }
+            int load = queue.getActive() + queue.getQueued();
+            int previousLoad = previous.getActive() + previous.getQueued();
+            if (Math.abs(load - previousLoad) >= _queueThreshold) {
+                return true;
+            }
+        }
+
+        PoolSpaceInfo lastSpace = last.getSpaceInfo();
+        PoolSpaceInfo currentSpace = current.getSpaceInfo();
+        if (lastSpace.getTotalSpace() != currentSpace.getTotalSpace()) {
+            return true;
+        }
+        long change = Math.abs(currentSpace.getFreeSpace() - lastSpace.getFreeSpace());
+        return change > 0 && change >= _spaceThreshold * currentSpace.getTotalSpace();
+    }
+}
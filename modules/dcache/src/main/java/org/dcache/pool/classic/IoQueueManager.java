@@ -12,6 +12,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.vehicles.JobInfo;
 
@@ -29,7 +30,27 @@ public class IoQueueManager {
     private final ImmutableList<IoScheduler> _queues;
     private final ImmutableMap<String, IoScheduler> _queuesByName;
 
+    /**
+     * Controller of the total number of active movers, or null if each
+     * queue uses its own static limit.
+     */
+    private AdaptiveMoverLimit _adaptiveLimit;
+
+    /**
+     * Static limits of the queues while limits are adaptive.
+     */
+    private final Map<IoScheduler, Integer> _staticLimits = new HashMap<>();
+
+    private long _lastBytes;
+    private long _lastSample;
+    private double _throughput;
+
     public IoQueueManager(JobTimeoutManager jobTimeoutManager, String[] names) {
+        this(jobTimeoutManager, names, false, 1, 1);
+    }
+
+    public IoQueueManager(JobTimeoutManager jobTimeoutManager, String[] names,
+                          boolean adaptive, int minActiveJobs, int maxActiveJobs) {
         Map<String,IoScheduler> queuesByName = new HashMap<>();
         List<IoScheduler> queues = new ArrayList<>();
         for (String name : concat(asList(DEFAULT_QUEUE), asList(names))) {
@@ -53,6 +74,9 @@ public class IoQueueManager {
         _queues = ImmutableList.copyOf(queues);
         _queuesByName = ImmutableMap.copyOf(queuesByName);
         _log.debug("Defined IO queues: {}", _queuesByName.keySet());
+        if (adaptive) {
+            setAdaptive(minActiveJobs, maxActiveJobs);
+        }
     }
 
     public IoScheduler getDefaultQueue() {
@@ -122,10 +146,154 @@ public class IoQueueManager {
         return list;
     }
 
-    public void printSetup(PrintWriter pw) {
+    /**
+     * Sets the maximum number of active movers of a queue. While limits
+     * are adaptive, the limit takes effect once adaptive limits are
+     * disabled.
+     */
+    public synchronized void setMaxActiveJobs(IoScheduler queue, int maxJobs) {
+        if (_adaptiveLimit == null) {
+            queue.setMaxActiveJobs(maxJobs);
+        } else {
+            _staticLimits.put(queue, maxJobs);
+        }
+    }
+
+    private int getStaticLimit(IoScheduler queue) {
+        Integer limit = _staticLimits.get(queue);
+        return (limit == null) ? queue.getMaxActiveJobs() : limit;
+    }
+
+    /**
+     * Enables adaptive mover limits. The total number of active movers is
+     * adjusted by an {@link AdaptiveMoverLimit} within the given bounds, and
+     * shared fairly among the queues. The static limit of each queue is
+     * restored when adaptive limits are disabled.
+     */
+    public synchronized void setAdaptive(int min, int max) {
+        if (_adaptiveLimit == null) {
+            _adaptiveLimit = new AdaptiveMoverLimit(min, max, Math.max(getMaxActiveJobs(), 1));
+            for (IoScheduler queue : _queues) {
+                _staticLimits.put(queue, queue.getMaxActiveJobs());
+            }
+        } else {
+            _adaptiveLimit.setBounds(min, max);
+        }
+    }
+
+    /**
+     * Disables adaptive mover limits, restoring the static limit of each queue.
+     */
+    public synchronized void setStatic() {
+        if (_adaptiveLimit != null) {
+            _adaptiveLimit = null;
+            for (IoScheduler queue : _queues) {
+                queue.setMaxActiveJobs(getStaticLimit(queue));
+            }
+            _staticLimits.clear();
+        }
+    }
+
+    public synchronized boolean isAdaptive() {
+        return _adaptiveLimit != null;
+    }
+
+    /**
+     * Samples the throughput of all queues and, if limits are adaptive,
+     * adjusts the limit of each queue. To be called at regular intervals.
+     */
+    public synchronized void adjust() {
+        long now = System.nanoTime();
+        long bytes = 0;
+        for (IoScheduler queue : _queues) {
+            bytes += queue.getBytesTransferred();
+        }
+        if (_lastSample != 0 && now > _lastSample) {
+            _throughput = Math.max(bytes - _lastBytes, 0) * (double) TimeUnit.SECONDS.toNanos(1) / (now - _lastSample);
+        }
+        _lastBytes = bytes;
+        _lastSample = now;
+
+        if (_adaptiveLimit != null) {
+            int limit;
+            if (getQueueSize() > 0) {
+                limit = _adaptiveLimit.update(_throughput);
+            } else {
+                /* Throughput is limited by demand rather than by the disk. */
+                _adaptiveLimit.reset();
+                limit = _adaptiveLimit.getLimit();
+            }
+
+            int[] demands = new int[_queues.size()];
+            for (int i = 0; i < demands.length; i++) {
+                IoScheduler queue = _queues.get(i);
+                demands[i] = queue.getActiveJobs() + queue.getQueueSize();
+            }
+            int[] shares = fairShare(limit, demands);
+            for (int i = 0; i < shares.length; i++) {
+                /* Every queue may run at least one mover, such that a new
+                 * transfer does not have to wait for the next adjustment.
+                 */
+                _queues.get(i).setMaxActiveJobs(Math.max(shares[i], 1));
+            }
+        }
+    }
+
+    /**
+     * Divides a number of movers among queues with the given demand such
+     * that no queue gets more than it demands, and a queue only gets less
+     * than another if it has all it demands. Movers not demanded by any
+     * queue are divided evenly.
+     */
+    static int[] fairShare(int total, int[] demands) {
+        int[] shares = new int[demands.length];
+        int remaining = total;
+        int unsatisfied = 0;
+        for (int demand : demands) {
+            if (demand > 0) {
+                unsatisfied++;
+            }
+        }
+        while (remaining > 0 && unsatisfied > 0) {
+            int each = Math.max(remaining / unsatisfied, 1);
+            for (int i = 0; i < demands.length && remaining > 0; i++) {
+                if (shares[i] < demands[i]) {
+                    int share = Math.min(Math.min(each, demands[i] - shares[i]), remaining);
+                    shares[i] += share;
+                    remaining -= share;
+                    if (shares[i] == demands[i]) {
+                        unsatisfied--;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < shares.length && remaining > 0; i++) {
+            int share = (remaining + shares.length - i - 1) / (shares.length - i);
+            shares[i] += share;
+            remaining -= share;
+        }
+        return shares;
+    }
+
+    public synchronized void printSetup(PrintWriter pw) {
         for (IoScheduler s : _queues) {
-            pw.println("mover set max active -queue=" + s.getName() + " " + s.getMaxActiveJobs());
+            pw.println("mover set max active -queue=" + s.getName() + " " + getStaticLimit(s));
+        }
+        if (_adaptiveLimit != null) {
+            pw.println("mover set adaptive on -min=" + _adaptiveLimit.getMin() + " -max=" + _adaptiveLimit.getMax());
+        } else {
+            pw.println("mover set adaptive off");
+        }
+    }
+
+    public synchronized String getLimitInfo() {
+        String throughput = String.format("%.1f MiB/s", _throughput / (1 << 20));
+        if (_adaptiveLimit == null) {
+            return "static, " + throughput;
         }
+        int active = getActiveJobs();
+        return "adaptive " + _adaptiveLimit + ", " + throughput +
+                ((active > 0) ? String.format(", %.1f MiB/s per mover", _throughput / (1 << 20) / active) : "");
     }
 
     public JobInfo findJob(String client, long id) {
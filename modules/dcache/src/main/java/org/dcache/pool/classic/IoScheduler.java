@@ -53,6 +53,12 @@ public interface IoScheduler {
      */
     public int getCountByPriority(IoPriority priority);
 
+    /**
+     * Get the total number of bytes transferred by movers of this
+     * scheduler, including movers still running.
+     */
+    public long getBytesTransferred();
+
     /**
      * Set maximal number of concurrently running jobs by this scheduler. All pending
      * jobs will be executed.
@@ -55,6 +55,7 @@ import diskCacheV111.vehicles.PoolDeliverFileMessage;
 import diskCacheV111.vehicles.PoolFetchFileMessage;
 import diskCacheV111.vehicles.PoolFileCheckable;
 import diskCacheV111.vehicles.PoolIoFileMessage;
+import diskCacheV111.vehicles.PoolManagerPoolCostMessage;
 import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
 import diskCacheV111.vehicles.PoolMgrReplicateFileMsg;
 import diskCacheV111.vehicles.PoolModifyModeMessage;
@@ -156,6 +157,7 @@ public class PoolV4
 
     private int _version = 4;
     private CellStub _billingStub;
+    private CellStub _poolManagerStub;
     private final Map<String, String> _tags = new HashMap<>();
     private String _baseDir;
 
@@ -313,6 +315,29 @@ public class PoolV4
         _billingStub = stub;
     }
 
+    @Required
+    public void setPoolManagerStub(CellStub stub)
+    {
+        assertNotRunning("Cannot set pool manager stub after initialization");
+        _poolManagerStub = stub;
+    }
+
+    /**
+     * Sets the minimum time in milliseconds between cost updates sent
+     * to pool manager in between heartbeats. Zero disables cost updates.
+     */
+    public void setCostUpdateInterval(long interval)
+    {
+        _pingThread.setCostUpdateInterval(interval);
+    }
+
+    @Required
+    public void setCostChangeDetector(CostChangeDetector detector)
+    {
+        assertNotRunning("Cannot set cost change detector after initialization");
+        _pingThread.setCostChangeDetector(detector);
+    }
+
     @Required
     public void setPnfsHandler(PnfsHandler pnfs)
     {
@@ -664,6 +689,7 @@ public class PoolV4
         pw.println("Hsm Load Suppr.   : " + (_suppressHsmLoad ? "on" : "off"));
         pw.println("Ping Heartbeat    : " + _pingThread.getHeartbeat()
                    + " seconds");
+        pw.println("Cost Updates      : " + _pingThread);
         pw.println("ReplicationMgr    : " + _replicationHandler);
         if (_hasTapeBackend) {
             pw.println("LargeFileStore    : None");
@@ -685,6 +711,7 @@ public class PoolV4
             pw.println("Inventory         : " + _hybridCurrent);
         }
 
+        pw.println("Mover Limits      : " + _ioQueue.getLimitInfo());
         for (IoScheduler js : _ioQueue.getQueues()) {
             pw.println("Mover Queue (" + js.getName() + ") "
                        + js.getActiveJobs() + "(" + js.getMaxActiveJobs()
@@ -1035,6 +1062,7 @@ public class PoolV4
 
         msg.setReply();
         ioFile(envelope, msg);
+        _pingThread.costChanged();
     }
 
     public DelayedReply messageArrived(Pool2PoolTransferMsg msg)
@@ -1065,6 +1093,7 @@ public class PoolV4
         List<StickyRecord> stickyRecords = Collections.emptyList();
         _p2pClient.newCompanion(poolName, fileAttributes,
                                 targetState, stickyRecords, callback, false);
+        _pingThread.costChanged();
         return callback;
     }
 
@@ -1087,6 +1116,7 @@ public class PoolV4
                 _poolName, fileAttributes.getPnfsId(), hsm);
         ReplyToPoolFetch reply = new ReplyToPoolFetch(msg);
         _storageHandler.stage(hsm, fileAttributes, reply);
+        _pingThread.costChanged();
         return reply;
     }
 
@@ -1358,10 +1388,27 @@ public class PoolV4
         _log.warn("Pool mode changed to " + _poolMode);
     }
 
+    /**
+     * Reports the pool to pool manager.
+     *
+     * Every heartbeat, a full PoolManagerPoolUpMessage is sent. In between
+     * heartbeats, a compact PoolManagerPoolCostMessage is sent whenever the
+     * cost changed significantly since it was last reported. The cost is
+     * checked when new work arrives and otherwise once per cost update
+     * interval; cost updates are sent at most once per interval.
+     */
     private class PoolManagerPingThread implements Runnable
     {
         private final Thread _worker;
         private int _heartbeat = 30;
+        private long _costUpdateInterval;
+        private CostChangeDetector _costChangeDetector;
+
+        /** The cost last reported to pool manager. */
+        private PoolCostInfo _lastCostInfo;
+        private long _lastCostUpdate;
+        private boolean _isCostChanged;
+        private long _costUpdates;
 
         private PoolManagerPingThread()
         {
@@ -1383,9 +1430,15 @@ public class PoolV4
         {
             _log.debug("Ping thread started");
             try {
+                long nextHeartbeat = 0;
                 while (!Thread.interrupted()) {
-                    sendPoolManagerMessage(true);
-                    Thread.sleep(_heartbeat * 1000);
+                    if (System.currentTimeMillis() >= nextHeartbeat) {
+                        sendPoolManagerMessage(true);
+                        nextHeartbeat = System.currentTimeMillis() + _heartbeat * 1000L;
+                    } else {
+                        sendCostUpdate();
+                    }
+                    awaitCostCheck(nextHeartbeat);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -1394,6 +1447,43 @@ public class PoolV4
             }
         }
 
+        /**
+         * Waits until the cost should be checked again or the next
+         * heartbeat is due, whatever comes first.
+         */
+        private synchronized void awaitCostCheck(long nextHeartbeat)
+            throws InterruptedException
+        {
+            long interval = _costUpdateInterval;
+            long now = System.currentTimeMillis();
+            long deadline =
+                (interval > 0) ? Math.min(nextHeartbeat, now + interval) : nextHeartbeat;
+            while (!_isCostChanged && now < deadline) {
+                wait(deadline - now);
+                now = System.currentTimeMillis();
+            }
+            _isCostChanged = false;
+
+            /* Rate limit cost updates; changes until then are coalesced.
+             */
+            deadline = Math.min(nextHeartbeat, _lastCostUpdate + interval);
+            while (now < deadline) {
+                wait(deadline - now);
+                now = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * Signals that the cost of the pool may have changed.
+         */
+        public synchronized void costChanged()
+        {
+            if (_costUpdateInterval > 0) {
+                _isCostChanged = true;
+                notifyAll();
+            }
+        }
+
         public void setHeartbeat(int seconds)
         {
             _heartbeat = seconds;
@@ -1404,6 +1494,17 @@ public class PoolV4
             return _heartbeat;
         }
 
+        public synchronized void setCostUpdateInterval(long interval)
+        {
+            _costUpdateInterval = interval;
+            notifyAll();
+        }
+
+        public synchronized void setCostChangeDetector(CostChangeDetector detector)
+        {
+            _costChangeDetector = detector;
+        }
+
         public synchronized void sendPoolManagerMessage(boolean forceSend)
         {
             if (forceSend || _storageQueue.poolStatusChanged()) {
@@ -1411,12 +1512,37 @@ public class PoolV4
             }
         }
 
+        private synchronized void sendCostUpdate()
+        {
+            if (_costUpdateInterval <= 0 || _lastCostInfo == null) {
+                return;
+            }
+
+            PoolCostInfo info = getPoolCostInfo();
+            if (_costChangeDetector.isSignificant(_lastCostInfo, info)) {
+                try {
+                    _poolManagerStub.notify(new PoolManagerPoolCostMessage(_poolName, _serialId, info));
+                    _costUpdates++;
+                } catch (NoRouteToCellException e) {
+                    _log.error("Failed to send cost update: " + e.getMessage());
+                }
+                setLastCostInfo(info);
+            }
+        }
+
+        private void setLastCostInfo(PoolCostInfo info)
+        {
+            _lastCostInfo = info;
+            _lastCostUpdate = System.currentTimeMillis();
+        }
+
         private CellMessage getPoolManagerMessage()
         {
             boolean disabled =
                 _poolMode.getMode() == PoolV2Mode.DISABLED ||
                 _poolMode.isDisabled(PoolV2Mode.DISABLED_STRICT);
             PoolCostInfo info = disabled ? null : getPoolCostInfo();
+            setLastCostInfo(info);
 
             PoolManagerPoolUpMessage poolManagerMessage =
                 new PoolManagerPoolUpMessage(_poolName, _serialId,
@@ -1442,6 +1568,15 @@ public class PoolV4
                 _log.error("Failed to send ping message: " + e.getMessage());
             }
         }
+
+        @Override
+        public synchronized String toString()
+        {
+            if (_costUpdateInterval <= 0) {
+                return "disabled";
+            }
+            return "at most every " + _costUpdateInterval + " ms, " + _costUpdates + " sent";
+        }
     }
 
     private PoolCostInfo getPoolCostInfo()
@@ -1893,11 +2028,44 @@ public class PoolV4
         if (active < 0) {
             throw new IllegalArgumentException("<maxActiveMovers> must be >= 0");
         }
-        js.setMaxActiveJobs(active);
+        _ioQueue.setMaxActiveJobs(js, active);
 
+        if (_ioQueue.isAdaptive()) {
+            return "Max Active Io Movers set to " + active + " once adaptive limits are disabled";
+        }
         return "Max Active Io Movers set to " + active;
     }
 
+    public static final String fh_mover_set_adaptive =
+        "Enables or disables adaptive mover limits.\n\n" +
+        "With adaptive limits, the pool measures the throughput of all movers\n" +
+        "and adjusts the total number of active movers between the given\n" +
+        "bounds to the point beyond which more movers no longer increase\n" +
+        "throughput. The total is shared fairly among mover queues with\n" +
+        "waiting movers. The static limits set with 'mover set max active'\n" +
+        "apply again once adaptive limits are disabled.";
+    public static final String hh_mover_set_adaptive = "on|off [-min=<movers>] [-max=<movers>]";
+    public String ac_mover_set_adaptive_$_1(Args args)
+        throws CommandSyntaxException
+    {
+        String onoff = args.argv(0);
+        switch (onoff) {
+        case "on":
+            int min = args.getIntOption("min", 1);
+            int max = args.getIntOption("max", Math.max(min, _ioQueue.getMaxActiveJobs()));
+            if (min < 1 || max < min) {
+                throw new IllegalArgumentException("Bounds must satisfy 0 < min <= max");
+            }
+            _ioQueue.setAdaptive(min, max);
+            return "Adaptive mover limits between " + min + " and " + max;
+        case "off":
+            _ioQueue.setStatic();
+            return "Static mover limits";
+        default:
+            throw new CommandSyntaxException("Invalid value : " + onoff);
+        }
+    }
+
     public Object ac_mover_queue_ls_$_0_1(Args args)
     {
         StringBuilder sb = new StringBuilder();
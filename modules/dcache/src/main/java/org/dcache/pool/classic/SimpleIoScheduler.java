@@ -80,6 +80,18 @@ public class SimpleIoScheduler implements IoScheduler, Runnable {
 
     private final AdjustableSemaphore _semaphore = new AdjustableSemaphore();
 
+    /**
+     * Guards the bytes of completed movers. Also held while removing a
+     * completed job, so its bytes are counted exactly once by {@link
+     * #getBytesTransferred}.
+     */
+    private final Object _bytesLock = new Object();
+
+    /**
+     * Bytes transferred by movers that have completed.
+     */
+    private long _completedBytes;
+
     public SimpleIoScheduler(String name,
                              int queueId)
     {
@@ -196,6 +208,17 @@ public class SimpleIoScheduler implements IoScheduler, Runnable {
         return count;
     }
 
+    @Override
+    public long getBytesTransferred() {
+        synchronized (_bytesLock) {
+            long bytes = _completedBytes;
+            for (PrioritizedRequest request : _jobs.values()) {
+                bytes += request.getMover().getBytesTransferred();
+            }
+            return bytes;
+        }
+    }
+
     @Override
     public String getName() {
         return _name;
@@ -336,7 +359,10 @@ public class SimpleIoScheduler implements IoScheduler, Runnable {
 
                                         private void release() {
                                             request.done();
-                                            _jobs.remove(request.getId());
+                                            synchronized (_bytesLock) {
+                                                _completedBytes += request.getMover().getBytesTransferred();
+                                                _jobs.remove(request.getId());
+                                            }
                                             _semaphore.release();
                                         }
                                     });
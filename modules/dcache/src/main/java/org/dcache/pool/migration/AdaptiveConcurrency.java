@@ -0,0 +1,200 @@
+package org.dcache.pool.migration;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+import diskCacheV111.pools.PoolCostInfo;
+import diskCacheV111.pools.PoolCostInfo.PoolQueueInfo;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Adapts the concurrency of a migration job between a lower and an upper
+ * bound using additive increase, multiplicative decrease (AIMD).
+ *
+ * The controller is fed with the bytes transferred and the transfers that
+ * failed. Once per adjustment period the job asks it for a new limit:
+ *
+ * - If transfers failed, client movers are queued on the source pool, or
+ *   p2p transfers are queued on the source or on a target pool, then the
+ *   limit is halved.
+ *
+ * - If the previous period increased the limit and the throughput dropped,
+ *   then the increase is undone.
+ *
+ * - If all slots were in use, the limit is increased by one.
+ *
+ * Each change is recorded together with its reason. The class is not thread
+ * safe; access is synchronized by the job.
+ */
+public class AdaptiveConcurrency
+{
+    /** Relative drop in throughput tolerated after an increase. */
+    private static final double TOLERANCE = 0.1;
+
+    private static final int MAX_CHANGES = 10;
+
+    private final int _min;
+    private final int _max;
+    private final Deque<String> _changes = new ArrayDeque<>();
+
+    private int _limit;
+    private long _periodStart;
+    private long _transferred;
+    private int _failures;
+    private double _lastThroughput;
+    private boolean _lastWasIncrease;
+
+    public AdaptiveConcurrency(int min, int max, long now)
+    {
+        checkArgument(min > 0 && min <= max, "Invalid concurrency bounds");
+        _min = min;
+        _max = max;
+        _limit = min;
+        _periodStart = now;
+    }
+
+    public int getLimit()
+    {
+        return _limit;
+    }
+
+    public int getMin()
+    {
+        return _min;
+    }
+
+    public int getMax()
+    {
+        return _max;
+    }
+
+    /** Returns the most recent changes of the limit, oldest first. */
+    public Collection<String> getChanges()
+    {
+        return _changes;
+    }
+
+    public void addTransferred(long bytes)
+    {
+        _transferred += bytes;
+    }
+
+    public void addFailure()
+    {
+        _failures++;
+    }
+
+    /**
+     * Discards the observations of the current period without adjusting
+     * the limit, e.g. because the job was suspended.
+     */
+    public void skip(long now)
+    {
+        startPeriod(now);
+        _lastWasIncrease = false;
+    }
+
+    /**
+     * Ends the current period and adjusts the limit.
+     *
+     * @param now the current time in milliseconds
+     * @param running the number of transfers currently running
+     * @param source cost information of the source pool, or null if unknown
+     * @param targets cost information of the target pools
+     * @return the new limit
+     */
+    public int adjust(long now, int running, PoolCostInfo source, Collection<PoolCostInfo> targets)
+    {
+        double throughput = _transferred * 1000.0 / Math.max(1, now - _periodStart);
+        int failures = _failures;
+        startPeriod(now);
+
+        String congestion = getCongestion(source, targets);
+        if (failures > 0) {
+            decrease(now, String.format("%d transfers failed", failures));
+        } else if (congestion != null) {
+            decrease(now, congestion);
+        } else if (_lastWasIncrease && throughput < _lastThroughput * (1 - TOLERANCE)) {
+            change(now, Math.max(_min, _limit - 1),
+                   String.format("throughput dropped from %s to %s",
+                                 formatThroughput(_lastThroughput), formatThroughput(throughput)));
+            _lastWasIncrease = false;
+        } else if (running >= _limit && _limit < _max) {
+            change(now, _limit + 1,
+                   String.format("all slots in use at %s", formatThroughput(throughput)));
+            _lastWasIncrease = true;
+        } else {
+            _lastWasIncrease = false;
+        }
+        _lastThroughput = throughput;
+        return _limit;
+    }
+
+    private void startPeriod(long now)
+    {
+        _periodStart = now;
+        _transferred = 0;
+        _failures = 0;
+    }
+
+    private void decrease(long now, String reason)
+    {
+        change(now, Math.max(_min, _limit / 2), reason);
+        _lastWasIncrease = false;
+    }
+
+    private void change(long now, int limit, String reason)
+    {
+        if (limit != _limit) {
+            if (_changes.size() == MAX_CHANGES) {
+                _changes.removeFirst();
+            }
+            _changes.addLast(String.format("%tT %d -> %d: %s", now, _limit, limit, reason));
+            _limit = limit;
+        }
+    }
+
+    /**
+     * Returns a description of the queue that indicates overload, or null
+     * if no such queue exists.
+     */
+    private static String getCongestion(PoolCostInfo source, Collection<PoolCostInfo> targets)
+    {
+        if (source != null) {
+            if (getQueued(source.getMoverQueue()) > 0) {
+                return String.format("%d client movers queued on source pool",
+                                     source.getMoverQueue().getQueued());
+            }
+            if (getQueued(source.getP2pQueue()) > 0) {
+                return String.format("%d p2p transfers queued on source pool",
+                                     source.getP2pQueue().getQueued());
+            }
+        }
+        for (PoolCostInfo target: targets) {
+            if (getQueued(target.getP2pClientQueue()) > 0) {
+                return String.format("%d p2p transfers queued on %s",
+                                     target.getP2pClientQueue().getQueued(),
+                                     target.getPoolName());
+            }
+        }
+        return null;
+    }
+
+    private static int getQueued(PoolQueueInfo queue)
+    {
+        return (queue == null) ? 0 : queue.getQueued();
+    }
+
+    private static String formatThroughput(double bytesPerSecond)
+    {
+        return String.format("%.1f MiB/s", bytesPerSecond / (1 << 20));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d (adaptive %d..%d)", _limit, _min, _max);
+    }
+}
@@ -19,6 +19,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import diskCacheV111.pools.PoolCostInfo;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.FileNotInCacheException;
 import diskCacheV111.util.PnfsId;
@@ -61,6 +62,10 @@ import org.dcache.util.expression.Expression;
  * empty. Permanent jobs are saved to the pool setup file and restored
  * on pool start.
  *
+ * The concurrency of a job is either fixed or adapted between a lower and
+ * an upper bound according to the observed throughput, failures and pool
+ * load.
+ *
  * Jobs can be in any of the following states:
  *
  * INITIALIZING   Initial scan of repository
@@ -84,6 +89,9 @@ public class Job
 
     private static final Logger _log = LoggerFactory.getLogger(Job.class);
 
+    /** Period between adjustments of an adaptive concurrency. */
+    private static final long ADJUSTMENT_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
     private final Set<PnfsId> _queued = new LinkedHashSet<>();
     private final Map<PnfsId,Long> _sizes = new HashMap<>();
     private final Map<PnfsId,Task> _running = new HashMap<>();
@@ -98,6 +106,8 @@ public class Job
 
     private State _state;
     private int _concurrency;
+    private AdaptiveConcurrency _adaptiveConcurrency;
+    private Future<?> _adjustmentTask;
 
     public Job(MigrationContext context, JobDefinition definition)
     {
@@ -149,10 +159,72 @@ public class Job
 
     public synchronized void setConcurrency(int concurrency)
     {
-        _concurrency = concurrency;
+        setConcurrency(concurrency, concurrency);
+    }
+
+    /**
+     * Sets the concurrency of the job. If {@code max} is larger than
+     * {@code min}, then the concurrency is adapted within these bounds,
+     * starting at {@code min}.
+     */
+    public synchronized void setConcurrency(int min, int max)
+    {
+        /* Validates the bounds before the current adjustment is stopped.
+         */
+        AdaptiveConcurrency adaptiveConcurrency = null;
+        if (max > min && _state != State.FINISHED &&
+            _state != State.CANCELLED && _state != State.FAILED) {
+            adaptiveConcurrency = new AdaptiveConcurrency(min, max, System.currentTimeMillis());
+        }
+
+        if (_adjustmentTask != null) {
+            _adjustmentTask.cancel(false);
+            _adjustmentTask = null;
+        }
+        _adaptiveConcurrency = adaptiveConcurrency;
+        if (adaptiveConcurrency != null) {
+            _adjustmentTask =
+                _context.getExecutor().scheduleWithFixedDelay(new FireAndForgetTask(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            adjustConcurrency();
+                        }
+                    }), ADJUSTMENT_PERIOD, ADJUSTMENT_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        _concurrency = min;
         schedule();
     }
 
+    /**
+     * Adjusts an adaptive concurrency according to the observations
+     * since the last adjustment.
+     */
+    private synchronized void adjustConcurrency()
+    {
+        if (_adaptiveConcurrency == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (_state != State.RUNNING && _state != State.SLEEPING) {
+            _adaptiveConcurrency.skip(now);
+            return;
+        }
+
+        List<PoolManagerPoolInformation> sources = _definition.sourceList.getPools();
+        PoolCostInfo source = sources.isEmpty() ? null : sources.get(0).getPoolCostInfo();
+        List<PoolCostInfo> targets = new ArrayList<>();
+        for (PoolManagerPoolInformation pool: _definition.poolList.getPools()) {
+            targets.add(pool.getPoolCostInfo());
+        }
+
+        int concurrency = _adaptiveConcurrency.adjust(now, _running.size(), source, targets);
+        if (concurrency != _concurrency) {
+            _concurrency = concurrency;
+            schedule();
+        }
+    }
+
     public synchronized void addError(Error error)
     {
         while (!_errors.offer(error)) {
@@ -202,7 +274,17 @@ public class Job
             }
         }
 
-        pw.println("Concurrency: " + _concurrency);
+        if (_adaptiveConcurrency == null) {
+            pw.println("Concurrency: " + _concurrency);
+        } else {
+            pw.println("Concurrency: " + _adaptiveConcurrency);
+            if (!_adaptiveConcurrency.getChanges().isEmpty()) {
+                pw.println("Concurrency changes:");
+                for (String change: _adaptiveConcurrency.getChanges()) {
+                    pw.println(change);
+                }
+            }
+        }
         pw.println("Running tasks:");
         List<Task> tasks = new ArrayList<>(_running.values());
         Collections.sort(tasks, new Comparator<Task>() {
@@ -409,6 +491,9 @@ public class Job
                 _sizes.clear();
                 _context.getRepository().removeListener(this);
                 _refreshTask.cancel(false);
+                if (_adjustmentTask != null) {
+                    _adjustmentTask.cancel(false);
+                }
 
                 for (Map.Entry<PoolMigrationJobCancelMessage,DelayedReply> entry: _cancelRequests.entrySet()) {
                     entry.getValue().reply(entry.getKey());
@@ -610,6 +695,9 @@ public class Job
             _queued.add(pnfsId);
             _context.unlock(pnfsId);
         }
+        if (_adaptiveConcurrency != null) {
+            _adaptiveConcurrency.addFailure();
+        }
 
         if (_state == State.RUNNING) {
             setState(State.SLEEPING);
@@ -639,7 +727,11 @@ public class Job
         applySourceMode(pnfsId);
         _running.remove(pnfsId);
         _context.unlock(pnfsId);
-        _statistics.addCompleted(_sizes.remove(pnfsId));
+        long size = _sizes.remove(pnfsId);
+        _statistics.addCompleted(size);
+        if (_adaptiveConcurrency != null) {
+            _adaptiveConcurrency.addTransferred(size);
+        }
         schedule();
     }
 
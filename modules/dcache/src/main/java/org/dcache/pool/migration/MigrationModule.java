@@ -246,7 +246,10 @@ public class MigrationModule
     }
 
     @Command(name="migration concurrency",
-            description ="Adjust the concurrency of a job.")
+            description ="Adjust the concurrency of a job. If a maximum larger than " +
+                    "the concurrency is given, then the concurrency is adapted " +
+                    "between the two values. See the -max-concurrency option of " +
+                    "'migration copy'.")
     public class MigrationConcurrencyCommand implements Callable<String>
     {
         @Argument(index=0)
@@ -255,10 +258,18 @@ public class MigrationModule
         @Argument(index=1)
         int concurrency;
 
+        @Option(name="max",
+                usage="Upper bound of an adaptive concurrency.")
+        int max;
+
         @Override
-        public String call() throws NoSuchElementException
+        public String call() throws NoSuchElementException, IllegalArgumentException
         {
             Job job = getJob(id);
+            if (max > concurrency) {
+                job.setConcurrency(concurrency, max);
+                return String.format("[%s] Concurrency adapted between %d and %d", id, concurrency, max);
+            }
             job.setConcurrency(concurrency);
             return String.format("[%s] Concurrency set to %d", id, concurrency);
         }
@@ -360,6 +371,18 @@ public class MigrationModule
                 usage="Specifies how many concurrent transfers to perform.")
         int concurrency = 1;
 
+        @Option(name="max-concurrency",
+                category="Transfer options",
+                usage="Enables adaptive concurrency. The number of concurrent " +
+                        "transfers starts at the value of -concurrency and is " +
+                        "adjusted every minute, but never exceeds this value. " +
+                        "The concurrency is increased by one while all transfers " +
+                        "slots are in use and throughput does not drop. It is " +
+                        "halved when transfers fail, when client movers are queued " +
+                        "on this pool, or when p2p transfers are queued on this " +
+                        "pool or on a target pool.")
+        int maxConcurrency;
+
         @Option(name="order", valueSpec="[-]size|[-]lru",
                 category="Transfer options",
                 usage = "Sort transfer queue. By default transfers are placed in " +
@@ -759,6 +782,10 @@ public class MigrationModule
                 }
             }
 
+            if (maxConcurrency > concurrency && concurrency < 1) {
+                throw new IllegalArgumentException("Adaptive concurrency requires a positive -concurrency");
+            }
+
             Collection<Pattern> excluded = createPatterns(exclude);
             excluded.add(Pattern.compile(Pattern.quote(_context.getPoolName())));
             Collection<Pattern> included = createPatterns(include);
@@ -833,7 +860,7 @@ public class MigrationModule
             }
 
             Job job = new Job(_context, definition);
-            job.setConcurrency(concurrency);
+            job.setConcurrency(concurrency, Math.max(concurrency, maxConcurrency));
             _jobs.put(id, job);
 
             _commands.put(job, commandLine);
@@ -1,5 +1,7 @@
 package org.dcache.pool.movers;
 
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,9 +12,22 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import diskCacheV111.util.Adler32;
 import diskCacheV111.util.Base64;
 import diskCacheV111.util.CacheException;
+import diskCacheV111.util.ChecksumFactory;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.ProtocolInfo;
 import diskCacheV111.vehicles.RemoteHttpDataTransferProtocolInfo;
@@ -22,22 +37,84 @@ import dmg.cells.nucleus.CellEndpoint;
 
 import org.dcache.pool.repository.Allocator;
 import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.Args;
+import org.dcache.util.CDCExecutorServiceDecorator;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.util.Checksums;
 import org.dcache.vehicles.FileAttributes;
 
-public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol
+/**
+ * Mover pulling a file from a remote HTTP server, e.g. for third party
+ * WebDAV COPY requests.
+ *
+ * The remote server is first asked for the size of the file, whether it
+ * accepts range requests and for an RFC 3230 digest of the file. If it
+ * accepts ranges and the file is large enough, the file is fetched over
+ * several connections in parallel, each connection writing its range at
+ * its offset in the file; ADLER32 checksums of the ranges are combined
+ * into the checksum of the file. Otherwise, or if a checksum type other
+ * than ADLER32 is needed, the file is fetched over a single connection.
+ *
+ * The digest provided by the remote server is reported as the expected
+ * checksum, so that the pool verifies the file against it.
+ *
+ * The number of parallel connections is given by the remoteHttpStreams
+ * option of the pool and defaults to 1.
+ */
+public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol, ChecksumMover
 {
     private final static Logger _log =
         LoggerFactory.getLogger(RemoteHttpDataTransferProtocol_1.class);
 
     private static final int INC_SPACE = (50 * 1024 * 1024);
 
+    /** Minimum size of a range fetched over a separate connection. */
+    private static final long MIN_RANGE_SIZE = 64 << 20;
+
+    private static final String WANT_DIGEST = "adler32,md5";
+
+    /**
+     * Thrown if the remote server does not honour a range request even
+     * though it advertised support for ranges.
+     */
+    private static class RangeNotSatisfiedException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        RangeNotSatisfiedException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private final int streams;
+    private final long minRangeSize;
+
     private long allocated_space;
-    private long last_transfer_time = System.currentTimeMillis();
+    private volatile long last_transfer_time = System.currentTimeMillis();
     private long starttime;
-    private volatile long transferred ;
+    private final AtomicLong transferred = new AtomicLong();
+
+    private ChecksumFactory checksumFactory;
+    private volatile Checksum actualChecksum;
+    private volatile Checksum expectedChecksum;
 
     public RemoteHttpDataTransferProtocol_1(CellEndpoint cell)
     {
+        this(getStreams(cell.getArgs()), MIN_RANGE_SIZE);
+    }
+
+    RemoteHttpDataTransferProtocol_1(int streams, long minRangeSize)
+    {
+        this.streams = streams;
+        this.minRangeSize = minRangeSize;
+    }
+
+    private static int getStreams(Args args)
+    {
+        String value = args.getOpt("remoteHttpStreams");
+        return (value == null || value.isEmpty()) ? 1 : Math.max(1, Integer.parseInt(value));
     }
 
     @Override
@@ -61,6 +138,66 @@ public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol
         RemoteHttpDataTransferProtocolInfo remoteHttpProtocolInfo =
             (RemoteHttpDataTransferProtocolInfo) protocol;
         URL remoteURL = new URL(remoteHttpProtocolInfo.getSourceHttpUrl());
+
+        if (access == IoMode.WRITE) {
+            long length = -1;
+            boolean acceptsRanges = false;
+            if (streams > 1) {
+                HttpURLConnection head = openConnection(remoteURL);
+                try {
+                    head.setRequestMethod("HEAD");
+                    if (head.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                        length = head.getContentLengthLong();
+                        acceptsRanges = "bytes".equalsIgnoreCase(head.getHeaderField("Accept-Ranges"));
+                        setExpectedChecksum(head);
+                    }
+                } finally {
+                    head.disconnect();
+                }
+            }
+
+            int ranges = (acceptsRanges && length > 0)
+                    ? (int) Math.min(streams, length / minRangeSize)
+                    : 1;
+            boolean canCombine =
+                    (checksumFactory == null || checksumFactory.getType() == ChecksumType.ADLER32) &&
+                    (expectedChecksum == null || expectedChecksum.getType() == ChecksumType.ADLER32);
+            if (ranges > 1 && canCombine) {
+                allocator.allocate(length);
+                allocated_space = length;
+                try {
+                    long adler = fetchRanges(remoteURL, fileChannel, length, ranges);
+                    if (checksumFactory != null || expectedChecksum != null) {
+                        actualChecksum = new Checksum(ChecksumType.ADLER32, toBytes(adler));
+                    }
+                } catch (RangeNotSatisfiedException e) {
+                    _log.info("Falling back to a single stream for {}: {}",
+                              remoteURL, e.getMessage());
+                    fileChannel.truncate(0);
+                    fileChannel.position(0);
+                    transferred.set(0);
+                    fetch(remoteHttpProtocolInfo, remoteURL, fileChannel, allocator);
+                }
+            } else {
+                fetch(remoteHttpProtocolInfo, remoteURL, fileChannel, allocator);
+            }
+        } else {
+            URLConnection connection = remoteURL.openConnection();
+            if (!(connection instanceof HttpURLConnection)) {
+                throw new CacheException("URL is not usable with active HTTP mover: " + remoteURL);
+            }
+            HttpURLConnection httpconnection = (HttpURLConnection) connection;
+            httpconnection.setDoInput(false);
+            httpconnection.setDoOutput(true);
+            OutputStream httpoutput = httpconnection.getOutputStream();
+            throw new UnsupportedOperationException("srmCopy upload not implemented for HTTP");
+            // TODO: Implement push
+        }
+    }
+
+    private HttpURLConnection openConnection(URL remoteURL)
+        throws IOException, CacheException
+    {
         URLConnection connection = remoteURL.openConnection();
         if (!(connection instanceof HttpURLConnection)) {
             throw new CacheException("URL is not usable with active HTTP mover: " + remoteURL);
@@ -73,37 +210,220 @@ public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol
             String userPassEncoding = Base64.byteArrayToBase64(userInfo.getBytes());
             httpconnection.setRequestProperty("Authorization", "Basic " + userPassEncoding);
         }
+        httpconnection.setRequestProperty("Want-Digest", WANT_DIGEST);
+        return httpconnection;
+    }
 
-        if (access == IoMode.WRITE) {
-            httpconnection.setDoInput(true);
-            httpconnection.setDoOutput(false);
+    /**
+     * Records the digest provided by the remote server, preferring a
+     * checksum of the type computed by the transfer.
+     */
+    private void setExpectedChecksum(HttpURLConnection connection)
+    {
+        ChecksumType preferred =
+                (checksumFactory == null) ? ChecksumType.ADLER32 : checksumFactory.getType();
+        for (Checksum checksum : Checksums.rfc3230Decode(connection.getHeaderField("Digest"))) {
+            if (expectedChecksum == null || checksum.getType() == preferred) {
+                expectedChecksum = checksum;
+            }
+        }
+    }
+
+    /**
+     * Fetches the file over a single connection.
+     */
+    private void fetch(RemoteHttpDataTransferProtocolInfo info, URL remoteURL,
+                       RepositoryChannel fileChannel, Allocator allocator)
+        throws CacheException, IOException, InterruptedException
+    {
+        HttpURLConnection httpconnection = openConnection(remoteURL);
+        httpconnection.setDoInput(true);
+        httpconnection.setDoOutput(false);
+        try {
             InputStream httpinput = httpconnection.getInputStream();
-            byte[] buffer = new byte[remoteHttpProtocolInfo.getBufferSize()];
+            setExpectedChecksum(httpconnection);
+
+            MessageDigest digest = null;
+            ChecksumFactory factory = checksumFactory;
+            if (factory == null && expectedChecksum != null) {
+                try {
+                    factory = ChecksumFactory.getFactory(expectedChecksum.getType());
+                } catch (NoSuchAlgorithmException e) {
+                    _log.debug("Unsupported checksum type {}", expectedChecksum.getType());
+                }
+            }
+            if (factory != null) {
+                digest = factory.create();
+            }
+
+            byte[] buffer = new byte[info.getBufferSize()];
             ByteBuffer bb = ByteBuffer.wrap(buffer);
-                int read;
+            int read;
             allocator.allocate(INC_SPACE);
             allocated_space += INC_SPACE;
 
             while ((read = httpinput.read(buffer)) != -1) {
                 last_transfer_time = System.currentTimeMillis();
-                if (transferred+read > allocated_space) {
+                if (transferred.get() + read > allocated_space) {
                     allocator.allocate(INC_SPACE);
-                    allocated_space+=INC_SPACE;
+                    allocated_space += INC_SPACE;
                 }
                 bb.limit(read);
                 fileChannel.write(bb);
-                transferred +=read;
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                transferred.addAndGet(read);
                 bb.clear();
             }
-        } else {
-            httpconnection.setDoInput(false);
-            httpconnection.setDoOutput(true);
-            OutputStream httpoutput = httpconnection.getOutputStream();
-            throw new UnsupportedOperationException("srmCopy upload not implemented for HTTP");
-            // TODO: Implement push
+
+            if (digest != null) {
+                actualChecksum = factory.create(digest.digest());
+            }
+        } finally {
+            httpconnection.disconnect();
+        }
+    }
+
+    /**
+     * Fetches the file over several connections in parallel, each
+     * fetching a byte range of the file.
+     *
+     * @return the ADLER32 checksum of the file
+     * @throws RangeNotSatisfiedException if the server did not honour a
+     * range request; data fetched so far has been written to the file, but
+     * no fetch is still running when this is thrown
+     */
+    private long fetchRanges(URL remoteURL, RepositoryChannel fileChannel,
+                             long size, int count)
+        throws CacheException, IOException, InterruptedException
+    {
+        long length = size / count;
+        List<HttpURLConnection> connections = new ArrayList<>(count);
+        ExecutorService executor = new CDCExecutorServiceDecorator<>(
+                Executors.newFixedThreadPool(count,
+                        new ThreadFactoryBuilder().setNameFormat("remote-http-range-%d").build()));
+        try {
+            List<Future<Long>> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long offset = i * length;
+                long end = (i == count - 1) ? size : offset + length;
+                HttpURLConnection connection = openConnection(remoteURL);
+                connection.setRequestProperty("Range", "bytes=" + offset + "-" + (end - 1));
+                connections.add(connection);
+                results.add(executor.submit(new RangeFetch(connection, fileChannel,
+                                                           offset, end - offset)));
+            }
+
+            long adler = 1L;
+            for (int i = 0; i < count; i++) {
+                long end = (i == count - 1) ? size : (i + 1) * length;
+                long rangeAdler = results.get(i).get();
+                adler = (i == 0)
+                        ? rangeAdler
+                        : Adler32.combine(adler, rangeAdler, end - i * length);
+            }
+            return adler;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new CacheException("Range transfer failed: " + cause);
+        } finally {
+            executor.shutdownNow();
+            for (HttpURLConnection connection : connections) {
+                connection.disconnect();
+            }
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long toLong(byte[] adler)
+    {
+        return Ints.fromByteArray(adler) & 0xFFFFFFFFL;
+    }
+
+    private static byte[] toBytes(long adler)
+    {
+        return new byte[] {
+            (byte) (adler >> 24), (byte) (adler >> 16), (byte) (adler >> 8), (byte) adler
+        };
+    }
+
+    /**
+     * Fetches a byte range into its position in the file and returns the
+     * ADLER32 checksum of the range.
+     */
+    private class RangeFetch implements Callable<Long>
+    {
+        private final HttpURLConnection connection;
+        private final RepositoryChannel fileChannel;
+        private final long offset;
+        private final long length;
+
+        RangeFetch(HttpURLConnection connection, RepositoryChannel fileChannel,
+                   long offset, long length)
+        {
+            this.connection = connection;
+            this.fileChannel = fileChannel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public Long call() throws IOException
+        {
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_PARTIAL) {
+                throw new RangeNotSatisfiedException("Remote server did not accept range request: " +
+                                                     code + " " + connection.getResponseMessage());
+            }
+
+            Adler32 adler = new Adler32();
+            byte[] buffer = new byte[65536];
+            long position = offset;
+            try (InputStream input = connection.getInputStream()) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    if (position + read > offset + length) {
+                        throw new IOException("Received more data than requested");
+                    }
+                    last_transfer_time = System.currentTimeMillis();
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += fileChannel.write(data, position);
+                    }
+                    adler.update(buffer, 0, read);
+                    transferred.addAndGet(read);
+                }
+            }
+            if (position != offset + length) {
+                throw new IOException("Amount of received data does not match requested range");
+            }
+            return toLong(adler.digest());
         }
     }
 
+    @Override
+    public void enableTransferChecksum(ChecksumType suggestedAlgorithm)
+            throws NoSuchAlgorithmException
+    {
+        checksumFactory = ChecksumFactory.getFactory(suggestedAlgorithm);
+    }
+
+    @Override
+    public Checksum getActualChecksum()
+    {
+        return actualChecksum;
+    }
+
+    @Override
+    public Checksum getExpectedChecksum()
+    {
+        return expectedChecksum;
+    }
+
     @Override
     public long getLastTransferred()
     {
@@ -113,7 +433,7 @@ public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol
     @Override
     public long getBytesTransferred()
     {
-        return transferred;
+        return transferred.get();
     }
 
     @Override
@@ -123,6 +443,3 @@ public class RemoteHttpDataTransferProtocol_1 implements MoverProtocol
     }
 
 }
-
-
-
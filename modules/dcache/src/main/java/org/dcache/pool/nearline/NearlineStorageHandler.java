@@ -31,6 +31,7 @@ import javax.annotation.PostConstruct;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.Serializable;
 import java.net.URI;
 import java.nio.channels.CompletionHandler;
@@ -119,6 +120,9 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
     private long stageTimeout;
     private long flushTimeout;
     private long removeTimeout;
+    private int recallMaxActive;
+    private long recallMaxAge = TimeUnit.MINUTES.toMillis(30);
+    private final Map<NearlineStorage, RecallScheduler<StageRequestImpl>> recallSchedulers = new HashMap<>();
 
     @Required
     public void setScheduledExecutor(ScheduledExecutorService executor)
@@ -240,6 +244,48 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
         }
     }
 
+    /**
+     * Returns the recall scheduler of a nearline storage, creating it on
+     * first use.
+     */
+    private synchronized RecallScheduler<StageRequestImpl> getRecallScheduler(final NearlineStorage storage)
+    {
+        RecallScheduler<StageRequestImpl> scheduler = recallSchedulers.get(storage);
+        if (scheduler == null) {
+            scheduler = new RecallScheduler<>(new RecallScheduler.Sink<StageRequestImpl>()
+            {
+                @Override
+                public void release(List<StageRequestImpl> requests)
+                {
+                    storage.stage(transform(requests, Functions.<StageRequest>identity()));
+                }
+            });
+            scheduler.setMaxAge(recallMaxAge, TimeUnit.MILLISECONDS);
+            scheduler.setMaxActive(recallMaxActive);
+            recallSchedulers.put(storage, scheduler);
+        }
+        return scheduler;
+    }
+
+    @Override
+    public synchronized void printSetup(PrintWriter pw)
+    {
+        pw.println("rh set scheduler -max-active=" + recallMaxActive +
+                   " -max-age=" + TimeUnit.MILLISECONDS.toSeconds(recallMaxAge));
+    }
+
+    @Override
+    public synchronized void getInfo(PrintWriter pw)
+    {
+        for (String instance : hsmSet.getHsmInstances()) {
+            RecallScheduler<StageRequestImpl> scheduler =
+                    recallSchedulers.get(hsmSet.getNearlineStorageByName(instance));
+            if (scheduler != null) {
+                pw.println("Recall scheduler " + instance + " : " + scheduler);
+            }
+        }
+    }
+
     public int getActiveFetchJobs()
     {
         return stageRequests.getCount(AbstractRequest.State.ACTIVE);
@@ -504,7 +550,10 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
         @Override
         protected void submit(NearlineStorage storage, Iterable<StageRequestImpl> requests)
         {
-            storage.stage(transform(requests, Functions.<StageRequest>identity()));
+            RecallScheduler<StageRequestImpl> scheduler = getRecallScheduler(storage);
+            for (StageRequestImpl request : requests) {
+                scheduler.add(request, TapeLocation.of(request.getFileAttributes().getStorageInfo()));
+            }
         }
     }
 
@@ -798,6 +847,29 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
             return super.activate();
         }
 
+        @Override
+        public void cancel()
+        {
+            /* A request still held back by the recall scheduler is
+             * unknown to the nearline storage and is failed directly.
+             * The failure is reported asynchronously as cancel is called
+             * while holding the lock of the request container.
+             */
+            if (getRecallScheduler(storage).remove(this)) {
+                state.set(AbstractRequest.State.CANCELED);
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        failed(new CancellationException());
+                    }
+                });
+            } else {
+                super.cancel();
+            }
+        }
+
         @Override
         public File getFile()
         {
@@ -863,6 +935,7 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
                             pnfsId, cause);
             }
             descriptor.close();
+            getRecallScheduler(storage).done(this);
             if (cause instanceof CacheException) {
                 infoMsg.setResult(((CacheException) cause).getRc(), cause.getMessage());
             } else if (cause != null) {
@@ -953,6 +1026,58 @@ public class NearlineStorageHandler extends AbstractCellComponent implements Cel
         }
     }
 
+    @Command(name = "rh set scheduler",
+            hint = "configure tape aware recall scheduling",
+            description = "Configure the order in which restore requests are submitted to " +
+                    "the HSM.\n\n" +
+                    "If a maximum number of active requests is set, further requests are " +
+                    "held back in the pool and grouped by the tape volume of the file, as " +
+                    "given by the volume and position of its HSM location. Requests for " +
+                    "the volume submitted last are submitted first, sorted by position, " +
+                    "followed by the volume with the most requests. Requests waiting " +
+                    "longer than the maximum age take precedence, so that no volume " +
+                    "starves.\n\n" +
+                    "By default the number of active requests is not limited and requests " +
+                    "are submitted in arrival order.")
+    class RestoreSetSchedulerCommand implements Callable<String>
+    {
+        @Option(name = "max-active",
+                usage = "Maximum number of restore requests submitted to the HSM at a time; " +
+                        "0 disables scheduling.")
+        Integer maxActive;
+
+        @Option(name = "max-age",
+                usage = "Time after which requests of a volume take precedence.",
+                metaVar = "seconds")
+        Long maxAge;
+
+        @Override
+        public String call() throws IllegalArgumentException
+        {
+            checkArgument(maxActive == null || maxActive >= 0, "Maximum number of active requests must not be negative");
+            checkArgument(maxAge == null || maxAge > 0, "Maximum age must be positive");
+            List<RecallScheduler<StageRequestImpl>> schedulers;
+            int active;
+            long age;
+            synchronized (NearlineStorageHandler.this) {
+                if (maxActive != null) {
+                    recallMaxActive = maxActive;
+                }
+                if (maxAge != null) {
+                    recallMaxAge = TimeUnit.SECONDS.toMillis(maxAge);
+                }
+                active = recallMaxActive;
+                age = recallMaxAge;
+                schedulers = new ArrayList<>(recallSchedulers.values());
+            }
+            for (RecallScheduler<StageRequestImpl> scheduler : schedulers) {
+                scheduler.setMaxAge(age, TimeUnit.MILLISECONDS);
+                scheduler.setMaxActive(active);
+            }
+            return "";
+        }
+    }
+
     @Command(name = "rh kill",
             hint = "kill restore request",
             description = "Remove an HSM restore request.")
@@ -0,0 +1,396 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2014 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.nearline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Orders the release of stage requests to a nearline storage such that
+ * files on the same tape volume are recalled together and in the order
+ * of their position on the volume.
+ *
+ * Requests are held back until fewer than a configurable number of
+ * released requests are active. Released requests are taken from the
+ * volume most recently released from, as long as it has pending
+ * requests, thus avoiding a remount. Otherwise the volume with the most
+ * pending requests is chosen. A volume with requests waiting longer
+ * than the maximum age takes precedence over both, the volume with the
+ * oldest pending request first. Such a volume releases its oldest request
+ * first, so that no volume starves even if other volumes keep receiving
+ * new requests.
+ *
+ * Requests of files without a known tape location are grouped as if
+ * on a single volume and released in arrival order.
+ *
+ * If the number of active requests is not limited, requests are
+ * released as they arrive, i.e. scheduling is left to the nearline
+ * storage.
+ *
+ * This class is thread safe. The sink is called without holding any
+ * locks.
+ *
+ * @param <R> type of request
+ */
+public class RecallScheduler<R>
+{
+    /** Pseudo volume of requests without a tape location. */
+    private static final String UNKNOWN_VOLUME = "";
+
+    /**
+     * Receives the requests released by the scheduler.
+     */
+    public interface Sink<R>
+    {
+        void release(List<R> requests);
+    }
+
+    private static class Pending<R>
+    {
+        final R request;
+        final String position;
+        final long sequence;
+        final long arrival;
+
+        Pending(R request, String position, long sequence, long arrival)
+        {
+            this.request = request;
+            this.position = position;
+            this.sequence = sequence;
+            this.arrival = arrival;
+        }
+    }
+
+    private static final Comparator<Pending<?>> ORDER = new Comparator<Pending<?>>()
+    {
+        @Override
+        public int compare(Pending<?> a, Pending<?> b)
+        {
+            int c = TapeLocation.POSITION_ORDER.compare(a.position, b.position);
+            return (c != 0) ? c : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private static final Comparator<Pending<?>> ARRIVAL_ORDER = new Comparator<Pending<?>>()
+    {
+        @Override
+        public int compare(Pending<?> a, Pending<?> b)
+        {
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private static class Volume<R>
+    {
+        final String name;
+
+        /** Pending requests in position order. */
+        final TreeSet<Pending<R>> requests = new TreeSet<>(ORDER);
+
+        /** Pending requests in arrival order. */
+        final TreeSet<Pending<R>> arrivals = new TreeSet<>(ARRIVAL_ORDER);
+
+        Volume(String name)
+        {
+            this.name = name;
+        }
+
+        void add(Pending<R> pending)
+        {
+            requests.add(pending);
+            arrivals.add(pending);
+        }
+
+        void remove(Pending<R> pending)
+        {
+            requests.remove(pending);
+            arrivals.remove(pending);
+        }
+
+        Pending<R> removeFirst()
+        {
+            Pending<R> pending = requests.pollFirst();
+            arrivals.remove(pending);
+            return pending;
+        }
+
+        Pending<R> removeOldest()
+        {
+            Pending<R> pending = arrivals.pollFirst();
+            requests.remove(pending);
+            return pending;
+        }
+
+        boolean isEmpty()
+        {
+            return requests.isEmpty();
+        }
+
+        int size()
+        {
+            return requests.size();
+        }
+
+        /** Arrival time of the oldest pending request. */
+        long waitingSince()
+        {
+            return arrivals.first().arrival;
+        }
+    }
+
+    private final Sink<R> _sink;
+
+    private final Map<String,Volume<R>> _volumes = new HashMap<>();
+    private final Map<R,Volume<R>> _pending = new HashMap<>();
+    private final Set<R> _active = new HashSet<>();
+
+    private int _maxActive;
+    private long _maxAge = TimeUnit.MINUTES.toMillis(30);
+
+    /** Volume requests were last released from. */
+    private String _current;
+    private long _sequence;
+
+    private long _released;
+    private long _volumeSwitches;
+
+    public RecallScheduler(Sink<R> sink)
+    {
+        _sink = sink;
+    }
+
+    /**
+     * Sets the maximum number of released requests that have not yet
+     * completed. Zero means no limit, which disables scheduling.
+     */
+    public void setMaxActive(int maxActive)
+    {
+        checkArgument(maxActive >= 0, "Maximum number of active requests must not be negative");
+        List<R> requests;
+        synchronized (this) {
+            _maxActive = maxActive;
+            requests = next(System.currentTimeMillis());
+        }
+        release(requests);
+    }
+
+    public synchronized int getMaxActive()
+    {
+        return _maxActive;
+    }
+
+    /**
+     * Sets the time after which pending requests of a volume take
+     * precedence over requests of other volumes.
+     */
+    public synchronized void setMaxAge(long maxAge, TimeUnit unit)
+    {
+        checkArgument(maxAge > 0, "Maximum age must be positive");
+        _maxAge = unit.toMillis(maxAge);
+    }
+
+    public synchronized long getMaxAge(TimeUnit unit)
+    {
+        return unit.convert(_maxAge, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a request to the scheduler.
+     *
+     * @param request the request to schedule
+     * @param location location of the file on tape, or null if unknown
+     */
+    public void add(R request, TapeLocation location)
+    {
+        add(request, location, System.currentTimeMillis());
+    }
+
+    void add(R request, TapeLocation location, long now)
+    {
+        List<R> requests;
+        synchronized (this) {
+            if (_maxActive == 0) {
+                _released++;
+                requests = Collections.singletonList(request);
+            } else {
+                String name = (location == null) ? UNKNOWN_VOLUME : location.getVolume();
+                String position = (location == null) ? "" : location.getPosition();
+                Volume<R> volume = _volumes.get(name);
+                if (volume == null) {
+                    volume = new Volume<>(name);
+                    _volumes.put(name, volume);
+                }
+                volume.add(new Pending<>(request, position, _sequence++, now));
+                _pending.put(request, volume);
+                requests = next(now);
+            }
+        }
+        release(requests);
+    }
+
+    /**
+     * Signals that a released request has completed, making room for
+     * further requests.
+     */
+    public void done(R request)
+    {
+        done(request, System.currentTimeMillis());
+    }
+
+    void done(R request, long now)
+    {
+        List<R> requests;
+        synchronized (this) {
+            if (!_active.remove(request)) {
+                return;
+            }
+            requests = next(now);
+        }
+        release(requests);
+    }
+
+    /**
+     * Removes a request that has not been released yet.
+     *
+     * @return true if the request was pending, false if it was released
+     * already or is unknown
+     */
+    public synchronized boolean remove(R request)
+    {
+        Volume<R> volume = _pending.remove(request);
+        if (volume == null) {
+            return false;
+        }
+        for (Pending<R> pending : volume.requests) {
+            if (pending.request == request) {
+                volume.remove(pending);
+                break;
+            }
+        }
+        if (volume.isEmpty()) {
+            _volumes.remove(volume.name);
+        }
+        return true;
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return _pending.size();
+    }
+
+    public synchronized int getActiveCount()
+    {
+        return _active.size();
+    }
+
+    /**
+     * Returns the number of times requests were released from a volume
+     * other than the one released from before. When the nearline storage
+     * is a tape system, this approximates the number of mounts.
+     */
+    public synchronized long getVolumeSwitches()
+    {
+        return _volumeSwitches;
+    }
+
+    private void release(List<R> requests)
+    {
+        if (!requests.isEmpty()) {
+            _sink.release(requests);
+        }
+    }
+
+    /**
+     * Removes the requests to release next. If scheduling was disabled
+     * while requests were pending, all of them are released.
+     */
+    private List<R> next(long now)
+    {
+        List<R> requests = new ArrayList<>();
+        while (!_volumes.isEmpty() && (_maxActive == 0 || _active.size() < _maxActive)) {
+            Volume<R> volume = select(now);
+            if (!volume.name.equals(_current)) {
+                _current = volume.name;
+                _volumeSwitches++;
+            }
+            boolean isAged = (now - volume.waitingSince() >= _maxAge);
+            while (!volume.isEmpty() &&
+                    (_maxActive == 0 || _active.size() < _maxActive)) {
+                R request = isAged ? volume.removeOldest().request : volume.removeFirst().request;
+                isAged = false;
+                _pending.remove(request);
+                if (_maxActive > 0) {
+                    _active.add(request);
+                }
+                requests.add(request);
+                _released++;
+            }
+            if (volume.isEmpty()) {
+                _volumes.remove(volume.name);
+            }
+        }
+        return requests;
+    }
+
+    private Volume<R> select(long now)
+    {
+        Volume<R> oldest = null;
+        Volume<R> largest = null;
+        for (Volume<R> volume : _volumes.values()) {
+            if (oldest == null || volume.waitingSince() < oldest.waitingSince()) {
+                oldest = volume;
+            }
+            if (largest == null || volume.size() > largest.size() ||
+                    (volume.size() == largest.size() &&
+                            volume.waitingSince() < largest.waitingSince())) {
+                largest = volume;
+            }
+        }
+        if (now - oldest.waitingSince() >= _maxAge) {
+            return oldest;
+        }
+        Volume<R> current = _volumes.get(_current);
+        if (current != null) {
+            return current;
+        }
+        return largest;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        if (_maxActive == 0) {
+            return "off, " + _released + " released";
+        }
+        return String.format("max active %d, max age %ds, %d pending on %d volumes, %d active, " +
+                             "%d released, %d volume switches",
+                             _maxActive, TimeUnit.MILLISECONDS.toSeconds(_maxAge),
+                             _pending.size(), _volumes.size(), _active.size(),
+                             _released, _volumeSwitches);
+    }
+}
@@ -0,0 +1,171 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2014 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.nearline;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+
+import java.net.URI;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import diskCacheV111.vehicles.StorageInfo;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The location of a file on tape as far as known to the pool: The tape
+ * volume and the position of the file on that volume.
+ *
+ * The location is taken from the HSM URIs of the file, e.g. the volume
+ * and location_cookie query parameters of Enstore URIs, or from the
+ * storage info keys of the same name.
+ */
+public final class TapeLocation
+{
+    private static final String[] VOLUME_KEYS = { "volume", "vol", "tape" };
+    private static final String[] POSITION_KEYS = { "location_cookie", "position", "pos" };
+
+    /**
+     * Orders positions numerically if both consist of digits and
+     * separators only, e.g. 0000_000000000_0000123, and lexicographically
+     * otherwise.
+     */
+    public static final Comparator<String> POSITION_ORDER = new Comparator<String>()
+    {
+        @Override
+        public int compare(String a, String b)
+        {
+            String x = toNumber(a);
+            String y = toNumber(b);
+            if (x != null && y != null) {
+                return (x.length() != y.length())
+                        ? Integer.compare(x.length(), y.length())
+                        : x.compareTo(y);
+            }
+            return a.compareTo(b);
+        }
+
+        private String toNumber(String position)
+        {
+            if (!CharMatcher.DIGIT.or(CharMatcher.anyOf("_-:.")).matchesAllOf(position)) {
+                return null;
+            }
+            String digits = CharMatcher.DIGIT.retainFrom(position);
+            return digits.isEmpty() ? null : CharMatcher.is('0').trimLeadingFrom(digits);
+        }
+    };
+
+    private final String volume;
+    private final String position;
+
+    public TapeLocation(String volume, String position)
+    {
+        this.volume = checkNotNull(volume);
+        this.position = checkNotNull(position);
+    }
+
+    public String getVolume()
+    {
+        return volume;
+    }
+
+    /**
+     * Returns the position on the volume, or the empty string if unknown.
+     */
+    public String getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Returns the tape location of a file, or null if the volume is not
+     * known.
+     */
+    public static TapeLocation of(StorageInfo info)
+    {
+        if (info == null) {
+            return null;
+        }
+        for (URI location : info.locations()) {
+            String query = location.getQuery();
+            if (query != null) {
+                Map<String,String> parameters = new HashMap<>();
+                for (String part : Splitter.on('&').omitEmptyStrings().split(query)) {
+                    int i = part.indexOf('=');
+                    if (i > 0) {
+                        parameters.put(part.substring(0, i), part.substring(i + 1));
+                    }
+                }
+                TapeLocation tapeLocation = of(parameters);
+                if (tapeLocation != null) {
+                    return tapeLocation;
+                }
+            }
+        }
+        return of(info.getMap());
+    }
+
+    private static TapeLocation of(Map<String,String> parameters)
+    {
+        String volume = get(parameters, VOLUME_KEYS);
+        if (volume == null) {
+            return null;
+        }
+        String position = get(parameters, POSITION_KEYS);
+        return new TapeLocation(volume, (position == null) ? "" : position);
+    }
+
+    private static String get(Map<String,String> parameters, String[] keys)
+    {
+        for (String key : keys) {
+            String value = parameters.get(key);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TapeLocation)) {
+            return false;
+        }
+        TapeLocation that = (TapeLocation) o;
+        return volume.equals(that.volume) && position.equals(that.position);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(volume, position);
+    }
+
+    @Override
+    public String toString()
+    {
+        return volume + ':' + position;
+    }
+}
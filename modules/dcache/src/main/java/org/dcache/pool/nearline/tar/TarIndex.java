@@ -0,0 +1,398 @@
+/* dCache - http://www.dcache.org/
+ *
+ * Copyright (C) 2014 Deutsches Elektronen-Synchrotron
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.dcache.pool.nearline.tar;
+
+import com.google.common.base.Splitter;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent index of the members of a tar container.
+ *
+ * The index of container {@code <id>} is stored next to the container
+ * in {@code <id>.index}. It lists the offset of the data of each member
+ * within the container, its size and its ADLER32 checksum, allowing a
+ * single member to be read without scanning the container. Removal of
+ * members is recorded by appending to the index. When a container is
+ * compacted, the live members are written to the next generation of the
+ * container and the index is replaced atomically. The generation is part
+ * of the name of the container file; generation zero is stored in
+ * {@code <id>.tar}, generation n in {@code <id>.<n>.tar}.
+ *
+ * The format is line oriented:
+ *
+ * <pre>
+ * generation 0
+ * + 0000A9F8E1A2B3C4D5E6F7A8B9C0D1E2F3A4 512 1048576 0a1b2c3d
+ * - 0000A9F8E1A2B3C4D5E6F7A8B9C0D1E2F3A4
+ * </pre>
+ *
+ * A truncated last line, as left by a crash while appending, is ignored.
+ *
+ * Instances are not thread safe.
+ */
+class TarIndex
+{
+    static final int RECORD_SIZE = TarConstants.DEFAULT_RCDSIZE;
+
+    private static final String GENERATION = "generation";
+    private static final String ADDED = "+";
+    private static final String REMOVED = "-";
+    private static final String UNKNOWN_CHECKSUM = "-";
+
+    /**
+     * A file stored in a tar container.
+     */
+    static class Member
+    {
+        private final String name;
+        private final long offset;
+        private final long size;
+        private final String adler32;
+
+        /**
+         * @param name name of the member, the PNFS ID of the file
+         * @param offset offset of the data of the member in the container
+         * @param size size of the data
+         * @param adler32 ADLER32 checksum of the data, or null if unknown
+         */
+        Member(String name, long offset, long size, String adler32)
+        {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+            this.adler32 = adler32;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        long getOffset()
+        {
+            return offset;
+        }
+
+        long getSize()
+        {
+            return size;
+        }
+
+        String getAdler32()
+        {
+            return adler32;
+        }
+
+        /**
+         * Returns the number of bytes the member occupies in the container,
+         * including the tar header and the padding of the data.
+         */
+        long getLength()
+        {
+            return RECORD_SIZE + padded(size);
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + '@' + offset + '+' + size;
+        }
+    }
+
+    private final File directory;
+    private final String container;
+    private final int generation;
+    private final Map<String,Member> members;
+    private final long length;
+    private long liveLength;
+
+    private TarIndex(File directory, String container, int generation,
+                     Map<String,Member> members, long length)
+    {
+        this.directory = directory;
+        this.container = container;
+        this.generation = generation;
+        this.members = members;
+        this.length = length;
+        for (Member member : members.values()) {
+            liveLength += member.getLength();
+        }
+    }
+
+    static long padded(long size)
+    {
+        return (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+    }
+
+    static File getIndexFile(File directory, String container)
+    {
+        return new File(directory, container + ".index");
+    }
+
+    static File getDataFile(File directory, String container, int generation)
+    {
+        return new File(directory, (generation == 0)
+                                   ? container + ".tar"
+                                   : container + '.' + generation + ".tar");
+    }
+
+    String getContainer()
+    {
+        return container;
+    }
+
+    int getGeneration()
+    {
+        return generation;
+    }
+
+    File getDataFile()
+    {
+        return getDataFile(directory, container, generation);
+    }
+
+    Member get(String name)
+    {
+        return members.get(name);
+    }
+
+    Collection<Member> getMembers()
+    {
+        return Collections.unmodifiableCollection(members.values());
+    }
+
+    boolean isEmpty()
+    {
+        return members.isEmpty();
+    }
+
+    /**
+     * Returns the fraction of the data of the container that belongs to
+     * members that have not been removed. The end of archive marker and
+     * padding are not taken into account.
+     */
+    double getLiveFraction()
+    {
+        return (length == 0) ? 1.0 : (double) liveLength / length;
+    }
+
+    /**
+     * Records the removal of a member.
+     *
+     * @return true if the member was part of the container, false otherwise
+     */
+    boolean remove(String name) throws IOException
+    {
+        Member member = members.get(name);
+        if (member == null) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(getIndexFile(directory, container).toPath(),
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.APPEND)) {
+            ByteBuffer line = StandardCharsets.US_ASCII.encode(REMOVED + ' ' + name + '\n');
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        }
+        members.remove(name);
+        liveLength -= member.getLength();
+        return true;
+    }
+
+    /**
+     * Writes a new index, replacing any existing index of the container.
+     * The index is written to a temporary file and then moved into place,
+     * so a reader sees either the old or the new index.
+     */
+    static TarIndex write(File directory, String container, int generation,
+                          List<Member> members)
+            throws IOException
+    {
+        Map<String,Member> map = new LinkedHashMap<>();
+        long length = 0;
+        File tmp = new File(directory, container + ".index.tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+            writer.write(GENERATION + ' ' + generation + '\n');
+            for (Member member : members) {
+                writer.write(ADDED + ' ' + member.getName() + ' ' + member.getOffset() + ' ' +
+                             member.getSize() + ' ' +
+                             (member.getAdler32() == null ? UNKNOWN_CHECKSUM : member.getAdler32()) +
+                             '\n');
+                map.put(member.getName(), member);
+                length += member.getLength();
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), getIndexFile(directory, container).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new TarIndex(directory, container, generation, map, length);
+    }
+
+    /**
+     * Reads the index of a container.
+     *
+     * If the container has no index, but a container file of generation
+     * zero exists, the index is recovered by scanning the tar headers of
+     * the container. This allows containers written without an index to
+     * be read. Checksums of recovered members are unknown.
+     *
+     * @throws FileNotFoundException if neither index nor container exist
+     */
+    static TarIndex read(File directory, String container) throws IOException
+    {
+        File file = getIndexFile(directory, container);
+        if (!file.exists()) {
+            return recover(directory, container);
+        }
+
+        int generation = 0;
+        long length = 0;
+        Map<String,Member> members = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line);
+                if (fields.isEmpty()) {
+                    continue;
+                }
+                try {
+                    switch (fields.get(0)) {
+                    case GENERATION:
+                        generation = Integer.parseInt(fields.get(1));
+                        break;
+                    case ADDED:
+                        String adler32 = fields.get(4);
+                        Member member = new Member(fields.get(1),
+                                                   Long.parseLong(fields.get(2)),
+                                                   Long.parseLong(fields.get(3)),
+                                                   adler32.equals(UNKNOWN_CHECKSUM) ? null : adler32);
+                        members.put(member.getName(), member);
+                        length += member.getLength();
+                        break;
+                    case REMOVED:
+                        members.remove(fields.get(1));
+                        break;
+                    default:
+                        throw new IOException("Corrupted index " + file + ": " + line);
+                    }
+                } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                    if (reader.ready()) {
+                        throw new IOException("Corrupted index " + file + ": " + line);
+                    }
+                    /* Truncated last line. */
+                }
+            }
+        }
+
+        File data = getDataFile(directory, container, generation);
+        if (!data.exists()) {
+            throw new FileNotFoundException("Container " + data + " is missing");
+        }
+        return new TarIndex(directory, container, generation, members, length);
+    }
+
+    private static TarIndex recover(File directory, String container) throws IOException
+    {
+        File data = getDataFile(directory, container, 0);
+        List<Member> members = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(data.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            long length = channel.size();
+            while (position + RECORD_SIZE <= length) {
+                TarArchiveEntry entry = readHeader(channel, position);
+                if (entry == null) {
+                    break;
+                }
+                checkEntry(entry.isFile() && entry.getSize() >= 0, data, position);
+                members.add(new Member(entry.getName(), position + RECORD_SIZE, entry.getSize(), null));
+                position += RECORD_SIZE + padded(entry.getSize());
+            }
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("Container " + container + " does not exist");
+        }
+        return write(directory, container, 0, members);
+    }
+
+    private static void checkEntry(boolean condition, File data, long position) throws IOException
+    {
+        if (!condition) {
+            throw new IOException("Unsupported tar entry in " + data + " at offset " + position);
+        }
+    }
+
+    /**
+     * Reads the tar header at a given position of a container.
+     *
+     * @return the entry described by the header, or null if the header
+     * marks the end of the archive
+     */
+    static TarArchiveEntry readHeader(FileChannel channel, long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of container at offset " + position);
+            }
+        }
+        byte[] header = buffer.array();
+        boolean isEndOfArchive = true;
+        for (byte b : header) {
+            if (b != 0) {
+                isEndOfArchive = false;
+                break;
+            }
+        }
+        if (isEndOfArchive) {
+            return null;
+        }
+        try {
+            return new TarArchiveEntry(header);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid tar header at offset " + position + ": " + e.getMessage());
+        }
+    }
+}
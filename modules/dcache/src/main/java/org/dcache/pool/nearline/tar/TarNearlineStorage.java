@@ -18,40 +18,60 @@
 package org.dcache.pool.nearline.tar;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
 
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.InvalidMessageCacheException;
-import diskCacheV111.util.PnfsId;
 
+import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.nearline.spi.FlushRequest;
 import org.dcache.pool.nearline.spi.NearlineStorage;
 import org.dcache.pool.nearline.spi.RemoveRequest;
 import org.dcache.pool.nearline.spi.StageRequest;
 import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
 import org.dcache.vehicles.FileAttributes;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -59,24 +79,102 @@ import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.getFirst;
 
 /**
- * This class is for demonstration only. The code is a bit messy and incomplete.
+ * Nearline storage aggregating files into tar containers in a directory.
+ *
+ * Flushed files are appended to an open container. The container is
+ * sealed once it reaches a maximum size or once its oldest member has
+ * waited for a maximum delay, whichever comes first. Only then are the
+ * flush requests of its members completed. The location of a file is
+ * {@code <type>://<name>/<container>/<pnfsid>}.
+ *
+ * Each container has a persistent index (see {@link TarIndex}) recording
+ * the offset and ADLER32 checksum of each member. A file is staged by
+ * reading just its member from the container, and its checksum is
+ * verified against the index. The checksum of a file is also verified
+ * against the checksum known to dCache when it is flushed.
+ *
+ * Removing a file marks its member as removed in the index. Once the live
+ * members occupy less than a configurable fraction of a container, the
+ * container is compacted by copying the live members to a new generation
+ * of the container. The name of the container, and thus the locations of
+ * its members, do not change.
+ *
+ * Configuration properties:
+ *
+ * <dl>
+ * <dt>directory</dt><dd>Directory to store containers in. Required.</dd>
+ * <dt>max-size</dt><dd>Size in bytes at which a container is sealed.</dd>
+ * <dt>max-delay</dt><dd>Seconds after which a container is sealed.</dd>
+ * <dt>compaction-threshold</dt><dd>Fraction of live data below which a
+ * container is compacted. Zero disables compaction; empty containers are
+ * deleted regardless.</dd>
+ * </dl>
+ *
+ * Removal and compaction assume that the directory is not modified by
+ * other nearline storages at the same time.
  */
 public class TarNearlineStorage implements NearlineStorage
 {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TarNearlineStorage.class);
+
+    private static final long DEFAULT_MAX_SIZE = 1L << 30;
+    private static final long DEFAULT_MAX_DELAY = TimeUnit.MINUTES.toSeconds(10);
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    private static final int INDEX_CACHE_SIZE = 1000;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
     private final String type;
     private final String name;
 
-    private final BlockingQueue<FlushRequest> flushQueue = new LinkedBlockingDeque<>();
+    private final BlockingQueue<FlushRequest> flushQueue = new LinkedBlockingQueue<>();
     private final Multimap<String,StageRequest> stageRequests =
             Multimaps.synchronizedMultimap(ArrayListMultimap.<String,StageRequest>create());
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Appends files to and seals the open container. Tasks submitted to this
+     * executor have exclusive access to the open container.
+     */
+    private final ScheduledThreadPoolExecutor flushExecutor;
+    private final ExecutorService stageExecutor;
+
+    /**
+     * Records removals and compacts containers. Indices of sealed containers
+     * are only modified by tasks submitted to this executor.
+     */
+    private final ExecutorService removeExecutor;
+
+    /** Indices of recently used containers. */
+    private final Map<String,TarIndex> indices =
+            new LinkedHashMap<String,TarIndex>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,TarIndex> eldest)
+                {
+                    return size() > INDEX_CACHE_SIZE;
+                }
+            };
+
+    /** Container files are appended to. Confined to the flush executor. */
+    private OpenContainer container;
+
     private volatile File directory;
+    private volatile long maxSize = DEFAULT_MAX_SIZE;
+    private volatile long maxDelay = DEFAULT_MAX_DELAY;
+    private volatile double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
 
     public TarNearlineStorage(String type, String name)
     {
         this.type = type;
         this.name = name;
+        flushExecutor = new ScheduledThreadPoolExecutor(
+                1, new ThreadFactoryBuilder().setNameFormat(name + "-flush").build());
+        flushExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        stageExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-stage").build());
+        removeExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-remove").build());
     }
 
     protected Iterable<URI> getLocations(FileAttributes fileAttributes)
@@ -96,49 +194,68 @@ public class TarNearlineStorage implements NearlineStorage
     public void flush(Iterable<FlushRequest> requests)
     {
         Iterables.addAll(flushQueue, requests);
-        executor.execute(new FlushTask());
+        flushExecutor.execute(new FlushTask());
     }
 
     @Override
     public void stage(Iterable<StageRequest> requests)
     {
         for (StageRequest request : requests) {
-            File tarFile;
+            Location location;
             try {
                 FileAttributes fileAttributes = request.getFileAttributes();
-                URI location = getFirst(getLocations(fileAttributes), null);
-                if (location == null) {
+                URI uri = getFirst(getLocations(fileAttributes), null);
+                if (uri == null) {
                     throw new CacheException(CacheException.BROKEN_ON_TAPE, "File not on nearline storage: " + fileAttributes.getPnfsId());
                 }
-                String path = location.getPath();
-                if (path == null) {
-                    throw new InvalidMessageCacheException("Invalid nearline storage URI: " + location);
-                }
-                tarFile = new File(path).getParentFile();
-                if (tarFile == null) {
-                    throw new InvalidMessageCacheException("Invalid nearline storage URI: " + location);
-                }
+                location = Location.of(uri);
             } catch (CacheException e) {
                 request.failed(e);
                 continue;
             }
-            stageRequests.put(tarFile.getName(), request);
+            stageRequests.put(location.container, request);
         }
-        executor.execute(new StageTask());
+        stageExecutor.execute(new StageTask());
     }
 
     @Override
     public void remove(Iterable<RemoveRequest> requests)
     {
         for (RemoveRequest request : requests) {
-            request.failed(new CacheException("Remove from tar nearline storage is not supported."));
+            removeExecutor.execute(new RemoveTask(request));
         }
     }
 
     @Override
-    public void cancel(UUID uuid)
+    public void cancel(final UUID uuid)
     {
-        // Not implemented
+        for (FlushRequest request : flushQueue) {
+            if (request.getId().equals(uuid) && flushQueue.remove(request)) {
+                request.failed(new CancellationException());
+                return;
+            }
+        }
+        synchronized (stageRequests) {
+            Iterator<StageRequest> iterator = stageRequests.values().iterator();
+            while (iterator.hasNext()) {
+                StageRequest request = iterator.next();
+                if (request.getId().equals(uuid)) {
+                    iterator.remove();
+                    request.failed(new CancellationException());
+                    return;
+                }
+            }
+        }
+        flushExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (container != null) {
+                    container.cancel(uuid);
+                }
+            }
+        });
     }
 
     @Override
@@ -146,13 +263,317 @@ public class TarNearlineStorage implements NearlineStorage
     {
         String directory = properties.get("directory");
         checkArgument(directory != null, "directory attribute is required");
-        this.directory = new File(directory);
+        File dir = new File(directory);
+        checkArgument(dir.isDirectory(), "No such directory: %s", directory);
+
+        long maxSize = getLong(properties, "max-size", DEFAULT_MAX_SIZE);
+        checkArgument(maxSize > 0, "max-size must be positive");
+        long maxDelay = getLong(properties, "max-delay", DEFAULT_MAX_DELAY);
+        checkArgument(maxDelay > 0, "max-delay must be positive");
+        double compactionThreshold;
+        try {
+            String value = properties.get("compaction-threshold");
+            compactionThreshold = (value == null) ? DEFAULT_COMPACTION_THRESHOLD : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("compaction-threshold must be a number");
+        }
+        checkArgument(compactionThreshold >= 0 && compactionThreshold <= 1,
+                      "compaction-threshold must be between 0 and 1");
+
+        synchronized (this) {
+            if (!dir.equals(this.directory)) {
+                indices.clear();
+            }
+        }
+        this.directory = dir;
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    private static long getLong(Map<String,String> properties, String key, long defaultValue)
+    {
+        String value = properties.get(key);
+        try {
+            return (value == null) ? defaultValue : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer");
+        }
     }
 
     @Override
     public void shutdown()
     {
-        executor.shutdownNow();
+        flushExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (container != null) {
+                    abort(new CancellationException());
+                }
+            }
+        });
+        flushExecutor.shutdown();
+
+        for (Runnable task : removeExecutor.shutdownNow()) {
+            ((RemoveTask) task).request.failed(new CancellationException());
+        }
+
+        stageExecutor.shutdownNow();
+        synchronized (stageRequests) {
+            for (StageRequest request : stageRequests.values()) {
+                request.failed(new CancellationException());
+            }
+            stageRequests.clear();
+        }
+    }
+
+    /**
+     * Returns the index of a container. Must be called with the monitor
+     * of this object held.
+     */
+    private TarIndex getIndex(String container) throws IOException
+    {
+        TarIndex index = indices.get(container);
+        if (index == null) {
+            index = TarIndex.read(directory, container);
+            indices.put(container, index);
+        }
+        return index;
+    }
+
+    /**
+     * Copies data from a file to a stream.
+     *
+     * @return the ADLER32 checksum of the data copied
+     */
+    private static String copy(FileChannel in, long position, long size, OutputStream out)
+            throws IOException
+    {
+        Adler32 adler32 = new Adler32();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(size, 1)));
+        long end = position + size;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int n = in.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            adler32.update(buffer.array(), 0, n);
+            out.write(buffer.array(), 0, n);
+            position += n;
+        }
+        return String.format("%08x", adler32.getValue());
+    }
+
+    private static TarArchiveOutputStream createTarStream(OutputStream out)
+    {
+        /* Without blocking, containers are not padded beyond the end of
+         * archive marker. Large sizes are encoded in the header itself rather
+         * than in an additional PAX header, which would shift the data of the
+         * entry.
+         */
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(out, TarIndex.RECORD_SIZE);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_STAR);
+        return tar;
+    }
+
+    private static String getAdler32(FileAttributes attributes)
+    {
+        if (attributes.isDefined(FileAttribute.CHECKSUM)) {
+            for (Checksum checksum : attributes.getChecksums()) {
+                if (checksum.getType() == ChecksumType.ADLER32) {
+                    return checksum.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Seals the open container and completes the flush requests of its
+     * members.
+     */
+    private void seal()
+    {
+        OpenContainer c = container;
+        if (c.requests.isEmpty()) {
+            abort(null);
+            return;
+        }
+        container = null;
+        c.timer.cancel(false);
+
+        Map<FlushRequest,URI> uris = new HashMap<>();
+        try {
+            try {
+                c.tar.finish();
+                c.out.getFD().sync();
+            } finally {
+                c.tar.close();
+            }
+
+            /* The index is written before the container is moved into
+             * place, thus every container has an index.
+             */
+            TarIndex index = TarIndex.write(c.directory, c.id, 0, c.members);
+            Files.move(c.file.toPath(), index.getDataFile().toPath(), StandardCopyOption.ATOMIC_MOVE);
+            for (TarIndex.Member member : c.members) {
+                FlushRequest request = c.requests.get(member.getName());
+                if (request == null) {
+                    index.remove(member.getName());
+                } else {
+                    uris.put(request, new URI(type, name, '/' + c.id + '/' + member.getName(), null, null));
+                }
+            }
+            synchronized (this) {
+                if (c.directory.equals(directory)) {
+                    indices.put(c.id, index);
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.error("Failed to seal tar container {}: {}", c.id, e.toString());
+            c.delete(e);
+            for (FlushRequest request : c.requests.values()) {
+                request.failed(e);
+            }
+            return;
+        }
+
+        LOGGER.debug("Sealed tar container {} with {} members", c.id, uris.size());
+        for (Map.Entry<FlushRequest,URI> entry : uris.entrySet()) {
+            entry.getKey().completed(Collections.singleton(entry.getValue()));
+        }
+    }
+
+    /**
+     * Discards the open container and fails the flush requests of its members.
+     */
+    private void abort(Exception cause)
+    {
+        OpenContainer c = container;
+        container = null;
+        c.timer.cancel(false);
+        try {
+            c.tar.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close tar container {}: {}", c.id, e.toString());
+        }
+        c.delete(cause);
+        for (FlushRequest request : c.requests.values()) {
+            request.failed(cause);
+        }
+    }
+
+    /**
+     * Container that files are being appended to.
+     */
+    private class OpenContainer
+    {
+        final String id = UUID.randomUUID().toString();
+        final File directory;
+        final File file;
+        final FileOutputStream out;
+        final TarArchiveOutputStream tar;
+        final ScheduledFuture<?> timer;
+
+        final List<TarIndex.Member> members = new ArrayList<>();
+
+        /** Flush requests by member name of members to keep. */
+        final Map<String,FlushRequest> requests = new HashMap<>();
+
+        long length;
+
+        OpenContainer(File directory) throws IOException
+        {
+            this.directory = directory;
+            file = new File(directory, id + ".tar.part");
+            out = new FileOutputStream(file);
+            tar = createTarStream(out);
+            timer = flushExecutor.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (container == OpenContainer.this) {
+                        seal();
+                    }
+                }
+            }, maxDelay, TimeUnit.SECONDS);
+        }
+
+        boolean contains(String name)
+        {
+            for (TarIndex.Member member : members) {
+                if (member.getName().equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Appends a file to the container.
+         *
+         * @throws IOException if the container could not be written to
+         * @throws CacheException if the file was appended, but does not match
+         * its checksum
+         */
+        void add(FlushRequest request) throws IOException, CacheException
+        {
+            FileAttributes attributes = request.getFileAttributes();
+            String name = attributes.getPnfsId().getId();
+            File file = request.getFile();
+
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = in.size();
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(size);
+                entry.setModTime(file.lastModified());
+                tar.putArchiveEntry(entry);
+                String adler32 = copy(in, 0, size, tar);
+                tar.closeArchiveEntry();
+
+                TarIndex.Member member = new TarIndex.Member(name, length + TarIndex.RECORD_SIZE, size, adler32);
+                members.add(member);
+                length += member.getLength();
+
+                String expected = getAdler32(attributes);
+                if (expected != null && !expected.equalsIgnoreCase(adler32)) {
+                    throw new CacheException(CacheException.FILE_CORRUPTED,
+                                             "Checksum mismatch (expected=" + expected + ", actual=" + adler32 + ")");
+                }
+                requests.put(name, request);
+            }
+        }
+
+        void cancel(UUID uuid)
+        {
+            Iterator<FlushRequest> iterator = requests.values().iterator();
+            while (iterator.hasNext()) {
+                FlushRequest request = iterator.next();
+                if (request.getId().equals(uuid)) {
+                    iterator.remove();
+                    request.failed(new CancellationException());
+                    return;
+                }
+            }
+        }
+
+        void delete(Exception cause)
+        {
+            try {
+                Files.deleteIfExists(file.toPath());
+                Files.deleteIfExists(TarIndex.getIndexFile(directory, id).toPath());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to delete tar container {}: {}", id, e.toString());
+                if (cause != null) {
+                    cause.addSuppressed(e);
+                }
+            }
+        }
     }
 
     private class FlushTask implements Runnable
@@ -160,40 +581,45 @@ public class TarNearlineStorage implements NearlineStorage
         @Override
         public void run()
         {
-            List<FlushRequest> requests = new ArrayList<>();
-            flushQueue.drainTo(requests);
-            if (!requests.isEmpty()) {
-                Map<File, URI> uris = new HashMap<>();
-                String tarName = UUID.randomUUID().toString();
-                File tarFile = new File(directory, tarName + ".tar");
-                try (FileOutputStream out = new FileOutputStream(tarFile)) {
-                    try (TarArchiveOutputStream tarStream = new TarArchiveOutputStream(out)) {
-                        for (FlushRequest request : requests) {
-                            request.activate().get();
-                            File file = request.getFile();
-                            PnfsId pnfsId = request.getFileAttributes().getPnfsId();
-                            TarArchiveEntry entry = new TarArchiveEntry(pnfsId.getId());
-                            entry.setSize(request.getFile().length());
-                            tarStream.putArchiveEntry(entry);
-                            Files.copy(file.toPath(), tarStream);
-                            tarStream.closeArchiveEntry();
-                            uris.put(file, new URI(type, name, '/' + tarName + '/' + pnfsId.getId(), null, null));
-                        }
-                        tarStream.finish();
-                    }
+            FlushRequest request;
+            while ((request = flushQueue.poll()) != null) {
+                if (flushExecutor.isShutdown()) {
+                    request.failed(new CancellationException());
+                    continue;
+                }
+
+                String name;
+                try {
+                    request.activate().get();
+                    name = request.getFileAttributes().getPnfsId().getId();
                 } catch (Exception e) {
-                    try {
-                        Files.deleteIfExists(tarFile.toPath());
-                    } catch (IOException suppressed) {
-                        e.addSuppressed(suppressed);
+                    request.failed(e);
+                    continue;
+                }
+
+                /* A file is only added to a container once. */
+                if (container != null && container.contains(name)) {
+                    seal();
+                }
+
+                try {
+                    if (container == null) {
+                        container = new OpenContainer(directory);
                     }
-                    for (FlushRequest request : requests) {
-                        request.failed(e);
+                    container.add(request);
+                } catch (CacheException e) {
+                    request.failed(e);
+                } catch (IOException e) {
+                    LOGGER.error("Failed to write tar container: {}", e.toString());
+                    request.failed(e);
+                    if (container != null) {
+                        abort(e);
                     }
-                    return;
+                    continue;
                 }
-                for (FlushRequest request : requests) {
-                    request.completed(Collections.singleton(uris.get(request.getFile())));
+
+                if (container.length >= maxSize) {
+                    seal();
                 }
             }
         }
@@ -204,48 +630,262 @@ public class TarNearlineStorage implements NearlineStorage
         @Override
         public void run()
         {
-            List<String> archives;
-            synchronized(stageRequests) {
-                archives = new ArrayList<>(stageRequests.keySet());
+            List<String> containers;
+            synchronized (stageRequests) {
+                containers = new ArrayList<>(stageRequests.keySet());
             }
-            for (String archive : archives) {
-                Map<String, StageRequest> requests = new HashMap<>();
-                for (StageRequest request : stageRequests.removeAll(archive)) {
+            for (String container : containers) {
+                List<StageRequest> requests = new ArrayList<>(stageRequests.removeAll(container));
+                try {
+                    final TarIndex index;
+                    synchronized (TarNearlineStorage.this) {
+                        index = getIndex(container);
+                    }
+
+                    /* Read the container sequentially. */
+                    Collections.sort(requests, new Comparator<StageRequest>()
+                    {
+                        @Override
+                        public int compare(StageRequest r1, StageRequest r2)
+                        {
+                            return Long.compare(getOffset(r1), getOffset(r2));
+                        }
+
+                        private long getOffset(StageRequest request)
+                        {
+                            synchronized (TarNearlineStorage.this) {
+                                TarIndex.Member member = index.get(getMemberName(request));
+                                return (member == null) ? Long.MAX_VALUE : member.getOffset();
+                            }
+                        }
+                    });
+                } catch (FileNotFoundException e) {
+                    fail(requests, new CacheException(CacheException.BROKEN_ON_TAPE,
+                                                      "Tar container " + container + " not found"));
+                    continue;
+                } catch (IOException e) {
+                    fail(requests, e);
+                    continue;
+                }
+
+                for (StageRequest request : requests) {
                     try {
                         request.activate().get();
-                        requests.put(request.getFileAttributes().getPnfsId().getId(), request);
+                        request.allocate().get();
+                        request.completed(read(container, getMemberName(request), request.getFile()));
                     } catch (Exception e) {
                         request.failed(e);
                     }
                 }
+            }
+        }
 
-                File tarFile = new File(directory, archive + ".tar");
-                try (FileInputStream in = new FileInputStream(tarFile)) {
-                    try (TarArchiveInputStream tarStream = new TarArchiveInputStream(in)) {
-                        TarArchiveEntry entry;
-                        while (!requests.isEmpty() && (entry = tarStream.getNextTarEntry()) != null) {
-                            StageRequest request = requests.remove(entry.getName());
-                            if (request != null) {
-                                try {
-                                    request.allocate().get();
-                                    Files.copy(tarStream, request.getFile().toPath());
-                                    request.completed(Collections.<Checksum>emptySet());
-                                } catch (Exception e) {
-                                    request.failed(e);
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    for (StageRequest request : requests.values()) {
-                        request.failed(e);
-                    }
+        private String getMemberName(StageRequest request)
+        {
+            return request.getFileAttributes().getPnfsId().getId();
+        }
+
+        private void fail(List<StageRequest> requests, Exception cause)
+        {
+            for (StageRequest request : requests) {
+                request.failed(cause);
+            }
+        }
+    }
+
+    /**
+     * Reads a single member of a container into a file.
+     *
+     * @return the checksum of the member
+     */
+    private Set<Checksum> read(String container, String name, File file)
+            throws IOException, CacheException
+    {
+        TarIndex.Member member;
+        FileChannel in;
+        synchronized (this) {
+            TarIndex index;
+            try {
+                index = getIndex(container);
+            } catch (FileNotFoundException e) {
+                throw new CacheException(CacheException.BROKEN_ON_TAPE, "Tar container " + container + " not found");
+            }
+            member = index.get(name);
+            if (member == null) {
+                throw new CacheException(CacheException.BROKEN_ON_TAPE, "File not found in tar container " + container);
+            }
+            /* Compaction deletes the previous generation of a container only
+             * after replacing the index. Opening the file while holding the
+             * monitor guarantees that it still exists.
+             */
+            in = FileChannel.open(index.getDataFile().toPath(), StandardOpenOption.READ);
+        }
+
+        String adler32;
+        try {
+            TarArchiveEntry entry = TarIndex.readHeader(in, member.getOffset() - TarIndex.RECORD_SIZE);
+            if (entry == null || !entry.getName().equals(name) || entry.getSize() != member.getSize()) {
+                throw new CacheException(CacheException.BROKEN_ON_TAPE,
+                                         "Index of tar container " + container + " does not match container");
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                adler32 = copy(in, member.getOffset(), member.getSize(), out);
+            }
+        } finally {
+            in.close();
+        }
+
+        if (member.getAdler32() != null && !member.getAdler32().equalsIgnoreCase(adler32)) {
+            throw new CacheException(CacheException.BROKEN_ON_TAPE,
+                                     "Checksum mismatch in tar container " + container +
+                                     " (expected=" + member.getAdler32() + ", actual=" + adler32 + ")");
+        }
+        return Collections.singleton(new Checksum(ChecksumType.ADLER32, adler32));
+    }
+
+    private class RemoveTask implements Runnable
+    {
+        private final RemoveRequest request;
+
+        RemoveTask(RemoveRequest request)
+        {
+            this.request = request;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                request.activate().get();
+                remove(Location.of(request.getUri()));
+            } catch (Exception e) {
+                request.failed(e);
+                return;
+            }
+            request.completed(null);
+        }
+    }
+
+    /**
+     * Removes a member from its container. Deletes the container once all
+     * members have been removed and compacts it if the fraction of live
+     * data drops below the compaction threshold.
+     */
+    private void remove(Location location) throws IOException
+    {
+        TarIndex index;
+        synchronized (this) {
+            try {
+                index = getIndex(location.container);
+            } catch (FileNotFoundException e) {
+                LOGGER.debug("Tar container {} does not exist", location.container);
+                return;
+            }
+            if (!index.remove(location.member) ||
+                    index.getLiveFraction() >= compactionThreshold && !index.isEmpty()) {
+                return;
+            }
+            if (index.isEmpty()) {
+                /* The data file is deleted first: a data file without an
+                 * index would be recovered with all its members.
+                 */
+                indices.remove(location.container);
+                Files.delete(index.getDataFile().toPath());
+                Files.delete(TarIndex.getIndexFile(directory, location.container).toPath());
+                LOGGER.debug("Deleted tar container {}", location.container);
+                return;
+            }
+        }
+
+        try {
+            compact(index);
+        } catch (IOException | CacheException e) {
+            LOGGER.error("Failed to compact tar container {}: {}", location.container, e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the live members of a container to the next generation of the
+     * container. Each member is verified against its checksum while copying.
+     */
+    private void compact(TarIndex index) throws IOException, CacheException
+    {
+        String container = index.getContainer();
+        List<TarIndex.Member> live;
+        File directory;
+        synchronized (this) {
+            live = new ArrayList<>(index.getMembers());
+            directory = this.directory;
+        }
+
+        int generation = index.getGeneration() + 1;
+        File target = TarIndex.getDataFile(directory, container, generation);
+        File part = new File(directory, target.getName() + ".part");
+        List<TarIndex.Member> members = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(index.getDataFile().toPath(), StandardOpenOption.READ);
+             FileOutputStream out = new FileOutputStream(part)) {
+            TarArchiveOutputStream tar = createTarStream(out);
+            long length = 0;
+            for (TarIndex.Member member : live) {
+                TarArchiveEntry entry = new TarArchiveEntry(member.getName());
+                entry.setSize(member.getSize());
+                tar.putArchiveEntry(entry);
+                String adler32 = copy(in, member.getOffset(), member.getSize(), tar);
+                tar.closeArchiveEntry();
+                if (member.getAdler32() != null && !member.getAdler32().equalsIgnoreCase(adler32)) {
+                    throw new CacheException(CacheException.BROKEN_ON_TAPE,
+                                             "Checksum mismatch of " + member.getName() +
+                                             " (expected=" + member.getAdler32() + ", actual=" + adler32 + ")");
                 }
+                members.add(new TarIndex.Member(member.getName(), length + TarIndex.RECORD_SIZE,
+                                                member.getSize(), adler32));
+                length += TarIndex.RECORD_SIZE + TarIndex.padded(member.getSize());
+            }
+            tar.finish();
+            out.getFD().sync();
+        } catch (IOException | CacheException e) {
+            Files.deleteIfExists(part.toPath());
+            throw e;
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            TarIndex compacted = TarIndex.write(directory, container, generation, members);
+            if (directory.equals(this.directory)) {
+                indices.put(container, compacted);
+            }
+        }
+        Files.deleteIfExists(index.getDataFile().toPath());
+        LOGGER.debug("Compacted tar container {} to {} members", container, members.size());
+    }
 
-                for (StageRequest request : requests.values()) {
-                    request.failed(new CacheException(CacheException.BROKEN_ON_TAPE, "File not found: " + request.getFileAttributes().getPnfsId()));
+    /**
+     * Member of a container as encoded in the location URI of a file.
+     */
+    private static class Location
+    {
+        final String container;
+        final String member;
+
+        Location(String container, String member)
+        {
+            this.container = container;
+            this.member = member;
+        }
+
+        static Location of(URI uri) throws InvalidMessageCacheException
+        {
+            String path = uri.getPath();
+            if (path != null) {
+                List<String> elements = Splitter.on('/').omitEmptyStrings().splitToList(path);
+                if (elements.size() == 2 &&
+                        VALID_NAME.matcher(elements.get(0)).matches() &&
+                        VALID_NAME.matcher(elements.get(1)).matches()) {
+                    return new Location(elements.get(0), elements.get(1));
                 }
             }
+            throw new InvalidMessageCacheException("Invalid nearline storage URI: " + uri);
         }
     }
 }
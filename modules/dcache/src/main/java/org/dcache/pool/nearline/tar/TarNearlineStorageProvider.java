@@ -31,7 +31,7 @@ public class TarNearlineStorageProvider implements NearlineStorageProvider
     @Override
     public String getDescription()
     {
-        return "Bundles files into tar archives (not ready for production).";
+        return "Aggregates files into indexed tar containers.";
     }
 
     @Override
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.SyncFailedException;
+import java.nio.ByteBuffer;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -24,11 +25,18 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import diskCacheV111.util.Adler32;
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.CacheFileAvailable;
 import diskCacheV111.util.ChecksumFactory;
@@ -49,10 +57,13 @@ import org.dcache.cells.AbstractMessageCallback;
 import org.dcache.cells.CellStub;
 import org.dcache.pool.classic.ChecksumModule;
 import org.dcache.pool.repository.EntryState;
+import org.dcache.pool.repository.FileRepositoryChannel;
 import org.dcache.pool.repository.ReplicaDescriptor;
 import org.dcache.pool.repository.Repository;
+import org.dcache.pool.repository.RepositoryChannel;
 import org.dcache.pool.repository.StickyRecord;
 import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
 import org.dcache.util.FireAndForgetTask;
 import org.dcache.vehicles.FileAttributes;
 import org.dcache.vehicles.PnfsGetFileAttributes;
@@ -66,6 +77,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * The companion will submit an HTTP download request to the source
  * pool, wait for the reply and then download the file through HTTP.
  *
+ * Large files may be downloaded over several connections in parallel,
+ * each fetching a byte range of the file and writing it at its offset
+ * into the replica. In that case an ADLER32 checksum is computed for
+ * each range and the checksums are combined at the end. Since other
+ * checksum types cannot be combined, files are downloaded over a single
+ * connection if a different checksum type has to be computed.
+ *
  * The code is driven by a state machine, Companion.sm. Most of the
  * logic is encapsulated in the state machine.
  */
@@ -83,6 +101,14 @@ class Companion
     private static final long CONNECT_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
     private static final long READ_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
 
+    /**
+     * Minimum size of a byte range fetched over a separate connection.
+     * The source pool ends the transfer once all connections are closed,
+     * thus all connections are opened before any data is read; ranges
+     * must be large enough not to fit into the socket buffers.
+     */
+    private static final long MIN_RANGE_SIZE = 64 << 20;
+
     private final InetAddress _address;
     private final Repository _repository;
     private final ChecksumModule _checksumModule;
@@ -93,10 +119,26 @@ class Companion
     private final List<StickyRecord> _stickyRecords;
     private final CacheFileAvailable _callback;
     private final ScheduledExecutorService _executor;
+    private final ExecutorService _rangeExecutor;
+
+    /** Threads of the range executor not reserved by any transfer. */
+    private final Semaphore _rangeThreads;
     private final CellStub _pnfs;
     private final CellStub _pool;
     private final boolean _forceSourceMode;
 
+    /** Maximum number of parallel connections to the source pool. */
+    private final int _streams;
+
+    /** Number of bytes received so far. */
+    private final AtomicLong _transferred = new AtomicLong();
+
+    /** Number of connections used for the transfer, or 0 if not started. */
+    private int _connections;
+
+    /** Time at which the transfer started. */
+    private long _transferStarted;
+
     /** State machine driving the transfer. */
     private final CompanionContext _fsm;
 
@@ -122,6 +164,9 @@ class Companion
      * Creates a new instance.
      *
      * @param executor    Executor used for state machine callbacks
+     * @param rangeExecutor Executor used to download byte ranges in
+     *                    parallel
+     * @param rangeThreads Permits for the threads of the range executor
      * @param address     Expected interface to connect to source pool
      * @param repository  Repository in which the replica is created
      * @param checksumModule Checksum module used to verify and
@@ -136,8 +181,12 @@ class Companion
      * @param stickyRecords The sticky flags used for the new replica
      * @param callback    Callback to which success or failure is reported
      * @param forceSourceMode Ignores disabled state of pools
+     * @param streams     Maximum number of parallel connections to the
+     *                    source pool
      */
     Companion(ScheduledExecutorService executor,
+              ExecutorService rangeExecutor,
+              Semaphore rangeThreads,
               InetAddress address,
               Repository repository,
               ChecksumModule checksumModule,
@@ -150,11 +199,14 @@ class Companion
               EntryState targetState,
               List<StickyRecord> stickyRecords,
               CacheFileAvailable callback,
-              boolean forceSourceMode)
+              boolean forceSourceMode,
+              int streams)
     {
         _fsm = new CompanionContext(this);
 
         _executor = executor;
+        _rangeExecutor = rangeExecutor;
+        _rangeThreads = rangeThreads;
         _address = address;
         _repository = repository;
         _checksumModule = checksumModule;
@@ -171,6 +223,7 @@ class Companion
 
         _callback = callback;
         _forceSourceMode = forceSourceMode;
+        _streams = streams;
         _targetState = targetState;
         _stickyRecords = new ArrayList<>(stickyRecords);
         if (fileAttributes != null) {
@@ -217,12 +270,26 @@ class Companion
 
     synchronized public String toString()
     {
-        return ""
+        String s = ""
             + _id
             + " "
             + getPnfsId()
             + " "
             + _fsm.getState();
+        if (_connections > 0) {
+            long transferred = _transferred.get();
+            long elapsed = Math.max(1, System.currentTimeMillis() - _transferStarted);
+            s += String.format(" streams=%d transferred=%d %.1f MiB/s",
+                               _connections, transferred,
+                               transferred * 1000.0 / elapsed / (1 << 20));
+        }
+        return s;
+    }
+
+    synchronized private void setTransferStarted(int connections)
+    {
+        _connections = connections;
+        _transferStarted = System.currentTimeMillis();
     }
 
     /**
@@ -281,22 +348,33 @@ class Companion
                     digest = null;
                 }
 
-                HttpURLConnection connection = createConnection(uri);
-                try {
-                    try (InputStream input = connection.getInputStream()) {
-                        long total = copy(input, file, digest);
-                        if (total != size) {
-                            throw new IOException("Amount of received data does not match expected file size");
+                int ranges = (int) Math.min(_streams, size / MIN_RANGE_SIZE);
+                Set<Checksum> actualChecksums;
+                if (ranges > 1 &&
+                        (digest == null || checksumFactory.getType() == ChecksumType.ADLER32)) {
+                    long adler = copyRanges(uri, file, size, ranges);
+                    actualChecksums =
+                            (digest == null)
+                                    ? Collections.<Checksum>emptySet()
+                                    : Collections.singleton(checksumFactory.create(toBytes(adler)));
+                } else {
+                    HttpURLConnection connection = createConnection(uri);
+                    try {
+                        setTransferStarted(1);
+                        try (InputStream input = connection.getInputStream()) {
+                            long total = copy(input, file, digest);
+                            if (total != size) {
+                                throw new IOException("Amount of received data does not match expected file size");
+                            }
                         }
+                    } finally {
+                        connection.disconnect();
                     }
-                } finally {
-                    connection.disconnect();
+                    actualChecksums =
+                            (digest == null)
+                                    ? Collections.<Checksum>emptySet()
+                                    : Collections.singleton(checksumFactory.create(digest.digest()));
                 }
-
-                Set<Checksum> actualChecksums =
-                        (digest == null)
-                                ? Collections.<Checksum>emptySet()
-                                : Collections.singleton(checksumFactory.create(digest.digest()));
                 _checksumModule.enforcePostTransferPolicy(handle, actualChecksums);
             } finally {
                 setThread(null);
@@ -337,6 +415,31 @@ class Companion
         return connection;
     }
 
+    /**
+     * Opens a connection fetching a byte range of the file. Fails unless
+     * the source pool honours the range.
+     */
+    private HttpURLConnection createConnection(String uri, long first, long last)
+        throws IOException
+    {
+        URL url = new URL(uri);
+        HttpURLConnection connection =
+            (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Connection", "close");
+        connection.setRequestProperty("Range", "bytes=" + first + "-" + last);
+        connection.setConnectTimeout((int) CONNECT_TIMEOUT);
+        connection.setReadTimeout((int) READ_TIMEOUT);
+        connection.connect();
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_PARTIAL) {
+            String message = connection.getResponseMessage();
+            connection.disconnect();
+            throw new IOException("Source pool did not accept range request: " +
+                                  code + " " + message);
+        }
+        return connection;
+    }
+
     private long copy(InputStream input, File file, MessageDigest digest)
         throws IOException
     {
@@ -348,6 +451,7 @@ class Companion
                 while ((read = input.read(buffer)) > -1) {
                     dataFile.write(buffer, 0, read);
                     total += read;
+                    _transferred.addAndGet(read);
                     if (digest != null) {
                         digest.update(buffer, 0, read);
                     }
@@ -367,6 +471,133 @@ class Companion
         return total;
     }
 
+    /**
+     * Downloads a file over several connections in parallel, each
+     * connection fetching a byte range of the file.
+     *
+     * @return the ADLER32 checksum of the file
+     */
+    private long copyRanges(String uri, File file, long size, int count)
+        throws IOException, InterruptedException
+    {
+        long length = size / count;
+        List<HttpURLConnection> connections = new ArrayList<>(count);
+        List<Future<Long>> results = new ArrayList<>(count);
+
+        /* Threads for all ranges are reserved before any connection is
+         * opened. Otherwise ranges could wait for a thread while the
+         * source pool disconnects their idle connections.
+         */
+        _rangeThreads.acquire(count);
+        try (RepositoryChannel channel = new FileRepositoryChannel(file, "rw")) {
+            try {
+                /* All connections are established before reading any of
+                 * them, as the source pool ends the transfer once no
+                 * connection is open.
+                 */
+                List<Callable<Long>> ranges = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    long offset = i * length;
+                    long end = (i == count - 1) ? size : offset + length;
+                    HttpURLConnection connection =
+                            createConnection(uri, offset, end - 1);
+                    connections.add(connection);
+                    ranges.add(new RangeCopy(connection, channel, offset, end - offset));
+                }
+                setTransferStarted(count);
+
+                for (Callable<Long> range : ranges) {
+                    results.add(_rangeExecutor.submit(range));
+                }
+
+                long adler = 1L;
+                for (int i = 0; i < count; i++) {
+                    long end = (i == count - 1) ? size : (i + 1) * length;
+                    long rangeAdler = results.get(i).get();
+                    adler = (i == 0)
+                            ? rangeAdler
+                            : Adler32.combine(adler, rangeAdler, end - i * length);
+                }
+                return adler;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Range transfer failed: " + cause, cause);
+            } finally {
+                for (Future<Long> result : results) {
+                    result.cancel(true);
+                }
+                for (HttpURLConnection connection : connections) {
+                    connection.disconnect();
+                }
+                try {
+                    channel.sync();
+                } catch (SyncFailedException e) {
+                    _log.warn("Failed to synchronize file with storage device: {}",
+                              e.getMessage());
+                }
+            }
+        } finally {
+            _rangeThreads.release(count);
+        }
+    }
+
+    private static byte[] toBytes(long adler)
+    {
+        return new byte[] {
+            (byte) (adler >> 24), (byte) (adler >> 16), (byte) (adler >> 8), (byte) adler
+        };
+    }
+
+    /**
+     * Copies a byte range received over a connection to its position in
+     * the replica and returns the ADLER32 checksum of the range.
+     */
+    private class RangeCopy implements Callable<Long>
+    {
+        private final HttpURLConnection _connection;
+        private final RepositoryChannel _channel;
+        private final long _offset;
+        private final long _length;
+
+        RangeCopy(HttpURLConnection connection, RepositoryChannel channel,
+                  long offset, long length)
+        {
+            _connection = connection;
+            _channel = channel;
+            _offset = offset;
+            _length = length;
+        }
+
+        @Override
+        public Long call() throws IOException
+        {
+            java.util.zip.Adler32 adler = new java.util.zip.Adler32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = _offset;
+            try (InputStream input = _connection.getInputStream()) {
+                int read;
+                while ((read = input.read(buffer)) > -1) {
+                    if (position + read > _offset + _length) {
+                        throw new IOException("Received more data than requested");
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += _channel.write(data, position);
+                    }
+                    adler.update(buffer, 0, read);
+                    _transferred.addAndGet(read);
+                }
+            }
+            if (position != _offset + _length) {
+                throw new IOException("Amount of received data does not match requested range");
+            }
+            return adler.getValue();
+        }
+    }
+
     //
     // The following methods are actions or helper methods used by the
     // state machine.
@@ -2,6 +2,7 @@
 
 package org.dcache.pool.p2p;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,7 +14,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import diskCacheV111.util.CacheException;
@@ -33,6 +37,7 @@ import org.dcache.pool.repository.EntryState;
 import org.dcache.pool.repository.Repository;
 import org.dcache.pool.repository.StickyRecord;
 import org.dcache.util.Args;
+import org.dcache.util.CDCExecutorServiceDecorator;
 import org.dcache.vehicles.FileAttributes;
 
 public class P2PClient
@@ -42,12 +47,26 @@ public class P2PClient
 {
     private final static Logger _log = LoggerFactory.getLogger(P2PClient.class);
 
+    /**
+     * Maximum number of byte ranges downloaded in parallel over all
+     * transfers. A transfer reserves threads for all its ranges before
+     * opening any connection, and otherwise waits for threads to become
+     * available.
+     */
+    private static final int MAX_RANGE_THREADS = 64;
+
     private final Map<Integer, Companion> _companions = new HashMap();
+    private final ExecutorService _rangeExecutor =
+        new CDCExecutorServiceDecorator<>(
+                Executors.newFixedThreadPool(MAX_RANGE_THREADS,
+                        new ThreadFactoryBuilder().setNameFormat("p2p-range-%d").build()));
+    private final Semaphore _rangeThreads = new Semaphore(MAX_RANGE_THREADS);
     private ScheduledExecutorService _executor;
     private Repository _repository;
     private ChecksumModule _checksumModule;
 
     private int _maxActive;
+    private int _streams = 1;
 
     private CellStub _pnfs;
     private CellStub _pool;
@@ -238,7 +257,8 @@ public class P2PClient
         Callback cb = new Callback(callback);
 
         Companion companion =
-            new Companion(_executor, getInterface(), _repository,
+            new Companion(_executor, _rangeExecutor, _rangeThreads,
+                          getInterface(), _repository,
                           _checksumModule,
                           _pnfs, _pool,
                           fileAttributes,
@@ -246,7 +266,7 @@ public class P2PClient
                           getCellName(),
                           getCellDomainName(),
                           targetState, stickyRecords,
-                          cb, forceSourceMode);
+                          cb, forceSourceMode, _streams);
 
         int id = addCompanion(companion);
         cb.setId(id);
@@ -278,6 +298,7 @@ public class P2PClient
         while (!_companions.isEmpty()) {
             wait();
         }
+        _rangeExecutor.shutdown();
     }
 
     @Override
@@ -289,6 +310,7 @@ public class P2PClient
             pw.println("  Interface  : " + e.getMessage());
         }
         pw.println("  Max Active : " + _maxActive);
+        pw.println("     Streams : " + _streams);
         pw.println("Pnfs Timeout : " + _pnfs.getTimeout() + " " + _pnfs.getTimeoutUnit());
     }
 
@@ -298,6 +320,7 @@ public class P2PClient
         pw.println("#\n#  Pool to Pool (P2P) [$Revision$]\n#");
         pw.println("pp set max active " + _maxActive);
         pw.println("pp set pnfs timeout " + (_pnfs.getTimeoutInMillis() / 1000L));
+        pw.println("pp set streams " + _streams);
         if (_interface != null) {
             pw.println("pp interface " + _interface.getHostAddress());
         }
@@ -319,6 +342,27 @@ public class P2PClient
         return "";
     }
 
+    public static final String fh_pp_set_streams =
+        "Sets the maximum number of parallel connections used to download a\n" +
+        "file from the source pool. Each connection fetches a byte range of\n" +
+        "at least 64 MiB, so small files are always downloaded over a\n" +
+        "single connection. Files are also downloaded over a single\n" +
+        "connection if a checksum other than ADLER32 is computed on\n" +
+        "transfer. At most 64 connections are used by all transfers\n" +
+        "together; a transfer waits until all its connections can be served.\n" +
+        "The setting applies to transfers created afterwards.";
+    public static final String hh_pp_set_streams = "<streams>";
+    public synchronized String ac_pp_set_streams_$_1(Args args)
+    {
+        int streams = Integer.parseInt(args.argv(0));
+        if (streams < 1 || streams > MAX_RANGE_THREADS) {
+            throw new IllegalArgumentException("Number of streams must be between 1 and " +
+                                               MAX_RANGE_THREADS);
+        }
+        _streams = streams;
+        return "";
+    }
+
     public static final String hh_pp_set_port = "<port> # Obsolete";
     public synchronized String ac_pp_set_port_$_1(Args args)
     {
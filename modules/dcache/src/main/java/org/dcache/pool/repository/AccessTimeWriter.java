@@ -0,0 +1,91 @@
+package org.dcache.pool.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persists the last access time of replicas lazily.
+ *
+ * The meta data stores record the last access time of a replica as the
+ * modification time of its data file. Rather than updating the
+ * modification time on every access, entries register the new access
+ * time here and the modification times are updated in batches when
+ * flush is called, typically periodically and when the store is closed.
+ * Should the pool crash, access times of at most one flush period are
+ * lost.
+ *
+ * Only the most recent access time of a file is kept. Files that no
+ * longer exist when flushing are skipped; in particular, the data file
+ * of a removed replica is not recreated.
+ *
+ * This class is thread safe.
+ */
+public class AccessTimeWriter
+{
+    private final static Logger _log =
+        LoggerFactory.getLogger(AccessTimeWriter.class);
+
+    private final ConcurrentMap<File,Long> _pending = new ConcurrentHashMap<>();
+
+    /**
+     * Records an access to a data file.
+     */
+    public void touch(File file, long time)
+    {
+        _pending.put(file, time);
+    }
+
+    /**
+     * Returns the last access time of a data file not yet written, or the
+     * given default if no access is pending.
+     */
+    public long getLastAccessTime(File file, long defaultTime)
+    {
+        Long time = _pending.get(file);
+        return (time == null) ? defaultTime : time;
+    }
+
+    /**
+     * Discards a pending access time, e.g. because the replica was removed.
+     */
+    public void forget(File file)
+    {
+        _pending.remove(file);
+    }
+
+    /**
+     * Returns the number of access times not yet written.
+     */
+    public int getPending()
+    {
+        return _pending.size();
+    }
+
+    /**
+     * Writes all pending access times to the file system.
+     */
+    public void flush()
+    {
+        int count = 0;
+        for (Map.Entry<File,Long> entry: _pending.entrySet()) {
+            File file = entry.getKey();
+            long time = entry.getValue();
+            /* Only remove the entry if it was not updated concurrently;
+             * otherwise the newer access time is written by the next flush.
+             */
+            if (_pending.remove(file, time)) {
+                if (file.setLastModified(time)) {
+                    count++;
+                } else {
+                    _log.debug("Failed to set access time of {}", file);
+                }
+            }
+        }
+        _log.debug("Updated access time of {} files", count);
+    }
+}
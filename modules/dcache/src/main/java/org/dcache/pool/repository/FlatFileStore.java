@@ -30,6 +30,10 @@ public class FlatFileStore implements FileStore
         } else if (!_dataDir.isDirectory()) {
             throw new FileNotFoundException("No such directory: " + _dataDir);
         }
+
+        if (new File(_dataDir, HashedFileStore.FANOUT_FILE).exists()) {
+            throw new IllegalStateException(_dataDir + " uses the hashed layout");
+        }
     }
 
     /**
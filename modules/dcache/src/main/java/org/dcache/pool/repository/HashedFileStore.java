@@ -0,0 +1,352 @@
+package org.dcache.pool.repository;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import diskCacheV111.util.PnfsId;
+
+import dmg.cells.nucleus.CellInfo;
+import dmg.cells.nucleus.CellInfoProvider;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A file store layout spreading files over a fixed number of
+ * subdirectories of the "data" directory. The subdirectory of a file
+ * is determined by a hash of its PNFS id, thus keeping directories
+ * small even for pools with millions of files.
+ *
+ * The fan-out is recorded in the data directory when the layout is
+ * created and must not change afterwards.
+ *
+ * A pool using the flat layout (see FlatFileStore) is migrated online:
+ * A background thread moves files from the data directory into their
+ * subdirectory. Until the migration is complete, a file still in the
+ * flat layout is moved when it is accessed and listing includes the
+ * files not yet moved.
+ */
+public class HashedFileStore implements FileStore, CellInfoProvider
+{
+    private final static Logger _log =
+        LoggerFactory.getLogger(HashedFileStore.class);
+
+    static final String FANOUT_FILE = ".fanout";
+
+    private static final int MAX_FANOUT = 1 << 16;
+
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    private final File _dataDir;
+    private final int _fanOut;
+    private final String _format;
+
+    /** True until all files of the flat layout have been moved. */
+    private volatile boolean _isMigrating;
+    private final AtomicLong _migrated = new AtomicLong();
+    private Thread _migration;
+
+    public HashedFileStore(File baseDir, int fanOut) throws IOException
+    {
+        checkArgument(fanOut > 0 && fanOut <= MAX_FANOUT,
+                      "Fan-out must be between 1 and " + MAX_FANOUT);
+
+        if (!baseDir.isDirectory()) {
+            throw new FileNotFoundException("No such directory: " + baseDir);
+        }
+
+        _dataDir = new File(baseDir, "data");
+        if (!_dataDir.exists()) {
+            if (!_dataDir.mkdir()) {
+                throw new FileNotFoundException("Failed to create directory: " + _dataDir);
+            }
+        } else if (!_dataDir.isDirectory()) {
+            throw new FileNotFoundException("No such directory: " + _dataDir);
+        }
+
+        int existing = getFanOut(baseDir);
+        if (existing == 0) {
+            Files.write(fanOut + "\n", new File(_dataDir, FANOUT_FILE), Charsets.US_ASCII);
+        } else if (existing != fanOut) {
+            throw new IOException("Data directory " + _dataDir +
+                                  " uses a fan-out of " + existing +
+                                  ", but " + fanOut + " is configured");
+        }
+
+        _fanOut = fanOut;
+        _format = "%0" + Integer.toHexString(fanOut - 1).length() + "x";
+
+        for (int i = 0; i < fanOut; i++) {
+            File dir = new File(_dataDir, String.format(_format, i));
+            if (!dir.isDirectory() && !dir.mkdir()) {
+                throw new FileNotFoundException("Failed to create directory: " + dir);
+            }
+        }
+
+        _isMigrating = hasFlatFiles();
+    }
+
+    /**
+     * Returns the fan-out recorded in the data directory of a pool, or 0
+     * if the pool does not use the hashed layout.
+     */
+    public static int getFanOut(File baseDir) throws IOException
+    {
+        File file = new File(new File(baseDir, "data"), FANOUT_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(Files.toString(file, Charsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid fan-out in " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts moving files of the flat layout into their subdirectories.
+     */
+    public synchronized void start()
+    {
+        if (_isMigrating && _migration == null) {
+            _log.info("Migrating {} from flat to hashed layout", _dataDir);
+            _migration = new Thread("file-store-migration") {
+                @Override
+                public void run()
+                {
+                    migrate();
+                }
+            };
+            _migration.start();
+        }
+    }
+
+    public synchronized void stop()
+    {
+        if (_migration != null) {
+            _migration.interrupt();
+            _migration = null;
+        }
+    }
+
+    /**
+     * Returns a human readable description of the file store.
+     */
+    @Override
+    public String toString()
+    {
+        return _dataDir.getPath() + " (fan-out " + _fanOut + ")";
+    }
+
+    private File getDirectory(PnfsId id)
+    {
+        int hash = Hashing.murmur3_32().hashUnencodedChars(id.toString()).asInt();
+        int bucket = (hash & Integer.MAX_VALUE) % _fanOut;
+        return new File(_dataDir, String.format(_format, bucket));
+    }
+
+    @Override
+    public File get(PnfsId id)
+    {
+        File file = new File(getDirectory(id), id.toString());
+        if (_isMigrating && !file.exists()) {
+            move(new File(_dataDir, id.toString()), file);
+        }
+        return file;
+    }
+
+    @Override
+    public List<PnfsId> list()
+    {
+        try {
+            if (_isMigrating) {
+                /* The flat files are listed first; a file moved concurrently
+                 * is thus seen twice rather than missed.
+                 */
+                Set<PnfsId> ids = new LinkedHashSet<>();
+                addFiles(_dataDir.toPath(), ids);
+                for (int i = 0; i < _fanOut; i++) {
+                    addFiles(new File(_dataDir, String.format(_format, i)).toPath(), ids);
+                }
+                return new ArrayList<>(ids);
+            } else {
+                List<PnfsId> ids = new ArrayList<>();
+                for (int i = 0; i < _fanOut; i++) {
+                    addFiles(new File(_dataDir, String.format(_format, i)).toPath(), ids);
+                }
+                return ids;
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            throw new RuntimeException("Failed to list " + _dataDir + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds the PNFS ids of the regular files of a directory. The directory
+     * is streamed rather than read into memory as a whole.
+     */
+    private static void addFiles(Path dir, Collection<PnfsId> ids) throws IOException
+    {
+        try (DirectoryStream<Path> stream = java.nio.file.Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                PnfsId id = toPnfsId(path);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the PNFS id of a data file, or null if the path is not named
+     * by a PNFS id. Data files are named by the string form of the PNFS id;
+     * this excludes the subdirectories, which PnfsId would otherwise accept
+     * as short ids.
+     */
+    private static PnfsId toPnfsId(Path path)
+    {
+        String name = path.getFileName().toString();
+        try {
+            PnfsId id = new PnfsId(name);
+            return id.toString().equals(name) ? id : null;
+        } catch (IllegalArgumentException e) {
+            // data file contains foreign key
+            return null;
+        }
+    }
+
+    private boolean hasFlatFiles() throws IOException
+    {
+        try (DirectoryStream<Path> stream =
+                     java.nio.file.Files.newDirectoryStream(_dataDir.toPath())) {
+            for (Path path : stream) {
+                if (toPnfsId(path) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves a file of the flat layout to the hashed layout. Does nothing
+     * if the file was moved already.
+     */
+    private void move(File from, File to)
+    {
+        try {
+            java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            _migrated.incrementAndGet();
+        } catch (NoSuchFileException e) {
+            // Not in the flat layout or moved concurrently
+        } catch (FileAlreadyExistsException e) {
+            _log.error("Cannot move {}: {} already exists", from, to);
+        } catch (IOException e) {
+            _log.error("Failed to move {} to {}: {}", from, to, e.toString());
+        }
+    }
+
+    private void migrate()
+    {
+        long count = 0;
+        try (DirectoryStream<Path> stream =
+                     java.nio.file.Files.newDirectoryStream(_dataDir.toPath())) {
+            for (Path path : stream) {
+                if (Thread.interrupted()) {
+                    _log.info("Migration of {} interrupted after {} files", _dataDir, _migrated);
+                    return;
+                }
+                PnfsId id = toPnfsId(path);
+                if (id != null) {
+                    get(id);
+                    if (++count % PROGRESS_INTERVAL == 0) {
+                        _log.info("Migrated {} files of {}", _migrated, _dataDir);
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            _log.error("Migration of {} failed: {}", _dataDir, e.getMessage());
+            return;
+        }
+
+        try {
+            if (hasFlatFiles()) {
+                _log.error("Migration of {} incomplete; files remain in the flat layout", _dataDir);
+                return;
+            }
+        } catch (IOException e) {
+            _log.error("Migration of {} failed: {}", _dataDir, e.getMessage());
+            return;
+        }
+        _isMigrating = false;
+        _log.info("Migration of {} to hashed layout completed; {} files moved", _dataDir, _migrated);
+    }
+
+    @Override
+    public long getFreeSpace()
+    {
+        return _dataDir.getUsableSpace();
+    }
+
+    @Override
+    public long getTotalSpace()
+    {
+        return _dataDir.getTotalSpace();
+    }
+
+    @Override
+    public boolean isOk()
+    {
+        try {
+            File tmp = new File(_dataDir, ".repository_is_ok");
+            tmp.delete();
+            tmp.deleteOnExit();
+
+            if (!tmp.createNewFile()) {
+                return false;
+            }
+
+            if (!tmp.exists()) {
+                return false;
+            }
+
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void getInfo(PrintWriter pw)
+    {
+        pw.println("File store layout : hashed, fan-out " + _fanOut);
+        if (_isMigrating) {
+            pw.println("    Migrating from flat layout, " + _migrated + " files moved");
+        }
+    }
+
+    @Override
+    public CellInfo getCellInfo(CellInfo info)
+    {
+        return info;
+    }
+}
@@ -10,6 +10,8 @@ import java.util.Collection;
 
 import diskCacheV111.util.PnfsId;
 
+import org.dcache.pool.repository.meta.db.BerkeleyDBMetaDataRepository;
+
 public class MetaDataStoreCopyTool
 {
     private final static Logger _log =
@@ -32,14 +34,31 @@ public class MetaDataStoreCopyTool
             System.err.println("Synopsis: MetaDataStoreCopyTool DIR FROM TO");
             System.err.println();
             System.err.println("Where DIR is the pool directory, and FROM and TO are");
-            System.err.println("meta data store class names.");
+            System.err.println("meta data store class names. If FROM and TO are both");
+            System.err.println("the Berkeley DB store, the records are rewritten in the");
+            System.err.println("current format.");
             System.exit(1);
         }
 
         File poolDir = new File(args[0]);
-        FileStore fileStore = new FlatFileStore(poolDir);
+        int fanOut = HashedFileStore.getFanOut(poolDir);
+        FileStore fileStore = (fanOut > 0)
+                ? new HashedFileStore(poolDir, fanOut)
+                : new FlatFileStore(poolDir);
         MetaDataStore fromStore =
             createStore(Class.forName(args[1]).asSubclass(MetaDataStore.class), fileStore, poolDir);
+
+        if (args[1].equals(args[2])) {
+            if (!(fromStore instanceof BerkeleyDBMetaDataRepository)) {
+                System.err.println("ERROR: FROM and TO must differ");
+                System.exit(1);
+            }
+            int count = ((BerkeleyDBMetaDataRepository) fromStore).rewrite();
+            _log.info("Rewrote {} records", count);
+            fromStore.close();
+            return;
+        }
+
         MetaDataStore toStore =
             createStore(Class.forName(args[2]).asSubclass(MetaDataStore.class), fileStore, poolDir);
 
@@ -43,7 +43,10 @@ public class MetaDataStoreYamlTool
         }
 
         File poolDir = new File(args[0]);
-        FileStore fileStore = new FlatFileStore(poolDir);
+        int fanOut = HashedFileStore.getFanOut(poolDir);
+        FileStore fileStore = (fanOut > 0)
+                ? new HashedFileStore(poolDir, fanOut)
+                : new FlatFileStore(poolDir);
         MetaDataStore metaStore =
             createStore(Class.forName(args[1]).asSubclass(MetaDataStore.class), fileStore, poolDir);
 
@@ -0,0 +1,353 @@
+package org.dcache.pool.repository;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.util.UnitInteger;
+
+import dmg.cells.nucleus.CellCommandListener;
+import dmg.cells.nucleus.CellInfo;
+import dmg.cells.nucleus.CellInfoProvider;
+
+import org.dcache.util.Args;
+import org.dcache.util.CDCExecutorServiceDecorator;
+import org.dcache.util.FrequencySketch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An optional second tier of the pool holding copies of frequently read
+ * replicas on faster storage, e.g. a local SSD.
+ *
+ * The tier is a pure read cache: Replicas are only ever stored in the
+ * main FileStore, and their state and space accounting are unaffected
+ * by the tier. Reads are counted in a FrequencySketch and a replica is
+ * copied to the tier in the background once it has been read a
+ * configurable number of times. Subsequent reads are served from the
+ * copy. When the tier is full, the least recently read copies that are
+ * not in use are evicted.
+ *
+ * Since the tier does not survive restarts of the pool in a consistent
+ * state, its directory is emptied when the pool starts.
+ *
+ * The tier is disabled if no directory is configured.
+ *
+ * This class is thread safe.
+ */
+public class ReadCacheTier implements CellCommandListener, CellInfoProvider
+{
+    private final static Logger _log =
+        LoggerFactory.getLogger(ReadCacheTier.class);
+
+    /** Counters per row of the frequency sketch. */
+    private static final int SKETCH_WIDTH = 1 << 14;
+
+    /**
+     * Number of reads after which all read counts are halved, so that
+     * replicas no longer read drop out of the sketch.
+     */
+    private static final int SKETCH_RESET_INTERVAL = 10 * SKETCH_WIDTH;
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static class Copy
+    {
+        final long size;
+        int readers;
+        long hits;
+
+        Copy(long size)
+        {
+            this.size = size;
+        }
+    }
+
+    private final File _dir;
+    private final long _capacity;
+    private final FrequencySketch _sketch = new FrequencySketch(SKETCH_WIDTH);
+
+    /** Copies in the tier, least recently read first. */
+    private final LinkedHashMap<PnfsId,Copy> _copies = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Replicas being copied to the tier. */
+    private final Set<PnfsId> _promoting = new HashSet<>();
+
+    private ExecutorService _executor;
+
+    private final int _threshold;
+    private long _used;
+    private int _reads;
+
+    private long _hits;
+    private long _misses;
+    private long _promotions;
+    private long _failedPromotions;
+    private long _evictions;
+
+    /**
+     * @param path directory of the tier; the tier is disabled if empty
+     * @param capacity maximum size of the tier, with optional unit suffix
+     * @param threshold number of reads after which a replica is copied to
+     * the tier
+     */
+    public ReadCacheTier(String path, String capacity, int threshold)
+    {
+        checkArgument(threshold > 0, "Promotion threshold must be positive");
+        _dir = path.isEmpty() ? null : new File(path);
+        _capacity = UnitInteger.parseUnitLong(capacity);
+        _threshold = threshold;
+    }
+
+    public boolean isEnabled()
+    {
+        return _dir != null;
+    }
+
+    public synchronized void start() throws IOException
+    {
+        if (_dir == null) {
+            return;
+        }
+        if (!_dir.isDirectory()) {
+            throw new FileNotFoundException("No such directory: " + _dir);
+        }
+        File[] files = _dir.listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list " + _dir);
+        }
+        for (File file : files) {
+            if (file.isFile() && !file.delete()) {
+                _log.warn("Failed to delete stale copy {}", file);
+            }
+        }
+        _executor = new CDCExecutorServiceDecorator<>(
+                Executors.newSingleThreadExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("read-cache-tier-%d").build()));
+    }
+
+    public synchronized void stop()
+    {
+        if (_executor != null) {
+            _executor.shutdownNow();
+            _executor = null;
+        }
+    }
+
+    private File getFile(PnfsId id)
+    {
+        return new File(_dir, id.toString());
+    }
+
+    /**
+     * Records a read of a replica and returns the copy in the tier, if
+     * any. A returned copy is not evicted until the reader calls close.
+     * If the replica has been read often enough, it is copied to the
+     * tier in the background.
+     *
+     * @param id the replica being read
+     * @param file the data file of the replica in the main store
+     * @param size the size of the replica
+     * @return the copy in the tier, or null if the replica should be read
+     * from the main store
+     */
+    public synchronized File open(PnfsId id, File file, long size)
+    {
+        if (_executor == null) {
+            return null;
+        }
+
+        Copy copy = _copies.get(id);
+        if (copy != null) {
+            copy.readers++;
+            copy.hits++;
+            _hits++;
+            return getFile(id);
+        }
+        _misses++;
+
+        if (++_reads >= SKETCH_RESET_INTERVAL) {
+            _sketch.halve();
+            _reads = 0;
+        }
+        if (_sketch.increment(id) >= _threshold && size > 0 && size <= _capacity &&
+                _promoting.add(id)) {
+            try {
+                _executor.execute(new Promotion(id, file, size));
+            } catch (RejectedExecutionException e) {
+                _promoting.remove(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Signals that a reader of a copy returned by open is done.
+     */
+    public synchronized void close(PnfsId id)
+    {
+        Copy copy = _copies.get(id);
+        if (copy != null) {
+            copy.readers--;
+        }
+    }
+
+    /**
+     * Removes the copy of a replica, e.g. because the replica was
+     * removed from the pool. Must not be called while the copy is in
+     * use.
+     */
+    public synchronized void remove(PnfsId id)
+    {
+        _promoting.remove(id);
+        Copy copy = _copies.remove(id);
+        if (copy != null) {
+            delete(id, copy);
+        }
+    }
+
+    private void delete(PnfsId id, Copy copy)
+    {
+        _used -= copy.size;
+        File file = getFile(id);
+        if (!file.delete()) {
+            _log.warn("Failed to delete {}", file);
+        }
+    }
+
+    /**
+     * Evicts the least recently read copies not in use until the given
+     * amount of space is available.
+     *
+     * @return true if the space is available
+     */
+    private boolean makeRoom(long size)
+    {
+        Iterator<Map.Entry<PnfsId,Copy>> entries = _copies.entrySet().iterator();
+        while (_used + size > _capacity && entries.hasNext()) {
+            Map.Entry<PnfsId,Copy> entry = entries.next();
+            Copy copy = entry.getValue();
+            if (copy.readers == 0) {
+                entries.remove();
+                delete(entry.getKey(), copy);
+                _evictions++;
+            }
+        }
+        return _used + size <= _capacity;
+    }
+
+    private class Promotion implements Runnable
+    {
+        private final PnfsId _id;
+        private final File _source;
+        private final long _size;
+
+        Promotion(PnfsId id, File source, long size)
+        {
+            _id = id;
+            _source = source;
+            _size = size;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (ReadCacheTier.this) {
+                if (!_promoting.contains(_id)) {
+                    return;
+                }
+                if (!makeRoom(_size)) {
+                    _promoting.remove(_id);
+                    return;
+                }
+                _used += _size;
+            }
+
+            File tmp = new File(_dir, _id + TEMPORARY_SUFFIX);
+            File target = getFile(_id);
+            boolean success = false;
+            try {
+                Files.copy(_source.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                synchronized (ReadCacheTier.this) {
+                    /* The replica may have been removed while copying.
+                     */
+                    if (_promoting.remove(_id)) {
+                        _copies.put(_id, new Copy(_size));
+                        _promotions++;
+                        success = true;
+                    }
+                }
+            } catch (IOException e) {
+                _log.warn("Failed to copy {} to {}: {}", _id, _dir, e.toString());
+                synchronized (ReadCacheTier.this) {
+                    _promoting.remove(_id);
+                    _failedPromotions++;
+                }
+            } finally {
+                if (!success) {
+                    tmp.delete();
+                    target.delete();
+                    synchronized (ReadCacheTier.this) {
+                        _used -= _size;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void getInfo(PrintWriter pw)
+    {
+        if (_dir == null) {
+            pw.println("Read cache tier   : disabled");
+            return;
+        }
+        long reads = _hits + _misses;
+        pw.println("Read cache tier   : " + _dir);
+        pw.println("    Used     : " + _used + " of " + _capacity + " in " +
+                   _copies.size() + " files");
+        pw.println("    Hit rate : " +
+                   ((reads == 0) ? "-" : String.format("%.1f%%", 100.0 * _hits / reads)) +
+                   " (" + _hits + " hits, " + _misses + " misses)");
+        pw.println("    Promotion: threshold " + _threshold + " reads, " +
+                   _promotions + " promoted, " + _promoting.size() + " in progress, " +
+                   _failedPromotions + " failed");
+        pw.println("    Evictions: " + _evictions);
+    }
+
+    @Override
+    public CellInfo getCellInfo(CellInfo info)
+    {
+        return info;
+    }
+
+    public static final String hh_rep_tier_ls = "# lists replicas with a copy in the read cache tier";
+    public synchronized String ac_rep_tier_ls(Args args)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<PnfsId,Copy> entry : _copies.entrySet()) {
+            Copy copy = entry.getValue();
+            sb.append(entry.getKey()).append(' ').append(copy.size)
+                .append(" hits=").append(copy.hits)
+                .append(" readers=").append(copy.readers).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -10,14 +10,19 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import diskCacheV111.util.CacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.StorageInfo;
 
+import org.dcache.pool.repository.AccessTimeWriter;
 import org.dcache.pool.repository.DuplicateEntryException;
 import org.dcache.pool.repository.FileStore;
 import org.dcache.pool.repository.MetaDataRecord;
@@ -41,6 +46,8 @@ public class BerkeleyDBMetaDataRepository
 
     private static final String DIRECTORY_NAME = "meta";
 
+    private static final int REWRITE_BATCH_SIZE = 1000;
+
     /**
      * The file store for which we hold the meta data.
      */
@@ -56,11 +63,21 @@ public class BerkeleyDBMetaDataRepository
      */
     private final MetaDataRepositoryViews _views;
 
+    /**
+     * Writes state records with group commit.
+     */
+    private final StateWriter _stateWriter;
+
     /**
      * Directory containing the database.
      */
     private final File _dir;
 
+    /**
+     * Writes the last access times of entries to the data files.
+     */
+    private AccessTimeWriter _accessTimeWriter = new AccessTimeWriter();
+
     /**
      * Opens a BerkeleyDB based meta data repository. If the database
      * does not exist yet, then it is created. If the 'meta' directory
@@ -92,6 +109,7 @@ public class BerkeleyDBMetaDataRepository
         try {
             _database = new MetaDataRepositoryDatabase(_dir, readOnly);
             _views = new MetaDataRepositoryViews(_database);
+            _stateWriter = new StateWriter(_database.getEnvironment(), _views.getStateMap());
         } catch (EnvironmentFailureException e) {
             throw new CacheException(CacheException.PANIC, "Failed to open Berkeley DB database. When upgrading to " +
                     "dCache 2.6, it may be necessary to run the /usr/sbin/dcache-pool-meta-preupgrade utility " +
@@ -100,6 +118,16 @@ public class BerkeleyDBMetaDataRepository
         }
     }
 
+    public void setAccessTimeWriter(AccessTimeWriter writer)
+    {
+        _accessTimeWriter = writer;
+    }
+
+    AccessTimeWriter getAccessTimeWriter()
+    {
+        return _accessTimeWriter;
+    }
+
     @Override
     public Collection<PnfsId> list()
     {
@@ -156,8 +184,9 @@ public class BerkeleyDBMetaDataRepository
     @Override
     public void remove(PnfsId id)
     {
+        _accessTimeWriter.forget(_fileStore.get(id));
         _views.getStorageInfoMap().remove(id.toString());
-        _views.getStateMap().remove(id.toString());
+        _stateWriter.remove(id.toString());
     }
 
     @Override
@@ -201,6 +230,41 @@ public class BerkeleyDBMetaDataRepository
         return _views.getStorageInfoMap();
     }
 
+    /**
+     * Stores the state of an entry. Returns once the state is committed.
+     */
+    void putState(PnfsId id, CacheRepositoryEntryState state)
+    {
+        _stateWriter.put(id.toString(), state);
+    }
+
+    /**
+     * Rewrites all state records in the current format. Storage info
+     * records keep their format and are not rewritten.
+     *
+     * @return the number of records rewritten
+     */
+    public int rewrite()
+    {
+        StoredMap<String,CacheRepositoryEntryState> stateMap = _views.getStateMap();
+        List<String> ids = new ArrayList<>(stateMap.keySet());
+        Map<String,CacheRepositoryEntryState> batch = new LinkedHashMap<>();
+        int count = 0;
+        for (String id: ids) {
+            CacheRepositoryEntryState state = stateMap.get(id);
+            if (state != null) {
+                batch.put(id, state);
+                count++;
+            }
+            if (batch.size() == REWRITE_BATCH_SIZE) {
+                _stateWriter.write(batch);
+                batch.clear();
+            }
+        }
+        _stateWriter.write(batch);
+        return count;
+    }
+
     /**
      * Returns a database backed map of all state objects.
      */
@@ -213,6 +277,7 @@ public class BerkeleyDBMetaDataRepository
     @Override
     public void close()
     {
+        _accessTimeWriter.flush();
         try {
             _database.close();
         } catch (DatabaseException e) {
@@ -5,11 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.List;
 
 import diskCacheV111.util.CacheException;
-import diskCacheV111.util.DiskErrorCacheException;
 import diskCacheV111.util.PnfsId;
 import diskCacheV111.vehicles.StorageInfo;
 import diskCacheV111.vehicles.StorageInfos;
@@ -47,7 +45,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
         _pnfsId = pnfsId;
         _state = new CacheRepositoryEntryState();
         File file = getDataFile();
-        _lastAccess = file.lastModified();
+        _lastAccess = repository.getAccessTimeWriter().getLastAccessTime(file, file.lastModified());
         _size = file.length();
         if (_lastAccess == 0) {
             _lastAccess = _creationTime;
@@ -79,7 +77,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
         _pnfsId = pnfsId;
         _state = state;
         File file = getDataFile();
-        _lastAccess = file.lastModified();
+        _lastAccess = repository.getAccessTimeWriter().getLastAccessTime(file, file.lastModified());
         _size = file.length();
         if (_lastAccess == 0) {
             _lastAccess = _creationTime;
@@ -226,24 +224,15 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
         }
     }
 
+    /**
+     * Updates the last access time. The modification time of the data
+     * file is updated lazily by the AccessTimeWriter of the repository.
+     */
     @Override
-    public synchronized void touch() throws CacheException
+    public synchronized void touch()
     {
-        File file = getDataFile();
-
-        try {
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-        } catch (IOException e) {
-            throw new DiskErrorCacheException("IO error creating: " + file);
-        }
-
-        long now = System.currentTimeMillis();
-        if (!file.setLastModified(now)) {
-            throw new DiskErrorCacheException("Failed to set modification time: " + file);
-        }
-        _lastAccess = now;
+        _lastAccess = System.currentTimeMillis();
+        _repository.getAccessTimeWriter().touch(getDataFile(), _lastAccess);
     }
 
     @Override
@@ -267,7 +256,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
     private synchronized void storeStateIfDirty()
     {
         if (_state.dirty()) {
-            _repository.getStateMap().put(_pnfsId.toString(), _state);
+            _repository.putState(_pnfsId, _state);
         }
     }
 
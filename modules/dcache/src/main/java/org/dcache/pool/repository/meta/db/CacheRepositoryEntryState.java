@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -53,6 +54,22 @@ public class CacheRepositoryEntryState implements Serializable
         _state = EntryState.NEW;
     }
 
+    /**
+     * Recreates a state read from the database.
+     */
+    CacheRepositoryEntryState(EntryState state, Collection<StickyRecord> sticky)
+    {
+        _state = EntryState.NEW;
+        if (state == EntryState.DESTROYED) {
+            setState(EntryState.REMOVED);
+        }
+        if (state != EntryState.NEW) {
+            setState(state);
+        }
+        _sticky.addAll(sticky);
+        _dirty = false;
+    }
+
     public CacheRepositoryEntryState(MetaDataRecord entry)
     {
         setState(entry.getState());
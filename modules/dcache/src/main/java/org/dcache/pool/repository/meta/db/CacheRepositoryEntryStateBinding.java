@@ -0,0 +1,97 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.serial.ClassCatalog;
+import com.sleepycat.bind.serial.SerialBinding;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.bind.tuple.TupleInput;
+import com.sleepycat.bind.tuple.TupleOutput;
+import com.sleepycat.je.DatabaseEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dcache.pool.repository.EntryState;
+import org.dcache.pool.repository.StickyRecord;
+
+/**
+ * Compact binary binding for CacheRepositoryEntryState.
+ *
+ * A record starts with a format version byte followed by the state
+ * and the sticky records. Records written by older versions using Java
+ * serialization are still read; they are recognized by their first
+ * byte, which for serialized objects is never a valid version.
+ */
+class CacheRepositoryEntryStateBinding
+    implements EntryBinding<CacheRepositoryEntryState>
+{
+    private static final byte VERSION_1 = 1;
+
+    /**
+     * Encoding of entry states. The position in the array is stored in
+     * the database, thus entries must never be reordered.
+     */
+    private static final EntryState[] STATES = {
+        EntryState.NEW,
+        EntryState.FROM_CLIENT,
+        EntryState.FROM_POOL,
+        EntryState.FROM_STORE,
+        EntryState.BROKEN,
+        EntryState.CACHED,
+        EntryState.PRECIOUS,
+        EntryState.REMOVED,
+        EntryState.DESTROYED
+    };
+
+    private final SerialBinding<CacheRepositoryEntryState> _legacy;
+
+    CacheRepositoryEntryStateBinding(ClassCatalog catalog)
+    {
+        _legacy = new SerialBinding<>(catalog, CacheRepositoryEntryState.class);
+    }
+
+    @Override
+    public CacheRepositoryEntryState entryToObject(DatabaseEntry entry)
+    {
+        if (entry.getSize() == 0 || entry.getData()[entry.getOffset()] != VERSION_1) {
+            return _legacy.entryToObject(entry);
+        }
+
+        TupleInput in = TupleBinding.entryToInput(entry);
+        in.readUnsignedByte();
+        EntryState state = STATES[in.readUnsignedByte()];
+        int count = in.readPackedInt();
+        List<StickyRecord> sticky = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String owner = in.readString();
+            long expire = in.readPackedLong();
+            sticky.add(new StickyRecord(owner, expire));
+        }
+        return new CacheRepositoryEntryState(state, sticky);
+    }
+
+    @Override
+    public void objectToEntry(CacheRepositoryEntryState state, DatabaseEntry entry)
+    {
+        List<StickyRecord> sticky = state.stickyRecords();
+        TupleOutput out = new TupleOutput();
+        out.writeUnsignedByte(VERSION_1);
+        out.writeUnsignedByte(indexOf(state.getState()));
+        out.writePackedInt(sticky.size());
+        for (StickyRecord record : sticky) {
+            out.writeString(record.owner());
+            out.writePackedLong(record.expire());
+        }
+        TupleBinding.outputToEntry(out, entry);
+    }
+
+    private static int indexOf(EntryState state)
+    {
+        for (int i = 0; i < STATES.length; i++) {
+            if (STATES[i] == state) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown state: " + state);
+    }
+}
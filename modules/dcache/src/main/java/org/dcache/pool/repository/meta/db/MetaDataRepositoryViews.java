@@ -24,7 +24,7 @@ class MetaDataRepositoryViews
         EntryBinding<StorageInfo> storageInfoBinding =
             new SerialBinding<>(catalog, StorageInfo.class);
         EntryBinding<CacheRepositoryEntryState> stateBinding =
-            new SerialBinding<>(catalog, CacheRepositoryEntryState.class);
+            new CacheRepositoryEntryStateBinding(catalog);
 
         storageInfoMap =
             new StoredMap<>(db.getStorageInfoDatabase(),
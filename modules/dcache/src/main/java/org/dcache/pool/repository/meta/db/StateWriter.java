@@ -0,0 +1,125 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.google.common.base.Throwables;
+import com.sleepycat.collections.StoredMap;
+import com.sleepycat.collections.TransactionRunner;
+import com.sleepycat.collections.TransactionWorker;
+import com.sleepycat.je.Environment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes state records using group commit.
+ *
+ * Updates from concurrent threads are collected into a batch, which is
+ * written in a single transaction. A caller returns once the transaction
+ * containing its update has committed; thus updates are as durable as
+ * when written individually, but concurrent updates share the cost of
+ * committing.
+ *
+ * While one batch is written, further updates accumulate in the next
+ * batch. One of the threads waiting for the next batch writes it once
+ * the current batch is committed.
+ */
+class StateWriter
+{
+    private static class Batch
+    {
+        /** Updates by id; a null value removes the record. */
+        final Map<String,CacheRepositoryEntryState> updates = new LinkedHashMap<>();
+        boolean done;
+        RuntimeException failure;
+    }
+
+    private final TransactionRunner _runner;
+    private final StoredMap<String,CacheRepositoryEntryState> _map;
+
+    private Batch _open = new Batch();
+    private boolean _writing;
+
+    StateWriter(Environment env, StoredMap<String,CacheRepositoryEntryState> map)
+    {
+        _runner = new TransactionRunner(env);
+        _map = map;
+    }
+
+    void put(String id, CacheRepositoryEntryState state)
+    {
+        update(id, state);
+    }
+
+    void remove(String id)
+    {
+        update(id, null);
+    }
+
+    private void update(String id, CacheRepositoryEntryState state)
+    {
+        Batch batch;
+        boolean interrupted = false;
+        synchronized (this) {
+            batch = _open;
+            batch.updates.put(id, state);
+            while (!batch.done && _writing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    /* The update must not be abandoned once queued.
+                     */
+                    interrupted = true;
+                }
+            }
+            if (!batch.done) {
+                _writing = true;
+                _open = new Batch();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!batch.done) {
+            try {
+                write(batch.updates);
+            } catch (RuntimeException e) {
+                batch.failure = e;
+            } finally {
+                synchronized (this) {
+                    batch.done = true;
+                    _writing = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+    }
+
+    /**
+     * Writes updates in a single transaction.
+     */
+    void write(final Map<String,CacheRepositoryEntryState> updates)
+    {
+        try {
+            _runner.run(new TransactionWorker() {
+                @Override
+                public void doWork()
+                {
+                    for (Map.Entry<String,CacheRepositoryEntryState> update: updates.entrySet()) {
+                        if (update.getValue() == null) {
+                            _map.remove(update.getKey());
+                        } else {
+                            _map.put(update.getKey(), update.getValue());
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            Throwables.propagateIfPossible(e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import diskCacheV111.vehicles.StorageInfo;
 import diskCacheV111.vehicles.StorageInfos;
 
 import org.dcache.namespace.FileAttribute;
+import org.dcache.pool.repository.AccessTimeWriter;
 import org.dcache.pool.repository.EntryState;
 import org.dcache.pool.repository.MetaDataRecord;
 import org.dcache.pool.repository.StickyRecord;
@@ -52,15 +53,18 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
      */
     private final File _dataFile;
 
+    private final AccessTimeWriter _accessTimeWriter;
 
 
-    public CacheRepositoryEntryImpl(PnfsId pnfsId, File controlFile, File dataFile, File siFile ) throws IOException
+    public CacheRepositoryEntryImpl(PnfsId pnfsId, File controlFile, File dataFile, File siFile,
+                                    AccessTimeWriter accessTimeWriter) throws IOException
     {
 
         _pnfsId = pnfsId;
         _controlFile = controlFile;
         _siFile = siFile;
         _dataFile = dataFile;
+        _accessTimeWriter = accessTimeWriter;
 
         _state = new CacheRepositoryEntryState(_controlFile);
 
@@ -73,7 +77,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
              */
         }
 
-        _lastAccess = _dataFile.lastModified();
+        _lastAccess = _accessTimeWriter.getLastAccessTime(_dataFile, _dataFile.lastModified());
         _size = _dataFile.length();
 
         if (_lastAccess == 0) {
@@ -86,6 +90,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
      */
     public CacheRepositoryEntryImpl(PnfsId pnfsId, File controlFile,
                                     File dataFile,  File siFile,
+                                    AccessTimeWriter accessTimeWriter,
                                     MetaDataRecord entry)
         throws IOException, RepositoryException, CacheException
     {
@@ -93,6 +98,7 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
         _controlFile = controlFile;
         _siFile = siFile;
         _dataFile = dataFile;
+        _accessTimeWriter = accessTimeWriter;
         _lastAccess   = entry.getLastAccessTime();
         _linkCount    = entry.getLinkCount();
         _creationTime = entry.getCreationTime();
@@ -217,20 +223,14 @@ public class CacheRepositoryEntryImpl implements MetaDataRecord
         }
     }
 
+    /**
+     * Updates the last access time. The modification time of the data
+     * file is updated lazily by the AccessTimeWriter of the repository.
+     */
     @Override
-    public synchronized void touch() throws CacheException {
-
-        try{
-            if( ! _dataFile.exists() ) {
-                _dataFile.createNewFile();
-            }
-        }catch(IOException ee){
-            throw new
-                CacheException("Io Error creating : "+_dataFile ) ;
-        }
-
+    public synchronized void touch() {
         _lastAccess = System.currentTimeMillis();
-        _dataFile.setLastModified(_lastAccess);
+        _accessTimeWriter.touch(_dataFile, _lastAccess);
     }
 
     private synchronized StorageInfo getStorageInfo()
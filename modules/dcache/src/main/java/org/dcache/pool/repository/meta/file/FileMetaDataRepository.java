@@ -14,6 +14,7 @@ import diskCacheV111.util.CacheException;
 import diskCacheV111.util.DiskErrorCacheException;
 import diskCacheV111.util.PnfsId;
 
+import org.dcache.pool.repository.AccessTimeWriter;
 import org.dcache.pool.repository.DuplicateEntryException;
 import org.dcache.pool.repository.FileStore;
 import org.dcache.pool.repository.MetaDataRecord;
@@ -35,6 +36,7 @@ public class FileMetaDataRepository
 
     private FileStore _fileStore;
     private File _metadir;
+    private AccessTimeWriter _accessTimeWriter = new AccessTimeWriter();
 
     public FileMetaDataRepository(FileStore fileStore,
                                   File baseDir)
@@ -62,6 +64,11 @@ public class FileMetaDataRepository
         }
     }
 
+    public void setAccessTimeWriter(AccessTimeWriter writer)
+    {
+        _accessTimeWriter = writer;
+    }
+
     @Override
     public Collection<PnfsId> list()
     {
@@ -104,7 +111,7 @@ public class FileMetaDataRepository
             }
 
             return
-                new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile);
+                new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile, _accessTimeWriter);
         } catch (IOException e) {
             throw new RepositoryException(
                     "Failed to create new entry " + id + ": " + e.getMessage(), e);
@@ -135,7 +142,7 @@ public class FileMetaDataRepository
                 controlFile.delete();
             }
 
-            return new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile, entry);
+            return new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile, _accessTimeWriter, entry);
         } catch (IOException e) {
             throw new RepositoryException(
                     "Failed to create new entry " + id + ": " + e.getMessage(), e);
@@ -152,7 +159,7 @@ public class FileMetaDataRepository
                 File controlFile = new File(_metadir, id.toString());
                 File dataFile = _fileStore.get(id);
 
-                return new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile);
+                return new CacheRepositoryEntryImpl(id, controlFile, dataFile, siFile, _accessTimeWriter);
             }
         } catch (IOException e) {
             throw new DiskErrorCacheException(
@@ -168,6 +175,7 @@ public class FileMetaDataRepository
         File controlFile = new File(_metadir, id.toString());
         File siFile = new File(_metadir, "SI-"+id.toString());
 
+        _accessTimeWriter.forget(_fileStore.get(id));
         controlFile.delete();
         siFile.delete();
     }
@@ -192,10 +200,11 @@ public class FileMetaDataRepository
 	}
     }
 
-    /** NOP */
+    /** Writes pending access times. */
     @Override
     public void close()
     {
+        _accessTimeWriter.flush();
     }
 
     /**
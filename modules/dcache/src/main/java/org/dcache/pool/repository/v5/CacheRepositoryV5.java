@@ -44,6 +44,7 @@ import org.dcache.pool.repository.MetaDataCache;
 import org.dcache.pool.repository.MetaDataLRUOrder;
 import org.dcache.pool.repository.MetaDataRecord;
 import org.dcache.pool.repository.MetaDataStore;
+import org.dcache.pool.repository.ReadCacheTier;
 import org.dcache.pool.repository.ReplicaDescriptor;
 import org.dcache.pool.repository.Repository;
 import org.dcache.pool.repository.SpaceRecord;
@@ -154,6 +155,12 @@ public class CacheRepositoryV5
     private PnfsHandler _pnfs;
     private boolean _volatile;
 
+    /**
+     * Optional tier of fast storage from which frequently read replicas
+     * are served.
+     */
+    private ReadCacheTier _cacheTier;
+
     /**
      * Pool size configured through the 'max disk space' command.
      */
@@ -260,6 +267,12 @@ public class CacheRepositoryV5
         _store = store;
     }
 
+    public synchronized void setCacheTier(ReadCacheTier tier)
+    {
+        assertUninitialized();
+        _cacheTier = tier.isEnabled() ? tier : null;
+    }
+
     public synchronized void setSpaceSweeperPolicy(SpaceSweeperPolicy sweeper)
     {
         assertUninitialized();
@@ -499,7 +512,8 @@ public class CacheRepositoryV5
                 case REMOVED:
                     break;
                 }
-                handle = new ReadHandleImpl(this, _pnfs, entry);
+                handle = new ReadHandleImpl(this, _pnfs, entry,
+                                            flags.contains(OpenFlags.NOATIME) ? null : _cacheTier);
             }
 
             if (!flags.contains(OpenFlags.NOATIME)) {
@@ -955,6 +969,9 @@ public class CacheRepositoryV5
                 setState(entry, DESTROYED);
                 _account.free(entry.getSize());
                 _store.remove(id);
+                if (_cacheTier != null) {
+                    _cacheTier.remove(id);
+                }
             }
         }
     }
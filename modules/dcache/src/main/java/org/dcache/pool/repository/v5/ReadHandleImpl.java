@@ -9,6 +9,7 @@ import diskCacheV111.util.PnfsHandler;
 
 import org.dcache.namespace.FileAttribute;
 import org.dcache.pool.repository.MetaDataRecord;
+import org.dcache.pool.repository.ReadCacheTier;
 import org.dcache.pool.repository.ReplicaDescriptor;
 import org.dcache.util.Checksum;
 import org.dcache.vehicles.FileAttributes;
@@ -21,19 +22,32 @@ class ReadHandleImpl implements ReplicaDescriptor
     private final CacheRepositoryV5 _repository;
     private final PnfsHandler _pnfs;
     private final MetaDataRecord _entry;
+    private final ReadCacheTier _tier;
+
+    /** Copy of the replica in the read cache tier, or null. */
+    private final File _copy;
     private FileAttributes _fileAttributes;
     private boolean _open;
 
+    /**
+     * @param tier read cache tier from which to read the replica if a
+     * copy exists; may be null
+     */
     ReadHandleImpl(CacheRepositoryV5 repository,
                    PnfsHandler pnfs,
-                   MetaDataRecord entry)
+                   MetaDataRecord entry,
+                   ReadCacheTier tier)
     {
         _repository = checkNotNull(repository);
         _pnfs = checkNotNull(pnfs);
         _entry = checkNotNull(entry);
+        _tier = tier;
         _fileAttributes = _entry.getFileAttributes();
         _open = true;
         _entry.incrementLinkCount();
+        _copy = (tier == null)
+                ? null
+                : tier.open(entry.getPnfsId(), entry.getDataFile(), entry.getSize());
     }
 
     /**
@@ -47,6 +61,9 @@ class ReadHandleImpl implements ReplicaDescriptor
         if (!_open) {
             throw new IllegalStateException("Handle is closed");
         }
+        if (_copy != null) {
+            _tier.close(_entry.getPnfsId());
+        }
         _entry.decrementLinkCount();
         _open = false;
         _repository.destroyWhenRemovedAndUnused(_entry);
@@ -64,7 +81,7 @@ class ReadHandleImpl implements ReplicaDescriptor
             throw new IllegalStateException("Handle is closed");
         }
 
-        return _entry.getDataFile();
+        return (_copy != null) ? _copy : _entry.getDataFile();
     }
 
     @Override
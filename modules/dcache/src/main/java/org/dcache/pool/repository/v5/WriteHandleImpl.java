@@ -291,9 +291,18 @@ class WriteHandleImpl implements ReplicaDescriptor
         }
 
         try {
+            /* Movers that receive an empty file may not have created
+             * the data file.
+             */
+            File file = getFile();
+            try {
+                file.createNewFile();
+            } catch (IOException e) {
+                throw new DiskErrorCacheException("IO error creating: " + file);
+            }
             _entry.touch();
 
-            long length = getFile().length();
+            long length = file.length();
             adjustReservation(length);
             verifyFileSize(length);
             _fileAttributes.setSize(length);
@@ -0,0 +1,172 @@
+package org.dcache.poolmanager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.PnfsId;
+
+import org.dcache.util.FrequencySketch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Detects files that are read frequently and should be replicated to
+ * additional pools before the pools holding them become congested.
+ *
+ * Read requests are counted in a FrequencySketch of fixed size. Once per
+ * decay period all counts are halved, thus the count of a file
+ * approximates the number of reads in the last decay period and files
+ * no longer read drop out. A file is hot once its count reaches the
+ * threshold.
+ *
+ * Replication of a hot file is suggested only if it has fewer replicas
+ * than the configured maximum, and at most once per decay period for
+ * each file; the latter gives the replication time to complete.
+ *
+ * This class is thread safe.
+ */
+public class HotFileDetector
+{
+    /** Upper bound on the number of files remembered as replicated. */
+    private static final int MAX_TRIGGERED = 10000;
+
+    private final FrequencySketch _sketch;
+
+    private final Map<PnfsId,Long> _triggered =
+        new LinkedHashMap<PnfsId,Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PnfsId,Long> eldest)
+            {
+                return size() > MAX_TRIGGERED;
+            }
+        };
+
+    private int _threshold;
+    private int _maxReplicas = 3;
+    private long _decayPeriod = TimeUnit.MINUTES.toMillis(5);
+    private long _lastDecay;
+    private long _replications;
+
+    /**
+     * @param width number of counters per row of the sketch; bounds the
+     * memory used independently of the number of files
+     */
+    public HotFileDetector(int width)
+    {
+        _sketch = new FrequencySketch(width);
+    }
+
+    /**
+     * Sets the number of reads per decay period at which a file is
+     * considered hot. Zero disables the detection.
+     */
+    public synchronized void setThreshold(int threshold)
+    {
+        checkArgument(threshold >= 0, "Threshold must not be negative");
+        _threshold = threshold;
+    }
+
+    public synchronized int getThreshold()
+    {
+        return _threshold;
+    }
+
+    /**
+     * Sets the number of replicas beyond which hot files are not
+     * replicated.
+     */
+    public synchronized void setMaxReplicas(int maxReplicas)
+    {
+        checkArgument(maxReplicas > 0, "Maximum number of replicas must be positive");
+        _maxReplicas = maxReplicas;
+    }
+
+    public synchronized int getMaxReplicas()
+    {
+        return _maxReplicas;
+    }
+
+    public synchronized void setDecayPeriod(long period, TimeUnit unit)
+    {
+        checkArgument(period > 0, "Decay period must be positive");
+        _decayPeriod = unit.toMillis(period);
+    }
+
+    public synchronized long getDecayPeriod(TimeUnit unit)
+    {
+        return unit.convert(_decayPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return _threshold > 0;
+    }
+
+    /**
+     * Returns the number of replications suggested so far.
+     */
+    public synchronized long getReplications()
+    {
+        return _replications;
+    }
+
+    /**
+     * Records a read of a file and returns whether the file should be
+     * replicated to an additional pool.
+     *
+     * @param id the file being read
+     * @param replicas the number of replicas the file currently has
+     * @param now the current time in milliseconds
+     */
+    public synchronized boolean shouldReplicate(PnfsId id, int replicas, long now)
+    {
+        if (_threshold == 0) {
+            return false;
+        }
+
+        if (now - _lastDecay >= _decayPeriod) {
+            decay(now);
+        }
+
+        int count = _sketch.increment(id);
+        if (count < _threshold || replicas >= _maxReplicas) {
+            return false;
+        }
+
+        Long last = _triggered.get(id);
+        if (last != null && now - last < _decayPeriod) {
+            return false;
+        }
+        _triggered.remove(id);
+        _triggered.put(id, now);
+        _replications++;
+        return true;
+    }
+
+    private void decay(long now)
+    {
+        _sketch.halve();
+        _lastDecay = now;
+
+        /* Entries are in insertion order, i.e. oldest first.
+         */
+        Iterator<Long> times = _triggered.values().iterator();
+        while (times.hasNext() && now - times.next() >= _decayPeriod) {
+            times.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        if (_threshold == 0) {
+            return "off";
+        }
+        return String.format("threshold=%d replicas=%d decay=%ds replications=%d sketch=%dKiB",
+                             _threshold, _maxReplicas,
+                             TimeUnit.MILLISECONDS.toSeconds(_decayPeriod),
+                             _replications, _sketch.getMemoryUsage() / 1024);
+    }
+}
@@ -0,0 +1,117 @@
+package org.dcache.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A count-min sketch estimating how often elements have been seen, using
+ * a fixed amount of memory independent of the number of elements.
+ *
+ * Each element is counted in one counter of each of several rows, the
+ * counter being selected by a hash of the element. The estimate is the
+ * smallest of these counters; it may overestimate the true count due to
+ * hash collisions, but never underestimates it. Counters are incremented
+ * conservatively, i.e. only counters equal to the current estimate are
+ * incremented, which reduces the overestimation.
+ *
+ * Halving all counters ages the sketch, so that elements no longer seen
+ * eventually drop out.
+ *
+ * This class is thread safe.
+ */
+public class FrequencySketch
+{
+    private static final int[] SEEDS = {
+        0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F
+    };
+
+    private final int[][] _counters;
+    private final int _mask;
+    private final int _shift;
+
+    /**
+     * @param width number of counters per row; rounded up to a power of two
+     */
+    public FrequencySketch(int width)
+    {
+        checkArgument(width > 0 && width <= (1 << 30), "Invalid width");
+        int size = Integer.highestOneBit(width);
+        if (size < width) {
+            size <<= 1;
+        }
+        _counters = new int[SEEDS.length][size];
+        _mask = size - 1;
+        _shift = 32 - Integer.numberOfTrailingZeros(size);
+    }
+
+    /**
+     * Multiplicative hashing; the index is taken from the high bits of
+     * the product, which depend on all bits of the hash.
+     */
+    private int indexOf(int hash, int row)
+    {
+        return ((hash * SEEDS[row]) >>> _shift) & _mask;
+    }
+
+    private static int spread(Object element)
+    {
+        int h = element.hashCode();
+        return h ^ (h >>> 16) ^ (h << 7);
+    }
+
+    /**
+     * Counts an occurrence of an element.
+     *
+     * @return the estimated number of occurrences including this one
+     */
+    public synchronized int increment(Object element)
+    {
+        int hash = spread(element);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < _counters.length; row++) {
+            min = Math.min(min, _counters[row][indexOf(hash, row)]);
+        }
+        if (min == Integer.MAX_VALUE) {
+            return min;
+        }
+        for (int row = 0; row < _counters.length; row++) {
+            int index = indexOf(hash, row);
+            if (_counters[row][index] == min) {
+                _counters[row][index] = min + 1;
+            }
+        }
+        return min + 1;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of an element.
+     */
+    public synchronized int estimate(Object element)
+    {
+        int hash = spread(element);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < _counters.length; row++) {
+            min = Math.min(min, _counters[row][indexOf(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    public synchronized void halve()
+    {
+        for (int[] row : _counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate memory used by the counters in bytes.
+     */
+    public int getMemoryUsage()
+    {
+        return _counters.length * (_mask + 1) * 4;
+    }
+}
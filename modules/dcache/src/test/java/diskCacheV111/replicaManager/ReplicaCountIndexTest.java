@@ -0,0 +1,272 @@
+package diskCacheV111.replicaManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static diskCacheV111.replicaManager.ReplicaDb1.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ReplicaCountIndexTest
+{
+    private static final String FILE1 = "000000000000000000000000000000000001";
+    private static final String FILE2 = "000000000000000000000000000000000002";
+
+    private ReplicaCountIndex _index;
+
+    @Before
+    public void setUp()
+    {
+        _index = new ReplicaCountIndex(2, 3);
+        for (String pool : new String[] { "pool1", "pool2", "pool3", "pool4", "pool5" }) {
+            _index.setPoolStatus(pool, ONLINE);
+        }
+    }
+
+    private static String pnfsIdOf(Object[] record)
+    {
+        return (String) record[0];
+    }
+
+    private static int countOf(Object[] record)
+    {
+        return (Integer) record[1];
+    }
+
+    @Test
+    public void shouldReportFileWithSingleReplicaAsDeficient()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+
+        List<Object[]> deficient = _index.getDeficient();
+        assertThat(deficient, hasSize(1));
+        assertThat(pnfsIdOf(deficient.get(0)), is(FILE1));
+        assertThat(countOf(deficient.get(0)), is(1));
+        assertThat(_index.getRedundant(), is(empty()));
+    }
+
+    @Test
+    public void shouldNotReportFileWithEnoughReplicas()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+
+        assertThat(_index.getDeficient(), is(empty()));
+        assertThat(_index.getRedundant(), is(empty()));
+    }
+
+    @Test
+    public void shouldReportFileWithTooManyReplicasAsRedundant()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        _index.addReplica(FILE1, "pool3", true);
+        _index.addReplica(FILE1, "pool4", true);
+
+        List<Object[]> redundant = _index.getRedundant();
+        assertThat(redundant, hasSize(1));
+        assertThat(countOf(redundant.get(0)), is(4));
+
+        _index.removeReplica(FILE1, "pool4");
+        assertThat(_index.getRedundant(), is(empty()));
+    }
+
+    @Test
+    public void shouldIgnoreUncountableReplicas()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", false);
+
+        assertThat(countOf(_index.getDeficient().get(0)), is(1));
+    }
+
+    @Test
+    public void shouldIgnoreReplicasInUnknownPools()
+    {
+        _index.addReplica(FILE1, "unknown", true);
+
+        assertThat(_index.getFileCount(), is(0));
+        assertThat(_index.getDeficient(), is(empty()));
+    }
+
+    @Test
+    public void shouldUpdateCountsWhenPoolGoesDown()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        assertThat(_index.getDeficient(), is(empty()));
+
+        _index.setPoolStatus("pool2", DOWN);
+        assertThat(_index.getDeficient(), hasSize(1));
+
+        _index.setPoolStatus("pool2", OFFLINE);
+        assertThat(_index.getDeficient(), is(empty()));
+    }
+
+    @Test
+    public void shouldNotCountOfflineReplicasAsRedundant()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        _index.addReplica(FILE1, "pool3", true);
+        _index.addReplica(FILE1, "pool4", true);
+
+        _index.setPoolStatus("pool4", OFFLINE);
+        assertThat(_index.getRedundant(), is(empty()));
+    }
+
+    @Test
+    public void shouldNotReportFilesWithLostReplicas()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.setPoolStatus("pool1", DOWN);
+
+        assertThat(_index.getDeficient(), is(empty()));
+    }
+
+    @Test
+    public void shouldSkipFilesWithActions()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+
+        _index.addAction(FILE1, 1);
+        assertThat(_index.getDeficient(), is(empty()));
+
+        _index.removeAction(FILE1);
+        assertThat(_index.getDeficient(), hasSize(1));
+    }
+
+    @Test
+    public void shouldKeepExcludeActionsWhenClearingActions()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE2, "pool1", true);
+        _index.addAction(FILE1, 1);
+        _index.addAction(FILE2, 0);
+
+        _index.clearActions();
+
+        List<Object[]> deficient = _index.getDeficient();
+        assertThat(deficient, hasSize(1));
+        assertThat(pnfsIdOf(deficient.get(0)), is(FILE1));
+    }
+
+    @Test
+    public void shouldSkipExcludedFilesUntilReleased()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addExcluded(FILE1, 1000);
+        assertThat(_index.getDeficient(), is(empty()));
+
+        _index.releaseExcluded(1000);
+        assertThat(_index.getDeficient(), is(empty()));
+
+        _index.releaseExcluded(1001);
+        assertThat(_index.getDeficient(), hasSize(1));
+    }
+
+    @Test
+    public void shouldOrderDeficientFilesByIncreasingCount()
+    {
+        _index.setLimits(3, 4);
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        _index.addReplica(FILE2, "pool3", true);
+
+        List<Object[]> deficient = _index.getDeficient();
+        assertThat(deficient, hasSize(2));
+        assertThat(pnfsIdOf(deficient.get(0)), is(FILE2));
+        assertThat(pnfsIdOf(deficient.get(1)), is(FILE1));
+    }
+
+    @Test
+    public void shouldReevaluateFilesWhenLimitsChange()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        assertThat(_index.getDeficient(), is(empty()));
+
+        _index.setLimits(3, 3);
+        assertThat(_index.getDeficient(), hasSize(1));
+
+        _index.setLimits(1, 1);
+        assertThat(_index.getDeficient(), is(empty()));
+        assertThat(_index.getRedundant(), hasSize(1));
+    }
+
+    @Test
+    public void shouldRemoveReplicasOfClearedPool()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+
+        _index.clearPool("pool2");
+        assertThat(_index.getDeficient(), hasSize(1));
+
+        _index.clearPool("pool1");
+        assertThat(_index.getDeficient(), is(empty()));
+        assertThat(_index.getFileCount(), is(0));
+    }
+
+    @Test
+    public void shouldFindFilesOnlyInDrainoffPools()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE2, "pool1", true);
+        _index.addReplica(FILE2, "pool2", true);
+
+        _index.setPoolStatus("pool1", DRAINOFF);
+
+        assertThat(_index.getInDrainoffOnly(), contains(FILE1));
+        assertThat(_index.getInOfflineOnly(), is(empty()));
+    }
+
+    @Test
+    public void shouldFindFilesOnlyInOfflinePreparePools()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE2, "pool1", true);
+        _index.addReplica(FILE2, "pool2", true);
+
+        _index.setPoolStatus("pool1", OFFLINE_PREPARE);
+
+        assertThat(_index.getInOfflineOnly(), contains(FILE1));
+    }
+
+    @Test
+    public void shouldReturnPoolsInGivenStates()
+    {
+        _index.addReplica(FILE1, "pool1", true);
+        _index.addReplica(FILE1, "pool2", true);
+        _index.addReplica(FILE1, "pool3", false);
+        _index.setPoolStatus("pool2", OFFLINE);
+
+        assertThat(_index.getPools(FILE1, Collections.singleton(ONLINE)), contains("pool1"));
+    }
+
+    @Test
+    public void shouldPreserveFileIdentifiers()
+    {
+        String[] ids = {
+            "0000ABCDEF0123456789ABCDEF0123456789", "000F00000000000000012345",
+            "00000000000000000000000000000000000A", "0", "not-a-pnfsid", "0000abcdef"
+        };
+        for (String id : ids) {
+            _index.addReplica(id, "pool1", true);
+        }
+
+        assertThat(_index.getFileCount(), is(ids.length));
+        List<String> deficient = new ArrayList<>();
+        for (Object[] record : _index.getDeficient()) {
+            deficient.add(pnfsIdOf(record));
+        }
+        assertThat(deficient, containsInAnyOrder(ids));
+        for (String id : ids) {
+            assertThat(_index.getPools(id, Collections.singleton(ONLINE)), contains("pool1"));
+        }
+    }
+}
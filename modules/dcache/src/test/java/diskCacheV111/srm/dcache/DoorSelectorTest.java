@@ -0,0 +1,149 @@
+package diskCacheV111.srm.dcache;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import dmg.cells.services.login.LoginBrokerInfo;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class DoorSelectorTest
+{
+    private DoorSelector _selector;
+    private Multimap<String,LoginBrokerInfo> _doors;
+
+    @Before
+    public void setUp()
+    {
+        _selector = new DoorSelector(new Random(1));
+        _doors = ArrayListMultimap.create();
+    }
+
+    private LoginBrokerInfo addDoor(String name, String protocol, double load)
+    {
+        LoginBrokerInfo door = new LoginBrokerInfo(name, "domain", protocol, "1.0", "engine", null);
+        door.setLoad(load);
+        _doors.put(protocol, door);
+        return door;
+    }
+
+    private Map<String,Integer> select(String protocol, int count)
+    {
+        Map<String,Integer> counts = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = _selector.select(protocol, Predicates.<LoginBrokerInfo>alwaysTrue()).getCellName();
+            Integer n = counts.get(name);
+            counts.put(name, (n == null) ? 1 : n + 1);
+        }
+        return counts;
+    }
+
+    @Test
+    public void shouldSelectDoorOfRequestedProtocol()
+    {
+        addDoor("gsiftp1", "gsiftp", 0.0);
+        addDoor("dcap1", "dcap", 0.0);
+        _selector.setDoors(_doors);
+
+        assertThat(select("gsiftp", 10).keySet(), contains("gsiftp1"));
+        assertThat(select("dcap", 10).keySet(), contains("dcap1"));
+    }
+
+    @Test
+    public void shouldReturnNullIfNoDoorIsAvailable()
+    {
+        addDoor("gsiftp1", "gsiftp", 0.0);
+        _selector.setDoors(_doors);
+
+        assertThat(_selector.select("dcap", Predicates.<LoginBrokerInfo>alwaysTrue()), is(nullValue()));
+        assertThat(_selector.select("gsiftp", Predicates.<LoginBrokerInfo>alwaysFalse()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldOnlySelectDoorsAcceptedByFilter()
+    {
+        addDoor("gsiftp1", "gsiftp", 0.0);
+        final LoginBrokerInfo door = addDoor("gsiftp2", "gsiftp", 0.9);
+        _selector.setDoors(_doors);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(_selector.select("gsiftp", new Predicate<LoginBrokerInfo>() {
+                @Override
+                public boolean apply(LoginBrokerInfo info)
+                {
+                    return info == door;
+                }
+            }), is(door));
+        }
+    }
+
+    @Test
+    public void shouldPreferLessLoadedDoors()
+    {
+        addDoor("gsiftp1", "gsiftp", 0.2);
+        addDoor("gsiftp2", "gsiftp", 0.8);
+        _selector.setDoors(_doors);
+
+        Map<String,Integer> counts = select("gsiftp", 100);
+        assertThat(counts.get("gsiftp1"), is(greaterThan(counts.get("gsiftp2"))));
+    }
+
+    @Test
+    public void shouldSpreadBurstOverAllDoors()
+    {
+        addDoor("gsiftp1", "gsiftp", 0.1);
+        addDoor("gsiftp2", "gsiftp", 0.2);
+        addDoor("gsiftp3", "gsiftp", 0.3);
+        addDoor("gsiftp4", "gsiftp", 0.4);
+        _selector.setDoors(_doors);
+
+        Map<String,Integer> counts = select("gsiftp", 1000);
+        assertThat(counts.keySet(), hasSize(4));
+        for (int count : counts.values()) {
+            assertThat(count, is(both(greaterThan(150)).and(lessThan(350))));
+        }
+    }
+
+    @Test
+    public void shouldSelectFullyLoadedDoorsIfNoOtherDoorsExist()
+    {
+        addDoor("gsiftp1", "gsiftp", 1.0);
+        _selector.setDoors(_doors);
+
+        assertThat(select("gsiftp", 10).keySet(), contains("gsiftp1"));
+    }
+
+    @Test
+    public void shouldKeepAssignmentsUntilDoorReportsNewLoad()
+    {
+        LoginBrokerInfo door1 = addDoor("gsiftp1", "gsiftp", 0.0);
+        _selector.setDoors(_doors);
+        select("gsiftp", 8);
+        assertThat(_selector.getAssigned("gsiftp", door1), is(8));
+
+        /* Same instance: no update. */
+        _selector.setDoors(_doors);
+        assertThat(_selector.getAssigned("gsiftp", door1), is(8));
+
+        /* Load unchanged: assignments decay. */
+        _doors = ArrayListMultimap.create();
+        door1 = addDoor("gsiftp1", "gsiftp", 0.0);
+        _selector.setDoors(_doors);
+        assertThat(_selector.getAssigned("gsiftp", door1), is(4));
+
+        /* New load: assignments are reflected in the load. */
+        _doors = ArrayListMultimap.create();
+        door1 = addDoor("gsiftp1", "gsiftp", 0.5);
+        _selector.setDoors(_doors);
+        assertThat(_selector.getAssigned("gsiftp", door1), is(0));
+    }
+}
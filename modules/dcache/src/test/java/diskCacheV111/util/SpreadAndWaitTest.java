@@ -2,20 +2,24 @@ package diskCacheV111.util;
 
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
 
 import dmg.cells.nucleus.CellPath;
 
 import org.dcache.cells.CellStub;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +36,22 @@ public class SpreadAndWaitTest
         assertThat(sut.next(), is(nullValue()));
     }
 
+    @Test
+    public void shouldReturnPartialResultAfterTimeout() throws InterruptedException
+    {
+        CellStub stub = mock(CellStub.class);
+        when(stub.send(eq(new CellPath("fast")), any(Serializable.class), any(Class.class))).thenAnswer(new InvokesSuccess<>());
+        when(stub.send(eq(new CellPath("slow")), any(Serializable.class), any(Class.class))).thenReturn(SettableFuture.create());
+        SpreadAndWait<String> sut = new SpreadAndWait<>(stub);
+        sut.send(new CellPath("fast"), String.class, "test");
+        sut.send(new CellPath("slow"), String.class, "test");
+
+        assertThat(sut.waitForReplies(10, TimeUnit.MILLISECONDS), is(false));
+        assertThat(sut.getReplies().keySet(), contains(new CellPath("fast")));
+        assertThat(sut.getLatencies().keySet(), contains(new CellPath("fast")));
+        assertThat(sut.getPendingCount(), is(1));
+    }
+
     private static class InvokesSuccess<T> implements Answer<ListenableFuture<T>>
     {
         @Override
@@ -0,0 +1,118 @@
+package org.dcache.alarms.dao.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.dcache.alarms.dao.ILogEntryDAO;
+import org.dcache.alarms.dao.LogEntry;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchingLogEntryStoreTest {
+
+    private final List<Collection<LogEntry>> batches = new ArrayList<>();
+    private boolean failing;
+
+    private final ILogEntryDAO backend = new ILogEntryDAO() {
+        @Override
+        public void put(LogEntry entry) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void put(Collection<LogEntry> entries) {
+            if (failing) {
+                throw new RuntimeException("store unavailable");
+            }
+            batches.add(new ArrayList<>(entries));
+        }
+    };
+
+    private BatchingLogEntryStore store;
+
+    @Before
+    public void setup() {
+        batches.clear();
+        failing = false;
+        store = new BatchingLogEntryStore(backend, 2);
+    }
+
+    @Test
+    public void shouldCoalesceEntriesWithSameKey() {
+        store.put(givenEntry("a", 100));
+        store.put(givenEntry("a", 300));
+        store.put(givenEntry("a", 200));
+
+        store.flush();
+
+        assertThat(batches.size(), is(1));
+        LogEntry entry = batches.get(0).iterator().next();
+        assertThat(entry.getReceived(), is(3));
+        assertThat(entry.getFirstArrived(), is(100L));
+        assertThat(entry.getLastUpdate(), is(300L));
+        assertThat(store.getCoalesced(), is(2L));
+    }
+
+    @Test
+    public void shouldWriteDistinctKeysInOneBatch() {
+        store.put(givenEntry("a", 100));
+        store.put(givenEntry("b", 100));
+
+        store.flush();
+
+        assertThat(batches.size(), is(1));
+        assertThat(batches.get(0).size(), is(2));
+        assertThat(store.getPending(), is(0));
+        assertThat(store.getFlushed(), is(2L));
+    }
+
+    @Test
+    public void shouldNotWriteEmptyBatch() {
+        store.flush();
+
+        assertThat(batches.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldDropNewKeysWhenFull() {
+        store.put(givenEntry("a", 100));
+        store.put(givenEntry("b", 100));
+        store.put(givenEntry("c", 100));
+        store.put(givenEntry("a", 200));
+
+        assertThat(store.getPending(), is(2));
+        assertThat(store.getDropped(), is(1L));
+    }
+
+    @Test
+    public void shouldRetryBatchAfterFailure() {
+        store.put(givenEntry("a", 100));
+        failing = true;
+        store.flush();
+
+        assertThat(store.getFailedFlushes(), is(1L));
+        assertThat(store.getPending(), is(1));
+
+        store.put(givenEntry("a", 200));
+        failing = false;
+        store.flush();
+
+        assertThat(batches.size(), is(1));
+        LogEntry entry = batches.get(0).iterator().next();
+        assertThat(entry.getReceived(), is(2));
+        assertThat(entry.getLastUpdate(), is(200L));
+    }
+
+    private static LogEntry givenEntry(String key, long timestamp) {
+        LogEntry entry = new LogEntry();
+        entry.setKey(key);
+        entry.setFirstArrived(timestamp);
+        entry.setLastUpdate(timestamp);
+        return entry;
+    }
+}
@@ -70,6 +70,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Marker;
 
+import java.util.Collection;
+
 import org.dcache.alarms.dao.ILogEntryDAO;
 import org.dcache.alarms.dao.LogEntry;
 
@@ -110,6 +112,13 @@ public class LogEntryAppenderTest {
         public void put(LogEntry entry) {
             lastEntry = entry;
         }
+
+        @Override
+        public void put(Collection<LogEntry> entries) {
+            for (LogEntry entry : entries) {
+                put(entry);
+            }
+        }
     };
 
     private LogEntry lastEntry;
@@ -83,6 +83,7 @@ public class HttpPoolRequestHandlerTests
     private static final String CONTENT_DISPOSITION = "Content-Disposition";
 
     private static final int SOME_CHUNK_SIZE = 4096;
+    private static final int SOME_WRITE_BUFFER_SIZE = 65536;
 
     HttpPoolRequestHandler _handler;
     HttpPoolNettyServer _server;
@@ -96,7 +97,8 @@ public class HttpPoolRequestHandlerTests
     {
         _context = mock(ChannelHandlerContext.class);
         _server = mock(HttpPoolNettyServer.class);
-        _handler = new HttpPoolRequestHandler(_server, SOME_CHUNK_SIZE);
+        _handler = new HttpPoolRequestHandler(_server, SOME_CHUNK_SIZE,
+                new DirectBufferPool(SOME_WRITE_BUFFER_SIZE, 1));
         _files = Maps.newHashMap();
         _additionalWrites = new ArrayList<>();
     }
@@ -0,0 +1,176 @@
+package org.dcache.http;
+
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import diskCacheV111.util.ChecksumFactory;
+
+import org.dcache.pool.movers.ChecksumChannel;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.util.ChecksumType;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class WriteAggregatorTest
+{
+    private static final Logger _log = LoggerFactory.getLogger(WriteAggregatorTest.class);
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final List<File> _files = new ArrayList<>();
+    private final List<CountingChannel> _channels = new ArrayList<>();
+    private byte[] _data;
+
+    /**
+     * Repository channel recording the position of every write.
+     */
+    private static class CountingChannel extends FileRepositoryChannel
+    {
+        final List<Long> writes = new ArrayList<>();
+
+        CountingChannel(File file) throws IOException
+        {
+            super(file, "rw");
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            writes.add(position());
+            return super.write(src);
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        _data = new byte[32 * 1024 * 1024 + 1000];
+        new Random(1).nextBytes(_data);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        for (CountingChannel channel : _channels) {
+            channel.close();
+        }
+        for (File file : _files) {
+            file.delete();
+        }
+    }
+
+    private CountingChannel createChannel() throws IOException
+    {
+        File file = File.createTempFile("upload", null);
+        _files.add(file);
+        CountingChannel channel = new CountingChannel(file);
+        _channels.add(channel);
+        return channel;
+    }
+
+    private static ChecksumChannel checksummed(CountingChannel channel)
+            throws NoSuchAlgorithmException
+    {
+        return new ChecksumChannel(channel, ChecksumFactory.getFactory(ChecksumType.ADLER32));
+    }
+
+    /**
+     * Uploads the test data in 8 KB chunks.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    private long upload(WriteAggregator aggregator) throws IOException
+    {
+        long start = System.nanoTime();
+        for (int offset = 0; offset < _data.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, _data.length - offset);
+            aggregator.write(ChannelBuffers.wrappedBuffer(_data, offset, length));
+        }
+        aggregator.flush();
+        return System.nanoTime() - start;
+    }
+
+    private static long throughput(long bytes, long nanos)
+    {
+        return bytes * 1000 / Math.max(nanos, 1);
+    }
+
+    @Test
+    public void shouldAggregateSmallChunksIntoAlignedWrites() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool(BUFFER_SIZE, 1);
+
+        CountingChannel plain = createChannel();
+        ChecksumChannel plainChecksum = checksummed(plain);
+        WriteAggregator unaggregated = new WriteAggregator(plainChecksum, new DirectBufferPool(0, 0));
+        long plainTime = upload(unaggregated);
+        unaggregated.release();
+
+        CountingChannel channel = createChannel();
+        ChecksumChannel checksum = checksummed(channel);
+        WriteAggregator aggregator = new WriteAggregator(checksum, pool);
+        long time = upload(aggregator);
+        aggregator.release();
+
+        assertThat(channel.size(), is((long) _data.length));
+        assertThat(checksum.getChecksum(), is(plainChecksum.getChecksum()));
+        assertThat(plain.writes, hasSize((_data.length + CHUNK_SIZE - 1) / CHUNK_SIZE));
+        assertThat(channel.writes, hasSize((_data.length + BUFFER_SIZE - 1) / BUFFER_SIZE));
+        for (long position : channel.writes) {
+            assertThat(position % BUFFER_SIZE, is(0L));
+        }
+
+        _log.info("Uploading {} bytes in {} byte chunks: {} writes at {} MB/s unaggregated, " +
+                  "{} writes at {} MB/s aggregated",
+                  _data.length, CHUNK_SIZE,
+                  plain.writes.size(), throughput(_data.length, plainTime),
+                  channel.writes.size(), throughput(_data.length, time));
+    }
+
+    @Test
+    public void shouldWriteChunksDirectlyIfPoolIsExhausted() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool(BUFFER_SIZE, 1);
+        WriteAggregator first = new WriteAggregator(createChannel(), pool);
+
+        CountingChannel channel = createChannel();
+        WriteAggregator second = new WriteAggregator(channel, pool);
+        second.write(ChannelBuffers.wrappedBuffer(_data, 0, CHUNK_SIZE));
+
+        assertThat(channel.writes, hasSize(1));
+        assertThat(pool.getAllocated(), is(1));
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void shouldReuseReleasedBuffers() throws Exception
+    {
+        DirectBufferPool pool = new DirectBufferPool(BUFFER_SIZE, 1);
+        for (int i = 0; i < 3; i++) {
+            CountingChannel channel = createChannel();
+            WriteAggregator aggregator = new WriteAggregator(channel, pool);
+            aggregator.write(ChannelBuffers.wrappedBuffer(_data, 0, CHUNK_SIZE));
+            assertThat(channel.writes, is(empty()));
+            aggregator.flush();
+            aggregator.release();
+            assertThat(channel.writes, hasSize(1));
+            assertThat(channel.size(), is((long) CHUNK_SIZE));
+        }
+        assertThat(pool.getAllocated(), is(1));
+    }
+}
@@ -0,0 +1,145 @@
+package org.dcache.pool.classic;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveMoverLimitTest
+{
+    private static final int INTERVALS = 500;
+    private static final int STATIC_LIMIT = 100;
+
+    /**
+     * Aggregate throughput of a disk in MiB/s as a function of the number
+     * of concurrent movers.
+     */
+    private interface Workload
+    {
+        double getThroughput(int movers);
+    }
+
+    /**
+     * Large sequential reads: Every mover streams at 25 MiB/s until the
+     * disk delivers 1000 MiB/s.
+     */
+    private static final Workload SEQUENTIAL = new Workload()
+    {
+        @Override
+        public double getThroughput(int movers)
+        {
+            return Math.min(movers * 25.0, 1000.0);
+        }
+    };
+
+    /**
+     * Small random reads: The disk is saturated by 8 movers, and more
+     * movers reduce throughput as the disk spends more time seeking.
+     */
+    private static final Workload RANDOM = new Workload()
+    {
+        @Override
+        public double getThroughput(int movers)
+        {
+            return (movers <= 8) ? movers * 20.0 : 160.0 / (1 + 0.02 * (movers - 8));
+        }
+    };
+
+    private static class Result
+    {
+        double bytes;
+        double limits;
+    }
+
+    /**
+     * Runs a workload with a backlog of movers, feeding the measured
+     * throughput to the controller. Measurements are subject to noise.
+     * Averages are taken over the second half of the run.
+     */
+    private static Result run(Workload workload, AdaptiveMoverLimit controller, Random noise)
+    {
+        Result result = new Result();
+        int limit = controller.getLimit();
+        for (int i = 0; i < INTERVALS; i++) {
+            double throughput = workload.getThroughput(limit) * (0.97 + 0.06 * noise.nextDouble());
+            if (i >= INTERVALS / 2) {
+                result.bytes += throughput;
+                result.limits += limit;
+            }
+            limit = controller.update(throughput);
+        }
+        result.bytes /= INTERVALS / 2;
+        result.limits /= INTERVALS / 2;
+        return result;
+    }
+
+    private static double runStatic(Workload workload, int limit)
+    {
+        return workload.getThroughput(limit);
+    }
+
+    @Test
+    public void shouldAvoidThrashingOnRandomReads()
+    {
+        AdaptiveMoverLimit controller = new AdaptiveMoverLimit(2, 200, STATIC_LIMIT);
+
+        Result adaptive = run(RANDOM, controller, new Random(1));
+
+        assertThat(adaptive.bytes, is(greaterThan(2 * runStatic(RANDOM, STATIC_LIMIT))));
+        assertThat(adaptive.bytes, is(greaterThan(0.85 * runStatic(RANDOM, 8))));
+        assertThat(adaptive.limits, is(both(greaterThan(5.0)).and(lessThan(12.0))));
+    }
+
+    @Test
+    public void shouldReachFullThroughputOnSequentialReads()
+    {
+        AdaptiveMoverLimit controller = new AdaptiveMoverLimit(2, 200, 2);
+
+        Result adaptive = run(SEQUENTIAL, controller, new Random(2));
+
+        assertThat(adaptive.bytes, is(greaterThan(0.9 * runStatic(SEQUENTIAL, STATIC_LIMIT))));
+        assertThat(adaptive.limits, is(both(greaterThan(30.0)).and(lessThan(60.0))));
+    }
+
+    @Test
+    public void shouldFollowChangingWorkload()
+    {
+        AdaptiveMoverLimit controller = new AdaptiveMoverLimit(2, 200, 2);
+        Random noise = new Random(3);
+
+        run(SEQUENTIAL, controller, noise);
+        Result random = run(RANDOM, controller, noise);
+        Result sequential = run(SEQUENTIAL, controller, noise);
+
+        assertThat(random.bytes, is(greaterThan(0.85 * runStatic(RANDOM, 8))));
+        assertThat(sequential.bytes, is(greaterThan(0.9 * runStatic(SEQUENTIAL, 40))));
+    }
+
+    @Test
+    public void shouldStayWithinBounds()
+    {
+        AdaptiveMoverLimit controller = new AdaptiveMoverLimit(4, 20, 100);
+        assertThat(controller.getLimit(), is(20));
+
+        for (int i = 0; i < 100; i++) {
+            int limit = controller.update(SEQUENTIAL.getThroughput(controller.getLimit()));
+            assertThat(limit, is(both(greaterThanOrEqualTo(4)).and(lessThanOrEqualTo(20))));
+        }
+
+        controller.setBounds(1, 2);
+        assertThat(controller.getLimit(), is(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void shouldShareFairlyAmongQueues()
+    {
+        assertArrayEquals(new int[] { 3, 4, 3 }, IoQueueManager.fairShare(10, new int[] { 3, 20, 20 }));
+        assertArrayEquals(new int[] { 5, 5, 0 }, IoQueueManager.fairShare(10, new int[] { 50, 50, 0 }));
+        assertArrayEquals(new int[] { 1, 1, 1 }, IoQueueManager.fairShare(3, new int[] { 1, 1, 1 }));
+        assertArrayEquals(new int[] { 3, 3, 2 }, IoQueueManager.fairShare(8, new int[] { 1, 1, 1 }));
+        assertArrayEquals(new int[] { 1, 1, 0 }, IoQueueManager.fairShare(2, new int[] { 5, 5, 5 }));
+    }
+}
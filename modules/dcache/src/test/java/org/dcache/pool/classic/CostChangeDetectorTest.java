@@ -0,0 +1,76 @@
+package org.dcache.pool.classic;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import diskCacheV111.pools.PoolCostInfo;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CostChangeDetectorTest
+{
+    private static final long TOTAL = 1000;
+
+    private CostChangeDetector detector;
+
+    @Before
+    public void setUp()
+    {
+        detector = new CostChangeDetector(2, 0.1);
+    }
+
+    @Test
+    public void shouldIgnoreIdenticalCost()
+    {
+        assertFalse(detector.isSignificant(cost(3, 10, 500), cost(3, 10, 500)));
+    }
+
+    @Test
+    public void shouldIgnoreSmallQueueChange()
+    {
+        assertFalse(detector.isSignificant(cost(3, 10, 500), cost(4, 10, 500)));
+    }
+
+    @Test
+    public void shouldReportQueueChangeAtThreshold()
+    {
+        assertTrue(detector.isSignificant(cost(3, 10, 500), cost(5, 10, 500)));
+        assertTrue(detector.isSignificant(cost(5, 10, 500), cost(3, 10, 500)));
+    }
+
+    @Test
+    public void shouldReportChangedQueueLimit()
+    {
+        assertTrue(detector.isSignificant(cost(3, 10, 500), cost(3, 20, 500)));
+    }
+
+    @Test
+    public void shouldIgnoreSmallSpaceChange()
+    {
+        assertFalse(detector.isSignificant(cost(3, 10, 500), cost(3, 10, 450)));
+    }
+
+    @Test
+    public void shouldReportSpaceChangeAtThreshold()
+    {
+        assertTrue(detector.isSignificant(cost(3, 10, 500), cost(3, 10, 400)));
+    }
+
+    @Test
+    public void shouldReportAddedQueue()
+    {
+        PoolCostInfo info = cost(3, 10, 500);
+        info.addExtendedMoverQueueSizes("wan", 0, 2, 0, 0, 0);
+        assertTrue(detector.isSignificant(cost(3, 10, 500), info));
+    }
+
+    private static PoolCostInfo cost(int active, int maxActive, long free)
+    {
+        PoolCostInfo info = new PoolCostInfo("pool");
+        info.setSpaceUsage(TOTAL, free, 0, TOTAL - free);
+        info.addExtendedMoverQueueSizes(IoQueueManager.DEFAULT_QUEUE, Math.min(active, maxActive),
+                                        maxActive, Math.max(0, active - maxActive), 0, 0);
+        return info;
+    }
+}
@@ -0,0 +1,133 @@
+package org.dcache.pool.migration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import diskCacheV111.pools.PoolCostInfo;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveConcurrencyTest
+{
+    private static final long PERIOD = 60000;
+    private static final long MB = 1 << 20;
+
+    private AdaptiveConcurrency concurrency;
+    private PoolCostInfo source;
+    private List<PoolCostInfo> targets;
+    private long now;
+
+    @Before
+    public void setUp()
+    {
+        now = 0;
+        concurrency = new AdaptiveConcurrency(2, 8, now);
+        source = new PoolCostInfo("source");
+        source.addExtendedMoverQueueSizes("regular", 0, 100, 0, 0, 0);
+        source.setP2pServerQueueSizes(0, 10, 0);
+        PoolCostInfo target = new PoolCostInfo("target");
+        target.setP2pClientQueueSizes(0, 10, 0);
+        targets = Collections.singletonList(target);
+    }
+
+    private int adjust(long bytes, int running)
+    {
+        concurrency.addTransferred(bytes);
+        now += PERIOD;
+        return concurrency.adjust(now, running, source, targets);
+    }
+
+    @Test
+    public void shouldIncreaseWhenAllSlotsAreInUse()
+    {
+        assertThat(adjust(100 * MB, 2), is(3));
+        assertThat(adjust(150 * MB, 3), is(4));
+        assertThat(concurrency.getChanges(), hasSize(2));
+    }
+
+    @Test
+    public void shouldNotIncreaseWhenSlotsAreUnused()
+    {
+        assertThat(adjust(100 * MB, 1), is(2));
+        assertThat(concurrency.getChanges(), is(empty()));
+    }
+
+    @Test
+    public void shouldNotExceedMaximum()
+    {
+        for (int i = 0; i < 20; i++) {
+            adjust((i + 1) * 100 * MB, concurrency.getLimit());
+        }
+        assertThat(concurrency.getLimit(), is(8));
+    }
+
+    @Test
+    public void shouldUndoIncreaseWhenThroughputDrops()
+    {
+        adjust(100 * MB, 2);
+        adjust(200 * MB, 3);
+
+        assertThat(adjust(100 * MB, 4), is(3));
+        assertThat(concurrency.getChanges(), hasItem(containsString("throughput dropped")));
+    }
+
+    @Test
+    public void shouldHalveOnFailures()
+    {
+        adjust(100 * MB, 2);
+        adjust(200 * MB, 3);
+        adjust(300 * MB, 4);
+        adjust(400 * MB, 5);
+        adjust(500 * MB, 6);
+        concurrency.addFailure();
+
+        assertThat(adjust(500 * MB, 7), is(3));
+        assertThat(concurrency.getChanges(), hasItem(containsString("1 transfers failed")));
+    }
+
+    @Test
+    public void shouldNotDecreaseBelowMinimum()
+    {
+        concurrency.addFailure();
+
+        assertThat(adjust(0, 2), is(2));
+    }
+
+    @Test
+    public void shouldDecreaseWhenClientMoversAreQueuedOnSource()
+    {
+        adjust(100 * MB, 2);
+        adjust(200 * MB, 3);
+        adjust(300 * MB, 4);
+        source.addExtendedMoverQueueSizes("wan", 10, 10, 5, 0, 0);
+
+        assertThat(adjust(300 * MB, 5), is(2));
+        assertThat(concurrency.getChanges(), hasItem(containsString("client movers queued on source pool")));
+    }
+
+    @Test
+    public void shouldDecreaseWhenP2pIsQueuedOnTarget()
+    {
+        adjust(100 * MB, 2);
+        adjust(200 * MB, 3);
+        adjust(300 * MB, 4);
+        targets.get(0).setP2pClientQueueSizes(10, 10, 3);
+
+        assertThat(adjust(300 * MB, 5), is(2));
+        assertThat(concurrency.getChanges(), hasItem(containsString("queued on target")));
+    }
+
+    @Test
+    public void shouldNotAdjustAfterSkippedPeriod()
+    {
+        adjust(100 * MB, 2);
+        concurrency.addTransferred(1000 * MB);
+        concurrency.skip(now += PERIOD);
+
+        assertThat(adjust(50 * MB, 2), is(3));
+    }
+}
@@ -0,0 +1,266 @@
+package org.dcache.pool.movers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.GenericStorageInfo;
+import diskCacheV111.vehicles.RemoteHttpDataTransferProtocolInfo;
+
+import org.dcache.pool.repository.Allocator;
+import org.dcache.pool.repository.FileRepositoryChannel;
+import org.dcache.pool.repository.RepositoryChannel;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the remote HTTP mover against an embedded HTTP server that adds
+ * a configurable latency to each response and each block of data sent,
+ * thus simulating a remote site far away.
+ */
+public class RemoteHttpDataTransferProtocolTest
+{
+    private static final PnfsId PNFSID = new PnfsId("000000000000000000000000000000000001");
+    private static final int SIZE = 1 << 20;
+    private static final long MIN_RANGE_SIZE = 64 << 10;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] data = new byte[SIZE];
+    private HttpServer server;
+    private File file;
+
+    /* Behaviour of the server. */
+    private volatile boolean acceptRanges = true;
+    private volatile boolean ignoreRanges;
+    private volatile String digest;
+    private volatile long latency = 20;
+
+    /* Observations of the server. */
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        new Random(1).nextBytes(data);
+        Adler32 adler = new Adler32();
+        adler.update(data);
+        digest = "adler32=" + String.format("%08x", adler.getValue());
+
+        file = folder.newFile();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/file", new LatencyHandler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    private class LatencyHandler implements HttpHandler
+    {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException
+        {
+            int current = active.incrementAndGet();
+            try {
+                while (true) {
+                    int max = maxActive.get();
+                    if (current <= max || maxActive.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                sleep();
+
+                if (acceptRanges) {
+                    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                }
+                if (digest != null) {
+                    exchange.getResponseHeaders().add("Digest", digest);
+                }
+
+                if (exchange.getRequestMethod().equals("HEAD")) {
+                    exchange.getResponseHeaders().add("Content-Length", String.valueOf(SIZE));
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                    return;
+                }
+
+                int first = 0;
+                int last = SIZE - 1;
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (acceptRanges && !ignoreRanges && range != null) {
+                    Matcher matcher = RANGE.matcher(range);
+                    if (!matcher.matches()) {
+                        exchange.sendResponseHeaders(416, -1);
+                        exchange.close();
+                        return;
+                    }
+                    first = Integer.parseInt(matcher.group(1));
+                    last = Integer.parseInt(matcher.group(2));
+                    rangeRequests.incrementAndGet();
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + first + "-" + last + "/" + SIZE);
+                    exchange.sendResponseHeaders(206, last - first + 1);
+                } else {
+                    exchange.sendResponseHeaders(200, SIZE);
+                }
+
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (int offset = first; offset <= last; offset += 65536) {
+                        sleep();
+                        out.write(data, offset, Math.min(65536, last - offset + 1));
+                    }
+                }
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        private void sleep() throws IOException
+        {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private RemoteHttpDataTransferProtocol_1 transfer(int streams) throws Exception
+    {
+        return transfer(new RemoteHttpDataTransferProtocol_1(streams, MIN_RANGE_SIZE));
+    }
+
+    private RemoteHttpDataTransferProtocol_1 transfer(RemoteHttpDataTransferProtocol_1 mover)
+            throws Exception
+    {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/file";
+        RemoteHttpDataTransferProtocolInfo info =
+                new RemoteHttpDataTransferProtocolInfo("RemoteHttpDataTransfer", 1, 1,
+                        new InetSocketAddress(0), 65536, url);
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(PNFSID);
+        attributes.setStorageInfo(new GenericStorageInfo());
+        try (RepositoryChannel channel = new FileRepositoryChannel(file, "rw")) {
+            mover.runIO(attributes, channel, info, new Allocator() {
+                @Override
+                public void allocate(long size) {
+                }
+
+                @Override
+                public void free(long size) {
+                }
+            }, IoMode.WRITE);
+        }
+        return mover;
+    }
+
+    @Test
+    public void shouldFetchRangesInParallel() throws Exception
+    {
+        RemoteHttpDataTransferProtocol_1 mover = transfer(4);
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertThat(rangeRequests.get(), is(4));
+        assertThat(maxActive.get(), is(4));
+        assertThat(mover.getBytesTransferred(), is((long) SIZE));
+    }
+
+    @Test
+    public void shouldReportCombinedChecksumAndRemoteDigest() throws Exception
+    {
+        RemoteHttpDataTransferProtocol_1 mover = transfer(4);
+
+        Checksum expected = mover.getExpectedChecksum();
+        assertThat(expected.getType(), is(ChecksumType.ADLER32));
+        assertThat("adler32=" + expected.getValue(), is(digest));
+        assertThat(mover.getActualChecksum(), is(expected));
+    }
+
+    @Test
+    public void shouldDetectCorruptedData() throws Exception
+    {
+        digest = "adler32=00000001";
+
+        RemoteHttpDataTransferProtocol_1 mover = transfer(4);
+
+        assertThat(mover.getActualChecksum(), is(not(mover.getExpectedChecksum())));
+    }
+
+    @Test
+    public void shouldFallBackToSingleStreamWithoutRangeSupport() throws Exception
+    {
+        acceptRanges = false;
+
+        RemoteHttpDataTransferProtocol_1 mover = transfer(4);
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertThat(rangeRequests.get(), is(0));
+        assertThat(mover.getActualChecksum(), is(mover.getExpectedChecksum()));
+    }
+
+    @Test
+    public void shouldFallBackToSingleStreamIfRangesAreIgnored() throws Exception
+    {
+        ignoreRanges = true;
+
+        RemoteHttpDataTransferProtocol_1 mover = transfer(4);
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertThat(rangeRequests.get(), is(0));
+        assertThat(mover.getBytesTransferred(), is((long) SIZE));
+        assertThat(mover.getActualChecksum(), is(mover.getExpectedChecksum()));
+    }
+
+    @Test
+    public void shouldFallBackToSingleStreamForSmallFiles() throws Exception
+    {
+        transfer(new RemoteHttpDataTransferProtocol_1(4, SIZE));
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertThat(rangeRequests.get(), is(0));
+    }
+
+    @Test
+    public void shouldUseSingleStreamWhenConfigured() throws Exception
+    {
+        latency = 0;
+        transfer(1);
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+        assertThat(rangeRequests.get(), is(0));
+        assertThat(maxActive.get(), is(1));
+    }
+}
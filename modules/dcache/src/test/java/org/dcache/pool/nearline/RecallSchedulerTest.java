@@ -0,0 +1,309 @@
+package org.dcache.pool.nearline;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.vehicles.GenericStorageInfo;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RecallSchedulerTest
+{
+    private static final long MOUNT_TIME = TimeUnit.SECONDS.toMillis(90);
+    private static final long SEEK_TIME_PER_POSITION = 50;
+    private static final long READ_TIME = TimeUnit.SECONDS.toMillis(2);
+
+    private static class Recall
+    {
+        final String volume;
+        final long position;
+
+        Recall(String volume, long position)
+        {
+            this.volume = volume;
+            this.position = position;
+        }
+
+        TapeLocation getLocation()
+        {
+            return new TapeLocation(volume, String.format("0000_000000000_%07d", position));
+        }
+    }
+
+    /**
+     * A single tape drive processing released requests in the order
+     * received. Mounting a volume costs MOUNT_TIME, and moving the
+     * head costs time proportional to the distance.
+     */
+    private static class SimulatedTape implements RecallScheduler.Sink<Recall>
+    {
+        final Deque<Recall> queue = new ArrayDeque<>();
+        final List<Recall> recalled = new ArrayList<>();
+        String mounted;
+        long head;
+        long now;
+        int mounts;
+
+        @Override
+        public void release(List<Recall> requests)
+        {
+            queue.addAll(requests);
+        }
+
+        void run(RecallScheduler<Recall> scheduler)
+        {
+            while (!queue.isEmpty()) {
+                Recall recall = queue.remove();
+                if (!recall.volume.equals(mounted)) {
+                    mounted = recall.volume;
+                    head = 0;
+                    mounts++;
+                    now += MOUNT_TIME;
+                }
+                now += Math.abs(recall.position - head) * SEEK_TIME_PER_POSITION + READ_TIME;
+                head = recall.position;
+                recalled.add(recall);
+                scheduler.done(recall, now);
+            }
+        }
+
+        double getFilesPerHour()
+        {
+            return recalled.size() * (double) TimeUnit.HOURS.toMillis(1) / now;
+        }
+    }
+
+    private static List<Recall> campaign(int files, int volumes, int positions)
+    {
+        Random random = new Random(42);
+        List<Recall> recalls = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            recalls.add(new Recall("VOL" + random.nextInt(volumes), random.nextInt(positions)));
+        }
+        return recalls;
+    }
+
+    private static SimulatedTape recall(List<Recall> recalls, int maxActive)
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(maxActive);
+        scheduler.setMaxAge(1, TimeUnit.DAYS);
+        for (Recall recall : recalls) {
+            scheduler.add(recall, recall.getLocation(), 0);
+        }
+        tape.run(scheduler);
+        assertThat(tape.recalled.size(), is(recalls.size()));
+        assertThat(scheduler.getPendingCount(), is(0));
+        assertThat(scheduler.getActiveCount(), is(0));
+        return tape;
+    }
+
+    @Test
+    public void shouldReleaseInArrivalOrderWhenDisabled()
+    {
+        List<Recall> recalls = campaign(100, 10, 1000);
+
+        SimulatedTape tape = recall(recalls, 0);
+
+        assertThat(tape.recalled, is(recalls));
+    }
+
+    @Test
+    public void shouldReduceMountsAndIncreaseThroughput()
+    {
+        List<Recall> recalls = campaign(5000, 50, 10000);
+
+        SimulatedTape fifo = recall(recalls, 0);
+        SimulatedTape scheduled = recall(recalls, 10);
+
+        /* The first requests are released as they arrive, before any
+         * requests are pending.
+         */
+        assertThat(scheduled.mounts, is(lessThanOrEqualTo(50 + 10)));
+        assertThat(fifo.mounts, is(greaterThan(4000)));
+        assertThat(scheduled.getFilesPerHour(), is(greaterThan(10 * fifo.getFilesPerHour())));
+    }
+
+    @Test
+    public void shouldRecallVolumeInPositionOrder()
+    {
+        List<Recall> recalls = campaign(500, 1, 10000);
+
+        SimulatedTape tape = recall(recalls, 1);
+
+        for (int i = 2; i < tape.recalled.size(); i++) {
+            assertThat(tape.recalled.get(i).position,
+                       is(greaterThanOrEqualTo(tape.recalled.get(i - 1).position)));
+        }
+    }
+
+    @Test
+    public void shouldPreferVolumeWithMostRequests()
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(1);
+        Recall first = new Recall("A", 1);
+        scheduler.add(first, first.getLocation(), 0);
+        scheduler.add(new Recall("B", 1), new Recall("B", 1).getLocation(), 0);
+        for (int i = 0; i < 3; i++) {
+            Recall recall = new Recall("C", i);
+            scheduler.add(recall, recall.getLocation(), 0);
+        }
+
+        tape.run(scheduler);
+
+        assertThat(tape.recalled.get(0), is(first));
+        assertThat(tape.recalled.get(1).volume, is("C"));
+        assertThat(tape.recalled.get(4).volume, is("B"));
+    }
+
+    @Test
+    public void shouldNotStarveVolumes()
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(1);
+        scheduler.setMaxAge(10, TimeUnit.MINUTES);
+
+        Recall starving = new Recall("B", 1);
+        Recall busy = new Recall("A", 0);
+        scheduler.add(busy, busy.getLocation(), 0);
+        scheduler.add(starving, starving.getLocation(), 0);
+
+        /* Keep volume A busy with a steady stream of new requests.
+         */
+        long position = 1;
+        while (!tape.recalled.contains(starving)) {
+            Recall recall = new Recall("A", position++);
+            scheduler.add(recall, recall.getLocation(), tape.now);
+            Recall next = tape.queue.remove();
+            tape.now += READ_TIME;
+            tape.recalled.add(next);
+            scheduler.done(next, tape.now);
+        }
+
+        assertThat(tape.recalled.size(), is(greaterThan(100)));
+        assertThat(tape.now, is(lessThanOrEqualTo(TimeUnit.MINUTES.toMillis(10) + READ_TIME)));
+    }
+
+    @Test
+    public void shouldNotStarveVolumesWhileBusyVolumeHasBacklog()
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(1);
+        scheduler.setMaxAge(10, TimeUnit.MINUTES);
+
+        /* Volume A has a backlog at the end of the tape.
+         */
+        for (int i = 0; i < 10; i++) {
+            Recall recall = new Recall("A", 1000000 + i);
+            scheduler.add(recall, recall.getLocation(), 0);
+        }
+        Recall starving = new Recall("B", 1);
+        scheduler.add(starving, starving.getLocation(), TimeUnit.MINUTES.toMillis(1));
+        tape.now = TimeUnit.MINUTES.toMillis(1);
+
+        /* Keep volume A busy with new requests placed before its backlog,
+         * so that volume A always has pending requests.
+         */
+        long position = 999999;
+        while (!tape.recalled.contains(starving) && tape.recalled.size() < 10000) {
+            Recall recall = new Recall("A", position--);
+            scheduler.add(recall, recall.getLocation(), tape.now);
+            Recall next = tape.queue.remove();
+            tape.now += READ_TIME;
+            tape.recalled.add(next);
+            scheduler.done(next, tape.now);
+        }
+
+        assertThat(tape.recalled.contains(starving), is(true));
+        assertThat(scheduler.getPendingCount(), is(greaterThan(0)));
+        assertThat(tape.now, is(lessThanOrEqualTo(TimeUnit.MINUTES.toMillis(1 + 10 + 2))));
+    }
+
+    @Test
+    public void shouldNotReleaseRemovedRequests()
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(1);
+        Recall first = new Recall("A", 1);
+        Recall second = new Recall("A", 2);
+        scheduler.add(first, first.getLocation(), 0);
+        scheduler.add(second, second.getLocation(), 0);
+
+        assertThat(scheduler.remove(first), is(false));
+        assertThat(scheduler.remove(second), is(true));
+        tape.run(scheduler);
+
+        assertThat(tape.recalled, is(Collections.singletonList(first)));
+        assertThat(scheduler.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldReleasePendingRequestsWhenDisabled()
+    {
+        SimulatedTape tape = new SimulatedTape();
+        RecallScheduler<Recall> scheduler = new RecallScheduler<>(tape);
+        scheduler.setMaxActive(1);
+        for (Recall recall : campaign(10, 3, 100)) {
+            scheduler.add(recall, recall.getLocation(), 0);
+        }
+        assertThat(tape.queue.size(), is(1));
+
+        scheduler.setMaxActive(0);
+
+        assertThat(tape.queue.size(), is(10));
+        assertThat(scheduler.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void shouldOrderPositionsNumerically()
+    {
+        assertThat(TapeLocation.POSITION_ORDER.compare("0000_000000000_0000123", "0000_000000000_0001000"),
+                   is(lessThan(0)));
+        assertThat(TapeLocation.POSITION_ORDER.compare("99", "100"), is(lessThan(0)));
+        assertThat(TapeLocation.POSITION_ORDER.compare("b", "a"), is(greaterThan(0)));
+    }
+
+    @Test
+    public void shouldExtractLocationFromEnstoreUri()
+    {
+        GenericStorageInfo info = new GenericStorageInfo();
+        info.addLocation(URI.create("enstore://enstore/?volume=VOL001&location_cookie=0000_000000000_0000123&size=10"));
+
+        assertThat(TapeLocation.of(info),
+                   is(new TapeLocation("VOL001", "0000_000000000_0000123")));
+    }
+
+    @Test
+    public void shouldExtractLocationFromStorageInfoKeys()
+    {
+        GenericStorageInfo info = new GenericStorageInfo();
+        info.addLocation(URI.create("osm://osm/?store=test&group=disk&bfid=1234"));
+        info.setKey("volume", "VOL002");
+
+        assertThat(TapeLocation.of(info), is(new TapeLocation("VOL002", "")));
+    }
+
+    @Test
+    public void shouldNotExtractLocationWithoutVolume()
+    {
+        GenericStorageInfo info = new GenericStorageInfo();
+        info.addLocation(URI.create("osm://osm/?store=test&group=disk&bfid=1234"));
+
+        assertThat(TapeLocation.of(info), is(nullValue()));
+    }
+}
@@ -0,0 +1,482 @@
+package org.dcache.pool.nearline.tar;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+
+import diskCacheV111.util.CacheException;
+import diskCacheV111.util.PnfsId;
+import diskCacheV111.vehicles.GenericStorageInfo;
+
+import org.dcache.pool.nearline.spi.FlushRequest;
+import org.dcache.pool.nearline.spi.RemoveRequest;
+import org.dcache.pool.nearline.spi.StageRequest;
+import org.dcache.util.Checksum;
+import org.dcache.util.ChecksumType;
+import org.dcache.vehicles.FileAttributes;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TarNearlineStorageTest
+{
+    private static final int FILE_SIZE = 1000;
+
+    /** Space occupied by a file of FILE_SIZE bytes in a container. */
+    private static final int MEMBER_LENGTH = 512 + 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File pool;
+    private File tape;
+    private final List<TarNearlineStorage> storages = new ArrayList<>();
+    private int files;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        pool = folder.newFolder("pool");
+        tape = folder.newFolder("tape");
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (TarNearlineStorage storage : storages) {
+            storage.shutdown();
+        }
+    }
+
+    private TarNearlineStorage createStorage(long maxSize, long maxDelay, double compactionThreshold)
+    {
+        TarNearlineStorage storage = new TarNearlineStorage("tar", "tape");
+        storage.configure(ImmutableMap.of("directory", tape.getPath(),
+                                          "max-size", String.valueOf(maxSize),
+                                          "max-delay", String.valueOf(maxDelay),
+                                          "compaction-threshold", String.valueOf(compactionThreshold)));
+        storages.add(storage);
+        return storage;
+    }
+
+    private static class Request<T>
+    {
+        final UUID id = UUID.randomUUID();
+        final SettableFuture<T> result = SettableFuture.create();
+
+        public UUID getId()
+        {
+            return id;
+        }
+
+        public long getDeadline()
+        {
+            return Long.MAX_VALUE;
+        }
+
+        public ListenableFuture<Void> activate()
+        {
+            return Futures.immediateFuture(null);
+        }
+
+        public void failed(Exception cause)
+        {
+            result.setException(cause);
+        }
+
+        public void completed(T value)
+        {
+            result.set(value);
+        }
+
+        T get() throws Exception
+        {
+            return result.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class Flush extends Request<Set<URI>> implements FlushRequest
+    {
+        final File file;
+        final FileAttributes attributes;
+        final byte[] data;
+
+        Flush(File file, FileAttributes attributes, byte[] data)
+        {
+            this.file = file;
+            this.attributes = attributes;
+            this.data = data;
+        }
+
+        @Override
+        public File getFile()
+        {
+            return file;
+        }
+
+        @Override
+        public FileAttributes getFileAttributes()
+        {
+            return attributes;
+        }
+    }
+
+    private class Stage extends Request<Set<Checksum>> implements StageRequest
+    {
+        final File file;
+        final FileAttributes attributes;
+
+        Stage(Flush flush, Set<URI> locations)
+        {
+            file = new File(pool, "staged-" + flush.file.getName());
+            attributes = new FileAttributes();
+            attributes.setPnfsId(flush.attributes.getPnfsId());
+            GenericStorageInfo info = new GenericStorageInfo();
+            for (URI location : locations) {
+                info.addLocation(location);
+            }
+            attributes.setStorageInfo(info);
+        }
+
+        @Override
+        public File getFile()
+        {
+            return file;
+        }
+
+        @Override
+        public FileAttributes getFileAttributes()
+        {
+            return attributes;
+        }
+
+        @Override
+        public ListenableFuture<Void> allocate()
+        {
+            return Futures.immediateFuture(null);
+        }
+    }
+
+    private static class Remove extends Request<Void> implements RemoveRequest
+    {
+        final URI uri;
+
+        Remove(URI uri)
+        {
+            this.uri = uri;
+        }
+
+        @Override
+        public URI getUri()
+        {
+            return uri;
+        }
+    }
+
+    private Flush createFile(String adler32) throws IOException
+    {
+        int n = files++;
+        byte[] data = new byte[FILE_SIZE];
+        new Random(n).nextBytes(data);
+        PnfsId pnfsId = new PnfsId(String.format("0000%020X", n));
+        File file = new File(pool, pnfsId.toString());
+        Files.write(file.toPath(), data);
+
+        Adler32 checksum = new Adler32();
+        checksum.update(data);
+        FileAttributes attributes = new FileAttributes();
+        attributes.setPnfsId(pnfsId);
+        attributes.setStorageInfo(new GenericStorageInfo());
+        attributes.setChecksums(Collections.singleton(
+                new Checksum(ChecksumType.ADLER32,
+                             (adler32 == null) ? String.format("%08x", checksum.getValue()) : adler32)));
+        return new Flush(file, attributes, data);
+    }
+
+    private List<Flush> createFiles(int count) throws IOException
+    {
+        List<Flush> flushes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            flushes.add(createFile(null));
+        }
+        return flushes;
+    }
+
+    private Set<URI> flush(TarNearlineStorage storage, Flush flush) throws Exception
+    {
+        storage.flush(Collections.<FlushRequest>singletonList(flush));
+        return flush.get();
+    }
+
+    private Stage stage(TarNearlineStorage storage, Flush flush, Set<URI> locations)
+    {
+        Stage stage = new Stage(flush, locations);
+        storage.stage(Collections.<StageRequest>singletonList(stage));
+        return stage;
+    }
+
+    private void remove(TarNearlineStorage storage, URI uri) throws Exception
+    {
+        Remove remove = new Remove(uri);
+        storage.remove(Collections.<RemoveRequest>singletonList(remove));
+        remove.get();
+    }
+
+    private List<String> tapeFiles()
+    {
+        String[] names = tape.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    private static String containerOf(URI uri)
+    {
+        return uri.getPath().split("/")[1];
+    }
+
+    @Test
+    public void shouldSealContainerWhenReachingMaxSize() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(3 * MEMBER_LENGTH, 3600, 0.5);
+        List<Flush> flushes = createFiles(5);
+
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+
+        Set<URI> first = flushes.get(0).get();
+        assertThat(flushes.get(1).get().size(), is(1));
+        assertThat(flushes.get(2).get().size(), is(1));
+        assertThat(flushes.get(3).result.isDone(), is(false));
+        assertThat(flushes.get(4).result.isDone(), is(false));
+
+        URI uri = first.iterator().next();
+        assertThat(uri.getScheme(), is("tar"));
+        assertThat(uri.getAuthority(), is("tape"));
+        assertThat(uri.getPath(), endsWith("/" + flushes.get(0).attributes.getPnfsId()));
+        assertThat(containerOf(flushes.get(2).get().iterator().next()), is(containerOf(uri)));
+        assertThat(tapeFiles(), hasItems(containerOf(uri) + ".tar", containerOf(uri) + ".index"));
+    }
+
+    @Test
+    public void shouldSealContainerAfterMaxDelay() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(1L << 30, 1, 0.5);
+        Flush flush = createFile(null);
+
+        storage.flush(Collections.<FlushRequest>singletonList(flush));
+
+        assertThat(flush.result.isDone(), is(false));
+        assertThat(flush.get().size(), is(1));
+    }
+
+    @Test
+    public void shouldStageSingleMember() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(4 * MEMBER_LENGTH, 3600, 0.5);
+        List<Flush> flushes = createFiles(4);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        Set<URI> locations = flushes.get(2).get();
+
+        Stage stage = stage(storage, flushes.get(2), locations);
+
+        Set<Checksum> checksums = stage.get();
+        assertArrayEquals(flushes.get(2).data, Files.readAllBytes(stage.file.toPath()));
+        assertThat(checksums, is(flushes.get(2).attributes.getChecksums()));
+    }
+
+    @Test
+    public void shouldStageWithoutReadingOtherMembers() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(3 * MEMBER_LENGTH, 3600, 0.5);
+        List<Flush> flushes = createFiles(3);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        Set<URI> locations = flushes.get(2).get();
+        File container = new File(tape, containerOf(locations.iterator().next()) + ".tar");
+
+        /* Destroy the first two members. */
+        try (RandomAccessFile file = new RandomAccessFile(container, "rw")) {
+            file.write(new byte[2 * MEMBER_LENGTH]);
+        }
+
+        Stage stage = stage(storage, flushes.get(2), locations);
+
+        stage.get();
+        assertArrayEquals(flushes.get(2).data, Files.readAllBytes(stage.file.toPath()));
+    }
+
+    @Test
+    public void shouldFailStageOnChecksumMismatch() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(MEMBER_LENGTH, 3600, 0.5);
+        Flush flush = createFile(null);
+        Set<URI> locations = flush(storage, flush);
+        File container = new File(tape, containerOf(locations.iterator().next()) + ".tar");
+
+        try (RandomAccessFile file = new RandomAccessFile(container, "rw")) {
+            file.seek(512 + 100);
+            file.write(~flush.data[100]);
+        }
+
+        try {
+            stage(storage, flush, locations).get();
+            fail("Corrupted member was staged");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(CacheException.class)));
+            assertThat(e.getCause().getMessage(), containsString("Checksum mismatch"));
+        }
+    }
+
+    @Test
+    public void shouldFailFlushOnChecksumMismatch() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(2 * MEMBER_LENGTH, 3600, 0.5);
+        Flush corrupted = createFile("00000001");
+        Flush good = createFile(null);
+
+        storage.flush(Arrays.<FlushRequest>asList(corrupted, good));
+
+        try {
+            corrupted.get();
+            fail("Corrupted file was flushed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), containsString("Checksum mismatch"));
+        }
+        Set<URI> locations = good.get();
+        stage(storage, good, locations).get();
+
+        /* The member of the corrupted file is marked as removed. */
+        TarIndex index = TarIndex.read(tape, containerOf(locations.iterator().next()));
+        assertThat(index.get(corrupted.attributes.getPnfsId().toString()), is(nullValue()));
+        assertThat(index.getLiveFraction(), is(0.5));
+    }
+
+    @Test
+    public void shouldPersistIndex() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(2 * MEMBER_LENGTH, 3600, 0.1);
+        List<Flush> flushes = createFiles(2);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        URI removed = flushes.get(0).get().iterator().next();
+        Set<URI> locations = flushes.get(1).get();
+        remove(storage, removed);
+
+        TarNearlineStorage restarted = createStorage(2 * MEMBER_LENGTH, 3600, 0.1);
+
+        stage(restarted, flushes.get(1), locations).get();
+        try {
+            stage(restarted, flushes.get(0), Collections.singleton(removed)).get();
+            fail("Removed file was staged");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), containsString("File not found"));
+        }
+    }
+
+    @Test
+    public void shouldRecoverMissingIndex() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(2 * MEMBER_LENGTH, 3600, 0.5);
+        List<Flush> flushes = createFiles(2);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        Set<URI> locations = flushes.get(1).get();
+        String container = containerOf(locations.iterator().next());
+        Files.delete(TarIndex.getIndexFile(tape, container).toPath());
+
+        TarNearlineStorage restarted = createStorage(2 * MEMBER_LENGTH, 3600, 0.5);
+        Stage stage = stage(restarted, flushes.get(1), locations);
+
+        stage.get();
+        assertArrayEquals(flushes.get(1).data, Files.readAllBytes(stage.file.toPath()));
+        assertThat(TarIndex.getIndexFile(tape, container).exists(), is(true));
+    }
+
+    @Test
+    public void shouldCompactMostlyRemovedContainer() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(4 * MEMBER_LENGTH, 3600, 0.5);
+        List<Flush> flushes = createFiles(4);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        List<Set<URI>> locations = new ArrayList<>();
+        for (Flush flush : flushes) {
+            locations.add(flush.get());
+        }
+        String container = containerOf(locations.get(0).iterator().next());
+
+        remove(storage, locations.get(0).iterator().next());
+        remove(storage, locations.get(2).iterator().next());
+        assertThat(tapeFiles(), contains(container + ".index", container + ".tar"));
+
+        remove(storage, locations.get(3).iterator().next());
+        assertThat(tapeFiles(), contains(container + ".1.tar", container + ".index"));
+        assertThat(new File(tape, container + ".1.tar").length(), is(MEMBER_LENGTH + 1024L));
+
+        Stage stage = stage(storage, flushes.get(1), locations.get(1));
+        stage.get();
+        assertArrayEquals(flushes.get(1).data, Files.readAllBytes(stage.file.toPath()));
+
+        TarIndex index = TarIndex.read(tape, container);
+        assertThat(index.getGeneration(), is(1));
+        assertThat(index.getLiveFraction(), is(1.0));
+        assertThat(index.get(flushes.get(1).attributes.getPnfsId().toString()).getOffset(), is(512L));
+    }
+
+    @Test
+    public void shouldDeleteEmptyContainer() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(2 * MEMBER_LENGTH, 3600, 0);
+        List<Flush> flushes = createFiles(2);
+        storage.flush(new ArrayList<FlushRequest>(flushes));
+        URI first = flushes.get(0).get().iterator().next();
+        URI second = flushes.get(1).get().iterator().next();
+
+        remove(storage, first);
+        assertThat(tapeFiles().size(), is(2));
+        remove(storage, second);
+        assertThat(tapeFiles(), is(empty()));
+
+        /* Removal is idempotent. */
+        remove(storage, second);
+    }
+
+    @Test
+    public void shouldFailCancelledFlush() throws Exception
+    {
+        TarNearlineStorage storage = createStorage(1L << 30, 1, 0.5);
+        List<Flush> flushes = createFiles(2);
+        storage.flush(Collections.<FlushRequest>singletonList(flushes.get(0)));
+        storage.cancel(flushes.get(0).getId());
+        storage.flush(Collections.<FlushRequest>singletonList(flushes.get(1)));
+
+        try {
+            flushes.get(0).get();
+            fail("Cancelled flush succeeded");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(CancellationException.class)));
+        }
+        Set<URI> locations = flushes.get(1).get();
+        stage(storage, flushes.get(1), locations).get();
+    }
+}
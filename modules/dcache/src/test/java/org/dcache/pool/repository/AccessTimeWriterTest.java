@@ -0,0 +1,84 @@
+package org.dcache.pool.repository;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AccessTimeWriterTest
+{
+    private static final long TIME = 1400000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AccessTimeWriter writer;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        writer = new AccessTimeWriter();
+        file = folder.newFile();
+        file.setLastModified(TIME - 60000);
+    }
+
+    @Test
+    public void shouldNotUpdateFileBeforeFlush()
+    {
+        writer.touch(file, TIME);
+
+        assertThat(file.lastModified(), is(TIME - 60000));
+        assertThat(writer.getLastAccessTime(file, 0), is(TIME));
+        assertThat(writer.getPending(), is(1));
+    }
+
+    @Test
+    public void shouldUpdateFileOnFlush()
+    {
+        writer.touch(file, TIME);
+        writer.flush();
+
+        assertThat(file.lastModified(), is(TIME));
+        assertThat(writer.getPending(), is(0));
+        assertThat(writer.getLastAccessTime(file, 42), is(42L));
+    }
+
+    @Test
+    public void shouldWriteMostRecentAccessOnly()
+    {
+        writer.touch(file, TIME - 1000);
+        writer.touch(file, TIME);
+
+        assertThat(writer.getPending(), is(1));
+        writer.flush();
+        assertThat(file.lastModified(), is(TIME));
+    }
+
+    @Test
+    public void shouldNotRecreateRemovedFile()
+    {
+        writer.touch(file, TIME);
+        file.delete();
+        writer.flush();
+
+        assertThat(file.exists(), is(false));
+        assertThat(writer.getPending(), is(0));
+    }
+
+    @Test
+    public void shouldDiscardForgottenAccess()
+    {
+        writer.touch(file, TIME);
+        writer.forget(file);
+        writer.flush();
+
+        assertThat(file.lastModified(), is(TIME - 60000));
+    }
+}
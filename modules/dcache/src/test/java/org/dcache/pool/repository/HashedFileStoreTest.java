@@ -0,0 +1,106 @@
+package org.dcache.pool.repository;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import diskCacheV111.util.PnfsId;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class HashedFileStoreTest
+{
+    private static final PnfsId ID1 = new PnfsId("000000000000000000000000000000000001");
+    private static final PnfsId ID2 = new PnfsId("000000000000000000000000000000000002");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseDir;
+
+    @Before
+    public void setUp()
+    {
+        baseDir = folder.getRoot();
+    }
+
+    @Test
+    public void shouldPlaceFilesInSubdirectories() throws IOException
+    {
+        HashedFileStore store = new HashedFileStore(baseDir, 16);
+
+        File file = store.get(ID1);
+
+        assertThat(file.getName(), is(ID1.toString()));
+        assertThat(file.getParentFile().getParentFile(), is(new File(baseDir, "data")));
+        assertThat(file.getParentFile().isDirectory(), is(true));
+        assertThat(store.get(ID1), is(file));
+    }
+
+    @Test
+    public void shouldListFilesOfAllSubdirectories() throws IOException
+    {
+        HashedFileStore store = new HashedFileStore(baseDir, 16);
+        store.get(ID1).createNewFile();
+        store.get(ID2).createNewFile();
+
+        assertThat(store.list(), containsInAnyOrder(ID1, ID2));
+    }
+
+    @Test
+    public void shouldRecordFanOut() throws IOException
+    {
+        new HashedFileStore(baseDir, 16);
+
+        assertThat(HashedFileStore.getFanOut(baseDir), is(16));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectChangedFanOut() throws IOException
+    {
+        new HashedFileStore(baseDir, 16);
+        new HashedFileStore(baseDir, 256);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotOpenHashedLayoutAsFlat() throws IOException
+    {
+        new HashedFileStore(baseDir, 16);
+        new FlatFileStore(baseDir);
+    }
+
+    @Test
+    public void shouldMoveFlatFileWhenAccessed() throws IOException
+    {
+        new FlatFileStore(baseDir).get(ID1).createNewFile();
+        HashedFileStore store = new HashedFileStore(baseDir, 16);
+
+        assertThat(store.list(), contains(ID1));
+        assertThat(store.get(ID1).exists(), is(true));
+        assertThat(new File(new File(baseDir, "data"), ID1.toString()).exists(), is(false));
+    }
+
+    @Test
+    public void shouldMigrateFlatLayout() throws Exception
+    {
+        FlatFileStore flat = new FlatFileStore(baseDir);
+        flat.get(ID1).createNewFile();
+        flat.get(ID2).createNewFile();
+
+        HashedFileStore store = new HashedFileStore(baseDir, 16);
+        store.start();
+        for (int i = 0; i < 100 && new File(new File(baseDir, "data"), ID2.toString()).exists(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertThat(new File(new File(baseDir, "data"), ID1.toString()).exists(), is(false));
+        assertThat(new File(new File(baseDir, "data"), ID2.toString()).exists(), is(false));
+        assertThat(store.list(), containsInAnyOrder(ID1, ID2));
+        store.stop();
+    }
+}
@@ -0,0 +1,136 @@
+package org.dcache.pool.repository;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import diskCacheV111.util.PnfsId;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ReadCacheTierTest
+{
+    private static final PnfsId ID1 = new PnfsId("000000000000000000000000000000000001");
+    private static final PnfsId ID2 = new PnfsId("000000000000000000000000000000000002");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File tierDir;
+    private File file1;
+    private File file2;
+    private ReadCacheTier tier;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        tierDir = folder.newFolder("tier");
+        file1 = folder.newFile("file1");
+        file2 = folder.newFile("file2");
+        Files.write("0123456789", file1, Charsets.US_ASCII);
+        Files.write("abcdefghij", file2, Charsets.US_ASCII);
+        tier = new ReadCacheTier(tierDir.getPath(), "15", 2);
+        tier.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        tier.stop();
+    }
+
+    /**
+     * Reads a replica until it is served from the tier.
+     */
+    private File promote(PnfsId id, File file) throws InterruptedException
+    {
+        for (int i = 0; i < 1000; i++) {
+            File copy = tier.open(id, file, file.length());
+            if (copy != null) {
+                return copy;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Replica was not promoted");
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutPath()
+    {
+        ReadCacheTier disabled = new ReadCacheTier("", "1m", 1);
+        assertThat(disabled.isEnabled(), is(false));
+    }
+
+    @Test
+    public void shouldNotServeReplicaReadOnce()
+    {
+        assertThat(tier.open(ID1, file1, file1.length()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldServeCopyOfFrequentlyReadReplica() throws Exception
+    {
+        File copy = promote(ID1, file1);
+
+        assertThat(copy.getParentFile(), is(tierDir));
+        assertThat(Files.toString(copy, Charsets.US_ASCII), is("0123456789"));
+    }
+
+    @Test
+    public void shouldDeleteCopyWhenReplicaIsRemoved() throws Exception
+    {
+        File copy = promote(ID1, file1);
+        tier.close(ID1);
+
+        tier.remove(ID1);
+
+        assertThat(copy.exists(), is(false));
+        assertThat(tier.open(ID1, file1, file1.length()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyReadCopy() throws Exception
+    {
+        File copy1 = promote(ID1, file1);
+        tier.close(ID1);
+
+        File copy2 = promote(ID2, file2);
+
+        assertThat(copy1.exists(), is(false));
+        assertThat(copy2.exists(), is(true));
+    }
+
+    @Test
+    public void shouldNotEvictCopyInUse() throws Exception
+    {
+        File copy1 = promote(ID1, file1);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(tier.open(ID2, file2, file2.length()), is(nullValue()));
+        }
+        Thread.sleep(100);
+
+        assertThat(copy1.exists(), is(true));
+    }
+
+    @Test
+    public void shouldEmptyDirectoryOnStart() throws Exception
+    {
+        tier.stop();
+        File stale = new File(tierDir, ID1.toString());
+        Files.write("stale", stale, Charsets.US_ASCII);
+
+        tier = new ReadCacheTier(tierDir.getPath(), "15", 2);
+        tier.start();
+
+        assertThat(stale.exists(), is(false));
+    }
+}
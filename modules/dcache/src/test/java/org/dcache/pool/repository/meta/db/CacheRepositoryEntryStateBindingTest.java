@@ -0,0 +1,121 @@
+package org.dcache.pool.repository.meta.db;
+
+import com.sleepycat.bind.serial.SerialBinding;
+import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.dcache.pool.repository.EntryState;
+import org.dcache.pool.repository.StickyRecord;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class CacheRepositoryEntryStateBindingTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Environment environment;
+    private StoredClassCatalog catalog;
+    private CacheRepositoryEntryStateBinding binding;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        environment = new Environment(folder.getRoot(), envConfig);
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        catalog = new StoredClassCatalog(environment.openDatabase(null, "catalog", dbConfig));
+        binding = new CacheRepositoryEntryStateBinding(catalog);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        catalog.close();
+        environment.close();
+    }
+
+    @Test
+    public void shouldRoundTripStateAndStickyRecords()
+    {
+        CacheRepositoryEntryState state =
+                new CacheRepositoryEntryState(EntryState.CACHED,
+                        Arrays.asList(new StickyRecord("system", StickyRecord.NON_EXPIRING),
+                                      new StickyRecord("pin", 1400000000000L)));
+
+        CacheRepositoryEntryState copy = roundTrip(state);
+
+        assertThat(copy.getState(), is(EntryState.CACHED));
+        assertThat(copy.stickyRecords(),
+                   containsInAnyOrder(new StickyRecord("system", StickyRecord.NON_EXPIRING),
+                                      new StickyRecord("pin", 1400000000000L)));
+        assertThat(copy.dirty(), is(false));
+    }
+
+    @Test
+    public void shouldRoundTripAllStates()
+    {
+        for (EntryState state : EntryState.values()) {
+            CacheRepositoryEntryState copy =
+                    roundTrip(new CacheRepositoryEntryState(state, Collections.<StickyRecord>emptyList()));
+            assertThat(copy.getState(), is(state));
+        }
+    }
+
+    @Test
+    public void shouldBeMoreCompactThanSerialization()
+    {
+        CacheRepositoryEntryState state =
+                new CacheRepositoryEntryState(EntryState.PRECIOUS,
+                        Collections.singletonList(new StickyRecord("system", StickyRecord.NON_EXPIRING)));
+        DatabaseEntry compact = new DatabaseEntry();
+        DatabaseEntry serial = new DatabaseEntry();
+
+        binding.objectToEntry(state, compact);
+        legacyBinding().objectToEntry(state, serial);
+
+        assertThat(compact.getSize(), is(lessThan(serial.getSize())));
+    }
+
+    @Test
+    public void shouldReadSerializedState()
+    {
+        CacheRepositoryEntryState state =
+                new CacheRepositoryEntryState(EntryState.PRECIOUS,
+                        Collections.singletonList(new StickyRecord("system", StickyRecord.NON_EXPIRING)));
+        DatabaseEntry entry = new DatabaseEntry();
+        legacyBinding().objectToEntry(state, entry);
+
+        CacheRepositoryEntryState copy = binding.entryToObject(entry);
+
+        assertThat(copy.getState(), is(EntryState.PRECIOUS));
+        assertThat(copy.stickyRecords(),
+                   contains(new StickyRecord("system", StickyRecord.NON_EXPIRING)));
+    }
+
+    private SerialBinding<CacheRepositoryEntryState> legacyBinding()
+    {
+        return new SerialBinding<>(catalog, CacheRepositoryEntryState.class);
+    }
+
+    private CacheRepositoryEntryState roundTrip(CacheRepositoryEntryState state)
+    {
+        DatabaseEntry entry = new DatabaseEntry();
+        binding.objectToEntry(state, entry);
+        return binding.entryToObject(entry);
+    }
+}
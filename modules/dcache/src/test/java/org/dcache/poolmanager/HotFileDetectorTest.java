@@ -0,0 +1,76 @@
+package org.dcache.poolmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import diskCacheV111.util.PnfsId;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HotFileDetectorTest
+{
+    private static final PnfsId HOT = new PnfsId("000000000000000000000000000000000001");
+    private static final PnfsId COLD = new PnfsId("000000000000000000000000000000000002");
+
+    private HotFileDetector detector;
+
+    @Before
+    public void setUp()
+    {
+        detector = new HotFileDetector(1024);
+        detector.setThreshold(3);
+        detector.setMaxReplicas(2);
+        detector.setDecayPeriod(60, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldNotReplicateWhenDisabled()
+    {
+        detector.setThreshold(0);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(detector.shouldReplicate(HOT, 1, 1000));
+        }
+    }
+
+    @Test
+    public void shouldReplicateOnceThresholdIsReached()
+    {
+        assertFalse(detector.shouldReplicate(HOT, 1, 1000));
+        assertFalse(detector.shouldReplicate(HOT, 1, 1001));
+        assertTrue(detector.shouldReplicate(HOT, 1, 1002));
+        assertFalse(detector.shouldReplicate(COLD, 1, 1003));
+    }
+
+    @Test
+    public void shouldReplicateAtMostOncePerDecayPeriod()
+    {
+        detector.shouldReplicate(HOT, 1, 1000);
+        detector.shouldReplicate(HOT, 1, 1000);
+        assertTrue(detector.shouldReplicate(HOT, 1, 1000));
+        assertFalse(detector.shouldReplicate(HOT, 1, 2000));
+        assertFalse(detector.shouldReplicate(HOT, 1, 3000));
+    }
+
+    @Test
+    public void shouldNotExceedMaximumReplicas()
+    {
+        detector.shouldReplicate(HOT, 2, 1000);
+        detector.shouldReplicate(HOT, 2, 1000);
+        assertFalse(detector.shouldReplicate(HOT, 2, 1000));
+        assertTrue(detector.shouldReplicate(HOT, 1, 1000));
+    }
+
+    @Test
+    public void shouldForgetFilesNoLongerRead()
+    {
+        detector.shouldReplicate(HOT, 1, 1000);
+        detector.shouldReplicate(HOT, 1, 1000);
+        detector.shouldReplicate(HOT, 1, 1000);
+
+        long now = 1000 + TimeUnit.MINUTES.toMillis(3);
+        assertFalse(detector.shouldReplicate(HOT, 1, now));
+    }
+}
@@ -9,6 +9,7 @@ import diskCacheV111.poolManager.CostModuleV1;
 import diskCacheV111.pools.CostCalculationV5;
 import diskCacheV111.pools.PoolCostInfo;
 import diskCacheV111.pools.PoolV2Mode;
+import diskCacheV111.vehicles.PoolManagerPoolCostMessage;
 import diskCacheV111.vehicles.PoolManagerPoolUpMessage;
 
 import dmg.cells.nucleus.CellAddressCore;
@@ -158,6 +159,44 @@ public class CostModuleTest {
     }
 
 
+    @Test
+    public void testPoolUpThenCostUpdate() {
+        PoolManagerPoolUpMessage poolUp = buildPoolUpMessageWithCost( POOL_NAME, 100, 20, 30, 50);
+        _costModule.messageArrived(buildEnvelope(POOL_ADDRESS), poolUp);
+
+        PoolCostInfo newCost = new PoolCostInfo( POOL_NAME);
+        newCost.setSpaceUsage( 100 * BYTES_IN_GIGABYTE, 10 * BYTES_IN_GIGABYTE,
+                               30 * BYTES_IN_GIGABYTE, 60 * BYTES_IN_GIGABYTE);
+        _costModule.messageArrived(
+                new PoolManagerPoolCostMessage( POOL_NAME, poolUp.getSerialId(), newCost));
+
+        assertPoolSpaceInfo( "pool", _costModule.getPoolCostInfo( POOL_NAME).getSpaceInfo(),
+                             100, 10, 60, 30);
+    }
+
+    @Test
+    public void testCostUpdateFromOtherIncarnationIsIgnored() {
+        PoolManagerPoolUpMessage poolUp = buildPoolUpMessageWithCost( POOL_NAME, 100, 20, 30, 50);
+        _costModule.messageArrived(buildEnvelope(POOL_ADDRESS), poolUp);
+
+        PoolCostInfo newCost = new PoolCostInfo( POOL_NAME);
+        newCost.setSpaceUsage( 100 * BYTES_IN_GIGABYTE, 10 * BYTES_IN_GIGABYTE,
+                               30 * BYTES_IN_GIGABYTE, 60 * BYTES_IN_GIGABYTE);
+        _costModule.messageArrived(
+                new PoolManagerPoolCostMessage( POOL_NAME, poolUp.getSerialId() + 1, newCost));
+
+        assertPoolSpaceInfo( "pool", _costModule.getPoolCostInfo( POOL_NAME).getSpaceInfo(),
+                             100, 20, 50, 30);
+    }
+
+    @Test
+    public void testCostUpdateForUnknownPoolIsIgnored() {
+        PoolCostInfo newCost = new PoolCostInfo( POOL_NAME);
+        _costModule.messageArrived(new PoolManagerPoolCostMessage( POOL_NAME, 1, newCost));
+
+        assertNull( "cost update must not add a pool", _costModule.getPoolCostInfo( POOL_NAME));
+    }
+
     @Test
     public void testTwoPoolsThenPercentile() {
 
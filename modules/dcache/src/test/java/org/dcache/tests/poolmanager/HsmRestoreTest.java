@@ -180,6 +180,8 @@ public class HsmRestoreTest {
 
 
         assertEquals("No stage request sent to pools", 1, stageRequests.get());
+        assertTrue("Request not counted as waiting for staging",
+                   _rc.ac_rc_ls_$_0_1(new Args("-s")).contains("ST_WAITING_FOR_STAGING 1\n"));
 
     }
 
@@ -15,6 +15,7 @@ import dmg.cells.nucleus.CellMessageReceiver;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CellMessageDispatcherTest
 {
@@ -101,6 +102,34 @@ public class CellMessageDispatcherTest
         }
     }
 
+    public class Listener3 implements CellMessageReceiver
+    {
+        int delivered;
+
+        public void messageArrived(CellMessage envelope, Message4 o)
+        {
+            assertEquals(delivered, 0);
+            delivered = 4;
+        }
+
+        public void messageArrived(Message5 o)
+        {
+            assertEquals(delivered, 0);
+            delivered = 5;
+        }
+
+        public void messageArrived(CellMessage envelope, Message6 o)
+        {
+            assertEquals(delivered, 0);
+            delivered = 6;
+        }
+
+        public void messageArrived(Message6 o)
+        {
+            fail("Receiver without envelope must not be preferred over equally specific receiver with envelope");
+        }
+    }
+
     public class Listener2 implements CellMessageReceiver
     {
         int delivered;
@@ -216,4 +245,32 @@ public class CellMessageDispatcherTest
         deliver(message9, 9, 9);
     }
 
+    @Test
+    public void testDeliverMostSpecificAcrossSignatures()
+    {
+        Listener3 listener3 = new Listener3();
+        dispatcher.addMessageListener(listener3);
+
+        deliver(message5, 5, 4);
+        assertEquals(5, listener3.delivered);
+    }
+
+    @Test
+    public void testDeliverPrefersEnvelopeForEquallySpecific()
+    {
+        CellMessageDispatcher dispatcher = new CellMessageDispatcher("messageArrived");
+        Listener3 listener3 = new Listener3();
+        dispatcher.addMessageListener(listener3);
+
+        dispatcher.call(new CellMessage(new CellPath(""), message6));
+        assertEquals(6, listener3.delivered);
+    }
+
+    @Test
+    public void testRemovedListenerIsNotDelivered()
+    {
+        dispatcher.removeMessageListener(listener2);
+
+        deliver(message3, 3, 0);
+    }
 }
@@ -0,0 +1,107 @@
+package org.dcache.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class FrequencySketchTest
+{
+    private static final int ITEMS = 10000;
+    private static final int READS = 200000;
+
+    /**
+     * Returns a stream of item indices following a Zipf distribution
+     * with exponent 1.
+     */
+    private static int[] zipf(long seed)
+    {
+        double[] cdf = new double[ITEMS];
+        double sum = 0;
+        for (int i = 0; i < ITEMS; i++) {
+            sum += 1.0 / (i + 1);
+            cdf[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] stream = new int[READS];
+        for (int i = 0; i < READS; i++) {
+            double x = random.nextDouble() * sum;
+            int index = Arrays.binarySearch(cdf, x);
+            stream[i] = (index >= 0) ? index : -index - 1;
+        }
+        return stream;
+    }
+
+    @Test
+    public void shouldCountSingleElement()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        assertEquals(0, sketch.estimate("a"));
+        assertEquals(1, sketch.increment("a"));
+        assertEquals(2, sketch.increment("a"));
+        assertEquals(2, sketch.estimate("a"));
+    }
+
+    @Test
+    public void shouldRoundWidthToPowerOfTwo()
+    {
+        assertEquals(4 * 1024 * 4, new FrequencySketch(1000).getMemoryUsage());
+    }
+
+    @Test
+    public void shouldHalveCounts()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        sketch.halve();
+        assertEquals(2, sketch.estimate("a"));
+        sketch.halve();
+        sketch.halve();
+        assertEquals(0, sketch.estimate("a"));
+    }
+
+    @Test
+    public void shouldNeverUnderestimateZipfStream()
+    {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        int[] counts = new int[ITEMS];
+        for (int item : zipf(42)) {
+            counts[item]++;
+            sketch.increment(item);
+        }
+        for (int i = 0; i < ITEMS; i++) {
+            assertThat(sketch.estimate(i), is(greaterThanOrEqualTo(counts[i])));
+        }
+    }
+
+    @Test
+    public void shouldSeparateHotFromColdItemsOfZipfStream()
+    {
+        int threshold = 1000;
+        FrequencySketch sketch = new FrequencySketch(1024);
+        int[] counts = new int[ITEMS];
+        for (int item : zipf(7)) {
+            counts[item]++;
+            sketch.increment(item);
+        }
+
+        int cold = 0;
+        int falsePositives = 0;
+        for (int i = 0; i < ITEMS; i++) {
+            if (counts[i] < threshold / 2) {
+                cold++;
+                if (sketch.estimate(i) >= threshold) {
+                    falsePositives++;
+                }
+            }
+        }
+        assertThat(cold, is(greaterThan(ITEMS - 100)));
+        assertThat(falsePositives, is(lessThan(cold / 1000)));
+    }
+}
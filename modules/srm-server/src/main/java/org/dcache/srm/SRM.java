@@ -1032,6 +1032,11 @@ public class SRM {
         return schedulers.getInfo();
     }
 
+    public CharSequence getDatabaseInfo()
+    {
+        return databaseFactory.getInfo();
+    }
+
     public CharSequence getGetSchedulerInfo()
     {
         return schedulers.getDetailedInfo(GetFileRequest.class);
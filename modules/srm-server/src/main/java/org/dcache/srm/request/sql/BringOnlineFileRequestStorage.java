@@ -20,6 +20,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.request.BringOnlineFileRequest;
@@ -117,10 +118,12 @@ public class BringOnlineFileRequestStorage extends DatabaseFileRequestStorage<Br
     }
 
     public PreparedStatement getStatement(Connection connection,
+                                          Map<String,PreparedStatement> statements,
                                           String query,
                                           Job fr) throws SQLException {
         BringOnlineFileRequest gfr = (BringOnlineFileRequest)fr;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   query,
                                   gfr.getNextJobId(),
                                   gfr.getCreationTime(),
@@ -152,9 +155,10 @@ public class BringOnlineFileRequestStorage extends DatabaseFileRequestStorage<Br
             ", PINID=? WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+                                                Map<String,PreparedStatement> statements,
                                                 Job fr)
         throws SQLException {
-        return getStatement(connection,UPDATE_REQUEST_SQL, fr);
+        return getStatement(connection, statements, UPDATE_REQUEST_SQL, fr);
     }
 
     private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -25,6 +25,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -115,9 +116,11 @@ public class BringOnlineRequestStorage extends DatabaseContainerRequestStorage<B
                 " WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         BringOnlineRequest bor = (BringOnlineRequest)job;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   bor.getNextJobId(),
                                   bor.getCreationTime(),
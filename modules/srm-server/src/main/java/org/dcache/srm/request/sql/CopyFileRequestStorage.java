@@ -17,6 +17,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.request.CopyFileRequest;
@@ -42,10 +43,12 @@ public class CopyFileRequestStorage extends DatabaseFileRequestStorage<CopyFileR
         "LASTSTATETRANSITIONTIME=? ";//10
 
     public PreparedStatement getStatement(Connection connection,
+                                          Map<String,PreparedStatement> statements,
                                           String query,
                                           Job job) throws SQLException {
         CopyFileRequest request = (CopyFileRequest)job;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   query,
                                   request.getNextJobId(),
                                   request.getCreationTime(),
@@ -97,13 +100,14 @@ public class CopyFileRequestStorage extends DatabaseFileRequestStorage<CopyFileR
 
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+                                                Map<String,PreparedStatement> statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof CopyFileRequest)) {
             throw new IllegalArgumentException("job is not CopyFileRequest" );
         }
         CopyFileRequest request = (CopyFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(connection, statements, UPDATE_REQUEST_SQL, request);
     }
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
             "ID ,"+
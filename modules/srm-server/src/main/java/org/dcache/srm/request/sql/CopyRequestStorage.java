@@ -13,6 +13,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -124,6 +125,7 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
 
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         CopyRequest cr = (CopyRequest)job;
         String storageTypeValue=null;
@@ -139,6 +141,7 @@ public class CopyRequestStorage extends DatabaseContainerRequestStorage<CopyRequ
             accessLatencyValue = cr.getTargetAccessLatency().getValue();
         }
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   cr.getNextJobId(),
                                   cr.getCreationTime(),
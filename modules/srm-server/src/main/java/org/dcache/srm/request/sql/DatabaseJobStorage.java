@@ -67,6 +67,8 @@ COPYRIGHT STATUS:
 package org.dcache.srm.request.sql;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
 import org.slf4j.Logger;
@@ -90,10 +92,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -397,7 +403,8 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         try {
             job.rlock();
             try {
-                updateStatement = getUpdateStatement(connection, job);
+                updateStatement = getUpdateStatement(connection,
+                        new HashMap<String,PreparedStatement>(), job);
             } finally {
                 job.runlock();
             }
@@ -407,6 +414,51 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         }
     }
 
+    /**
+     * Updates the given jobs using one JDBC batch per update statement.
+     *
+     * @return the jobs for which no row was updated, i.e. jobs that need to be created
+     */
+    private List<Job> updateJobs(Connection connection, Collection<? extends Job> jobs)
+            throws SQLException
+    {
+        Map<String,PreparedStatement> statements = new HashMap<>();
+        ListMultimap<PreparedStatement, Job> batches = ArrayListMultimap.create();
+        try {
+            for (Job job : jobs) {
+                PreparedStatement updateStatement;
+                job.rlock();
+                try {
+                    updateStatement = getUpdateStatement(connection, statements, job);
+                } finally {
+                    job.runlock();
+                }
+                updateStatement.addBatch();
+                batches.put(updateStatement, job);
+            }
+
+            List<Job> missing = new ArrayList<>();
+            for (PreparedStatement updateStatement : batches.keySet()) {
+                List<Job> batch = batches.get(updateStatement);
+                int[] rowCounts = updateStatement.executeBatch();
+                for (int i = 0; i < rowCounts.length; i++) {
+                    Job job = batch.get(i);
+                    if (rowCounts[i] == 0) {
+                        missing.add(job);
+                    } else if (rowCounts[i] == Statement.SUCCESS_NO_INFO && updateJob(connection, job) == 0) {
+                        // Driver does not report row counts for batches
+                        missing.add(job);
+                    }
+                }
+            }
+            return missing;
+        } finally {
+            for (PreparedStatement updateStatement : statements.values()) {
+                SqlHelper.tryToClose(updateStatement);
+            }
+        }
+    }
+
     private void createJob(Connection connection, Job job) throws SQLException
     {
         PreparedStatement createStatement = null;
@@ -431,17 +483,25 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
 
     private void saveHistory(Connection connection, Job job,
                              List<Job.JobHistory> history) throws SQLException
+    {
+        saveHistory(connection, Collections.singletonMap(job, history));
+    }
+
+    private void saveHistory(Connection connection, Map<Job, List<Job.JobHistory>> histories)
+            throws SQLException
     {
         PreparedStatement stmt =
                 connection.prepareStatement("INSERT INTO " + getHistoryTableName() + " VALUES (?,?,?,?,?)");
         try {
-            for (Job.JobHistory element : history) {
-                stmt.setLong(1, element.getId());
-                stmt.setLong(2, job.getId());
-                stmt.setInt(3, element.getState().getStateId());
-                stmt.setLong(4, element.getTransitionTime());
-                stmt.setString(5, element.getDescription());
-                stmt.addBatch();
+            for (Map.Entry<Job, List<Job.JobHistory>> entry : histories.entrySet()) {
+                for (Job.JobHistory element : entry.getValue()) {
+                    stmt.setLong(1, element.getId());
+                    stmt.setLong(2, entry.getKey().getId());
+                    stmt.setInt(3, element.getState().getStateId());
+                    stmt.setLong(4, element.getTransitionTime());
+                    stmt.setString(5, element.getDescription());
+                    stmt.addBatch();
+                }
             }
             stmt.executeBatch();
         } finally {
@@ -498,6 +558,53 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         markHistoryAsSaved(history);
     }
 
+    /**
+     * Saves several jobs in a single transaction. Updates of existing jobs and
+     * inserts of new history records are submitted as JDBC batches, thus a
+     * batch of jobs costs a few round trips and a single commit.
+     *
+     * Unlike {@link #saveJob}, the jobs are saved irrespective of whether
+     * request history logging is enabled.
+     */
+    public void saveJobs(final Collection<? extends J> jobs) throws DataAccessException
+    {
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        final Map<Job, List<Job.JobHistory>> histories = new LinkedHashMap<>();
+        for (J job : jobs) {
+            List<Job.JobHistory> history = getJobHistoriesToSave(job);
+            if (!history.isEmpty()) {
+                histories.put(job, history);
+            }
+        }
+        transactionTemplate.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                return jdbcTemplate.execute(new ConnectionCallback<Void>()
+                {
+                    @Override
+                    public Void doInConnection(Connection con) throws SQLException, DataAccessException
+                    {
+                        for (Job job : updateJobs(con, jobs)) {
+                            createJob(con, job);
+                        }
+                        if (!histories.isEmpty()) {
+                            saveHistory(con, histories);
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+        for (List<Job.JobHistory> history : histories.values()) {
+            markHistoryAsSaved(history);
+        }
+    }
+
     protected PreparedStatement getBatchCreateStatement(Connection connection, Job job)
             throws SQLException
     {
@@ -505,7 +612,16 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
     }
 
     public abstract PreparedStatement getCreateStatement(Connection connection, Job job) throws SQLException;
-    public abstract PreparedStatement getUpdateStatement(Connection connection, Job job) throws SQLException;
+
+    /**
+     * Returns a statement updating the job. The statement is obtained from
+     * {@link #getPreparedStatement(Connection, Map, String, Object...)}, thus
+     * updates using the same SQL share the statement recorded in the given
+     * map. The caller closes the statements in the map.
+     */
+    public abstract PreparedStatement getUpdateStatement(Connection connection,
+                                                         Map<String,PreparedStatement> statements,
+                                                         Job job) throws SQLException;
 
     @Override
     public Set<J> getJobs(final String schedulerId) throws DataAccessException
@@ -1050,5 +1166,28 @@ public abstract class DatabaseJobStorage<J extends Job> implements JobStorage<J>
         }
         return stmt;
     }
+
+    /**
+     * Like {@link #getPreparedStatement(Connection, String, Object...)}, but
+     * prepares each query only once. Statements are recorded in the given map,
+     * keyed by query, and are reused with new parameters by later calls.
+     */
+    protected PreparedStatement getPreparedStatement(
+            Connection connection,
+            Map<String,PreparedStatement> statements,
+            String query,
+            Object... args)
+            throws SQLException
+    {
+        PreparedStatement stmt = statements.get(query);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(query);
+            statements.put(query, stmt);
+        }
+        for (int i = 0; i < args.length; i++) {
+            stmt.setObject(i + 1, args[i]);
+        }
+        return stmt;
+    }
 }
 
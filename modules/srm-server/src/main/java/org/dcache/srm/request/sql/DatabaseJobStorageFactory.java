@@ -6,15 +6,14 @@ import org.springframework.dao.DataAccessException;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.dcache.srm.request.BringOnlineFileRequest;
@@ -29,7 +28,6 @@ import org.dcache.srm.request.LsRequest;
 import org.dcache.srm.request.PutFileRequest;
 import org.dcache.srm.request.PutRequest;
 import org.dcache.srm.request.ReserveSpaceRequest;
-import org.dcache.srm.scheduler.AsynchronousSaveJobStorage;
 import org.dcache.srm.scheduler.CanonicalizingJobStorage;
 import org.dcache.srm.scheduler.FinalStateOnlyJobStorageDecorator;
 import org.dcache.srm.scheduler.JobStorage;
@@ -46,8 +44,12 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
                                // requests are cached before container requests are loaded
     private final Map<Class<? extends Job>, JobStorage<?>> unmodifiableJobStorageMap =
             Collections.unmodifiableMap(jobStorageMap);
-    private final ExecutorService executor;
+    private final List<GroupCommitJobStorage<?>> groupCommitStorages = new ArrayList<>();
+    private final ScheduledExecutorService executor;
     private final ScheduledExecutorService scheduledExecutor;
+    private final long batchInterval;
+    private final int maxBatchSize;
+    private final int maxQueueSize;
 
     private <J extends Job> void add(Configuration.DatabaseParameters config,
                      Class<J> entityClass,
@@ -61,10 +63,13 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
     {
         JobStorage<J> js;
         if (config.isDatabaseEnabled()) {
-            js = storageClass
-                    .getConstructor(Configuration.DatabaseParameters.class, ScheduledExecutorService.class)
-                    .newInstance(config, scheduledExecutor);
-            js = new AsynchronousSaveJobStorage<>(js, executor);
+            GroupCommitJobStorage<J> groupCommitStorage = new GroupCommitJobStorage<>(
+                    storageClass
+                            .getConstructor(Configuration.DatabaseParameters.class, ScheduledExecutorService.class)
+                            .newInstance(config, scheduledExecutor),
+                    executor, batchInterval, TimeUnit.MILLISECONDS, maxBatchSize, maxQueueSize);
+            groupCommitStorages.add(groupCommitStorage);
+            js = groupCommitStorage;
             if (config.getStoreCompletedRequestsOnly()) {
                 js = new FinalStateOnlyJobStorageDecorator<>(js);
             }
@@ -76,10 +81,11 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
 
     public DatabaseJobStorageFactory(Configuration config) throws DataAccessException, IOException
     {
-        executor = new ThreadPoolExecutor(
-                config.getJdbcExecutionThreadNum(), config.getJdbcExecutionThreadNum(),
-                0L, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>(config.getMaxQueuedJdbcTasksNum()),
+        batchInterval = config.getJdbcBatchInterval();
+        maxBatchSize = config.getJdbcMaxBatchSize();
+        maxQueueSize = config.getMaxQueuedJdbcTasksNum();
+        executor = Executors.newScheduledThreadPool(
+                config.getJdbcExecutionThreadNum(),
                 new ThreadFactoryBuilder().setNameFormat("srm-db-save-%d").build());
         scheduledExecutor =
                 Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("srm-db-gc-%d").build());
@@ -147,6 +153,9 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
 
     public void shutdown()
     {
+        for (GroupCommitJobStorage<?> storage : groupCommitStorages) {
+            storage.shutdown();
+        }
         scheduledExecutor.shutdown();
         executor.shutdown();
         try {
@@ -158,6 +167,15 @@ public class DatabaseJobStorageFactory extends JobStorageFactory
         }
     }
 
+    public CharSequence getInfo()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (GroupCommitJobStorage<?> storage : groupCommitStorages) {
+            storage.getInfo(sb);
+        }
+        return sb;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public <J extends Job> JobStorage<J> getJobStorage(J job) {
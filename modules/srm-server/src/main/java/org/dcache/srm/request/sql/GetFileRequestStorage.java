@@ -12,6 +12,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.request.GetFileRequest;
@@ -38,10 +39,12 @@ public class GetFileRequestStorage extends DatabaseFileRequestStorage<GetFileReq
         "LASTSTATETRANSITIONTIME=? ";//10
 
     public PreparedStatement getStatement(Connection connection,
+                                          Map<String,PreparedStatement> statements,
                                           String query,
                                           Job job) throws SQLException {
         GetFileRequest request = (GetFileRequest)job;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                                      statements,
                                                       query,
                                                       request.getNextJobId(),
                                                       request.getCreationTime(),
@@ -76,13 +79,14 @@ public class GetFileRequestStorage extends DatabaseFileRequestStorage<GetFileReq
             "WHERE ID=? ";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+                                                Map<String,PreparedStatement> statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof GetFileRequest)) {
             throw new IllegalArgumentException("fr is not GetFileRequest" );
         }
         GetFileRequest request = (GetFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(connection, statements, UPDATE_REQUEST_SQL, request);
     }
 
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -110,9 +111,11 @@ public class GetRequestStorage extends DatabaseContainerRequestStorage<GetReques
                 " WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         GetRequest gr = (GetRequest)job;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   gr.getNextJobId(),
                                   gr.getCreationTime(),
@@ -0,0 +1,239 @@
+package org.dcache.srm.request.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.srm.request.Job;
+import org.dcache.srm.scheduler.JobStorage;
+import org.dcache.srm.scheduler.State;
+
+/**
+ * JobStorage decorator that persists job state changes asynchronously using
+ * group commit.
+ *
+ * Saves are queued and coalesced per job. At a fixed interval the queue is
+ * drained and the queued jobs are written in batches, each batch in a single
+ * transaction. Since a queued job is written in its state at the time of the
+ * flush, repeated saves of a job between two flushes cost a single update.
+ *
+ * Flushes are serialized, thus the updates of a job reach the database in the
+ * order in which they were made. The queue is bounded; once full, saves of jobs
+ * in a non-final state are discarded. Saves of jobs in a final state are always
+ * accepted and the queue is drained on shutdown.
+ */
+public class GroupCommitJobStorage<J extends Job> implements JobStorage<J>, Runnable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitJobStorage.class);
+
+    private final DatabaseJobStorage<J> storage;
+    private final ScheduledExecutorService executor;
+    private final long interval;
+    private final int maxBatchSize;
+    private final int maxQueueSize;
+
+    /** Jobs waiting to be saved, in the order in which they were first queued. */
+    private final Map<Long,J> queue = new LinkedHashMap<>();
+
+    /** Serializes flushes to preserve the order of updates. */
+    private final Object flushLock = new Object();
+
+    private ScheduledFuture<?> task;
+
+    private long batches;
+    private long savedJobs;
+    private long droppedJobs;
+    private long failedBatches;
+    private int largestBatch;
+
+    public GroupCommitJobStorage(DatabaseJobStorage<J> storage, ScheduledExecutorService executor,
+                                 long interval, TimeUnit unit, int maxBatchSize, int maxQueueSize)
+    {
+        this.storage = storage;
+        this.executor = executor;
+        this.interval = unit.toMillis(interval);
+        this.maxBatchSize = maxBatchSize;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    @Override
+    public void init() throws DataAccessException
+    {
+        storage.init();
+        synchronized (this) {
+            task = executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic flush and writes all queued jobs.
+     */
+    public void shutdown()
+    {
+        synchronized (this) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+        run();
+    }
+
+    @Override
+    public J getJob(long jobId) throws DataAccessException
+    {
+        return storage.getJob(jobId);
+    }
+
+    @Override
+    public J getJob(long jobId, Connection connection) throws SQLException
+    {
+        return storage.getJob(jobId, connection);
+    }
+
+    @Override
+    public Set<J> getJobs(String scheduler) throws DataAccessException
+    {
+        return storage.getJobs(scheduler);
+    }
+
+    @Override
+    public Set<J> getJobs(String scheduler, State state) throws DataAccessException
+    {
+        return storage.getJobs(scheduler, state);
+    }
+
+    @Override
+    public void saveJob(J job, boolean saveIfMonitoringDisabled)
+    {
+        if (!saveIfMonitoringDisabled && !isJdbcLogRequestHistoryInDBEnabled()) {
+            return;
+        }
+        synchronized (this) {
+            if (!queue.containsKey(job.getId())) {
+                if (queue.size() >= maxQueueSize && !job.getState().isFinal()) {
+                    // ignore the saving errors, this will affect monitoring and
+                    // future status updates, but is not critical
+                    droppedJobs++;
+                    LOGGER.error("Persistence of request {} failed, queue is too long.", job.getId());
+                    return;
+                }
+                queue.put(job.getId(), job);
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try {
+            synchronized (flushLock) {
+                List<J> batch;
+                do {
+                    batch = nextBatch();
+                    save(batch);
+                } while (batch.size() == maxBatchSize);
+            }
+        } catch (RuntimeException e) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+        }
+    }
+
+    private synchronized List<J> nextBatch()
+    {
+        List<J> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+        Iterator<J> iterator = queue.values().iterator();
+        while (iterator.hasNext() && batch.size() < maxBatchSize) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    private void save(List<J> batch)
+    {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            storage.saveJobs(batch);
+        } catch (DataAccessException e) {
+            LOGGER.warn("Failed to save batch of {} requests, saving individually: {}",
+                        batch.size(), e.getMessage());
+            synchronized (this) {
+                failedBatches++;
+            }
+            for (J job : batch) {
+                try {
+                    storage.saveJob(job, true);
+                } catch (DataAccessException f) {
+                    LOGGER.error("SQL statement failed: {}", f.getMessage());
+                }
+            }
+        }
+        synchronized (this) {
+            batches++;
+            savedJobs += batch.size();
+            largestBatch = Math.max(largestBatch, batch.size());
+        }
+    }
+
+    public synchronized void getInfo(StringBuilder sb)
+    {
+        sb.append(storage.getTableName()).append(" persistence:\n");
+        sb.append("   Queued requests         : ").append(queue.size()).append('\n');
+        sb.append("   Batches written         : ").append(batches).append('\n');
+        sb.append("   Failed batches          : ").append(failedBatches).append('\n');
+        sb.append("   Average batch size      : ")
+                .append(batches == 0 ? 0 : savedJobs / batches).append('\n');
+        sb.append("   Largest batch size      : ").append(largestBatch).append('\n');
+        sb.append("   Dropped updates         : ").append(droppedJobs).append('\n');
+    }
+
+    @Override
+    public boolean isJdbcLogRequestHistoryInDBEnabled()
+    {
+        return storage.isJdbcLogRequestHistoryInDBEnabled();
+    }
+
+    @Override
+    public Set<Long> getLatestCompletedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCompletedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestDoneJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestDoneJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestFailedJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestFailedJobIds(maxNum);
+    }
+
+    @Override
+    public Set<Long> getLatestCanceledJobIds(int maxNum) throws DataAccessException
+    {
+        return storage.getLatestCanceledJobIds(maxNum);
+    }
+
+    @Override
+    public Set<J> getActiveJobs() throws DataAccessException
+    {
+        return storage.getActiveJobs();
+    }
+}
@@ -6,6 +6,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.request.Job;
@@ -86,10 +87,12 @@ public class LsFileRequestStorage extends DatabaseFileRequestStorage<LsFileReque
 
 
         public PreparedStatement getStatement(Connection connection,
+                                              Map<String,PreparedStatement> statements,
                                               String query,
                                               Job fr) throws SQLException {
                 LsFileRequest gfr = (LsFileRequest)fr;
                 PreparedStatement stmt = getPreparedStatement(connection,
+                                          statements,
                                           query,
                                           gfr.getNextJobId(),
                                           gfr.getCreationTime(),
@@ -117,12 +120,13 @@ public class LsFileRequestStorage extends DatabaseFileRequestStorage<LsFileReque
                 ", SURL=? WHERE ID=?";
         @Override
         public PreparedStatement getUpdateStatement(Connection connection,
+                                                    Map<String,PreparedStatement> statements,
                                                     Job fr)
                 throws SQLException {
                 if(fr == null || !(fr instanceof LsFileRequest)) {
                         throw new IllegalArgumentException("fr is not LsFileRequest" );
                 }
-                return getStatement(connection,UPDATE_REQUEST_SQL, fr);
+                return getStatement(connection, statements, UPDATE_REQUEST_SQL, fr);
         }
 
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
@@ -7,6 +7,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -108,9 +109,11 @@ public class LsRequestStorage extends DatabaseContainerRequestStorage<LsRequest,
                 " WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         LsRequest lr = (LsRequest)job;
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   lr.getNextJobId(),
                                   lr.getCreationTime(),
@@ -12,6 +12,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.request.Job;
@@ -41,12 +42,14 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
 
 
     public PreparedStatement getStatement(Connection connection,
+                                          Map<String,PreparedStatement> statements,
                                           String query,
                                           Job job) throws SQLException {
         PutFileRequest request = (PutFileRequest)job;
         TRetentionPolicy retentionPolicy = request.getRetentionPolicy();
         TAccessLatency  accessLatency = request.getAccessLatency();
         PreparedStatement stmt = getPreparedStatement(connection,
+                                                      statements,
                                                       query,
                                                       request.getNextJobId(),
                                                       request.getCreationTime(),
@@ -88,13 +91,14 @@ public class PutFileRequestStorage extends DatabaseFileRequestStorage<PutFileReq
             "WHERE ID=? ";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+                                                Map<String,PreparedStatement> statements,
                                                 Job job)
         throws SQLException {
         if(job == null || !(job instanceof PutFileRequest)) {
             throw new IllegalArgumentException("job is not PutFileRequest" );
         }
         PutFileRequest request = (PutFileRequest)job;
-        return getStatement(connection,UPDATE_REQUEST_SQL, request);
+        return getStatement(connection, statements, UPDATE_REQUEST_SQL, request);
     }
         private static final String INSERT_SQL = "INSERT INTO "+ TABLE_NAME+ "(    " +
             "ID ,"+
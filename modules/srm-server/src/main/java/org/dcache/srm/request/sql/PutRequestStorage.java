@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -111,10 +112,12 @@ public class PutRequestStorage extends DatabaseContainerRequestStorage<PutReques
                 " WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         PutRequest pr = (PutRequest)job;
         PreparedStatement stmt = getPreparedStatement(
                                   connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   pr.getNextJobId(),
                                   pr.getCreationTime(),
@@ -12,6 +12,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.dcache.srm.SRMUser;
@@ -126,6 +127,7 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
                 " WHERE ID=?";
     @Override
     public PreparedStatement getUpdateStatement(Connection connection,
+            Map<String,PreparedStatement> statements,
             Job job) throws SQLException {
         ReserveSpaceRequest rsr = (ReserveSpaceRequest)job;
         String retentionPolicyValue=null;
@@ -137,6 +139,7 @@ public class ReserveSpaceRequestStorage extends DatabaseRequestStorage<ReserveSp
             accessLatencyValue = rsr.getAccessLatency().getValue();
         }
         PreparedStatement stmt = getPreparedStatement(connection,
+                                  statements,
                                   UPDATE_REQUEST_SQL,
                                   rsr.getNextJobId(),
                                   rsr.getCreationTime(),
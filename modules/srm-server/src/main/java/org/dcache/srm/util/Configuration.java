@@ -194,6 +194,8 @@ public class Configuration {
     private String reserveSpacePriorityPolicyPlugin="DefaultJobAppraiser";
     private Integer maxQueuedJdbcTasksNum ; //null by default
     private Integer jdbcExecutionThreadNum;//null by default
+    private long jdbcBatchInterval = 100;
+    private int jdbcMaxBatchSize = 1000;
     private String credentialsDirectory="/opt/d-cache/credentials";
     private boolean overwrite = false;
     private boolean overwrite_by_default = false;
@@ -959,6 +961,30 @@ public class Configuration {
         this.maxQueuedJdbcTasksNum = maxQueuedJdbcTasksNum;
     }
 
+    /**
+     * @return the interval in milliseconds at which queued request updates
+     * are written to the database
+     */
+    public long getJdbcBatchInterval() {
+        return jdbcBatchInterval;
+    }
+
+    public void setJdbcBatchInterval(long jdbcBatchInterval) {
+        this.jdbcBatchInterval = jdbcBatchInterval;
+    }
+
+    /**
+     * @return the maximum number of request updates written in a single
+     * transaction
+     */
+    public int getJdbcMaxBatchSize() {
+        return jdbcMaxBatchSize;
+    }
+
+    public void setJdbcMaxBatchSize(int jdbcMaxBatchSize) {
+        this.jdbcMaxBatchSize = jdbcMaxBatchSize;
+    }
+
     public String getCredentialsDirectory() {
         return credentialsDirectory;
     }
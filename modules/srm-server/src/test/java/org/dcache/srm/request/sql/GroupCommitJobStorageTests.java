@@ -0,0 +1,135 @@
+package org.dcache.srm.request.sql;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.dcache.srm.request.Job;
+import org.dcache.srm.scheduler.State;
+
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.anyCollectionOf;
+
+public class GroupCommitJobStorageTests
+{
+    private static final int MAX_BATCH_SIZE = 2;
+    private static final int MAX_QUEUE_SIZE = 3;
+
+    DatabaseJobStorage<Job> storage;
+    GroupCommitJobStorage<Job> groupCommit;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        storage = mock(DatabaseJobStorage.class);
+        groupCommit = new GroupCommitJobStorage<>(storage, mock(ScheduledExecutorService.class),
+                                                  100, TimeUnit.MILLISECONDS,
+                                                  MAX_BATCH_SIZE, MAX_QUEUE_SIZE);
+    }
+
+    private Job mockJob(long id, State state)
+    {
+        Job job = mock(Job.class);
+        given(job.getId()).willReturn(id);
+        given(job.getState()).willReturn(state);
+        return job;
+    }
+
+    @Test
+    public void shouldCoalesceRepeatedSavesOfJob()
+    {
+        Job job = mockJob(1, State.PENDING);
+
+        groupCommit.saveJob(job, true);
+        groupCommit.saveJob(job, true);
+        groupCommit.saveJob(job, true);
+        groupCommit.run();
+
+        verify(storage).saveJobs(Collections.singletonList(job));
+        verifyNoMoreInteractions(storage);
+    }
+
+    @Test
+    public void shouldSaveInBatchesInQueueOrder()
+    {
+        Job job1 = mockJob(1, State.PENDING);
+        Job job2 = mockJob(2, State.RUNNING);
+        Job job3 = mockJob(3, State.DONE);
+
+        groupCommit.saveJob(job1, true);
+        groupCommit.saveJob(job2, true);
+        groupCommit.saveJob(job3, true);
+        groupCommit.saveJob(job1, true);
+        groupCommit.run();
+
+        verify(storage).saveJobs(Arrays.asList(job1, job2));
+        verify(storage).saveJobs(Collections.singletonList(job3));
+    }
+
+    @Test
+    public void shouldNotSaveWhenMonitoringIsDisabled()
+    {
+        given(storage.isJdbcLogRequestHistoryInDBEnabled()).willReturn(false);
+        Job job = mockJob(1, State.PENDING);
+
+        groupCommit.saveJob(job, false);
+        groupCommit.run();
+
+        verify(storage, never()).saveJobs(anyCollectionOf(Job.class));
+    }
+
+    @Test
+    public void shouldOnlyAcceptFinalStatesWhenQueueIsFull()
+    {
+        Job job1 = mockJob(1, State.PENDING);
+        Job job2 = mockJob(2, State.PENDING);
+        Job job3 = mockJob(3, State.PENDING);
+        Job job4 = mockJob(4, State.PENDING);
+        Job job5 = mockJob(5, State.DONE);
+
+        groupCommit.saveJob(job1, true);
+        groupCommit.saveJob(job2, true);
+        groupCommit.saveJob(job3, true);
+        groupCommit.saveJob(job4, true);
+        groupCommit.saveJob(job5, true);
+        groupCommit.run();
+
+        verify(storage).saveJobs(Arrays.asList(job1, job2));
+        verify(storage).saveJobs(Arrays.asList(job3, job5));
+        verifyNoMoreInteractions(storage);
+    }
+
+    @Test
+    public void shouldSaveJobsIndividuallyWhenBatchFails()
+    {
+        Job job1 = mockJob(1, State.PENDING);
+        Job job2 = mockJob(2, State.PENDING);
+        List<Job> batch = Arrays.asList(job1, job2);
+        willThrow(new DataAccessResourceFailureException("failed")).given(storage).saveJobs(batch);
+
+        groupCommit.saveJob(job1, true);
+        groupCommit.saveJob(job2, true);
+        groupCommit.run();
+
+        verify(storage).saveJob(job1, true);
+        verify(storage).saveJob(job2, true);
+    }
+
+    @Test
+    public void shouldSaveQueuedJobsOnShutdown()
+    {
+        Job job = mockJob(1, State.DONE);
+
+        groupCommit.saveJob(job, true);
+        groupCommit.shutdown();
+
+        verify(storage).saveJobs(Collections.singletonList(job));
+    }
+}